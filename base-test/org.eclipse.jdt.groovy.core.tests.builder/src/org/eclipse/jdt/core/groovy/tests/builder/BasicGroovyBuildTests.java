@@ -11,9 +11,11 @@
 package org.eclipse.jdt.core.groovy.tests.builder;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.Test;
 
@@ -27,8 +29,11 @@ import org.codehaus.groovy.ast.PropertyNode;
 import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
 import org.codehaus.groovy.ast.expr.Expression;
 import org.codehaus.groovy.ast.stmt.ReturnStatement;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.eclipse.CompileProfiler;
 import org.codehaus.groovy.vmplugin.VMPluginFactory;
 import org.codehaus.jdt.groovy.internal.compiler.ast.JDTClassNode;
+import org.codehaus.jdt.groovy.internal.compiler.ast.JDTClassNodeCache;
 import org.codehaus.jdt.groovy.internal.compiler.ast.JDTResolver;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
 import org.codehaus.jdt.groovy.model.ModuleNodeMapper.ModuleNodeInfo;
@@ -278,6 +283,151 @@ public class BasicGroovyBuildTests extends GroovierBuilderTests {
 		expectingNoProblems();
 	}
 
+	// chain and mixed java/groovy cycle, built in batches of at most 2 units
+	public void testBuildInGroovyBatches() throws Exception {
+		int oldBatchSize = AbstractImageBuilder.GROOVY_BATCH_SIZE;
+		AbstractImageBuilder.GROOVY_BATCH_SIZE = 2;
+		try {
+			IPath projectPath = env.addProject("Project"); //$NON-NLS-1$
+			env.addExternalJars(projectPath, Util.getJavaClassLibs());
+			env.addGroovyJars(projectPath);
+			fullBuild(projectPath);
+			// remove old package fragment root so that names don't collide
+			env.removePackageFragmentRoot(projectPath, ""); //$NON-NLS-1$
+
+			IPath root = env.addPackageFragmentRoot(projectPath, "src"); //$NON-NLS-1$
+			env.setOutputFolder(projectPath, "bin"); //$NON-NLS-1$
+
+			env.addGroovyClass(root, "p1", "Top", "package p1\n"
+					+ "class Top {\n"
+					+ "  static void main(String[] args) {\n"
+					+ "    print new Middle().value() + new Cycle1().other().name\n"
+					+ "  }\n"
+					+ "}\n");
+			env.addGroovyClass(root, "p1", "Middle", "package p1\n"
+					+ "class Middle extends Bottom { }\n");
+			env.addGroovyClass(root, "p1", "Bottom", "package p1\n"
+					+ "class Bottom {\n"
+					+ "  def value() { 'bottom' }\n"
+					+ "}\n");
+			env.addClass(root, "p1", "Cycle1", "package p1;\n"
+					+ "public class Cycle1 {\n"
+					+ "  public Cycle2 other() { return new Cycle2(); }\n"
+					+ "}\n");
+			env.addGroovyClass(root, "p1", "Cycle2", "package p1\n"
+					+ "class Cycle2 {\n"
+					+ "  String name = 'cycle'\n"
+					+ "  Cycle1 back\n"
+					+ "}\n");
+
+			fullBuild(projectPath);
+			expectingCompiledClassesV("p1.Top", "p1.Middle", "p1.Bottom", "p1.Cycle1", "p1.Cycle2");
+			expectingNoProblems();
+			executeClass(projectPath, "p1.Top", "bottomcycle", "");
+		} finally {
+			AbstractImageBuilder.GROOVY_BATCH_SIZE = oldBatchSize;
+		}
+	}
+
+	public void testBuildWithParallelPhases() throws Exception {
+		int oldThreads = CompilationUnit.PARALLEL_THREADS;
+		CompilationUnit.PARALLEL_THREADS = 4;
+		try {
+			IPath projectPath = env.addProject("Project"); //$NON-NLS-1$
+			env.addExternalJars(projectPath, Util.getJavaClassLibs());
+			env.addGroovyJars(projectPath);
+			fullBuild(projectPath);
+			// remove old package fragment root so that names don't collide
+			env.removePackageFragmentRoot(projectPath, ""); //$NON-NLS-1$
+
+			IPath root = env.addPackageFragmentRoot(projectPath, "src"); //$NON-NLS-1$
+			env.setOutputFolder(projectPath, "bin"); //$NON-NLS-1$
+
+			// enough units for the compiler to read them ahead, so that they are all parsed together
+			int count = 12;
+			String[] classNames = new String[count + 1];
+			for (int i = 0; i < count; i++) {
+				String superClass = i == 0 ? "" : " extends C" + (i - 1);
+				env.addGroovyClass(root, "p1", "C" + i, "package p1\n"
+						+ "class C" + i + superClass + " {\n"
+						+ "  def value" + i + "() { " + i + " }\n"
+						+ "}\n");
+				classNames[i] = "p1.C" + i;
+			}
+			env.addClass(root, "p1", "Main", "package p1;\n"
+					+ "public class Main {\n"
+					+ "  public static void main(String[] args) {\n"
+					+ "    System.out.print(new C11().value0().toString() + new C11().value11());\n"
+					+ "  }\n"
+					+ "}\n");
+			classNames[count] = "p1.Main";
+
+			fullBuild(projectPath);
+			expectingCompiledClassesV(classNames);
+			expectingNoProblems();
+			executeClass(projectPath, "p1.Main", "011", "");
+
+			// problems are still reported against the unit they belong to
+			IPath broken = env.addGroovyClass(root, "p1", "Broken", "package p1\n"
+					+ "class Broken {\n"
+					+ "  def value() { \n"
+					+ "}\n");
+			fullBuild(projectPath);
+			assertTrue("Expected problems for Broken", env.getProblemsFor(broken).length > 0);
+			for (int i = 0; i < count; i++) {
+				IPath path = root.append("p1").append("C" + i + ".groovy");
+				assertEquals("Unexpected problems for C" + i, 0, env.getProblemsFor(path).length);
+			}
+		} finally {
+			CompilationUnit.PARALLEL_THREADS = oldThreads;
+		}
+	}
+
+	public void testBuildWritesCompileProfile() throws Exception {
+		File profileDir = new File(System.getProperty("java.io.tmpdir"), "greclipse-profile-" + System.currentTimeMillis());
+		String oldDir = System.getProperty(CompileProfiler.PROFILE_DIR_PROPERTY);
+		System.setProperty(CompileProfiler.PROFILE_DIR_PROPERTY, profileDir.getAbsolutePath());
+		try {
+			IPath projectPath = env.addProject("Project"); //$NON-NLS-1$
+			env.addExternalJars(projectPath, Util.getJavaClassLibs());
+			env.addGroovyJars(projectPath);
+			fullBuild(projectPath);
+			// remove old package fragment root so that names don't collide
+			env.removePackageFragmentRoot(projectPath, ""); //$NON-NLS-1$
+
+			IPath root = env.addPackageFragmentRoot(projectPath, "src"); //$NON-NLS-1$
+			env.setOutputFolder(projectPath, "bin"); //$NON-NLS-1$
+
+			env.addGroovyClass(root, "p1", "Hello", "package p1\n"
+					+ "@groovy.transform.ToString\n"
+					+ "class Hello {\n"
+					+ "  String name\n"
+					+ "}\n");
+
+			fullBuild(projectPath);
+			expectingNoProblems();
+
+			File[] reports = profileDir.listFiles();
+			assertNotNull("Expected a profile directory", reports);
+			assertEquals("Expected one profile report", 1, reports.length);
+			String report = new String(org.eclipse.jdt.internal.compiler.util.Util.getFileCharContent(reports[0], null));
+			assertTrue("Expected a header:\n" + report, report.startsWith("kind\tname\tunits\tmillis\tallocatedBytes"));
+			assertTrue("Expected phases:\n" + report, report.indexOf("PHASE\tclass generation\t1\t") != -1);
+			assertTrue("Expected transforms:\n" + report, report.indexOf("TRANSFORM\t") != -1);
+			assertTrue("Expected source units:\n" + report, report.indexOf("SOURCE\t") != -1);
+			for (int i = 0; i < reports.length; i++) {
+				reports[i].delete();
+			}
+		} finally {
+			if (oldDir == null) {
+				System.clearProperty(CompileProfiler.PROFILE_DIR_PROPERTY);
+			} else {
+				System.setProperty(CompileProfiler.PROFILE_DIR_PROPERTY, oldDir);
+			}
+			profileDir.delete();
+		}
+	}
+
 	public void testNPEAnno_1398() throws Exception {
 		IPath projectPath = env.addProject("Project", "1.5"); //$NON-NLS-1$ //$NON-NLS-2$
 		env.addExternalJars(projectPath, Util.getJavaClassLibs());
@@ -3486,6 +3636,123 @@ public class BasicGroovyBuildTests extends GroovierBuilderTests {
 				env.getWorkspace().getRoot().getFile(pathToBBin).exists());
 	}
 
+	// two compilation units of one build share the nodes of binary types, but not their resolver
+	public void testSharedClassNodesFollowActiveResolver() throws Exception {
+		IPath projectPath = env.addProject("Project");
+		env.addExternalJars(projectPath, Util.getJavaClassLibs());
+		env.addGroovyJars(projectPath);
+		fullBuild(projectPath);
+		env.removePackageFragmentRoot(projectPath, "");
+		IPath root = env.addPackageFragmentRoot(projectPath, "src");
+		env.setOutputFolder(projectPath, "bin");
+
+		env.addGroovyClass(root, "p", "One", "package p\nclass One {\n  LinkedList<String> list = new LinkedList<String>()\n}\n");
+		env.addGroovyClass(root, "p", "Two", "package p\nclass Two {\n  int size(LinkedList<Integer> list) { list.size() }\n}\n");
+		JDTResolver.instances = null;
+		JDTResolver.recordInstances = true;
+		try {
+			fullBuild(projectPath);
+			expectingNoProblems();
+
+			List<JDTResolver> resolvers = new ArrayList<JDTResolver>();
+			for (JDTResolver resolver : JDTResolver.instances) {
+				if (resolver.getSharedCache() != null) {
+					resolvers.add(resolver);
+				}
+			}
+			assertEquals("Expected a resolver per compilation unit", 2, resolvers.size());
+			JDTResolver first = resolvers.get(0);
+			JDTResolver second = resolvers.get(1);
+			JDTClassNodeCache cache = first.getSharedCache();
+			assertSame(cache, second.getSharedCache());
+
+			JDTClassNode node = JDTResolver.getCachedNode(first, "java.util.LinkedList<E>");
+			assertNotNull(node);
+			assertSame(node, JDTResolver.getCachedNode(second, "java.util.LinkedList<E>"));
+			// both compilations are over, nobody is active any more
+			assertNull(cache.getActiveResolver());
+
+			for (JDTResolver resolver : resolvers) {
+				cache.activate(resolver);
+				try {
+					assertSame(resolver, node.getResolver());
+				} finally {
+					cache.deactivate(resolver);
+				}
+			}
+			assertNull(cache.getActiveResolver());
+			assertTrue(resolvers.contains(node.getResolver()));
+		} finally {
+			JDTResolver.recordInstances = false;
+			JDTResolver.instances = null;
+		}
+	}
+
+	// a shared node is initialized by whichever thread asks first, the others must only ever see it complete
+	public void testSharedClassNodeInitializedConcurrently() throws Exception {
+		IPath projectPath = env.addProject("Project");
+		env.addExternalJars(projectPath, Util.getJavaClassLibs());
+		env.addGroovyJars(projectPath);
+		fullBuild(projectPath);
+		env.removePackageFragmentRoot(projectPath, "");
+		IPath root = env.addPackageFragmentRoot(projectPath, "src");
+		env.setOutputFolder(projectPath, "bin");
+
+		env.addGroovyClass(root, "p", "One", "package p\nclass One {\n  LinkedList<String> list = new LinkedList<String>()\n}\n");
+		JDTResolver.instances = null;
+		JDTResolver.recordInstances = true;
+		try {
+			fullBuild(projectPath);
+			expectingNoProblems();
+
+			JDTClassNode shared = JDTResolver.getCachedNode("java.util.LinkedList<E>");
+			assertNotNull(shared);
+			final int expectedMethods = shared.getMethods().size();
+			final int expectedInterfaces = shared.getInterfaces().length;
+			assertTrue(expectedMethods > 0);
+
+			for (int run = 0; run < 10; run++) {
+				// a node nobody has initialized yet, raced by all the threads
+				final JDTClassNode node = new JDTClassNode(shared.getJdtBinding(), shared.getResolver());
+				final CountDownLatch start = new CountDownLatch(1);
+				final List<Throwable> failures = new ArrayList<Throwable>();
+				Thread[] threads = new Thread[4];
+				for (int i = 0; i < threads.length; i++) {
+					threads[i] = new Thread() {
+						public void run() {
+							try {
+								start.await();
+								assertEquals(expectedMethods, node.getMethods().size());
+								assertEquals(expectedInterfaces, node.getInterfaces().length);
+								GenericsType[] generics = node.getGenericsTypes();
+								assertNotNull(generics);
+								assertEquals("E", generics[0].getName());
+								assertSame(generics, node.getGenericsTypes());
+								node.getProperties();
+							} catch (Throwable t) {
+								synchronized (failures) {
+									failures.add(t);
+								}
+							}
+						}
+					};
+					threads[i].start();
+				}
+				start.countDown();
+				for (Thread thread : threads) {
+					thread.join(10000);
+					assertFalse("Initialization deadlocked", thread.isAlive());
+				}
+				if (!failures.isEmpty()) {
+					throw new AssertionError(failures.get(0));
+				}
+			}
+		} finally {
+			JDTResolver.recordInstances = false;
+			JDTResolver.instances = null;
+		}
+	}
+
 	// currently failing
 	public void testNoDoubleResolve() throws Exception {
 		IPath projectPath = env.addProject("Project");
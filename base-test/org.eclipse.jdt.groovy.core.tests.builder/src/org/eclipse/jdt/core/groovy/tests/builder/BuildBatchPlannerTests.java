@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.jdt.core.groovy.tests.builder;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jdt.groovy.integration.BuildBatchPlanner;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+
+/**
+ * Tests the order and the size of the batches that {@link BuildBatchPlanner} splits a build into
+ */
+public class BuildBatchPlannerTests extends TestCase {
+
+    private static ICompilationUnit unit(String fileName, String contents) {
+        return new CompilationUnit(contents.toCharArray(), fileName, null);
+    }
+
+    private static int[][] plan(int batchSize, ICompilationUnit... units) {
+        int[][] batches = new BuildBatchPlanner(units).plan(batchSize);
+        assertPlansAll(units.length, batches);
+        return batches;
+    }
+
+    private static void assertPlansAll(int unitCount, int[][] batches) {
+        boolean[] planned = new boolean[unitCount];
+        for (int[] batch : batches) {
+            for (int i : batch) {
+                assertFalse("Unit " + i + " planned twice", planned[i]);
+                planned[i] = true;
+            }
+        }
+        for (int i = 0; i < unitCount; i++) {
+            assertTrue("Unit " + i + " not planned", planned[i]);
+        }
+    }
+
+    private static int batchOf(int unit, int[][] batches) {
+        for (int b = 0; b < batches.length; b++) {
+            if (Arrays.binarySearch(batches[b], unit) >= 0) {
+                return b;
+            }
+        }
+        fail("Unit " + unit + " not planned");
+        return -1;
+    }
+
+    public void testIndependentUnitsFillBatches() throws Exception {
+        int[][] batches = plan(2,
+                unit("A.groovy", "class A { }"),
+                unit("B.groovy", "class B { }"),
+                unit("C.java", "class C { }"));
+        assertEquals(2, batches.length);
+        assertEquals(2, batches[0].length);
+        assertEquals(1, batches[1].length);
+    }
+
+    public void testDependenciesComeFirst() throws Exception {
+        int[][] batches = plan(1,
+                unit("A.groovy", "class A extends B { }"),
+                unit("B.java", "class B extends C { }"),
+                unit("C.groovy", "class C { }"));
+        assertEquals(3, batches.length);
+        assertEquals(2, batchOf(0, batches));
+        assertEquals(1, batchOf(1, batches));
+        assertEquals(0, batchOf(2, batches));
+    }
+
+    public void testDeclaredTypesAreDependencies() throws Exception {
+        int[][] batches = plan(1,
+                unit("User.java", "class User implements Helper { }"),
+                unit("Types.groovy", "trait Helper { }\nenum Kind { ONE }"),
+                unit("Other.java", "class Other { Kind kind; }"));
+        assertTrue(batchOf(1, batches) < batchOf(0, batches));
+        assertTrue(batchOf(1, batches) < batchOf(2, batches));
+    }
+
+    public void testCycleKeptInOneBatch() throws Exception {
+        int[][] batches = plan(1,
+                unit("X.groovy", "class X { Y y }"),
+                unit("Y.java", "class Y { X x; }"),
+                unit("Z.groovy", "class Z extends X { }"));
+        assertEquals(2, batches.length);
+        assertTrue(Arrays.equals(new int[] { 0, 1 }, batches[0]));
+        assertTrue(Arrays.equals(new int[] { 2 }, batches[1]));
+    }
+}
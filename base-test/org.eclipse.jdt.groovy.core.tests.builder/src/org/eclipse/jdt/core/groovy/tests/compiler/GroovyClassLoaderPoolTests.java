@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.jdt.core.groovy.tests.compiler;
+
+import groovy.lang.GroovyClassLoader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jdt.groovy.internal.compiler.ast.GroovyClassLoaderPool;
+
+/**
+ * Tests the sharing, eviction and closing of the pooled transform loaders
+ */
+public class GroovyClassLoaderPoolTests extends TestCase {
+
+    private static final String CP1 = "lib1.jar";
+    private static final String CP2 = "lib2.jar";
+    private static final String CP3 = "lib3.jar";
+
+    private final List<GroovyClassLoader> closed = new ArrayList<GroovyClassLoader>();
+
+    private GroovyClassLoaderPool createPool(int maxUnreferenced) {
+        return new GroovyClassLoaderPool(new GroovyClassLoaderPool.LoaderFactory() {
+            public GroovyClassLoader createLoader(String normalizedClasspath) {
+                return new GroovyClassLoader(GroovyClassLoaderPoolTests.class.getClassLoader());
+            }
+
+            public void closeLoader(GroovyClassLoader groovyClassLoader) {
+                closed.add(groovyClassLoader);
+            }
+        }, maxUnreferenced);
+    }
+
+    public void testNormalize() throws Exception {
+        String lib1 = new File(CP1).getAbsolutePath();
+        String lib2 = new File(CP2).getAbsolutePath();
+        assertEquals(lib1 + File.pathSeparator + lib2,
+                GroovyClassLoaderPool.normalize(CP1 + File.pathSeparator + File.pathSeparator + CP2 + File.pathSeparator + lib1));
+        assertEquals("", GroovyClassLoaderPool.normalize(null));
+    }
+
+    public void testSameClasspathSharesLoader() throws Exception {
+        GroovyClassLoaderPool pool = createPool(4);
+        GroovyClassLoader loader = pool.acquire("p1", CP1);
+        assertSame(loader, pool.acquire("p2", CP1 + File.pathSeparator + CP1));
+        assertNotSame(loader, pool.acquire("p3", CP2));
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    public void testUnreferencedLoadersEvictedBeyondLimit() throws Exception {
+        GroovyClassLoaderPool pool = createPool(1);
+        GroovyClassLoader loader1 = pool.acquire("p1", CP1);
+        GroovyClassLoader loader2 = pool.acquire("p1", CP2);
+        assertTrue(closed.isEmpty());
+
+        // the project flips back, the unreferenced loader is reused
+        assertSame(loader1, pool.acquire("p1", CP1));
+        pool.acquire("p1", CP3);
+        assertEquals(Collections.singletonList(loader2), closed);
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getEvictions());
+    }
+
+    public void testReleaseAndCloseKeepsSharedLoader() throws Exception {
+        GroovyClassLoaderPool pool = createPool(4);
+        GroovyClassLoader loader = pool.acquire("p1", CP1);
+        pool.acquire("p2", CP1);
+        pool.releaseAndClose("p1");
+        assertTrue(closed.isEmpty());
+        pool.releaseAndClose("p2");
+        assertEquals(Collections.singletonList(loader), closed);
+        assertEquals(0, pool.size());
+    }
+
+    public void testInvalidatedLoaderClosedOnceUnused() throws Exception {
+        GroovyClassLoaderPool pool = createPool(4);
+        GroovyClassLoader loader = pool.acquire("p1", CP1);
+        pool.acquire("p2", CP1);
+        pool.invalidate("p1");
+        assertNull(pool.getLoader("p2"));
+        assertTrue(closed.isEmpty());
+
+        GroovyClassLoader fresh = pool.acquire("p1", CP1);
+        assertNotSame(loader, fresh);
+        // p2 may still be compiling against the discarded loader
+        assertTrue(closed.isEmpty());
+
+        assertSame(fresh, pool.acquire("p2", CP1));
+        assertEquals(Collections.singletonList(loader), closed);
+    }
+
+    public void testInvalidateLoadersOf() throws Exception {
+        GroovyClassLoaderPool pool = createPool(4);
+        GroovyClassLoader loader1 = pool.acquire("p1", CP1);
+        GroovyClassLoader loader2 = pool.acquire("p2", CP2);
+        GroovyClassLoader loader3 = pool.acquire("p3", CP3);
+        loader1.parseClass("class TraitHelper {}");
+        loader3.parseClass("class TraitHelper {}");
+        pool.release("p3");
+
+        assertEquals(2, pool.invalidateLoadersOf(Collections.singleton("TraitHelper")));
+        assertSame(loader2, pool.getLoader("p2"));
+        assertNull(pool.getLoader("p1"));
+        // nobody used the loader of p3 any more
+        assertEquals(Collections.singletonList(loader3), closed);
+
+        pool.release("p1");
+        assertEquals(2, closed.size());
+        assertSame(loader1, closed.get(1));
+    }
+
+    public void testClear() throws Exception {
+        GroovyClassLoaderPool pool = createPool(4);
+        GroovyClassLoader loader1 = pool.acquire("p1", CP1);
+        GroovyClassLoader loader2 = pool.acquire("p2", CP2);
+        pool.release("p2");
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertEquals(Collections.singletonList(loader2), closed);
+        pool.acquire("p1", CP1);
+        assertEquals(2, closed.size());
+        assertSame(loader1, closed.get(1));
+    }
+}
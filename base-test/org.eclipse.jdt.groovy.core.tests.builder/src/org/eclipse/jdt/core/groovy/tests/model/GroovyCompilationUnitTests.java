@@ -18,6 +18,7 @@ import junit.framework.Test;
 
 import org.codehaus.groovy.ast.ModuleNode;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.GroovyStructureCache;
 import org.codehaus.jdt.groovy.model.ModuleNodeMapper;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IPath;
@@ -27,8 +28,13 @@ import org.eclipse.jdt.core.IAnnotation;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.ILocalVariable;
+import org.eclipse.jdt.core.IMember;
 import org.eclipse.jdt.core.IMemberValuePair;
 import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IParent;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.ISourceReference;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
@@ -710,6 +716,124 @@ public class GroovyCompilationUnitTests extends AbstractGroovyTypeRootTests {
 	}
     
     
+    public void testStructureCache() throws Exception {
+        boolean wasEnabled = GroovyStructureCache.ENABLED;
+        GroovyStructureCache.ENABLED = true;
+        try {
+            IPath root = createAnnotationGroovyProject();
+            env.addGroovyClass(root, "p", "X",
+                    "package p;\n" +
+                    "import java.util.List\n" +
+                    "@Anno1(Target.class)\n" +
+                    "public class X<T> {\n" +
+                    "  @Anno2 public int foo = 5\n" +
+                    "  String bar\n" +
+                    "  X(int i) { }\n" +
+                    "  public static void main(String[] argv) {\n" +
+                    "    print \"success\"\n" +
+                    "  }\n" +
+                    "  List<T> baz(@Anno2 T t, int count) { null }\n" +
+                    "  static class Inner { }\n" +
+                    "}\n"
+                );
+            incrementalBuild();
+            env.waitForAutoBuild();
+            expectingNoProblems();
+            IFile file = getFile("Project/src/p/X.groovy");
+
+            // first open parses the file and fills the cache, second one replays it
+            GroovyCompilationUnit unit = (GroovyCompilationUnit) JavaCore.createCompilationUnitFrom(file);
+            String parsed = printStructure(unit);
+            unit.close();
+            int hits = GroovyStructureCache.getCache().getHits();
+            unit = (GroovyCompilationUnit) JavaCore.createCompilationUnitFrom(file);
+            String replayed = printStructure(unit);
+            assertEquals("Expected the structure to come from the cache", hits + 1, GroovyStructureCache.getCache().getHits());
+            assertEquals(parsed, replayed);
+            assertSingleMemberAnnotation(unit.getType("X"), "Target");
+
+            // a change means a parse again
+            unit.close();
+            env.addGroovyClass(root, "p", "X",
+                    "package p;\n" +
+                    "public class X {\n" +
+                    "  def qux() { }\n" +
+                    "}\n"
+                );
+            unit = (GroovyCompilationUnit) JavaCore.createCompilationUnitFrom(file);
+            assertTrue(unit.getType("X").getMethod("qux", new String[0]).exists());
+            assertEquals("Expected a changed file not to come from the cache", hits + 1, GroovyStructureCache.getCache().getHits());
+        } finally {
+            GroovyStructureCache.ENABLED = wasEnabled;
+        }
+    }
+
+    public void testStructureCachePruned() throws Exception {
+        boolean wasEnabled = GroovyStructureCache.ENABLED;
+        GroovyStructureCache.ENABLED = true;
+        try {
+            IPath root = createSimpleGroovyProject().getParent().getParent().getFullPath();
+            env.addGroovyClass(root, "p1", "Deleted", "package p1\nclass Deleted { }\n");
+            env.addGroovyClass(root, "p1", "Renamed", "package p1\nclass Renamed { }\n");
+            env.addGroovyClass(root, "p1", "Cleaned", "package p1\nclass Cleaned { }\n");
+            incrementalBuild();
+            env.waitForAutoBuild();
+            GroovyStructureCache cache = GroovyStructureCache.getCache();
+            IFile deleted = getFile("Project/src/p1/Deleted.groovy");
+            IFile renamed = getFile("Project/src/p1/Renamed.groovy");
+            IFile cleaned = getFile("Project/src/p1/Cleaned.groovy");
+            for (IFile file : new IFile[] { deleted, renamed, cleaned }) {
+                JavaCore.createCompilationUnitFrom(file).getTypes();
+                assertTrue("Expected an entry for " + file, cache.hasEntry(file.getFullPath()));
+            }
+
+            deleted.delete(true, null);
+            assertFalse("Expected the entry of a deleted file to be removed", cache.hasEntry(deleted.getFullPath()));
+            renamed.move(renamed.getFullPath().removeLastSegments(1).append("Other.groovy"), true, null);
+            assertFalse("Expected the entry of a renamed file to be removed", cache.hasEntry(renamed.getFullPath()));
+            assertTrue(cache.hasEntry(cleaned.getFullPath()));
+
+            env.cleanBuild();
+            assertFalse("Expected a clean build to remove the entries of the project", cache.hasEntry(cleaned.getFullPath()));
+        } finally {
+            GroovyStructureCache.ENABLED = wasEnabled;
+        }
+    }
+
+    private String printStructure(IJavaElement element) throws JavaModelException {
+        StringBuilder sb = new StringBuilder();
+        printStructure(element, sb, "");
+        return sb.toString();
+    }
+
+    private void printStructure(IJavaElement element, StringBuilder sb, String indent) throws JavaModelException {
+        sb.append(indent).append(element.getElementType()).append(' ').append(element.getElementName());
+        if (element instanceof ISourceReference) {
+            ISourceRange range = ((ISourceReference) element).getSourceRange();
+            sb.append(" [").append(range.getOffset()).append(',').append(range.getLength()).append(']');
+        }
+        if (element instanceof IMember) {
+            sb.append(" flags=").append(((IMember) element).getFlags());
+        }
+        if (element instanceof IMethod) {
+            IMethod method = (IMethod) element;
+            sb.append(' ').append(Arrays.toString(method.getParameterTypes())).append(Arrays.toString(method.getParameterNames()))
+                    .append(method.getReturnType());
+            for (ILocalVariable parameter : method.getParameters()) {
+                sb.append(' ').append(parameter.getElementName()).append(Arrays.toString(parameter.getAnnotations()));
+            }
+        }
+        if (element instanceof IAnnotatable) {
+            sb.append(' ').append(Arrays.toString(((IAnnotatable) element).getAnnotations()));
+        }
+        sb.append('\n');
+        if (element instanceof IParent) {
+            for (IJavaElement child : ((IParent) element).getChildren()) {
+                printStructure(child, sb, indent + "  ");
+            }
+        }
+    }
+
 	private void assertSingleMemberAnnotation(IAnnotatable type, String expectedName)
 			throws JavaModelException {
 		IAnnotation annotation = type.getAnnotations()[0];
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.jdt.core.groovy.tests.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.IncrementalReconciler;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IParent;
+import org.eclipse.jdt.core.IProblemRequestor;
+import org.eclipse.jdt.core.ISourceReference;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.WorkingCopyOwner;
+import org.eclipse.jdt.core.compiler.IProblem;
+
+/**
+ * Compares an incremental reconcile of an edit inside a method body with a full reconcile of the same edit
+ */
+public class IncrementalReconcileTests extends AbstractGroovyTypeRootTests {
+
+    private static final String CONTENTS =
+        "package p1\n" +
+        "class Hello {\n" +
+        "    List items = []\n" +
+        "    def foo() {\n" +
+        "        def x = 1\n" +
+        "        return x + items.size()\n" +
+        "    }\n" +
+        "    // TODO after foo\n" +
+        "    def bar(String s) {\n" +
+        "        s.length()\n" +
+        "    }\n" +
+        "    static class Inner {\n" +
+        "        int baz\n" +
+        "    }\n" +
+        "}\n";
+
+    private boolean wasEnabled;
+
+    public IncrementalReconcileTests(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return buildTestSuite(IncrementalReconcileTests.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        wasEnabled = IncrementalReconciler.ENABLED;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IncrementalReconciler.ENABLED = wasEnabled;
+        super.tearDown();
+    }
+
+    public void testSameLineEdit() throws Exception {
+        assertIncremental("def x = 1", "def x = 12345");
+    }
+
+    public void testShorterEdit() throws Exception {
+        assertIncremental("return x + items.size()", "return x");
+    }
+
+    public void testMultiLineEdit() throws Exception {
+        assertIncremental("def x = 1\n", "def x = 1\n        x++\n        println \"$x ${items}\"\n");
+    }
+
+    public void testEditWithKnownType() throws Exception {
+        assertIncremental("def x = 1\n", "def x = 1\n        List other = items\n        new Inner().baz = x\n");
+    }
+
+    public void testEditOutsideMethodFallsBack() throws Exception {
+        assertFullReconcile("List items = []", "List items = [1]\n    int count");
+    }
+
+    public void testUnknownTypeFallsBack() throws Exception {
+        assertFullReconcile("def x = 1", "def x = Collections.emptyList()");
+    }
+
+    public void testUnknownQualifiedTypeFallsBack() throws Exception {
+        assertFullReconcile("def x = 1", "def x = java.util.Collections.emptyList()");
+    }
+
+    public void testSyntaxErrorFallsBack() throws Exception {
+        assertFullReconcile("def x = 1", "def x = (1");
+    }
+
+    private void assertIncremental(String oldText, String newText) throws Exception {
+        assertReconcile(oldText, newText, true);
+    }
+
+    private void assertFullReconcile(String oldText, String newText) throws Exception {
+        assertReconcile(oldText, newText, false);
+    }
+
+    private void assertReconcile(String oldText, String newText, boolean expectIncremental) throws Exception {
+        IFile file = createSimpleGroovyProject();
+        env.addGroovyClass(file.getParent().getFullPath().removeLastSegments(1), "p1", "Hello", CONTENTS);
+        GroovyCompilationUnit primary = (GroovyCompilationUnit) JavaCore.createCompilationUnitFrom(file);
+
+        Reconciled incremental = new Reconciled(primary);
+        Reconciled full = new Reconciled(primary);
+        try {
+            IncrementalReconciler.ENABLED = true;
+            ModuleNode before = incremental.unit.getModuleNode();
+            incremental.edit(oldText, newText);
+            assertEquals("Incremental reconcile", expectIncremental, before == incremental.unit.getModuleNode());
+
+            IncrementalReconciler.ENABLED = false;
+            full.edit(oldText, newText);
+
+            assertEquals("Problems", full.problems(), incremental.problems());
+            assertEquals("Elements", full.elements(), incremental.elements());
+            assertEquals("Delta", full.delta, incremental.delta);
+            assertTrue("Task expected", incremental.problems().indexOf("TODO after foo") >= 0);
+
+            // a second edit continues from the updated module node
+            IncrementalReconciler.ENABLED = true;
+            incremental.edit("s.length()", "s.length() + 1");
+            IncrementalReconciler.ENABLED = false;
+            full.edit("s.length()", "s.length() + 1");
+            assertEquals("Problems", full.problems(), incremental.problems());
+            assertEquals("Elements", full.elements(), incremental.elements());
+        } finally {
+            incremental.discard();
+            full.discard();
+        }
+    }
+
+    /**
+     * A working copy with its own owner that records the problems and the delta of its last reconcile
+     */
+    private static class Reconciled implements IProblemRequestor, IElementChangedListener {
+        final GroovyCompilationUnit unit;
+        final WorkingCopyOwner owner;
+        List<IProblem> problems = new ArrayList<IProblem>();
+        String delta;
+
+        Reconciled(ICompilationUnit primary) throws Exception {
+            owner = new WorkingCopyOwner() {
+                @Override
+                public IProblemRequestor getProblemRequestor(ICompilationUnit workingCopy) {
+                    return Reconciled.this;
+                }
+            };
+            unit = (GroovyCompilationUnit) primary.getWorkingCopy(owner, null);
+            // the first reconcile computes the problems that later reconciles start from
+            unit.reconcile(ICompilationUnit.NO_AST, true, owner, null);
+        }
+
+        void edit(String oldText, String newText) throws Exception {
+            String contents = unit.getBuffer().getContents();
+            int offset = contents.indexOf(oldText);
+            assertTrue("Text not found: " + oldText, offset >= 0);
+            unit.getBuffer().replace(offset, oldText.length(), newText);
+            delta = null;
+            JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_RECONCILE);
+            try {
+                unit.reconcile(ICompilationUnit.NO_AST, true, owner, null);
+            } finally {
+                JavaCore.removeElementChangedListener(this);
+            }
+        }
+
+        String problems() {
+            StringBuilder sb = new StringBuilder();
+            for (IProblem problem : problems) {
+                sb.append(problem.getID()).append(' ').append(problem.getMessage()).append(" [")
+                        .append(problem.getSourceStart()).append(',').append(problem.getSourceEnd()).append("] line ")
+                        .append(problem.getSourceLineNumber()).append(problem.isError() ? " error" : " warning").append('\n');
+            }
+            return sb.toString();
+        }
+
+        String elements() throws Exception {
+            StringBuilder sb = new StringBuilder();
+            appendElements(unit, sb);
+            return sb.toString();
+        }
+
+        private void appendElements(IJavaElement element, StringBuilder sb) throws Exception {
+            sb.append(element.getElementType()).append(' ').append(element.getElementName());
+            if (element instanceof ISourceReference) {
+                sb.append(' ').append(((ISourceReference) element).getSourceRange());
+                sb.append(' ').append(((ISourceReference) element).getNameRange());
+            }
+            sb.append('\n');
+            if (element instanceof IParent) {
+                for (IJavaElement child : ((IParent) element).getChildren()) {
+                    appendElements(child, sb);
+                }
+            }
+        }
+
+        void discard() throws Exception {
+            unit.discardWorkingCopy();
+        }
+
+        public void elementChanged(ElementChangedEvent event) {
+            if (unit.equals(event.getDelta().getElement())) {
+                delta = event.getDelta().toString();
+            }
+        }
+
+        public void acceptProblem(IProblem problem) {
+            problems.add(problem);
+        }
+
+        public void beginReporting() {
+            problems = new ArrayList<IProblem>();
+        }
+
+        public void endReporting() {
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.jdt.core.groovy.tests.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.ModuleNodeMapper;
+import org.codehaus.jdt.groovy.model.ModuleNodeMapper.IModuleNodeListener;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * Tests the lock striping and the memory budgets of the {@link ModuleNodeMapper}
+ */
+public class ModuleNodeMapperTests extends AbstractGroovyTypeRootTests {
+
+    private int maxResolvers;
+    private int maxModules;
+    private final List<ICompilationUnit> discarded = new ArrayList<ICompilationUnit>();
+    private final IModuleNodeListener listener = new IModuleNodeListener() {
+        public void moduleNodeDiscarded(ICompilationUnit unit, ModuleNode module) {
+            discarded.add(unit);
+        }
+    };
+
+    public ModuleNodeMapperTests(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return buildTestSuite(ModuleNodeMapperTests.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        maxResolvers = ModuleNodeMapper.getInstance().getMaxResolvers();
+        maxModules = ModuleNodeMapper.getInstance().getMaxModules();
+        ModuleNodeMapper.addModuleNodeListener(listener);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ModuleNodeMapper.removeModuleNodeListener(listener);
+        ModuleNodeMapper.getInstance().setBudgets(maxResolvers, maxModules);
+        super.tearDown();
+    }
+
+    private GroovyCompilationUnit[] createUnits(int count) throws Exception {
+        IFile file = createSimpleGroovyProject();
+        IPath root = file.getParent().getParent().getFullPath();
+        GroovyCompilationUnit[] units = new GroovyCompilationUnit[count];
+        for (int i = 0; i < count; i++) {
+            IPath path = env.addGroovyClass(root, "p1", "Unit" + i, "package p1\nclass Unit" + i + " {\n  def foo() { " + i + " }\n}\n");
+            units[i] = (GroovyCompilationUnit) JavaCore.createCompilationUnitFrom(getFile(path.toString()));
+        }
+        return units;
+    }
+
+    private static void discardAll(GroovyCompilationUnit[] units) throws Exception {
+        for (GroovyCompilationUnit unit : units) {
+            if (unit.isWorkingCopy()) {
+                unit.discardWorkingCopy();
+            }
+        }
+    }
+
+    public void testLockStriping() throws Exception {
+        final ModuleNodeMapper mapper = ModuleNodeMapper.getInstance();
+        // the stripe of a unit is chosen by its hash code
+        final Object unit1 = new Object() {
+            @Override
+            public int hashCode() {
+                return 1;
+            }
+        };
+        final Object unit2 = new Object() {
+            @Override
+            public int hashCode() {
+                return 2;
+            }
+        };
+        final CountDownLatch otherUnit = new CountDownLatch(1);
+        final CountDownLatch sameUnit = new CountDownLatch(1);
+        mapper.lock(unit1);
+        try {
+            new Thread() {
+                @Override
+                public void run() {
+                    mapper.lock(unit2);
+                    mapper.unlock(unit2);
+                    otherUnit.countDown();
+                    mapper.lock(unit1);
+                    mapper.unlock(unit1);
+                    sameUnit.countDown();
+                }
+            }.start();
+            assertTrue("Another unit should not wait", otherUnit.await(10, TimeUnit.SECONDS));
+            assertFalse("The same unit should wait", sameUnit.await(200, TimeUnit.MILLISECONDS));
+        } finally {
+            mapper.unlock(unit1);
+        }
+        assertTrue("The same unit should get the lock once released", sameUnit.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testLeastRecentlyUsedModuleEvicted() throws Exception {
+        GroovyCompilationUnit[] units = createUnits(3);
+        ModuleNodeMapper.getInstance().setBudgets(maxResolvers, 2);
+        long evictions = ModuleNodeMapper.getModuleEvictions();
+        try {
+            units[0].becomeWorkingCopy(null);
+            units[1].becomeWorkingCopy(null);
+            // use the first unit, so the second one is the least recently used
+            ModuleNode module0 = units[0].getModuleNode();
+            assertNotNull(module0);
+            discarded.clear();
+            units[2].becomeWorkingCopy(null);
+
+            assertEquals(2, ModuleNodeMapper.size());
+            assertEquals(evictions + 1, ModuleNodeMapper.getModuleEvictions());
+            assertTrue(discarded.contains(units[1]));
+            assertFalse(discarded.contains(units[0]));
+            assertSame(module0, units[0].getModuleNode());
+        } finally {
+            discardAll(units);
+        }
+    }
+
+    public void testEvictedModuleRebuilt() throws Exception {
+        GroovyCompilationUnit[] units = createUnits(2);
+        ModuleNodeMapper.getInstance().setBudgets(maxResolvers, 1);
+        try {
+            units[0].becomeWorkingCopy(null);
+            IType type = units[0].getTypes()[0];
+            Object elementInfo = units[0].getElementInfo();
+            ModuleNode module = units[0].getModuleNode();
+            units[1].becomeWorkingCopy(null);
+            assertEquals(1, ModuleNodeMapper.size());
+
+            long rebuilds = ModuleNodeMapper.getModuleRebuilds();
+            ModuleNode rebuilt = units[0].getModuleNode();
+            assertNotNull(rebuilt);
+            assertNotSame(module, rebuilt);
+            assertEquals(rebuilds + 1, ModuleNodeMapper.getModuleRebuilds());
+            // the Java model of the working copy is kept
+            assertSame(elementInfo, units[0].getElementInfo());
+            assertEquals(type, units[0].getTypes()[0]);
+            assertTrue(type.exists());
+        } finally {
+            discardAll(units);
+        }
+    }
+
+    public void testResolversDroppedBeforeModules() throws Exception {
+        if (!ModuleNodeMapper.shouldStoreResovler()) {
+            // resolvers are only kept when DSL support is installed
+            return;
+        }
+        GroovyCompilationUnit[] units = createUnits(3);
+        ModuleNodeMapper.getInstance().setBudgets(1, maxModules);
+        long evictions = ModuleNodeMapper.getResolverEvictions();
+        try {
+            for (GroovyCompilationUnit unit : units) {
+                unit.becomeWorkingCopy(null);
+            }
+            assertEquals(3, ModuleNodeMapper.size());
+            assertEquals(1, ModuleNodeMapper.resolverCount());
+            assertTrue(ModuleNodeMapper.getResolverEvictions() >= evictions + 2);
+            // the most recently stored unit keeps its resolver
+            assertNotNull(units[2].getModuleInfo(false).resolver);
+            assertNull(units[0].getModuleInfo(false).resolver);
+            assertTrue("Modules should not be discarded when only their resolver is dropped", discarded.isEmpty());
+        } finally {
+            discardAll(units);
+        }
+    }
+
+    public void testBudgetsKeptUnderConcurrentAccess() throws Exception {
+        final GroovyCompilationUnit[] units = createUnits(4);
+        ModuleNodeMapper.getInstance().setBudgets(1, 2);
+        try {
+            for (GroovyCompilationUnit unit : units) {
+                unit.becomeWorkingCopy(null);
+            }
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                final int first = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < 10; j++) {
+                                // dropped module nodes are rebuilt and stored again, which evicts others
+                                assertNotNull(units[(first + j) % units.length].getModuleNode());
+                            }
+                        } catch (Throwable t) {
+                            synchronized (failures) {
+                                failures.add(t);
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join(60000);
+                assertFalse("Module node requests did not finish", thread.isAlive());
+            }
+            assertTrue("Failures: " + failures, failures.isEmpty());
+            // a module node is cached by a job when its stripe is busy
+            for (int i = 0; i < 100 && !Job.getJobManager().isIdle(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(ModuleNodeMapper.size() <= 2);
+            assertTrue(ModuleNodeMapper.resolverCount() <= 1);
+            assertTrue(ModuleNodeMapper.resolverCount() >= 0);
+        } finally {
+            discardAll(units);
+        }
+    }
+}
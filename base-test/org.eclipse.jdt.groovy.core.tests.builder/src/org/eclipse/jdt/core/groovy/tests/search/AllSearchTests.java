@@ -44,6 +44,9 @@ public class AllSearchTests {
         suite.addTestSuite(Groovy21InferencingTests.class);
         suite.addTestSuite(GenericsMappingTest.class);
         suite.addTestSuite(BinarySearchTests.class);
+        suite.addTestSuite(BinaryGroovySupplementalIndexerTests.class);
+        suite.addTestSuite(TypeInferenceCacheTests.class);
+        suite.addTestSuite(SimpleTypeLookupTests.class);
         return suite;
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.jdt.core.groovy.tests.search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.codehaus.jdt.groovy.integration.internal.BinaryGroovySupplementalIndexer;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+
+/**
+ * Tests the names that {@link BinaryGroovySupplementalIndexer} finds in the constant pool of groovy class files
+ */
+public class BinaryGroovySupplementalIndexerTests extends TestCase {
+
+    private static final String CONTENTS =
+        "class Indexed {\n" +
+        "  def run(target) {\n" +
+        "    target.dynamicCall(1L, 2.0d)\n" +
+        "    def x = target.dynamicProperty\n" +
+        "    target.dynamicCall()\n" +
+        "    println 'not an identifier'\n" +
+        "  }\n" +
+        "}\n";
+
+    private List<String> extractNames(String contents) throws Exception {
+        CompilationUnit unit = new CompilationUnit();
+        unit.addSource("Indexed.groovy", contents);
+        unit.compile(Phases.CLASS_GENERATION);
+        GroovyClass groovyClass = (GroovyClass) unit.getClasses().get(0);
+        ClassFileReader reader = new ClassFileReader(groovyClass.getBytes(), "Indexed.class".toCharArray());
+        List<String> names = new ArrayList<String>();
+        for (char[] name : new BinaryGroovySupplementalIndexer().extractNamedReferences(groovyClass.getBytes(), reader)) {
+            names.add(String.valueOf(name));
+        }
+        return names;
+    }
+
+    public void testCallSiteNamesFound() throws Exception {
+        List<String> names = extractNames(CONTENTS);
+        assertTrue("Missing dynamic method call in " + names, names.contains("dynamicCall"));
+        assertTrue("Missing dynamic property access in " + names, names.contains("dynamicProperty"));
+        assertTrue("Missing dynamic method call in " + names, names.contains("println"));
+    }
+
+    public void testOnlyIdentifiersFound() throws Exception {
+        for (String name : extractNames(CONTENTS)) {
+            assertTrue("Not an identifier: " + name, Character.isJavaIdentifierStart(name.charAt(0)));
+            for (int i = 0; i < name.length(); i++) {
+                assertTrue("Not an identifier: " + name, Character.isJavaIdentifierPart(name.charAt(i)));
+            }
+            assertEquals("Synthetic name found: " + name, -1, name.indexOf('$'));
+        }
+    }
+
+    public void testEachNameFoundOnce() throws Exception {
+        List<String> names = extractNames(CONTENTS);
+        assertEquals("Duplicate names in " + names, new HashSet<String>(names).size(), names.size());
+    }
+}
@@ -16,7 +16,11 @@
 
 package org.eclipse.jdt.core.groovy.tests.search;
 
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
 import org.eclipse.jdt.core.tests.util.GroovyUtils;
+import org.eclipse.jdt.groovy.search.DGMIndex;
+import org.eclipse.jdt.groovy.search.VariableScope;
 
 import junit.framework.Test;
 
@@ -384,4 +388,16 @@ public class DGMInferencingTests extends AbstractInferencingTest {
             assertDeclaringType(contents, start, end, "org.codehaus.groovy.runtime.DefaultGroovyMethods");
         }
     }
-}
\ No newline at end of file
+
+    public void testDGMIndexMatchesCategories() throws Exception {
+        DGMIndex index = DGMIndex.getInstance();
+        for (ClassNode category : VariableScope.ALL_DEFAULT_CATEGORIES) {
+            assertTrue(index.isIndexed(category));
+            for (String name : new String[] { "each", "collect", "getText", "setMetaClass", "find", "noSuchMethod" }) {
+                assertEquals("Methods of " + category.getName() + " named " + name, category.getMethods(name),
+                        index.getMethods(category, name));
+            }
+        }
+        assertNull(index.getMethods(ClassHelper.make(java.util.Collections.class), "sort"));
+    }
+}
@@ -16,14 +16,19 @@
 
 package org.eclipse.jdt.core.groovy.tests.search;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.Test;
 
 import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.ClassNode;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.tests.util.GroovyUtils;
+import org.eclipse.jdt.groovy.search.ITypeRequestor;
 import org.eclipse.jdt.groovy.search.TypeInferencingVisitorWithRequestor;
+import org.eclipse.jdt.groovy.search.TypeLookupResult;
 
 /**
  * Lots of tests to see that expressions have the proper type associated with them
@@ -1878,6 +1883,37 @@ public class InferencingTests extends AbstractInferencingTest {
 		assertType(contents, start, end, "A");
 	}
 
+    public void testRegionVisitSkipsOtherMembers() {
+        String contents =
+                "class A {\n" +
+                "    def foo() { def x = 'foo'\n x.length() }\n" +
+                "    def bar() { def y = 9\n y.intValue() }\n" +
+                "}\n";
+        GroovyCompilationUnit unit = createUnit("Search", contents);
+        final int start = contents.indexOf("y.intValue");
+        final int end = start + "y".length();
+        final List<ASTNode> accepted = new ArrayList<ASTNode>();
+        final ClassNode[] type = new ClassNode[1];
+        factory.createVisitor(unit).visitCompilationUnit(new ITypeRequestor() {
+            public VisitStatus acceptASTNode(ASTNode node, TypeLookupResult result, IJavaElement enclosingElement) {
+                accepted.add(node);
+                if (node.getStart() == start && node.getEnd() == end) {
+                    type[0] = result.type;
+                }
+                return VisitStatus.CONTINUE;
+            }
+        }, start, end);
+
+        assertNotNull("Did not visit the expression in the region", type[0]);
+        assertEquals("java.lang.Integer", type[0].getName());
+        int fooEnd = contents.indexOf("def bar");
+        for (ASTNode node : accepted) {
+            if (node.getEnd() > 0 && !(node instanceof ClassNode)) {
+                assertTrue("Should not have visited " + node + " outside of the region", node.getStart() >= fooEnd);
+            }
+        }
+    }
+
     protected void assertNoUnknowns(String contents) {
         GroovyCompilationUnit unit = createUnit("Search", contents);
         
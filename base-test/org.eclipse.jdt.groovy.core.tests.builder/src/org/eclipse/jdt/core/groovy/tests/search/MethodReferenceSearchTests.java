@@ -16,14 +16,19 @@
 
 package org.eclipse.jdt.core.groovy.tests.search;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import junit.framework.Test;
 
+import org.codehaus.jdt.groovy.integration.internal.GroovyLanguageSupport;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.search.IJavaSearchConstants;
 import org.eclipse.jdt.core.search.SearchEngine;
@@ -309,6 +314,124 @@ public class MethodReferenceSearchTests extends AbstractGroovySearchTest {
         assertEquals("Should have found 4 matches in Other.groovy", 4, otherCnt);
     }
     
+    // files that never mention the name are skipped before inferencing, make sure quoted references are still found
+    public void testMethodReferencesWithPrefilter() throws Exception {
+        GroovyCompilationUnit first = createUnit("p", "First", "package p\nclass First {\n  def getXxx() { }\n}");
+        createUnit("p", "Second", "package p\nnew First().getXxx()\nnew First().\"getXxx\"()");
+        createUnit("p", "Third", "package p\nnew First().yyy\n");
+        // the only mention of the property is glued to the '$' of a GString
+        createUnit("p", "Fourth", "package p\nclass Fourth extends First {\n  def m() { \"$xxx\" }\n}");
+
+        IMethod method = first.getType("First").getMethods()[0];
+        MockSearchRequestor requestor = new MockSearchRequestor();
+        SearchEngine engine = new SearchEngine();
+        engine.search(SearchPattern.createPattern(method, IJavaSearchConstants.REFERENCES),
+                new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() },
+                SearchEngine.createJavaSearchScope(new IJavaElement[] { first.getPackageFragmentRoot() }, false),
+                requestor, new NullProgressMonitor());
+        List<SearchMatch> matches = requestor.matches;
+        assertEquals("Incorrect number of matches:\n" + matches, 3, matches.size());
+        int inGString = 0;
+        for (SearchMatch match : matches) {
+            String name = match.getResource().getName();
+            assertTrue("Unexpected match in " + name, name.equals("Second.groovy") || name.equals("Fourth.groovy"));
+            if (name.equals("Fourth.groovy")) {
+                inGString++;
+            }
+        }
+        assertEquals("Reference in the GString should be found", 1, inGString);
+    }
+
+    // the groovy files of a batch are searched in parallel, interleaved with java files searched by the search engine
+    public void testMethodReferencesInManyFiles() throws Exception {
+        GroovyCompilationUnit first = createUnit("p", "First", "package p\nclass First {\n  def getXxx() { }\n}");
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 12; i++) {
+            StringBuilder contents = new StringBuilder("package p\nclass Groovy" + i + " {\n  def run() {\n");
+            for (int j = 0; j <= i % 3; j++) {
+                contents.append("    new First().getXxx()\n");
+                expected.add("Groovy" + i + ".groovy:" + (contents.length() - "getXxx()\n".length()));
+            }
+            contents.append("  }\n}");
+            createUnit("p", "Groovy" + i, contents.toString());
+            if (i % 4 == 0) {
+                createJavaUnit("p", "Java" + i, "package p;\nclass Java" + i + " { Object run() { return new First().getXxx(); } }");
+                expected.add("Java" + i + ".java:" + ("package p;\nclass Java" + i + " { Object run() { return new First().").length());
+            }
+        }
+        fullBuild(project.getFullPath());
+
+        List<String> actual = new ArrayList<String>();
+        for (SearchMatch match : searchForReferences(first.getType("First").getMethods()[0], first)) {
+            actual.add(match.getResource().getName() + ":" + match.getOffset());
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    // canceling while the groovy files of a batch are searched in parallel stops the search
+    public void testMethodReferencesCanceledDuringParallelSearch() throws Exception {
+        if (Integer.getInteger("greclipse.search.threads", Math.min(4, Runtime.getRuntime().availableProcessors())) <= 1) {
+            // searches are not run in parallel on this machine
+            return;
+        }
+        GroovyCompilationUnit first = createUnit("p", "First", "package p\nclass First {\n  def getXxx() { }\n}");
+        for (int i = 0; i < 12; i++) {
+            createUnit("p", "Groovy" + i, "package p\nclass Groovy" + i + " {\n  def run() {\n    new First().getXxx()\n  }\n}");
+        }
+        fullBuild(project.getFullPath());
+
+        // only canceled once asked by the search engine thread while it waits for the searches on the pool
+        NullProgressMonitor monitor = new NullProgressMonitor() {
+            @Override
+            public boolean isCanceled() {
+                for (StackTraceElement element : new Throwable().getStackTrace()) {
+                    if (element.getClassName().equals(GroovyLanguageSupport.class.getName()) && element.getMethodName().equals("waitFor")) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+        MockSearchRequestor requestor = new MockSearchRequestor();
+        try {
+            new SearchEngine().search(SearchPattern.createPattern(first.getType("First").getMethods()[0], IJavaSearchConstants.REFERENCES),
+                    new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() },
+                    SearchEngine.createJavaSearchScope(new IJavaElement[] { first.getPackageFragmentRoot() }, false),
+                    requestor, monitor);
+            fail("Expected the search to be canceled");
+        } catch (OperationCanceledException e) {
+            // expected
+        }
+        assertEquals("No matches expected once canceled:\n" + requestor.matches, 0, requestor.matches.size());
+    }
+
+    // the references of methods that did not change are reused when a file is reindexed, make sure that they are still found
+    public void testMethodReferencesAfterReindexing() throws Exception {
+        GroovyCompilationUnit first = createUnit("p", "First", "package p\nclass First {\n  def getXxx() { }\n  def getYyy() { }\n  def getZzz() { }\n}");
+        createUnit("p", "Second", "package p\nclass Second {\n  def one() { new First().getXxx() }\n  def two() { new First().getYyy() }\n}");
+        IType type = first.getType("First");
+        assertEquals(1, searchForReferences(type.getMethods()[0], first).size());
+        assertEquals(1, searchForReferences(type.getMethods()[1], first).size());
+        assertEquals(0, searchForReferences(type.getMethods()[2], first).size());
+
+        // only two() changes
+        createUnit("p", "Second", "package p\nclass Second {\n  def one() { new First().getXxx() }\n  def two() { new First().getZzz() }\n}");
+        assertEquals(1, searchForReferences(type.getMethods()[0], first).size());
+        assertEquals(0, searchForReferences(type.getMethods()[1], first).size());
+        assertEquals(1, searchForReferences(type.getMethods()[2], first).size());
+    }
+
+    private List<SearchMatch> searchForReferences(IMethod method, GroovyCompilationUnit unit) throws Exception {
+        MockSearchRequestor requestor = new MockSearchRequestor();
+        new SearchEngine().search(SearchPattern.createPattern(method, IJavaSearchConstants.REFERENCES),
+                new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() },
+                SearchEngine.createJavaSearchScope(new IJavaElement[] { unit.getPackageFragmentRoot() }, false),
+                requestor, new NullProgressMonitor());
+        return requestor.matches;
+    }
+
     private void doTestForTwoMethodReferencesInScript(String secondContents) throws JavaModelException {
         doTestForTwoMethodReferences(FIRST_CONTENTS_CLASS_FOR_METHODS, secondContents, true, 3, "xxx");
     }
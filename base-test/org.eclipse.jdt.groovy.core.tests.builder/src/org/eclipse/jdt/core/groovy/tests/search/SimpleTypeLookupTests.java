@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.jdt.core.groovy.tests.search;
+
+import java.util.ArrayList;
+
+import junit.framework.Test;
+
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.eclipse.jdt.groovy.search.SimpleTypeLookup;
+import org.eclipse.jdt.groovy.search.TypeLookupResult;
+import org.eclipse.jdt.groovy.search.VariableScope;
+
+/**
+ * Tests the memoized declaration and type hierarchy lookups of {@link SimpleTypeLookup}
+ */
+public class SimpleTypeLookupTests extends AbstractGroovySearchTest {
+
+    private static final ClassNode LIST = ClassHelper.make(ArrayList.class);
+
+    private SimpleTypeLookup lookup;
+    private VariableScope scope;
+
+    public SimpleTypeLookupTests(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return buildTestSuite(SimpleTypeLookupTests.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        GroovyCompilationUnit unit = createUnit("Lookup", "class Lookup { }");
+        scope = new VariableScope(null, null, false);
+        lookup = new SimpleTypeLookup();
+        lookup.initialize(unit, scope);
+    }
+
+    private TypeLookupResult lookupMember(String name, ClassNode type) {
+        return lookup.lookupType(new ConstantExpression(name), scope, type);
+    }
+
+    public void testDeclarationMemoized() throws Exception {
+        TypeLookupResult first = lookupMember("size", LIST);
+        assertNotNull(first.declaration);
+        assertEquals(0, lookup.getDeclarationHits());
+        assertEquals(1, lookup.getDeclarationMisses());
+
+        TypeLookupResult second = lookupMember("size", LIST);
+        assertSame("Expected the memoized declaration", first.declaration, second.declaration);
+        assertEquals(1, lookup.getDeclarationHits());
+        assertEquals(1, lookup.getDeclarationMisses());
+        // the hierarchy is not walked again for a memoized declaration
+        assertEquals(0, lookup.getHierarchyHits());
+        assertEquals(1, lookup.getHierarchyMisses());
+    }
+
+    public void testMissingDeclarationMemoized() throws Exception {
+        assertNull(lookupMember("notThere", LIST).declaration);
+        assertNull(lookupMember("notThere", LIST).declaration);
+        assertEquals(1, lookup.getDeclarationHits());
+        assertEquals(1, lookup.getDeclarationMisses());
+    }
+
+    public void testHierarchyMemoized() throws Exception {
+        lookupMember("size", LIST);
+        lookupMember("empty", LIST);
+        assertEquals(0, lookup.getDeclarationHits());
+        assertEquals(2, lookup.getDeclarationMisses());
+        assertEquals(1, lookup.getHierarchyHits());
+        assertEquals(1, lookup.getHierarchyMisses());
+    }
+
+    public void testInitializeClearsMemo() throws Exception {
+        TypeLookupResult first = lookupMember("size", LIST);
+        lookup.initialize(createUnit("Other", "class Other { }"), scope);
+        assertEquals(0, lookup.getDeclarationHits());
+        assertEquals(0, lookup.getDeclarationMisses());
+
+        TypeLookupResult second = lookupMember("size", LIST);
+        assertEquals(first.declaration, second.declaration);
+        assertEquals(0, lookup.getDeclarationHits());
+        assertEquals(1, lookup.getDeclarationMisses());
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.jdt.core.groovy.tests.search;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Test;
+
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.IncrementalReconciler;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IProblemRequestor;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.groovy.search.ITypeRequestor;
+import org.eclipse.jdt.groovy.search.TypeInferenceCache;
+import org.eclipse.jdt.groovy.search.TypeInferencingVisitorFactory;
+import org.eclipse.jdt.groovy.search.TypeLookupResult;
+
+/**
+ * Checks that replaying cached inference results matches a fresh visit
+ */
+public class TypeInferenceCacheTests extends AbstractGroovySearchTest {
+
+    public TypeInferenceCacheTests(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return buildTestSuite(TypeInferenceCacheTests.class);
+    }
+
+    private static class CollectingRequestor implements ITypeRequestor {
+        final List<String> accepted = new ArrayList<String>();
+        final List<TypeLookupResult> results = new ArrayList<TypeLookupResult>();
+        VisitStatus status = VisitStatus.CONTINUE;
+
+        public VisitStatus acceptASTNode(ASTNode node, TypeLookupResult result, IJavaElement enclosingElement) {
+            BinaryExpression assignment = result.getEnclosingAssignment();
+            accepted.add(node.getClass().getSimpleName() + "@" + node.getStart() + ":" + (result.type == null ? null : result.type.getName())
+                    + (assignment == null ? "" : " in assignment@" + assignment.getStart()));
+            results.add(result);
+            return node instanceof VariableExpression ? status : VisitStatus.CONTINUE;
+        }
+    }
+
+    private static final String CONTENTS =
+        "class Cached {\n" +
+        "  def foo(String s) {\n" +
+        "    def x = s.length()\n" +
+        "    [1, 2].each { x += it }\n" +
+        "  }\n" +
+        "  def bar() { foo('') }\n" +
+        "}";
+
+    public void testReplayMatchesVisit() throws Exception {
+        GroovyCompilationUnit unit = createUnit("Cached", CONTENTS);
+        unit.becomeWorkingCopy(null);
+        try {
+            CollectingRequestor expected = new CollectingRequestor();
+            new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(expected);
+
+            long hits = TypeInferenceCache.getInstance().getHits();
+            CollectingRequestor first = new CollectingRequestor();
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, first);
+            CollectingRequestor second = new CollectingRequestor();
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, second);
+
+            assertEquals(expected.accepted, first.accepted);
+            assertEquals(expected.accepted, second.accepted);
+            assertEquals("Second visit should be served from the cache", hits + 1, TypeInferenceCache.getInstance().getHits());
+        } finally {
+            unit.discardWorkingCopy();
+        }
+    }
+
+    public void testReplayHonorsStop() throws Exception {
+        GroovyCompilationUnit unit = createUnit("Cached", CONTENTS);
+        unit.becomeWorkingCopy(null);
+        try {
+            CollectingRequestor expected = new CollectingRequestor();
+            expected.status = ITypeRequestor.VisitStatus.STOP_VISIT;
+            new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(expected);
+
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, new CollectingRequestor());
+            CollectingRequestor replayed = new CollectingRequestor();
+            replayed.status = ITypeRequestor.VisitStatus.STOP_VISIT;
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, replayed);
+
+            assertEquals(expected.accepted, replayed.accepted);
+        } finally {
+            unit.discardWorkingCopy();
+        }
+    }
+
+    public void testInvalidatedOnChange() throws Exception {
+        GroovyCompilationUnit unit = createUnit("Cached", CONTENTS);
+        unit.becomeWorkingCopy(null);
+        try {
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, new CollectingRequestor());
+            unit.getBuffer().replace(CONTENTS.indexOf("bar"), 3, "baz");
+            unit.reconcile(ICompilationUnit.NO_AST, false, null, null);
+
+            CollectingRequestor expected = new CollectingRequestor();
+            new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(expected);
+            long misses = TypeInferenceCache.getInstance().getMisses();
+            CollectingRequestor replayed = new CollectingRequestor();
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, replayed);
+
+            assertEquals(expected.accepted, replayed.accepted);
+            assertEquals("Changed unit should be inferred again", misses + 1, TypeInferenceCache.getInstance().getMisses());
+        } finally {
+            unit.discardWorkingCopy();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testInvalidatedOnIncrementalChange() throws Exception {
+        boolean wasEnabled = IncrementalReconciler.ENABLED;
+        IncrementalReconciler.ENABLED = true;
+        GroovyCompilationUnit unit = createUnit("Cached", CONTENTS);
+        // problems are only kept for the incremental reconcile when they are reported
+        unit.becomeWorkingCopy(new IProblemRequestor() {
+            public void acceptProblem(IProblem problem) {
+            }
+
+            public void beginReporting() {
+            }
+
+            public void endReporting() {
+            }
+
+            public boolean isActive() {
+                return true;
+            }
+        }, null);
+        try {
+            unit.reconcile(ICompilationUnit.NO_AST, true, null, null);
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, new CollectingRequestor());
+            ModuleNode module = unit.getModuleNode();
+            unit.getBuffer().replace(CONTENTS.indexOf("s.length()"), "s.length()".length(), "s.size() + 1");
+            unit.reconcile(ICompilationUnit.NO_AST, true, null, null);
+            assertSame("Module node should be updated in place", module, unit.getModuleNode());
+
+            CollectingRequestor expected = new CollectingRequestor();
+            new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(expected);
+            long misses = TypeInferenceCache.getInstance().getMisses();
+            CollectingRequestor replayed = new CollectingRequestor();
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, replayed);
+
+            assertEquals(expected.accepted, replayed.accepted);
+            assertEquals("Updated unit should be inferred again", misses + 1, TypeInferenceCache.getInstance().getMisses());
+        } finally {
+            unit.discardWorkingCopy();
+            IncrementalReconciler.ENABLED = wasEnabled;
+        }
+    }
+
+    public void testConcurrentReplays() throws Exception {
+        GroovyCompilationUnit unit = createUnit("Cached", CONTENTS);
+        unit.becomeWorkingCopy(null);
+        try {
+            CollectingRequestor expected = new CollectingRequestor();
+            new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(expected);
+            TypeInferenceCache.getInstance().visitCompilationUnit(unit, new CollectingRequestor());
+
+            final GroovyCompilationUnit cached = unit;
+            final CountDownLatch start = new CountDownLatch(1);
+            final CollectingRequestor[] replayed = new CollectingRequestor[2];
+            final Throwable[] failures = new Throwable[2];
+            Thread[] threads = new Thread[2];
+            for (int i = 0; i < threads.length; i++) {
+                final int index = i;
+                replayed[index] = new CollectingRequestor();
+                threads[index] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < 20; j++) {
+                                TypeInferenceCache.getInstance().visitCompilationUnit(cached, replayed[index]);
+                            }
+                        } catch (Throwable t) {
+                            failures[index] = t;
+                        }
+                    }
+                };
+                threads[index].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join(30000);
+                assertFalse("Replay did not finish", thread.isAlive());
+            }
+
+            Map<TypeLookupResult, Boolean> seen = new IdentityHashMap<TypeLookupResult, Boolean>();
+            for (int i = 0; i < replayed.length; i++) {
+                assertNull("Replay failed: " + failures[i], failures[i]);
+                for (int j = 0; j < 20; j++) {
+                    int size = expected.accepted.size();
+                    assertEquals(expected.accepted, replayed[i].accepted.subList(j * size, (j + 1) * size));
+                }
+                for (TypeLookupResult result : replayed[i].results) {
+                    assertNull("Replayed results should not be shared", seen.put(result, Boolean.TRUE));
+                    assertNull("Replayed results should not expose the scope of the recorded visit", result.scope);
+                }
+            }
+        } finally {
+            unit.discardWorkingCopy();
+        }
+    }
+}
@@ -180,8 +180,8 @@ public class ClassNode extends AnnotatedNode implements Opcodes {
     // clazz!=null when resolved
     protected Class clazz;
     // only false when this classNode is constructed from a class
-    // GRECLIPSE: from private to protected
-    protected boolean lazyInitDone=true;
+    // GRECLIPSE: from private to protected, and volatile as JDTClassNodes are shared between threads
+    protected volatile boolean lazyInitDone=true;
     // not null if if the ClassNode is an array
     // GRECLIPSE: from private to protected
     protected ClassNode componentType = null;
@@ -35,6 +35,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.codehaus.groovy.GroovyBugError;
 import org.codehaus.groovy.ast.ASTNode;
@@ -59,6 +66,9 @@ import org.codehaus.groovy.control.io.ReaderSource;
 import org.codehaus.groovy.control.messages.ExceptionMessage;
 import org.codehaus.groovy.control.messages.Message;
 import org.codehaus.groovy.control.messages.SimpleMessage;
+import org.codehaus.groovy.eclipse.CompileProfiler;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
 import org.codehaus.groovy.syntax.SyntaxException;
 import org.codehaus.groovy.tools.GroovyClass;
 import org.codehaus.groovy.transform.ASTTransformationVisitor;
@@ -211,11 +221,17 @@ public class CompilationUnit extends ProcessingUnit {
             phaseOperations[i] = new LinkedList();
             newPhaseOperations[i] = new LinkedList();
         }
+        // GRECLIPSE: start: named so that it can be recognized by applyToSourceUnits
+        /*old{
         addPhaseOperation(new SourceUnitOperation() {
             public void call(SourceUnit source) throws CompilationFailedException {
                 source.parse();
             }
         }, Phases.PARSING);
+        }*/
+        // newcode
+        addPhaseOperation(parse, Phases.PARSING);
+        // end
         addPhaseOperation(convert, Phases.CONVERSION);
         addPhaseOperation(new PrimaryClassNodeOperation() {
             public void call(SourceUnit source, GeneratorContext context,
@@ -594,6 +610,20 @@ public class CompilationUnit extends ProcessingUnit {
      * Compiles the compilation unit from sources.
      */
     public void compile(int throughPhase) throws CompilationFailedException {
+        // GRECLIPSE: start: the profiler of this unit is the active one while it compiles
+        if (profiler == null && CompileProfiler.isEnabled()) {
+            profiler = new CompileProfiler();
+        }
+        CompileProfiler previousProfiler = CompileProfiler.activate(profiler);
+        try {
+            doCompile(throughPhase);
+        } finally {
+            CompileProfiler.activate(previousProfiler);
+        }
+    }
+
+    private void doCompile(int throughPhase) throws CompilationFailedException {
+        // end
         //
         // To support delta compilations, we always restart
         // the compiler.  The individual passes are responsible
@@ -602,6 +632,11 @@ public class CompilationUnit extends ProcessingUnit {
         throughPhase = Math.min(throughPhase, Phases.ALL);
 
         while (throughPhase >= phase && phase <= Phases.ALL) {
+            // GRECLIPSE: start
+            long phaseStart = System.nanoTime();
+            CompileProfiler.Sample phaseSample = CompileProfiler.start();
+            markedSources = 0;
+            // end
 
             if (phase == Phases.SEMANTIC_ANALYSIS) {
                 doPhaseOperation(resolve);
@@ -615,6 +650,9 @@ public class CompilationUnit extends ProcessingUnit {
             if (progressCallback != null) progressCallback.call(this, phase);
             completePhase();
             applyToSourceUnits(mark);
+            // GRECLIPSE: start
+            logPhaseTime(phaseStart, phaseSample);
+            // end
 
             if (dequeued()) continue;
 
@@ -739,15 +777,44 @@ public class CompilationUnit extends ProcessingUnit {
     private SourceUnitOperation convert = new SourceUnitOperation() {
         public void call(SourceUnit source) throws CompilationFailedException {
             source.convert();
+            // GRECLIPSE: start
+            /*old{
             CompilationUnit.this.ast.addModule(source.getAST());
 
 
             if (CompilationUnit.this.progressCallback != null) {
                 CompilationUnit.this.progressCallback.call(source, CompilationUnit.this.phase);
             }
+            }*/
+            // newcode
+            addConvertedModule(source);
+            // end
+        }
+    };
+
+    // GRECLIPSE: start
+    /**
+     * Runs parse() on a single SourceUnit.
+     */
+    private SourceUnitOperation parse = new SourceUnitOperation() {
+        public void call(SourceUnit source) throws CompilationFailedException {
+            source.parse();
         }
     };
 
+    /**
+     * The part of convert that updates state shared by all the source units, it always runs on the compiling thread.
+     */
+    private void addConvertedModule(SourceUnit source) {
+        CompilationUnit.this.ast.addModule(source.getAST());
+
+
+        if (CompilationUnit.this.progressCallback != null) {
+            CompilationUnit.this.progressCallback.call(source, CompilationUnit.this.phase);
+        }
+    }
+    // end
+
  private GroovyClassOperation output = new GroovyClassOperation() {
         public void call(GroovyClass gclass) throws CompilationFailedException {
             String name = gclass.getName().replace('.', File.separatorChar) + ".class";
@@ -990,6 +1057,9 @@ public class CompilationUnit extends ProcessingUnit {
 
             if (source.phase == phase && phaseComplete && !source.phaseComplete) {
                 source.completePhase();
+                // GRECLIPSE: start
+                markedSources++;
+                // end
             }
         }
     };
@@ -1016,6 +1086,9 @@ public class CompilationUnit extends ProcessingUnit {
      */
     public void applyToSourceUnits(SourceUnitOperation body) throws CompilationFailedException {
     // GRECLIPSE: start
+        if ((body == parse || body == convert) && applyToSourceUnitsInParallel(body)) {
+            return;
+        }
     	try {
     		iterating = true;
     // end
@@ -1023,8 +1096,12 @@ public class CompilationUnit extends ProcessingUnit {
             SourceUnit source = sources.get(name);
 	            if ((source.phase < phase) || (source.phase == phase && !source.phaseComplete)) {
 	                try {
+	                    // GRECLIPSE: start
+	                    CompileProfiler.Sample sample = body == mark ? null : CompileProfiler.start();
+	                    // end
 	                    body.call(source);
 	                    // GRECLIPSE: start
+	                    CompileProfiler.record(sample, CompileProfiler.Kind.SOURCE, name, 1);
 	                    if (phase==Phases.CONVERSION && getProgressListener()!=null && body==phaseOperations[phase].getLast()) {
 	                    	getProgressListener().parseComplete(phase,name);
 	                    }
@@ -1051,6 +1128,170 @@ public class CompilationUnit extends ProcessingUnit {
         getErrorCollector().failIfErrors();
     }
 
+    // GRECLIPSE: start
+    /**
+     * Number of threads used to parse and convert source units concurrently, 0 or 1 (the default) to process them one after
+     * the other. Only source units that report to their own error collector, like those created by the eclipse builder, are
+     * processed concurrently. All other phases, resolution and class generation in particular, keep running on the compiling
+     * thread and in order, whatever this is set to.
+     */
+    public static int PARALLEL_THREADS = Integer.getInteger("greclipse.compiler.threads", 0);
+
+    private static ExecutorService phaseExecutor;
+
+    private static int phaseExecutorThreads;
+
+    private CompileProfiler profiler;
+
+    /** number of source units that completed the current phase */
+    private int markedSources;
+
+    /**
+     * @return the profiler of this compilation unit, null unless profiling was enabled when it first compiled
+     */
+    public CompileProfiler getProfiler() {
+        return profiler;
+    }
+
+    private static synchronized ExecutorService getPhaseExecutor(int threads) {
+        if (phaseExecutor == null || phaseExecutorThreads != threads) {
+            if (phaseExecutor != null) {
+                phaseExecutor.shutdown();
+            }
+            phaseExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Groovy compiler phase worker " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            phaseExecutorThreads = threads;
+        }
+        return phaseExecutor;
+    }
+
+    /**
+     * Parses or converts the pending source units on the phase workers. Adding the converted modules to the AST and the
+     * progress callbacks happen afterwards on this thread, in the order of the sequential loop, and the first failure in that
+     * order is thrown as the sequential loop would have thrown it.
+     * <p>
+     * Only the parse and conversion operations come here. Every later phase, class generation and output included, is still
+     * applied one unit or class at a time on the compiling thread, so only the front end of a build runs in parallel.
+     *
+     * @return false if the operation must be applied sequentially instead
+     */
+    private boolean applyToSourceUnitsInParallel(final SourceUnitOperation body) throws CompilationFailedException {
+        int threads = PARALLEL_THREADS;
+        if (threads <= 1) {
+            return false;
+        }
+        List<String> pending = new ArrayList<String>();
+        for (String name : names) {
+            SourceUnit source = sources.get(name);
+            if ((source.phase < phase) || (source.phase == phase && !source.phaseComplete)) {
+                if (source.getErrorCollector() == getErrorCollector()) {
+                    // the shared error collector is not thread safe
+                    return false;
+                }
+                pending.add(name);
+            }
+        }
+        if (pending.size() < 2) {
+            return false;
+        }
+
+        try {
+            iterating = true;
+            final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+            ExecutorService executor = getPhaseExecutor(threads);
+            final CompileProfiler profile = profiler;
+            List<Future<Object>> results = new ArrayList<Future<Object>>(pending.size());
+            for (String name : pending) {
+                final SourceUnit source = sources.get(name);
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        CompileProfiler.Sample sample = profile == null ? null : profile.begin();
+                        Thread thread = Thread.currentThread();
+                        ClassLoader loader = thread.getContextClassLoader();
+                        thread.setContextClassLoader(contextLoader);
+                        try {
+                            if (body == convert) {
+                                source.convert();
+                            } else {
+                                body.call(source);
+                            }
+                        } finally {
+                            thread.setContextClassLoader(loader);
+                        }
+                        CompileProfiler.record(sample, CompileProfiler.Kind.SOURCE, source.getName(), 1);
+                        return null;
+                    }
+                }));
+            }
+
+            // wait for all of them, no worker may still be using a source unit once this method returns
+            Throwable[] failures = new Throwable[pending.size()];
+            boolean interrupted = false;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    failures[i] = e.getCause();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    i--;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (int i = 0; i < pending.size(); i++) {
+                String name = pending.get(i);
+                SourceUnit source = sources.get(name);
+                Throwable failure = failures[i];
+                if (failure instanceof CompilationFailedException) {
+                    throw (CompilationFailedException) failure;
+                } else if (failure instanceof GroovyBugError) {
+                    changeBugText((GroovyBugError) failure, source);
+                    throw (GroovyBugError) failure;
+                } else if (failure instanceof Exception) {
+                    GroovyBugError gbe = new GroovyBugError((Exception) failure);
+                    changeBugText(gbe, source);
+                    throw gbe;
+                } else if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                if (body == convert) {
+                    addConvertedModule(source);
+                }
+                if (phase==Phases.CONVERSION && getProgressListener()!=null && body==phaseOperations[phase].getLast()) {
+                    getProgressListener().parseComplete(phase,name);
+                }
+            }
+        } finally {
+            iterating = false;
+        }
+
+        getErrorCollector().failIfErrors();
+        return true;
+    }
+
+    private void logPhaseTime(long phaseStart, CompileProfiler.Sample phaseSample) {
+        if (markedSources > 0) {
+            CompileProfiler.record(phaseSample, CompileProfiler.Kind.PHASE, Phases.getDescription(phase), markedSources);
+        }
+        if (GroovyLogManager.manager.hasLoggers()) {
+            long millis = (System.nanoTime() - phaseStart) / 1000000;
+            String threads = phase <= Phases.CONVERSION && PARALLEL_THREADS > 1 ? " (" + PARALLEL_THREADS + " threads)" : "";
+            GroovyLogManager.manager.log(TraceCategory.COMPILER, "Phase " + Phases.getDescription(phase) + " for "
+                    + names.size() + " source units = " + millis + "ms" + threads);
+        }
+    }
+    // end
+
     //---------------------------------------------------------------------------
     // LOOP SIMPLIFICATION FOR PRIMARY ClassNode OPERATIONS
 
@@ -1221,7 +1462,13 @@ public class CompilationUnit extends ProcessingUnit {
                         iterator.next();
                         offset++;
                     }
-                    body.call(context, new GeneratorContext(this.ast, offset), classNode); 
+                    // GRECLIPSE: start
+                    CompileProfiler.Sample sample = CompileProfiler.start();
+                    // end
+                    body.call(context, new GeneratorContext(this.ast, offset), classNode);
+                    // GRECLIPSE: start
+                    CompileProfiler.record(sample, CompileProfiler.Kind.SOURCE, context == null ? classNode.getName() : context.getName(), 1);
+                    // end
 /****                1.8.6 seemed to adjust this code, who is impacted? can I remove our change below?      
                   body.call(context, new GeneratorContext(this.ast), classNode);
                     // GRECLIPSE: start
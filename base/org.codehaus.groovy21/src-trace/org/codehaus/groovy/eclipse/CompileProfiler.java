@@ -0,0 +1,313 @@
+/*
+ * Copyright 2003-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.groovy.eclipse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records where the groovy compiler spends its time: wall time, bytes allocated by the compiling thread and number of units,
+ * per compiler phase, per AST transform and per source unit.
+ * <p>
+ * A compilation unit owns one profiler, which is active on the compiling thread while it compiles, and only when profiling is
+ * enabled (a logger has the {@link TraceCategory#COMPILE_PROFILE} category enabled, or the <code>greclipse.compiler.profileDir</code>
+ * system property is set). {@link #report()} sends a summary to that category and writes every entry to a tab separated file in
+ * the profile directory, one file per build.
+ */
+@SuppressWarnings("nls")
+public class CompileProfiler {
+
+    public enum Kind {
+        PHASE, TRANSFORM, SOURCE
+    }
+
+    public static final String PROFILE_DIR_PROPERTY = "greclipse.compiler.profileDir";
+
+    /** number of transforms and source units listed in the trace summary */
+    private static final int SUMMARY_SIZE = 10;
+
+    private static final ThreadLocal<CompileProfiler> active = new ThreadLocal<CompileProfiler>();
+
+    private static final AtomicInteger reportCount = new AtomicInteger();
+
+    private static Object threadBean;
+
+    private static Method allocatedBytesMethod;
+
+    static {
+        // com.sun.management.ThreadMXBean is not available on all VMs
+        try {
+            threadBean = ManagementFactory.getThreadMXBean();
+            Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (sunBean.isInstance(threadBean)) {
+                Method method = sunBean.getMethod("getThreadAllocatedBytes", long.class);
+                if (((Long) method.invoke(threadBean, Thread.currentThread().getId())).longValue() >= 0) {
+                    allocatedBytesMethod = method;
+                }
+            }
+        } catch (Throwable t) {
+            allocatedBytesMethod = null;
+        }
+    }
+
+    /**
+     * @return true if there is somewhere to send a report, loggers of other categories don't count
+     */
+    public static boolean isEnabled() {
+        return System.getProperty(PROFILE_DIR_PROPERTY) != null
+                || GroovyLogManager.manager.isCategoryEnabled(TraceCategory.COMPILE_PROFILE);
+    }
+
+    /**
+     * Makes the profiler the active one of the current thread
+     *
+     * @param profiler may be null, to deactivate profiling
+     * @return the previously active profiler, to be passed back to this method when done
+     */
+    public static CompileProfiler activate(CompileProfiler profiler) {
+        CompileProfiler previous = active.get();
+        if (profiler == null) {
+            active.remove();
+        } else {
+            active.set(profiler);
+        }
+        return previous;
+    }
+
+    /**
+     * @return a sample for the active profiler of the current thread, or null if there is none
+     */
+    public static Sample start() {
+        CompileProfiler profiler = active.get();
+        return profiler == null ? null : profiler.begin();
+    }
+
+    /**
+     * Adds the time and memory elapsed since the sample was taken to an entry. Must be called on the thread that took the sample.
+     *
+     * @param sample may be null, in which case nothing is recorded
+     */
+    public static void record(Sample sample, Kind kind, String name, int units) {
+        if (sample != null) {
+            sample.profiler.add(kind, name, units, System.nanoTime() - sample.nanos,
+                    sample.bytes < 0 ? -1 : allocatedBytes() - sample.bytes);
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (allocatedBytesMethod != null) {
+            try {
+                return ((Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId())).longValue();
+            } catch (Exception e) {
+                // fall through
+            }
+        }
+        return -1;
+    }
+
+    public static class Sample {
+        final CompileProfiler profiler;
+        final long nanos;
+        final long bytes;
+
+        Sample(CompileProfiler profiler) {
+            this.profiler = profiler;
+            this.bytes = allocatedBytes();
+            this.nanos = System.nanoTime();
+        }
+    }
+
+    public static class Entry {
+        public final Kind kind;
+        public final String name;
+        int units;
+        long nanos;
+        long bytes;
+
+        Entry(Kind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        /**
+         * @return source units for a phase, number of runs for a transform or a source unit
+         */
+        public int getUnits() {
+            return units;
+        }
+
+        public long getMillis() {
+            return nanos / 1000000;
+        }
+
+        /**
+         * @return the bytes allocated, or -1 if the VM can't tell
+         */
+        public long getAllocatedBytes() {
+            return bytes;
+        }
+    }
+
+    private final Map<Kind, Map<String, Entry>> entries = new EnumMap<Kind, Map<String, Entry>>(Kind.class);
+
+    /**
+     * Samples for this profiler, whether it is active on the current thread or not (eg- on worker threads)
+     */
+    public Sample begin() {
+        return new Sample(this);
+    }
+
+    private synchronized void add(Kind kind, String name, int units, long nanos, long bytes) {
+        Map<String, Entry> ofKind = entries.get(kind);
+        if (ofKind == null) {
+            ofKind = new LinkedHashMap<String, Entry>();
+            entries.put(kind, ofKind);
+        }
+        Entry entry = ofKind.get(name);
+        if (entry == null) {
+            entry = new Entry(kind, name);
+            ofKind.put(name, entry);
+        }
+        entry.units += units;
+        entry.nanos += nanos;
+        if (entry.bytes >= 0) {
+            entry.bytes = bytes < 0 ? -1 : entry.bytes + bytes;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return the entries of one kind, in the order they were first recorded
+     */
+    public synchronized List<Entry> getEntries(Kind kind) {
+        Map<String, Entry> ofKind = entries.get(kind);
+        return ofKind == null ? Collections.<Entry> emptyList() : new ArrayList<Entry>(ofKind.values());
+    }
+
+    /**
+     * Logs a summary and writes the report file of everything recorded so far, then starts over. Does nothing if nothing was
+     * recorded since the last report.
+     */
+    public void report() {
+        List<Entry> phases, transforms, sources;
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            phases = getEntries(Kind.PHASE);
+            transforms = getEntries(Kind.TRANSFORM);
+            sources = getEntries(Kind.SOURCE);
+            entries.clear();
+        }
+        if (GroovyLogManager.manager.isCategoryEnabled(TraceCategory.COMPILE_PROFILE)) {
+            logSummary(phases, transforms, sources);
+        }
+        String dir = System.getProperty(PROFILE_DIR_PROPERTY);
+        if (dir != null) {
+            writeReport(new File(dir), phases, transforms, sources);
+        }
+    }
+
+    private void logSummary(List<Entry> phases, List<Entry> transforms, List<Entry> sources) {
+        long nanos = 0, bytes = 0;
+        for (Entry phase : phases) {
+            nanos += phase.nanos;
+            bytes = (bytes < 0 || phase.bytes < 0) ? -1 : bytes + phase.bytes;
+        }
+        log("Compiled " + sources.size() + " source units in " + (nanos / 1000000) + "ms" + allocated(bytes));
+        for (Entry phase : phases) {
+            log("  Phase " + phase.name + ": " + phase.getMillis() + "ms" + allocated(phase.bytes) + ", " + phase.units
+                    + " source units");
+        }
+        logSlowest("transforms", transforms);
+        logSlowest("source units", sources);
+    }
+
+    private void logSlowest(String what, List<Entry> list) {
+        if (list.isEmpty()) {
+            return;
+        }
+        List<Entry> sorted = sortByTime(list);
+        log("  Slowest " + what + ":");
+        for (Entry entry : sorted.subList(0, Math.min(SUMMARY_SIZE, sorted.size()))) {
+            log("    " + entry.name + ": " + entry.getMillis() + "ms" + allocated(entry.bytes) + ", " + entry.units + " runs");
+        }
+    }
+
+    private static List<Entry> sortByTime(List<Entry> list) {
+        List<Entry> sorted = new ArrayList<Entry>(list);
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return e1.nanos < e2.nanos ? 1 : (e1.nanos == e2.nanos ? 0 : -1);
+            }
+        });
+        return sorted;
+    }
+
+    private static String allocated(long bytes) {
+        return bytes < 0 ? "" : ", " + (bytes / 1024) + "KB allocated";
+    }
+
+    private static void log(String message) {
+        GroovyLogManager.manager.log(TraceCategory.COMPILE_PROFILE, message);
+    }
+
+    private void writeReport(File dir, List<Entry> phases, List<Entry> transforms, List<Entry> sources) {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File file = new File(dir, "groovy-compile-profile-" + stamp + "-" + reportCount.incrementAndGet() + ".tsv");
+        PrintWriter writer = null;
+        try {
+            dir.mkdirs();
+            writer = new PrintWriter(new FileWriter(file));
+            writer.println("kind\tname\tunits\tmillis\tallocatedBytes");
+            writeEntries(writer, phases);
+            writeEntries(writer, transforms);
+            writeEntries(writer, sources);
+            if (GroovyLogManager.manager.isCategoryEnabled(TraceCategory.COMPILE_PROFILE)) {
+                log("Profile written to " + file.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            GroovyLogManager.manager.logException(TraceCategory.COMPILE_PROFILE, e);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private static void writeEntries(PrintWriter writer, List<Entry> list) {
+        for (Entry entry : list) {
+            writer.println(entry.kind + "\t" + entry.name + "\t" + entry.units + "\t" + entry.getMillis() + "\t" + entry.bytes);
+        }
+    }
+}
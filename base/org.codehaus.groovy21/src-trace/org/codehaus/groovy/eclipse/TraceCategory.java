@@ -26,7 +26,8 @@ import java.util.Arrays;
 public enum TraceCategory {
 
     DEFAULT("_"), CLASSPATH("Classpath"),
-    REFACTORING("Refactoring"), COMPILER("Compiler"), DSL("DSL"), CODESELECT("Code select"), CONTENT_ASSIST("Content assist"),AST_TRANSFORM("Ast Transforms");
+    REFACTORING("Refactoring"), COMPILER("Compiler"), DSL("DSL"), CODESELECT("Code select"), CONTENT_ASSIST("Content assist"),AST_TRANSFORM("Ast Transforms"),
+    COMPILE_PROFILE("Compile profile"), INFERENCING("Inferencing"), INDEXING("Indexing");
     
     TraceCategory(String label) {
         this.label = label;
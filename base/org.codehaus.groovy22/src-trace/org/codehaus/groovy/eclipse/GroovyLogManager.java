@@ -160,6 +160,27 @@ public class GroovyLogManager {
     public boolean hasLoggers() {
         return loggers != null || useDefaultLogger;
     }
+
+    /**
+     * Call this method to check if anything is logged for the category,
+     * before doing work that only matters for that category
+     * @param category
+     * @return true iff an installed logger has the category enabled
+     */
+    public boolean isCategoryEnabled(TraceCategory category) {
+        if (useDefaultLogger) {
+            return defaultLogger.isCategoryEnabled(category);
+        }
+        IGroovyLogger[] current = loggers;
+        if (current != null) {
+            for (IGroovyLogger logger : current) {
+                if (logger.isCategoryEnabled(category)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
     
     /**
      * enables/disables the default logger (printing to sysout
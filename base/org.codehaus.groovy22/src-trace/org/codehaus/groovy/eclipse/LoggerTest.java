@@ -104,4 +104,34 @@ public class LoggerTest extends TestCase {
 
     }
 
+    public void testProfilerOnlyEnabledByItsCategory() throws Exception {
+        if (GroovyLogManager.manager.hasLoggers() || System.getProperty(CompileProfiler.PROFILE_DIR_PROPERTY) != null) {
+            // something else is profiling this VM
+            return;
+        }
+        IGroovyLogger inferencingOnly = new IGroovyLogger() {
+            public void log(TraceCategory category, String message) {
+            }
+            public boolean isCategoryEnabled(TraceCategory category) {
+                return category == TraceCategory.INFERENCING;
+            }
+        };
+        assertFalse(CompileProfiler.isEnabled());
+        assertTrue(GroovyLogManager.manager.addLogger(inferencingOnly));
+        try {
+            assertFalse(CompileProfiler.isEnabled());
+            assertTrue(GroovyLogManager.manager.isCategoryEnabled(TraceCategory.INFERENCING));
+        } finally {
+            assertTrue(GroovyLogManager.manager.removeLogger(inferencingOnly));
+        }
+
+        DefaultGroovyLogger all = new DefaultGroovyLogger();
+        assertTrue(GroovyLogManager.manager.addLogger(all));
+        try {
+            assertTrue(CompileProfiler.isEnabled());
+        } finally {
+            assertTrue(GroovyLogManager.manager.removeLogger(all));
+        }
+    }
+
 }
@@ -18,58 +18,115 @@
 package org.codehaus.jdt.groovy.integration.internal;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.codehaus.jdt.groovy.integration.ISupplementalIndexer;
-import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
 
 /**
- * 
+ * Finds the names a groovy class file refers to dynamically, so that they can be indexed as method and name references.
+ * <p>
+ * Only the entries of the constant pool that can name a member are followed: the name of the NameAndType of a field, method or
+ * interface method ref or of an invokedynamic call site, and string constants that are plain identifiers, which is how groovy
+ * records the names of its call sites and property accesses. Descriptors, signatures and other strings are never decoded. Each
+ * name is reported once per class file.
+ *
  * @author Andrew Eisenberg
  * @created 2013-04-30
  */
 public class BinaryGroovySupplementalIndexer implements ISupplementalIndexer {
 
+	/** not in ClassFileConstants before Java 8 support */
+	private static final int InvokeDynamicTag = 18;
+
+	/** modified UTF-8 of a constant is never longer in chars than in bytes, so grows to the longest name seen */
+	private static final ThreadLocal<char[]> scratch = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[64];
+		}
+	};
+
 	public List<char[]> extractNamedReferences(byte[] contents, ClassFileReader reader) {
 		int[] constantPoolOffsets = reader.getConstantPoolOffsets();
 		int constantPoolCount = constantPoolOffsets.length;
+		// the Utf8 entries already looked at, they are shared by the entries that refer to them
+		boolean[] visited = new boolean[constantPoolCount];
+		Set<String> seen = new HashSet<String>();
 		List<char[]> refs = new ArrayList<char[]>();
 		for (int i = 1; i < constantPoolCount; i++) {
-			int tag = reader.u1At(constantPoolOffsets[i]);
-			switch (tag) {
-				case ClassFileConstants.Utf8Tag:
-					char[] strConst = extractStringConstant(constantPoolOffsets, reader, i);
-					if (isValidId(strConst)) {
-						char[][] splits = CharOperation.splitOn('.', strConst);
-						for (char[] split : splits) {
-							refs.add(split);
-						}
-					}
+			int offset = constantPoolOffsets[i];
+			int utf8Index;
+			switch (reader.u1At(offset)) {
+				case ClassFileConstants.FieldRefTag:
+				case ClassFileConstants.MethodRefTag:
+				case ClassFileConstants.InterfaceMethodRefTag:
+				case InvokeDynamicTag:
+					// the NameAndType follows the class index or the bootstrap method index, its name comes first
+					utf8Index = reader.u2At(constantPoolOffsets[reader.u2At(offset + 3)] + 1);
+					break;
+				case ClassFileConstants.StringTag:
+					utf8Index = reader.u2At(offset + 1);
+					break;
+				case ClassFileConstants.LongTag:
+				case ClassFileConstants.DoubleTag:
+					// these take two slots, the offset of the second one is 0
+					i += 1;
+					continue;
+				default:
+					continue;
+			}
+			if (utf8Index <= 0 || utf8Index >= constantPoolCount || visited[utf8Index]) {
+				continue;
+			}
+			visited[utf8Index] = true;
+			int length = decodeName(reader, constantPoolOffsets[utf8Index]);
+			if (length > 0) {
+				String name = new String(scratch.get(), 0, length);
+				if (seen.add(name)) {
+					refs.add(name.toCharArray());
+				}
 			}
 		}
 		return refs;
 	}
 
-	private boolean isValidId(char[] strConst) {
-		if (strConst == null || strConst.length == 0) {
-			return false;
+	/**
+	 * Decodes the Utf8 constant at the offset into the scratch buffer of this thread.
+	 *
+	 * @return the number of chars decoded, or 0 if the constant is not a java identifier without '$'
+	 */
+	private int decodeName(ClassFileReader reader, int offset) {
+		int byteLength = reader.u2At(offset + 1);
+		if (byteLength == 0) {
+			return 0;
 		}
-		if (!(Character.isJavaIdentifierStart(strConst[0]) || strConst[0] == '.') || strConst[0] == '$') {
-			return false;
+		char[] buffer = scratch.get();
+		if (buffer.length < byteLength) {
+			buffer = new char[Math.max(byteLength, buffer.length * 2)];
+			scratch.set(buffer);
 		}
-		for (int i = 1; i < strConst.length; i++) {
-			if (!(Character.isJavaIdentifierPart(strConst[i]) || strConst[i] == '.') || strConst[i] == '$') {
-				return false;
+		int read = offset + 3; // +1 for the tag and +2 for the length
+		int end = read + byteLength;
+		int length = 0;
+		while (read < end) {
+			int b = reader.u1At(read++);
+			char c;
+			if ((b & 0x80) == 0) {
+				c = (char) b;
+			} else if ((b & 0xE0) == 0xC0) {
+				c = (char) (((b & 0x1F) << 6) | (reader.u1At(read++) & 0x3F));
+			} else {
+				c = (char) (((b & 0x0F) << 12) | ((reader.u1At(read++) & 0x3F) << 6) | (reader.u1At(read++) & 0x3F));
+			}
+			if (c == '$' || !(length == 0 ? Character.isJavaIdentifierStart(c) : Character.isJavaIdentifierPart(c))) {
+				return 0;
 			}
+			buffer[length++] = c;
 		}
-		return true;
-	}
-
-	private char[] extractStringConstant(int[] constantPoolOffsets, ClassFileReader reader, int index) {
-		int strlen = reader.u2At(constantPoolOffsets[index] + 1); // / +1 for the tag type
-		int strstart = constantPoolOffsets[index] + 3; // +1 for the tag type and +2 for the strlen
-		return reader.utf8At(strstart, strlen);
+		return length;
 	}
 }
@@ -30,8 +30,8 @@ public class GroovyEventHandler implements EventHandler {
 		} else if (event.equals("close")) {
 			if (javaProject != null) {
 				String projectName = javaProject.getProject().getName();
+				// other projects may share the loader, so release it rather than discarding it
 				GroovyParser.closeClassLoader(projectName);
-				GroovyParser.tidyCache(projectName);
 			}
 		}
 	}
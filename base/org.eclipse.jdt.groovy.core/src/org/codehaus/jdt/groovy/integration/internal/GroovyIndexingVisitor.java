@@ -11,6 +11,11 @@
  *******************************************************************************/
 package org.codehaus.jdt.groovy.integration.internal;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 
 import org.codehaus.groovy.ast.AnnotatedNode;
@@ -35,6 +40,8 @@ import org.codehaus.groovy.ast.expr.MethodCallExpression;
 import org.codehaus.groovy.ast.expr.VariableExpression;
 import org.codehaus.groovy.ast.stmt.Statement;
 import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.groovy.core.Activator;
@@ -47,16 +54,77 @@ import org.eclipse.jdt.internal.core.util.Util;
  * @created Aug 27, 2009
  * 
  *          Visits a ModuleNode and passes it to an indexing element requestor, thus adding this class to the Java indexes
+ * 
+ *          The references found in the body of each method and constructor are remembered per file along with a hash of the text
+ *          of the method. When the file is indexed again, methods whose text has not changed report the remembered references
+ *          instead of walking their body again. The index drops all the entries of a document before it is reindexed, so the
+ *          references must still be reported, but a small edit to a large file only walks the methods it touched.
  */
 public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 
+	/**
+	 * Set to false to always walk method bodies, can be turned off with -Dgreclipse.indexing.noReferenceCache=true
+	 */
+	public static boolean CACHE_METHOD_REFERENCES = !Boolean.getBoolean("greclipse.indexing.noReferenceCache"); //$NON-NLS-1$
+
+	private static final int MAX_CACHED_FILES = Integer.getInteger("greclipse.indexing.cachedFiles", 200); //$NON-NLS-1$
+
+	/**
+	 * file name -> method key -> references of the method, least recently indexed file first
+	 */
+	private static final Map<String, Map<String, MethodReferences>> referenceCache = new LinkedHashMap<String, Map<String, MethodReferences>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Map<String, MethodReferences>> eldest) {
+			return size() > MAX_CACHED_FILES;
+		}
+	};
+
 	private ISourceElementRequestor requestor;
 
 	// used for GRECLIPSE-741, remove when issue is solved
 	private ModuleNode module;
 
+	private final String fileName;
+
+	private final char[] contents;
+
+	/** references of the methods of the file when it was last indexed, null if not cached */
+	private Map<String, MethodReferences> previousReferences;
+
+	/** references of the methods of the file as indexed now */
+	private Map<String, MethodReferences> currentReferences;
+
+	/** where the references of the method being walked are recorded, null outside of methods */
+	private List<Reference> recording;
+
+	private int methodsWalked;
+
+	private int methodsReused;
+
 	public GroovyIndexingVisitor(ISourceElementRequestor requestor) {
+		this(requestor, null, null);
+	}
+
+	/**
+	 * @param fileName name of the file being indexed, used to find the references of its methods from the last time it was indexed
+	 * @param contents contents of the file, used to find the methods that have changed since then
+	 */
+	public GroovyIndexingVisitor(ISourceElementRequestor requestor, char[] fileName, char[] contents) {
 		this.requestor = requestor;
+		this.fileName = CACHE_METHOD_REFERENCES && fileName != null && contents != null ? String.valueOf(fileName) : null;
+		this.contents = contents;
+	}
+
+	/**
+	 * Forgets the references of every file.
+	 */
+	public static void clearReferenceCache() {
+		synchronized (referenceCache) {
+			referenceCache.clear();
+		}
 	}
 
 	// not used
@@ -73,6 +141,12 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 
 		// used for GRECLIPSE-741, remove when issue is solved
 		module = node;
+		if (fileName != null) {
+			synchronized (referenceCache) {
+				previousReferences = referenceCache.get(fileName);
+			}
+			currentReferences = new HashMap<String, MethodReferences>();
+		}
 		try {
 			this.visitImports(node);
 
@@ -81,6 +155,21 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 			}
 		} catch (RuntimeException e) {
 			Util.log(e);
+			// the references of some methods may be missing
+			currentReferences = null;
+		}
+		if (fileName != null) {
+			synchronized (referenceCache) {
+				if (currentReferences != null) {
+					referenceCache.put(fileName, currentReferences);
+				} else {
+					referenceCache.remove(fileName);
+				}
+			}
+			if (GroovyLogManager.manager.hasLoggers()) {
+				GroovyLogManager.manager.log(TraceCategory.INDEXING, "Indexed " + fileName //$NON-NLS-1$
+						+ ": walked " + methodsWalked + " method bodies, reused the references of " + methodsReused); //$NON-NLS-1$ //$NON-NLS-2$
+			}
 		}
 	}
 
@@ -95,7 +184,7 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 				}
 				String importFieldName = ImportNodeCompatibilityWrapper.getFieldName(importNode);
 				if (importFieldName != null) {
-					requestor.acceptUnknownReference(importFieldName.toCharArray(), 0);
+					acceptUnknownReference(importFieldName.toCharArray(), 0);
 				}
 			}
 		}
@@ -111,17 +200,17 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 		char[] methodName = methodStr.toCharArray();
 		int start = call.getStart();
 		// also could be a field reference
-		requestor.acceptFieldReference(methodName, start);
+		acceptFieldReference(methodName, start);
 		// we don't know how many arguments the method has, so go up to 7.
 		for (int i = 0; i < 7; i++) {
-			requestor.acceptMethodReference(methodName, i, start);
+			acceptMethodReference(methodName, i, start);
 		}
 	}
 
 	@Override
 	public void visitFieldExpression(FieldExpression expression) {
 		super.visitFieldExpression(expression);
-		requestor.acceptFieldReference(expression.getFieldName().toCharArray(), expression.getStart());
+		acceptFieldReference(expression.getFieldName().toCharArray(), expression.getStart());
 	}
 
 	@Override
@@ -130,11 +219,11 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 				.isEmptyStringExpression())) {
 			char[] constName = expression.getValue().toString().toCharArray();
 			int start = expression.getStart();
-			requestor.acceptFieldReference(constName, start);
+			acceptFieldReference(constName, start);
 			// also could be a method reference
 			// we don't know how many arguments the method has, so go up to 7.
 			for (int i = 0; i < 7; i++) {
-				requestor.acceptMethodReference(constName, i, start);
+				acceptMethodReference(constName, i, start);
 			}
 		}
 		super.visitConstantExpression(expression);
@@ -154,7 +243,7 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 	public void visitConstructorCallExpression(ConstructorCallExpression call) {
 		super.visitConstructorCallExpression(call);
 		for (int i = 0; i < 10; i++) {
-			requestor.acceptConstructorReference(call.getType().getName().toCharArray(), i, call.getStart());
+			acceptConstructorReference(call.getType().getName().toCharArray(), i, call.getStart());
 		}
 		// handleType(call.getType(), false);
 	}
@@ -168,7 +257,7 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 
 	@Override
 	public void visitVariableExpression(VariableExpression expression) {
-		requestor.acceptUnknownReference(expression.getName().toCharArray(), expression.getStart());
+		acceptUnknownReference(expression.getName().toCharArray(), expression.getStart());
 	}
 
 	@Override
@@ -188,6 +277,39 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 		super.visitMethod(node);
 	}
 
+	@Override
+	protected void visitConstructorOrMethod(MethodNode node, boolean isConstructor) {
+		visitAnnotations(node);
+		String key = null;
+		long hash = 0;
+		if (currentReferences != null && recording == null && node.getEnd() > node.getStart() && node.getEnd() <= contents.length) {
+			key = node.getDeclaringClass().getName() + ' ' + node.getTypeDescriptor();
+			hash = hash(contents, node.getStart(), node.getEnd());
+			MethodReferences previous = previousReferences != null ? previousReferences.get(key) : null;
+			if (previous != null && previous.hash == hash) {
+				methodsReused += 1;
+				for (Reference reference : previous.references) {
+					reference.replay(requestor);
+				}
+				currentReferences.put(key, previous);
+				return;
+			}
+			recording = new ArrayList<Reference>();
+		}
+		try {
+			visitClassCodeContainer(node.getCode());
+			for (Parameter param : node.getParameters()) {
+				visitAnnotations(param);
+			}
+		} finally {
+			if (key != null) {
+				methodsWalked += 1;
+				currentReferences.put(key, new MethodReferences(hash, recording));
+				recording = null;
+			}
+		}
+	}
+
 	@Override
 	public void visitClass(ClassNode node) {
 		if (!node.isSynthetic()) {
@@ -235,10 +357,10 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 			return;
 		}
 		if (isAnnotation) {
-			requestor.acceptAnnotationTypeReference(splitName(node, useQualifiedName), node.getStart(), node.getEnd());
+			acceptAnnotationTypeReference(splitName(node, useQualifiedName), node.getStart(), node.getEnd());
 		} else {
 			ClassNode componentType = node.getComponentType();
-			requestor.acceptTypeReference(splitName(componentType != null ? componentType : node, useQualifiedName),
+			acceptTypeReference(splitName(componentType != null ? componentType : node, useQualifiedName),
 					node.getStart(), node.getEnd());
 		}
 		if (node.isUsingGenerics() && node.getGenericsTypes() != null) {
@@ -273,4 +395,119 @@ public class GroovyIndexingVisitor extends ClassCodeVisitorSupport {
 		}
 		return nameCharArr;
 	}
+
+	/**
+	 * FNV-1a over the chars of the range
+	 */
+	private static long hash(char[] chars, int start, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++) {
+			hash ^= chars[i];
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// every reference goes through here so that the ones found in a method body can be recorded
+
+	private void acceptAnnotationTypeReference(char[][] typeName, int sourceStart, int sourceEnd) {
+		requestor.acceptAnnotationTypeReference(typeName, sourceStart, sourceEnd);
+		if (recording != null) {
+			recording.add(new Reference(Reference.ANNOTATION_TYPE, null, typeName, sourceStart, sourceEnd));
+		}
+	}
+
+	private void acceptTypeReference(char[][] typeName, int sourceStart, int sourceEnd) {
+		requestor.acceptTypeReference(typeName, sourceStart, sourceEnd);
+		if (recording != null) {
+			recording.add(new Reference(Reference.TYPE, null, typeName, sourceStart, sourceEnd));
+		}
+	}
+
+	private void acceptConstructorReference(char[] typeName, int argCount, int sourcePosition) {
+		requestor.acceptConstructorReference(typeName, argCount, sourcePosition);
+		if (recording != null) {
+			recording.add(new Reference(Reference.CONSTRUCTOR, typeName, null, argCount, sourcePosition));
+		}
+	}
+
+	private void acceptFieldReference(char[] fieldName, int sourcePosition) {
+		requestor.acceptFieldReference(fieldName, sourcePosition);
+		if (recording != null) {
+			recording.add(new Reference(Reference.FIELD, fieldName, null, 0, sourcePosition));
+		}
+	}
+
+	private void acceptMethodReference(char[] methodName, int argCount, int sourcePosition) {
+		requestor.acceptMethodReference(methodName, argCount, sourcePosition);
+		if (recording != null) {
+			recording.add(new Reference(Reference.METHOD, methodName, null, argCount, sourcePosition));
+		}
+	}
+
+	private void acceptUnknownReference(char[] name, int sourcePosition) {
+		requestor.acceptUnknownReference(name, sourcePosition);
+		if (recording != null) {
+			recording.add(new Reference(Reference.UNKNOWN, name, null, 0, sourcePosition));
+		}
+	}
+
+	private static class MethodReferences {
+		final long hash;
+
+		final List<Reference> references;
+
+		MethodReferences(long hash, List<Reference> references) {
+			this.hash = hash;
+			this.references = references;
+		}
+	}
+
+	/**
+	 * A reference reported to the requestor, the meaning of the two ints depends on the kind.
+	 */
+	private static class Reference {
+		static final int ANNOTATION_TYPE = 0, TYPE = 1, CONSTRUCTOR = 2, FIELD = 3, METHOD = 4, UNKNOWN = 5;
+
+		final int kind;
+
+		final char[] name;
+
+		final char[][] qualifiedName;
+
+		final int first;
+
+		final int second;
+
+		Reference(int kind, char[] name, char[][] qualifiedName, int first, int second) {
+			this.kind = kind;
+			this.name = name;
+			this.qualifiedName = qualifiedName;
+			this.first = first;
+			this.second = second;
+		}
+
+		void replay(ISourceElementRequestor requestor) {
+			switch (kind) {
+				case ANNOTATION_TYPE:
+					requestor.acceptAnnotationTypeReference(qualifiedName, first, second);
+					break;
+				case TYPE:
+					requestor.acceptTypeReference(qualifiedName, first, second);
+					break;
+				case CONSTRUCTOR:
+					requestor.acceptConstructorReference(name, first, second);
+					break;
+				case FIELD:
+					requestor.acceptFieldReference(name, second);
+					break;
+				case METHOD:
+					requestor.acceptMethodReference(name, first, second);
+					break;
+				case UNKNOWN:
+					requestor.acceptUnknownReference(name, second);
+					break;
+			}
+		}
+	}
 }
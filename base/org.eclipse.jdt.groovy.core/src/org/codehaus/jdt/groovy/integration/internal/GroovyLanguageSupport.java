@@ -13,14 +13,26 @@ package org.codehaus.jdt.groovy.integration.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.ErrorCollector;
 import org.codehaus.groovy.control.Phases;
 import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
 import org.codehaus.jdt.groovy.integration.EventHandler;
 import org.codehaus.jdt.groovy.integration.ISupplementalIndexer;
 import org.codehaus.jdt.groovy.integration.LanguageSupport;
@@ -32,7 +44,9 @@ import org.codehaus.jdt.groovy.model.GroovyClassFileWorkingCopy;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
 import org.codehaus.jdt.groovy.model.GroovyNature;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.JavaModelException;
@@ -43,7 +57,9 @@ import org.eclipse.jdt.core.search.SearchRequestor;
 import org.eclipse.jdt.groovy.core.util.ContentTypeUtils;
 import org.eclipse.jdt.groovy.core.util.GroovyUtils;
 import org.eclipse.jdt.groovy.core.util.ReflectionUtils;
+import org.eclipse.jdt.groovy.search.DeferredSearchRequestor;
 import org.eclipse.jdt.groovy.search.ITypeRequestor;
+import org.eclipse.jdt.groovy.search.SearchPrefilter;
 import org.eclipse.jdt.groovy.search.TypeInferencingVisitorFactory;
 import org.eclipse.jdt.groovy.search.TypeInferencingVisitorWithRequestor;
 import org.eclipse.jdt.groovy.search.TypeRequestorFactory;
@@ -191,7 +207,162 @@ public class GroovyLanguageSupport implements LanguageSupport {
 		return ContentTypeUtils.isGroovyLikeFileName(fileName);
 	}
 
+	/**
+	 * Number of threads used to run the delegated searches of a batch of possible matches, 1 or less means searches are performed
+	 * sequentially by the search engine thread
+	 */
+	private static final int SEARCH_THREADS = Integer.getInteger("greclipse.search.threads",
+			Math.min(4, Runtime.getRuntime().availableProcessors())).intValue();
+
+	private static ExecutorService searchPool;
+
+	/**
+	 * How often the search engine thread checks whether the search was canceled while it waits for the searches on the pool
+	 */
+	private static final long CANCEL_POLL_MILLIS = 100;
+
+	/**
+	 * Results of the delegated searches run by {@link #prepareDelegatedSearch}, waiting for the search engine to ask for them
+	 */
+	private static final ThreadLocal<Map<PossibleMatch, DeferredSearchRequestor>> preparedSearches = new ThreadLocal<Map<PossibleMatch, DeferredSearchRequestor>>();
+
+	/**
+	 * Marks possible matches that the {@link SearchPrefilter} proved to contain no match
+	 */
+	private static final DeferredSearchRequestor SKIPPED_SEARCH = new DeferredSearchRequestor(null);
+
+	private static synchronized ExecutorService getSearchPool() {
+		if (searchPool == null) {
+			searchPool = Executors.newFixedThreadPool(SEARCH_THREADS, new ThreadFactory() {
+				private int count = 0;
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Groovy delegated search " + (++count)); //$NON-NLS-1$
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return searchPool;
+	}
+
+	/**
+	 * First skips the groovy possible matches of the batch that can not contain the searched name, then runs the inferencing of the
+	 * remaining ones on the search pool. Returns once all of them are done, so the searches never run while the search engine
+	 * parses, resolves or cleans up possible matches. Matches are buffered and only sent to the real requestor when
+	 * {@link #maybePerformDelegatedSearch} is called for the corresponding possible match, so the requestor sees the same matches
+	 * in the same order as with a sequential search. A search that fails on the pool is run again by the search engine thread.
+	 * Canceling the monitor stops the searches still running on the pool.
+	 */
+	public void prepareDelegatedSearch(PossibleMatch[] possibleMatches, int start, int length, final SearchPattern pattern,
+			final SearchRequestor requestor, IProgressMonitor monitor) {
+		// results of an earlier batch that were never asked for
+		preparedSearches.remove();
+		Map<PossibleMatch, DeferredSearchRequestor> prepared = new IdentityHashMap<PossibleMatch, DeferredSearchRequestor>();
+		SearchPrefilter prefilter = SearchPrefilter.create(pattern);
+		List<PossibleMatch> groovyMatches = new ArrayList<PossibleMatch>(length);
+		for (int i = start, end = start + length; i < end; i++) {
+			PossibleMatch possibleMatch = possibleMatches[i];
+			if (possibleMatch != null && possibleMatch.isInterestingSourceFile() && possibleMatch.openable != null
+					&& possibleMatch.openable.exists()) {
+				if (prefilter != null && !prefilter.mayMatch(possibleMatch)) {
+					prepared.put(possibleMatch, SKIPPED_SEARCH);
+				} else {
+					groovyMatches.add(possibleMatch);
+				}
+			}
+		}
+		if (prefilter != null && GroovyLogManager.manager.hasLoggers()) {
+			GroovyLogManager.manager.log(TraceCategory.DEFAULT, "Search prefilter: skipped " + prepared.size() + " of "
+					+ (prepared.size() + groovyMatches.size()) + " groovy files not mentioning " + prefilter.getNames());
+		}
+		if (SEARCH_THREADS > 1 && groovyMatches.size() > 1) {
+			runSearches(groovyMatches, pattern, requestor, prepared, monitor);
+		}
+		if (!prepared.isEmpty()) {
+			preparedSearches.set(prepared);
+		}
+	}
+
+	private void runSearches(List<PossibleMatch> groovyMatches, final SearchPattern pattern, final SearchRequestor requestor,
+			Map<PossibleMatch, DeferredSearchRequestor> prepared, IProgressMonitor monitor) {
+		ExecutorService pool = getSearchPool();
+		Map<PossibleMatch, Future<DeferredSearchRequestor>> futures = new IdentityHashMap<PossibleMatch, Future<DeferredSearchRequestor>>();
+		try {
+			for (final PossibleMatch possibleMatch : groovyMatches) {
+				futures.put(possibleMatch, pool.submit(new Callable<DeferredSearchRequestor>() {
+					public DeferredSearchRequestor call() throws Exception {
+						// each search gets its own requestors, only the buffered matches are shared with the search engine thread
+						DeferredSearchRequestor deferred = new DeferredSearchRequestor(requestor);
+						ITypeRequestor typeRequestor = new TypeRequestorFactory().createRequestor(possibleMatch, pattern, deferred);
+						if (typeRequestor == null) {
+							return null;
+						}
+						TypeInferencingVisitorWithRequestor visitor = new TypeInferencingVisitorFactory().createVisitor(possibleMatch);
+						visitor.visitCompilationUnit(typeRequestor);
+						return deferred;
+					}
+				}));
+			}
+			for (Map.Entry<PossibleMatch, Future<DeferredSearchRequestor>> entry : futures.entrySet()) {
+				try {
+					DeferredSearchRequestor deferred = waitFor(entry.getValue(), monitor);
+					if (deferred != null) {
+						prepared.put(entry.getKey(), deferred);
+					}
+				} catch (ExecutionException e) {
+					// leave it to the search engine thread, which reports the failure the same way as a sequential search
+					GroovyLogManager.manager.logException(TraceCategory.DEFAULT, e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// when interrupted or canceled, don't leave searches running behind the search engine
+			for (Future<DeferredSearchRequestor> future : futures.values()) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a search on the pool, checking the monitor while it does
+	 *
+	 * @throws OperationCanceledException if the monitor is canceled first
+	 */
+	private static DeferredSearchRequestor waitFor(Future<DeferredSearchRequestor> future, IProgressMonitor monitor)
+			throws InterruptedException, ExecutionException {
+		while (true) {
+			if (monitor != null && monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			try {
+				return future.get(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// still running, check the monitor again
+			}
+		}
+	}
+
 	public boolean maybePerformDelegatedSearch(PossibleMatch possibleMatch, SearchPattern pattern, SearchRequestor requestor) {
+		Map<PossibleMatch, DeferredSearchRequestor> prepared = preparedSearches.get();
+		DeferredSearchRequestor deferred = prepared != null ? prepared.remove(possibleMatch) : null;
+		if (deferred != null) {
+			try {
+				if (deferred != SKIPPED_SEARCH) {
+					deferred.replay();
+				}
+				return true;
+			} catch (CoreException e) {
+				Util.log(e, "Exception while reporting matches of " + possibleMatch.document.getPath()); //$NON-NLS-1$
+				return true;
+			} finally {
+				if (prepared.isEmpty()) {
+					preparedSearches.remove();
+				}
+			}
+		}
+
 		if (possibleMatch.openable != null && possibleMatch.openable.exists()) {
 			ITypeRequestor typeRequestor = new TypeRequestorFactory().createRequestor(possibleMatch, pattern, requestor);
 			if (typeRequestor != null) {
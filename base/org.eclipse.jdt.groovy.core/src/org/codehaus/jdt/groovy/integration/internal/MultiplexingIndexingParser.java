@@ -73,7 +73,7 @@ public class MultiplexingIndexingParser extends IndexingParser {
 
 			// CompilationUnitDeclaration cud groovyParser.dietParse(sourceUnit, compilationResult);
 			HashtableOfObjectToInt sourceEnds = createSourceEnds(cud);
-			GroovyIndexingVisitor visitor = new GroovyIndexingVisitor(requestor);
+			GroovyIndexingVisitor visitor = new GroovyIndexingVisitor(requestor, unit.getFileName(), unit.getContents());
 			visitor.doVisit(cud.getModuleNode(), cud.currentPackage);
 
 			notifier.notifySourceElementRequestor(cud, 0, unit.getContents().length, groovyReportReferenceInfo, sourceEnds,
@@ -14,6 +14,7 @@ package org.codehaus.jdt.groovy.integration.internal;
 import org.codehaus.jdt.groovy.internal.compiler.ast.GroovyParser;
 import org.eclipse.jdt.groovy.core.util.ContentTypeUtils;
 import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.ReadManager;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
@@ -32,6 +33,8 @@ public class MultiplexingParser extends Parser {
 	private Object requestor;
 	private CompilerOptions compilerOptions;
 	private GroovyParser groovyParser;
+	/** the read manager whose units have been handed to the groovy parser */
+	private ReadManager preparedReadManager;
 
 	public MultiplexingParser(Object requestor, CompilerOptions compilerOptions, ProblemReporter problemReporter,
 			boolean optimizeStringLiterals) {
@@ -47,6 +50,14 @@ public class MultiplexingParser extends Parser {
 			if (groovyParser == null) {
 				groovyParser = new GroovyParser(this.requestor, this.compilerOptions, this.problemReporter, true, false);
 			}
+			if (this.readManager != null && this.readManager != preparedReadManager) {
+				// the compiler is about to diet parse many units in a row, let the groovy parser see all of them upfront
+				preparedReadManager = this.readManager;
+				ICompilationUnit[] units = this.readManager.getUnits();
+				if (units != null) {
+					groovyParser.prepareSources(units);
+				}
+			}
 			return groovyParser.dietParse(sourceUnit, compilationResult);
 		} else {
 			return super.dietParse(sourceUnit, compilationResult);
@@ -56,6 +67,7 @@ public class MultiplexingParser extends Parser {
 	@Override
 	public void reset() {
 		groovyParser = null;
+		preparedReadManager = null;
 	}
 
 }
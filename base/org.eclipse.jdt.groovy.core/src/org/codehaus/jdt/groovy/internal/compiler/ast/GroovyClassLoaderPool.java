@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Codehaus.org, SpringSource, and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.codehaus.jdt.groovy.internal.compiler.ast;
+
+import groovy.lang.GroovyClassLoader;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
+
+/**
+ * A pool of the GroovyClassLoaders used to discover and load transforms. Loaders are keyed by a normalized form of the classpath
+ * they were built from, so projects with identical transform classpaths share a single loader (and a single set of open jar
+ * handles). Each project holds at most one reference into the pool. Loaders that are no longer referenced by any project are kept
+ * around (in least recently used order) in case the classpath flips back, but only up to a fixed number; beyond that they are
+ * evicted and their jars closed via {@link LoaderFactory#closeLoader(GroovyClassLoader)}.
+ * <p>
+ * A discarded loader may still be in use by a running compile, so it is only closed once every project that was using it has moved
+ * on to another loader or released it.
+ */
+public class GroovyClassLoaderPool {
+
+	static class Entry {
+		final String classpath;
+		final GroovyClassLoader groovyClassLoader;
+		final Set<String> projects = new HashSet<String>();
+
+		Entry(String classpath, GroovyClassLoader groovyClassLoader) {
+			this.classpath = classpath;
+			this.groovyClassLoader = groovyClassLoader;
+		}
+	}
+
+	/**
+	 * Creates the loader for a pool miss, and closes the loaders the pool lets go of.
+	 */
+	public interface LoaderFactory {
+		GroovyClassLoader createLoader(String normalizedClasspath);
+
+		void closeLoader(GroovyClassLoader groovyClassLoader);
+	}
+
+	private final LoaderFactory factory;
+
+	private final int maxUnreferenced;
+
+	// access ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private final Map<String, String> projectToClasspath = new HashMap<String, String>();
+
+	// discarded loaders that projects may still be compiling against
+	private final Map<String, Entry> projectToDiscarded = new HashMap<String, Entry>();
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public GroovyClassLoaderPool(LoaderFactory factory, int maxUnreferenced) {
+		this.factory = factory;
+		this.maxUnreferenced = Math.max(0, maxUnreferenced);
+	}
+
+	/**
+	 * Turns a classpath string into its canonical pool key: entries are made absolute, empty and duplicate entries are dropped and
+	 * the original order (which matters for class loading) is kept.
+	 */
+	public static String normalize(String classpath) {
+		if (classpath == null) {
+			return "";
+		}
+		Set<String> paths = new LinkedHashSet<String>();
+		StringTokenizer tokenizer = new StringTokenizer(classpath, File.pathSeparator);
+		while (tokenizer.hasMoreTokens()) {
+			String path = tokenizer.nextToken().trim();
+			if (path.length() > 0) {
+				paths.add(new File(path).getAbsolutePath());
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String path : paths) {
+			if (sb.length() > 0) {
+				sb.append(File.pathSeparatorChar);
+			}
+			sb.append(path);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Answer the loader for the project with the specified classpath, creating it if no loader for an equivalent classpath is
+	 * pooled. Any loader previously used by the project for a different classpath is released.
+	 */
+	public synchronized GroovyClassLoader acquire(String projectName, String classpath) {
+		releaseDiscarded(projectName);
+		String key = normalize(classpath);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses += 1;
+			if (GroovyLogManager.manager.hasLoggers()) {
+				GroovyLogManager.manager.log(TraceCategory.AST_TRANSFORM,
+						"Classpath for GroovyClassLoader (used to discover transforms): " + key);
+			}
+			entry = new Entry(key, factory.createLoader(key));
+			entries.put(key, entry);
+		} else {
+			hits += 1;
+		}
+		String previousKey = projectToClasspath.put(projectName, key);
+		if (previousKey != null && !previousKey.equals(key)) {
+			// classpath change detected, only release the previous loader now so that it can't be evicted in favour of this one
+			Entry previous = entries.get(previousKey);
+			if (previous != null) {
+				previous.projects.remove(projectName);
+			}
+		}
+		entry.projects.add(projectName);
+		evictUnreferenced();
+		return entry.groovyClassLoader;
+	}
+
+	/**
+	 * Drop the reference the project holds on its loader. When no other project uses the loader it becomes eligible for eviction.
+	 *
+	 * @return true if the project was holding a loader
+	 */
+	public synchronized boolean release(String projectName) {
+		releaseDiscarded(projectName);
+		String key = projectToClasspath.remove(projectName);
+		if (key == null) {
+			return false;
+		}
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			entry.projects.remove(projectName);
+		}
+		evictUnreferenced();
+		return true;
+	}
+
+	/**
+	 * Release the project's loader and, if no other project is still using it, evict it now and close its jars.
+	 */
+	public synchronized void releaseAndClose(String projectName) {
+		String key = projectToClasspath.get(projectName);
+		release(projectName);
+		if (key != null) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.projects.isEmpty()) {
+				entries.remove(key);
+				evict(entry);
+			}
+		}
+	}
+
+	/**
+	 * Discard the loader the project is using, for every project that shares it. The next request for that classpath will create a
+	 * fresh loader. The discarded loader is closed once none of those projects uses it any more, since a compile may still be running
+	 * against it.
+	 */
+	public synchronized void invalidate(String projectName) {
+		String key = projectToClasspath.get(projectName);
+		if (key != null) {
+			Entry entry = entries.remove(key);
+			if (entry != null) {
+				discard(entry);
+			}
+			projectToClasspath.remove(projectName);
+		}
+	}
+
+	/**
+	 * Discard every pooled loader.
+	 */
+	public synchronized void clear() {
+		for (Entry entry : new ArrayList<Entry>(entries.values())) {
+			discard(entry);
+		}
+		entries.clear();
+		projectToClasspath.clear();
+	}
+
+	/**
+	 * Discard only the pooled loaders that have already loaded one of the named classes, so that a stale definition (eg- of a trait
+	 * helper class that was just recompiled) is not handed out again. Loaders that never saw those classes stay warm.
+	 *
+	 * @return the number of loaders discarded
+	 */
+	public synchronized int invalidateLoadersOf(Collection<String> classNames) {
+		int discarded = 0;
+		for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+			Entry entry = iter.next();
+			if (hasLoadedAny(entry.groovyClassLoader, classNames)) {
+				iter.remove();
+				discard(entry);
+				discarded += 1;
+				if (GroovyLogManager.manager.hasLoggers()) {
+					GroovyLogManager.manager.log(TraceCategory.AST_TRANSFORM, "Discarding GroovyClassLoader for classpath: "
+							+ entry.classpath + " (it loaded a class now being recompiled)");
+				}
+			}
+		}
+		return discarded;
+	}
+
+	private static Method findLoadedClass;
+
+	/**
+	 * Checks the pooled loader and the loader it delegates to for the classpath. The plugin loader above them is never pooled, so it
+	 * is not checked.
+	 */
+	private static boolean hasLoadedAny(GroovyClassLoader groovyClassLoader, Collection<String> classNames) {
+		for (Class<?> clazz : groovyClassLoader.getLoadedClasses()) {
+			if (classNames.contains(clazz.getName())) {
+				return true;
+			}
+		}
+		try {
+			if (findLoadedClass == null) {
+				Method method = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+				method.setAccessible(true);
+				findLoadedClass = method;
+			}
+			for (ClassLoader loader : new ClassLoader[] { groovyClassLoader, groovyClassLoader.getParent() }) {
+				if (loader != null) {
+					for (String className : classNames) {
+						if (findLoadedClass.invoke(loader, className) != null) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		} catch (Exception e) {
+			// can't tell, be safe
+			return true;
+		}
+	}
+
+	/**
+	 * Moves the projects using a loader that has been removed from the pool over to the discarded loaders, or closes the loader
+	 * right away if no project is using it.
+	 */
+	private void discard(Entry entry) {
+		if (entry.projects.isEmpty()) {
+			evict(entry);
+			return;
+		}
+		for (String project : entry.projects) {
+			projectToClasspath.remove(project);
+			Entry previous = projectToDiscarded.put(project, entry);
+			if (previous != null && previous != entry) {
+				releaseDiscarded(previous, project);
+			}
+		}
+	}
+
+	/**
+	 * The project is done with any loader it was using before that loader was discarded.
+	 */
+	private void releaseDiscarded(String projectName) {
+		Entry entry = projectToDiscarded.remove(projectName);
+		if (entry != null) {
+			releaseDiscarded(entry, projectName);
+		}
+	}
+
+	private void releaseDiscarded(Entry entry, String projectName) {
+		entry.projects.remove(projectName);
+		if (entry.projects.isEmpty()) {
+			evict(entry);
+		}
+	}
+
+	public synchronized GroovyClassLoader getLoader(String projectName) {
+		String key = projectToClasspath.get(projectName);
+		if (key != null) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				return entry.groovyClassLoader;
+			}
+		}
+		return null;
+	}
+
+	private void evictUnreferenced() {
+		int unreferenced = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.projects.isEmpty()) {
+				unreferenced += 1;
+			}
+		}
+		if (unreferenced <= maxUnreferenced) {
+			return;
+		}
+		List<Entry> evicted = new ArrayList<Entry>();
+		for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext() && unreferenced > maxUnreferenced;) {
+			Entry entry = iter.next();
+			if (entry.projects.isEmpty()) {
+				iter.remove();
+				evicted.add(entry);
+				unreferenced -= 1;
+			}
+		}
+		for (Entry entry : evicted) {
+			evict(entry);
+		}
+	}
+
+	private void evict(Entry entry) {
+		evictions += 1;
+		if (GroovyLogManager.manager.hasLoggers()) {
+			GroovyLogManager.manager.log(TraceCategory.AST_TRANSFORM, "Evicting GroovyClassLoader for classpath: " + entry.classpath
+					+ " (" + getStatistics() + ")");
+		}
+		factory.closeLoader(entry.groovyClassLoader);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized String getStatistics() {
+		return "loaders=" + entries.size() + " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+	}
+}
@@ -56,6 +56,7 @@ import org.codehaus.groovy.control.messages.LocatedMessage;
 import org.codehaus.groovy.control.messages.Message;
 import org.codehaus.groovy.control.messages.SimpleMessage;
 import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.eclipse.CompileProfiler;
 import org.codehaus.groovy.syntax.CSTNode;
 import org.codehaus.groovy.syntax.PreciseSyntaxException;
 import org.codehaus.groovy.syntax.RuntimeParserException;
@@ -169,6 +170,16 @@ public class GroovyCompilationUnitDeclaration extends CompilationUnitDeclaration
 		}
 	}
 
+	/**
+	 * Logs and writes the compile profile of the build, if profiling is enabled
+	 */
+	private void reportProfile() {
+		CompileProfiler profiler = groovyCompilationUnit.getProfiler();
+		if (profiler != null) {
+			profiler.report();
+		}
+	}
+
 	/**
 	 * Drives the Groovy Compilation Unit for this project through to the specified phase. Yes on a call for one groovy file to
 	 * processToPhase(), all the groovy files in the project proceed to that phase. This isn't ideal but doesn't necessarily cause a
@@ -180,16 +191,26 @@ public class GroovyCompilationUnitDeclaration extends CompilationUnitDeclaration
 	 */
 	public boolean processToPhase(int phase) {
 		// GRECLIPSE-1776 start
-		// Try to discard cached class loaders for traits
+		// Try to discard cached class loaders that have seen an older version of these traits
 		if (phase == Phases.CANONICALIZATION) {
+			List<String> traitClassNames = null;
 			for (ModuleNode module : groovyCompilationUnit.getAST().getModules()) {
 				for (ClassNode classNode : module.getClasses()) {
 					if (traitHelper.isTrait(classNode)) {
-						GroovyParser.tidyCache();
-						break;
+						if (traitClassNames == null) {
+							traitClassNames = new ArrayList<String>();
+						}
+						String name = classNode.getName();
+						traitClassNames.add(name);
+						traitClassNames.add(name + "$Trait$Helper");
+						traitClassNames.add(name + "$Trait$FieldHelper");
+						traitClassNames.add(name + "$Trait$StaticFieldHelper");
 					}
 				}
 			}
+			if (traitClassNames != null) {
+				GroovyParser.tidyCache(traitClassNames);
+			}
 		}
 		// GRECLIPSE end
 		boolean alreadyHasProblems = compilationResult.hasProblems();
@@ -201,6 +222,10 @@ public class GroovyCompilationUnitDeclaration extends CompilationUnitDeclaration
 				groovyCompilationUnit.compile(phase);
 			} finally {
 				Thread.currentThread().setContextClassLoader(cl);
+				if (phase == Phases.ALL) {
+					// the first unit to get there has generated all of them, this is the end of the build
+					reportProfile();
+				}
 			}
 			if (groovySourceUnit.getErrorCollector().hasErrors()) {
 				recordProblems(groovySourceUnit.getErrorCollector().getErrors());
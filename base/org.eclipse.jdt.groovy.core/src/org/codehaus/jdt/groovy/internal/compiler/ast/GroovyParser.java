@@ -20,8 +20,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -36,9 +38,6 @@ import org.codehaus.groovy.control.customizers.CompilationCustomizer;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.ErrorCollector;
 import org.codehaus.groovy.control.Phases;
-import org.codehaus.groovy.control.SourceUnit;
-import org.codehaus.groovy.eclipse.GroovyLogManager;
-import org.codehaus.groovy.eclipse.TraceCategory;
 import org.codehaus.jdt.groovy.control.EclipseSourceUnit;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -46,6 +45,7 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.util.CompilerUtils;
+import org.eclipse.jdt.groovy.core.util.ContentTypeUtils;
 import org.eclipse.jdt.groovy.core.util.GroovyUtils;
 import org.eclipse.jdt.groovy.core.util.ScriptFolderSelector;
 import org.eclipse.jdt.internal.compiler.CompilationResult;
@@ -83,27 +83,24 @@ public class GroovyParser {
 	private boolean isReconcile;
 
 	/*
-	 * Each project is allowed a GroovyClassLoader that will be used to load transform definitions and supporting classes. A cache
-	 * is maintained from project names to the current classpath and associated loader. If the classpath matches the cached version
-	 * on a call to build a parser then it is reused. If it does not match then a new loader is created and stored (storing it
-	 * orphans the previously cached one). When either a full build or a clean or project close occurs, we also discard the loader
-	 * instances associated with the project.
+	 * Each project is allowed a GroovyClassLoader that will be used to load transform definitions and supporting classes. Loaders
+	 * are pooled by (normalized) classpath so that projects with identical classpaths share one loader. If the classpath for a
+	 * project matches the one it used last time the loader is reused. If it does not match the project moves over to the loader for
+	 * the new classpath, creating it if necessary, and releases the old one. When either a full build or a clean occurs we discard
+	 * the loader used by the project, on project close we release it.
 	 */
 
-	private static Map<String, PathLoaderPair> projectToLoaderCache = Collections
-			.synchronizedMap(new HashMap<String, PathLoaderPair>());
-	private static Map<String, ScriptFolderSelector> scriptFolderSelectorCache = Collections
-			.synchronizedMap(new HashMap<String, ScriptFolderSelector>());
-
-	static class PathLoaderPair {
-		String classpath;
-		GroovyClassLoader groovyClassLoader;
+	private static GroovyClassLoaderPool loaderPool = new GroovyClassLoaderPool(new GroovyClassLoaderPool.LoaderFactory() {
+		public GroovyClassLoader createLoader(String classpath) {
+			return new GroovyClassLoader(createConfigureLoader(classpath));
+		}
 
-		PathLoaderPair(String classpath) {
-			this.classpath = classpath;
-			this.groovyClassLoader = new GroovyClassLoader(createConfigureLoader(classpath));
+		public void closeLoader(GroovyClassLoader groovyClassLoader) {
+			close(groovyClassLoader);
 		}
-	}
+	}, Integer.getInteger("greclipse.loaderpool.maxUnreferenced", 4).intValue());
+	private static Map<String, ScriptFolderSelector> scriptFolderSelectorCache = Collections
+			.synchronizedMap(new HashMap<String, ScriptFolderSelector>());
 
 	/**
 	 * Close the jar files that have been kept open by the URLClassLoader
@@ -146,23 +143,25 @@ public class GroovyParser {
 	 * Remove all cached classloaders for this project
 	 */
 	public static void tidyCache(String projectName) {
-		// This will orphan the loader on the heap
-		projectToLoaderCache.remove(projectName);
+		// The loader is closed once the projects sharing it have moved on
+		loaderPool.invalidate(projectName);
 		scriptFolderSelectorCache.remove(projectName);
 	}
 
+	/**
+	 * Release the classloader used by this project, closing its jars if no other project shares it
+	 */
 	public static void closeClassLoader(String projectName) {
-		PathLoaderPair pathLoaderPair = projectToLoaderCache.get(projectName);
-		if (pathLoaderPair != null) {
-			close(pathLoaderPair.groovyClassLoader);
-		}
+		loaderPool.releaseAndClose(projectName);
+		scriptFolderSelectorCache.remove(projectName);
 	}
 
 	/**
-	 * Clears cached class loaders for all caches. It helps to fix problems with cached trait helper classes.
+	 * Discards the cached class loaders that have loaded one of the given classes. It helps to fix problems with cached trait helper
+	 * classes without throwing away the loaders of unrelated projects.
 	 */
-	static void tidyCache() {
-		projectToLoaderCache.clear();
+	static void tidyCache(Collection<String> classNames) {
+		loaderPool.invalidateLoadersOf(classNames);
 	}
 
 	// public GroovyParser(CompilerOptions options, ProblemReporter problemReporter) {
@@ -196,8 +195,8 @@ public class GroovyParser {
 									Field f = FileSystem.class.getDeclaredField("classpaths");
 									if (f != null) {
 										f.setAccessible(true);
-										gclForBatch = new GroovyClassLoader();
 										Classpath[] classpaths = (Classpath[]) f.get(fileSystem);
+										gclForBatch = new GroovyClassLoader();
 										if (classpaths != null) {
 											for (int i = 0; i < classpaths.length; i++) {
 												gclForBatch.addClasspath(classpaths[i].getPath());
@@ -221,24 +220,7 @@ public class GroovyParser {
 			if (projectName == null) {
 				// throw new IllegalStateException("Cannot build without knowing project name");
 			} else {
-				PathLoaderPair pathAndLoader = projectToLoaderCache.get(projectName);
-				if (pathAndLoader == null) {
-					if (GroovyLogManager.manager.hasLoggers()) {
-						GroovyLogManager.manager.log(TraceCategory.AST_TRANSFORM,
-								"Classpath for GroovyClassLoader (used to discover transforms): " + path);
-					}
-					pathAndLoader = new PathLoaderPair(path);
-					projectToLoaderCache.put(projectName, pathAndLoader);
-				} else {
-					if (!path.equals(pathAndLoader.classpath)) {
-						// classpath change detected
-						// System.out.println("Classpath change detected for " + projectName);
-						pathAndLoader = new PathLoaderPair(path);
-						projectToLoaderCache.put(projectName, pathAndLoader);
-					}
-				}
-				// System.out.println("Using loader with path " + pathAndLoader.classpath);
-				gcl = pathAndLoader.groovyClassLoader;
+				gcl = loaderPool.acquire(projectName, path);
 			}
 		}
 		return gcl;
@@ -402,50 +384,61 @@ public class GroovyParser {
 	}
 
 	/**
-	 * Call the groovy parser to drive the first few phases of
+	 * Groovy source units created ahead of their diet parse, see {@link #prepareSources(ICompilationUnit[])}
 	 */
-	public CompilationUnitDeclaration dietParse(ICompilationUnit sourceUnit, CompilationResult compilationResult) {
-		char[] sourceCode = sourceUnit.getContents();
-		if (sourceCode == null) {
-			sourceCode = CharOperation.NO_CHAR; // pretend empty from thereon
-		}
+	private final Map<ICompilationUnit, PreparedSource> preparedSources = new IdentityHashMap<ICompilationUnit, PreparedSource>();
 
-		// groovyCompilerConfig.setPluginFactory(new ErrorRecoveredCSTParserPluginFactory(null));
-		ErrorCollector errorCollector = new GroovyErrorCollectorForJDT(groovyCompilationUnit.getConfiguration());
-		String filepath = null;
+	private static class PreparedSource {
+		final char[] sourceCode;
+		final EclipseSourceUnit groovySourceUnit;
 
-		// This check is necessary because the filename is short (as in the last part, eg. Foo.groovy) for types coming in
-		// from the hierarchy resolver. If there is the same type in two different packages then the compilation process
-		// is going to go wrong because the filename is used as a key in some groovy data structures. This can lead to false
-		// complaints about the same file defining duplicate types.
-		char[] fileName = sourceUnit.getFileName();
-		if (sourceUnit instanceof org.eclipse.jdt.internal.compiler.batch.CompilationUnit) {
-			filepath = new String(((org.eclipse.jdt.internal.compiler.batch.CompilationUnit) sourceUnit).fileName);
-		} else {
-			filepath = new String(fileName);
+		PreparedSource(char[] sourceCode, EclipseSourceUnit groovySourceUnit) {
+			this.sourceCode = sourceCode;
+			this.groovySourceUnit = groovySourceUnit;
 		}
+	}
 
-		// Try to turn this into a 'real' absolute file system reference (this is because Grails 1.5 expects it).
-		Path path = new Path(filepath);
-		IFile eclipseFile = null;
-		// GRECLIPSE-1269 ensure get plugin is not null to ensure the workspace is open (ie- not in batch mode)
-		if (ResourcesPlugin.getPlugin() != null && path.segmentCount() >= 2) { // Needs 2 segments: a project and file name or
-			// eclipse throws assertion failed here.
-			eclipseFile = ResourcesPlugin.getWorkspace().getRoot().getFile(new Path(filepath));
-			final IPath location = eclipseFile.getLocation();
-			if (location != null) {
-				filepath = location.toFile().getAbsolutePath();
+	/**
+	 * Adds the groovy source units of all these compilation units to the groovy compilation unit before any of them is diet
+	 * parsed. Diet parsing the first one then parses and converts all of them concurrently, the later ones just pick up their
+	 * converted source unit. Does nothing unless the groovy compiler runs those phases in parallel (see
+	 * {@link CompilationUnit#PARALLEL_THREADS}).
+	 */
+	public void prepareSources(ICompilationUnit[] sourceUnits) {
+		if (CompilationUnit.PARALLEL_THREADS <= 1) {
+			return;
+		}
+		for (ICompilationUnit sourceUnit : sourceUnits) {
+			if (sourceUnit != null && ContentTypeUtils.isGroovyLikeFileName(sourceUnit.getFileName())
+					&& !preparedSources.containsKey(sourceUnit)) {
+				char[] sourceCode = getContents(sourceUnit);
+				EclipseSourceUnit groovySourceUnit = createSourceUnit(sourceUnit, sourceCode);
+				groovyCompilationUnit.addSource(groovySourceUnit);
+				preparedSources.put(sourceUnit, new PreparedSource(sourceCode, groovySourceUnit));
 			}
 		}
+	}
 
-		SourceUnit groovySourceUnit = new EclipseSourceUnit(eclipseFile, filepath, new String(sourceCode),
-				groovyCompilationUnit.getConfiguration(), groovyCompilationUnit.getClassLoader(), errorCollector, this.resolver);
-		groovySourceUnit.isReconcile = isReconcile;
+	/**
+	 * Call the groovy parser to drive the first few phases of
+	 */
+	public CompilationUnitDeclaration dietParse(ICompilationUnit sourceUnit, CompilationResult compilationResult) {
+		char[] sourceCode;
+		EclipseSourceUnit groovySourceUnit;
+		PreparedSource prepared = preparedSources.remove(sourceUnit);
+		if (prepared != null) {
+			sourceCode = prepared.sourceCode;
+			groovySourceUnit = prepared.groovySourceUnit;
+		} else {
+			sourceCode = getContents(sourceUnit);
+			groovySourceUnit = createSourceUnit(sourceUnit, sourceCode);
+			groovyCompilationUnit.addSource(groovySourceUnit);
+		}
+		IFile eclipseFile = groovySourceUnit.getEclipseFile();
 		GroovyCompilationUnitDeclaration gcuDeclaration = new GroovyCompilationUnitDeclaration(problemReporter, compilationResult,
 				sourceCode.length, groovyCompilationUnit, groovySourceUnit, compilerOptions);
 		// FIXASC get this from the Antlr parser
 		compilationResult.lineSeparatorPositions = GroovyUtils.getSourceLineSeparatorsIn(sourceCode);
-		groovyCompilationUnit.addSource(groovySourceUnit);
 
 		// Check if it is worth plugging in a callback listener for parse/generation
 		if (requestor instanceof org.eclipse.jdt.internal.compiler.Compiler) {
@@ -487,6 +480,49 @@ public class GroovyParser {
 		return gcuDeclaration;
 	}
 
+	private static char[] getContents(ICompilationUnit sourceUnit) {
+		char[] sourceCode = sourceUnit.getContents();
+		if (sourceCode == null) {
+			sourceCode = CharOperation.NO_CHAR; // pretend empty from thereon
+		}
+		return sourceCode;
+	}
+
+	private EclipseSourceUnit createSourceUnit(ICompilationUnit sourceUnit, char[] sourceCode) {
+		// groovyCompilerConfig.setPluginFactory(new ErrorRecoveredCSTParserPluginFactory(null));
+		ErrorCollector errorCollector = new GroovyErrorCollectorForJDT(groovyCompilationUnit.getConfiguration());
+		String filepath = null;
+
+		// This check is necessary because the filename is short (as in the last part, eg. Foo.groovy) for types coming in
+		// from the hierarchy resolver. If there is the same type in two different packages then the compilation process
+		// is going to go wrong because the filename is used as a key in some groovy data structures. This can lead to false
+		// complaints about the same file defining duplicate types.
+		char[] fileName = sourceUnit.getFileName();
+		if (sourceUnit instanceof org.eclipse.jdt.internal.compiler.batch.CompilationUnit) {
+			filepath = new String(((org.eclipse.jdt.internal.compiler.batch.CompilationUnit) sourceUnit).fileName);
+		} else {
+			filepath = new String(fileName);
+		}
+
+		// Try to turn this into a 'real' absolute file system reference (this is because Grails 1.5 expects it).
+		Path path = new Path(filepath);
+		IFile eclipseFile = null;
+		// GRECLIPSE-1269 ensure get plugin is not null to ensure the workspace is open (ie- not in batch mode)
+		if (ResourcesPlugin.getPlugin() != null && path.segmentCount() >= 2) { // Needs 2 segments: a project and file name or
+			// eclipse throws assertion failed here.
+			eclipseFile = ResourcesPlugin.getWorkspace().getRoot().getFile(new Path(filepath));
+			final IPath location = eclipseFile.getLocation();
+			if (location != null) {
+				filepath = location.toFile().getAbsolutePath();
+			}
+		}
+
+		EclipseSourceUnit groovySourceUnit = new EclipseSourceUnit(eclipseFile, filepath, new String(sourceCode),
+				groovyCompilationUnit.getConfiguration(), groovyCompilationUnit.getClassLoader(), errorCollector, this.resolver);
+		groovySourceUnit.isReconcile = isReconcile;
+		return groovySourceUnit;
+	}
+
 	/**
 	 * ProgressListener is called back when parsing of a file or generation of a classfile completes. By calling back to the build
 	 * notifier we ignore those long pauses where it look likes it has hung!
@@ -80,15 +80,23 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 	// The binding which this JDTClassNode represents
 	ReferenceBinding jdtBinding;
 
+	// Only touched while holding lazyInitLock
 	private boolean beingInitialized = false;
 
-	private boolean anyGenericsInitialized = false;
+	// Nodes held by a JDTClassNodeCache are initialized by whichever thread gets to them first, so the flags that say a step is
+	// done are volatile and only set once the state they guard is complete
+	private volatile boolean anyGenericsInitialized = false;
 
-	// The resolver instance involved at the moment
+	private final Object genericsLock = new Object();
+
+	// The resolver that created this node
 	JDTResolver resolver;
 
+	// Set once the node is shared by the resolvers of a LookupEnvironment
+	private volatile JDTClassNodeCache sharedCache = null;
+
 	// Configuration flags
-	private int bits = 0;
+	private volatile int bits = 0;
 	private static final int ANNOTATIONS_INITIALIZED = 0x0001;
 	private static final int PROPERTIES_INITIALIZED = 0x0002;
 	private TypeDeclaration groovyDecl = null;
@@ -151,8 +159,13 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 
 	@Override
 	public void lazyClassInit() {
+		if (lazyInitDone) {
+			return;
+		}
 		synchronized (lazyInitLock) {
-			if (lazyInitDone) {
+			// initialization can come back here on the same thread (through the super types), that call must not mark the
+			// node done while its members are still being added
+			if (lazyInitDone || beingInitialized) {
 				return;
 			}
 			initialize();
@@ -164,25 +177,31 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		if (anyGenericsInitialized) {
 			return;
 		}
+		// Converting the type variables can need the generics of other nodes, so they are built without holding the lock and the
+		// first thread to finish publishes them
+		GenericsType[] generics = null;
 		try {
 			if (jdtBinding instanceof ParameterizedTypeBinding && !(jdtBinding instanceof RawTypeBinding)) {
 				// GenericsType[] gts = configureTypeArguments(((ParameterizedTypeBinding) jdtBinding).arguments);
-				GenericsType[] gts = new JDTClassNodeBuilder(this.resolver)
+				generics = new JDTClassNodeBuilder(getResolver())
 						.configureTypeArguments(((ParameterizedTypeBinding) jdtBinding).arguments);
-				setGenericsTypes(gts);
 				// return base;
 			} else if (jdtBinding instanceof RawTypeBinding) {
 				// nothing to do
 			} else {
 				// SourceTB, BinaryTB, TypeVariableB, WildcardB
 				TypeVariableBinding[] typeVariables = jdtBinding.typeVariables();
-				GenericsType[] generics = new JDTClassNodeBuilder(this.resolver).configureTypeVariables(typeVariables);
-				if (generics != null) {
-					this.setGenericsTypes(generics);
-				}
+				generics = new JDTClassNodeBuilder(getResolver()).configureTypeVariables(typeVariables);
 			}
 		} finally {
-			anyGenericsInitialized = true;
+			synchronized (genericsLock) {
+				if (!anyGenericsInitialized) {
+					if (generics != null) {
+						super.setGenericsTypes(generics);
+					}
+					anyGenericsInitialized = true;
+				}
+			}
 		}
 	}
 
@@ -194,8 +213,10 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 	}
 
 	public void setGenericsTypes(GenericsType[] genericsTypes) {
-		this.anyGenericsInitialized = true;
-		super.setGenericsTypes(genericsTypes);
+		synchronized (genericsLock) {
+			super.setGenericsTypes(genericsTypes);
+			this.anyGenericsInitialized = true;
+		}
 	}
 
 	/**
@@ -213,7 +234,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 			if (!jdtBinding.isInterface()) {
 				ReferenceBinding superClass = jdtBinding.superclass();
 				if (superClass != null) {
-					setUnresolvedSuperClass(resolver.convertToClassNode(superClass));
+					setUnresolvedSuperClass(getResolver().convertToClassNode(superClass));
 				}
 			}
 
@@ -221,7 +242,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 			superInterfaceBindings = superInterfaceBindings == null ? ReferenceBinding.NO_SUPERINTERFACES : superInterfaceBindings;
 			ClassNode[] interfaces = new ClassNode[superInterfaceBindings.length];
 			for (int i = 0; i < superInterfaceBindings.length; i++) {
-				interfaces[i] = resolver.convertToClassNode(superInterfaceBindings[i]);
+				interfaces[i] = getResolver().convertToClassNode(superInterfaceBindings[i]);
 			}
 			setInterfaces(interfaces);
 			initializeMembers();
@@ -339,7 +360,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 
 		TypeVariableBinding[] typeVariables = methodBinding.typeVariables();
 
-		GenericsType[] generics = new JDTClassNodeBuilder(resolver).configureTypeVariables(typeVariables);
+		GenericsType[] generics = new JDTClassNodeBuilder(getResolver()).configureTypeVariables(typeVariables);
 		MethodNode mNode = null;
 
 		// FIXASC What value is there in getting the parameter names correct? (for methods and ctors)
@@ -348,7 +369,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		if (jdtBinding.isInterface() && (modifiers & 0x10000 /* Modifier.DEFAULT */) == 0 && (modifiers & Modifier.STATIC) == 0) {
 			modifiers |= Modifier.ABSTRACT;
 		}
-		ClassNode returnType = resolver.convertToClassNode(methodBinding.returnType);
+		ClassNode returnType = getResolver().convertToClassNode(methodBinding.returnType);
 
 		methodBinding.genericSignature();
 		Parameter[] gParameters = makeParameters(methodBinding.parameters);
@@ -357,10 +378,10 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		if (methodBinding.thrownExceptions != null) {
 			thrownExceptions = new ClassNode[methodBinding.thrownExceptions.length];
 			for (int i = 0; i < methodBinding.thrownExceptions.length; i++) {
-				thrownExceptions[i] = resolver.convertToClassNode(methodBinding.thrownExceptions[i]);
+				thrownExceptions[i] = getResolver().convertToClassNode(methodBinding.thrownExceptions[i]);
 			}
 		}
-		mNode = new JDTMethodNode(methodBinding, resolver, name, modifiers, returnType, gParameters, thrownExceptions, null);
+		mNode = new JDTMethodNode(methodBinding, getResolver(), name, modifiers, returnType, gParameters, thrownExceptions, null);
 
 		// FIXASC (M3) likely to need something like this...
 		// if (jdtBinding.isEnum()) {
@@ -389,7 +410,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		if (parameterType instanceof ParameterizedTypeBinding) {
 			clazz = ((ParameterizedTypeBinding) parameterType).genericType();
 		} else {
-			clazz = new JDTClassNodeBuilder(resolver).toRawType(parameterType);
+			clazz = new JDTClassNodeBuilder(getResolver()).toRawType(parameterType);
 		}
 		ClassNode paramType = makeClassNode(parameterType, clazz);
 		String paramName = (paramNumber < 8 ? argNames[paramNumber] : "arg" + paramNumber);
@@ -409,9 +430,9 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		// This line would check the compile unit
 		// if (cu != null) back = cu.getClass(c.getName());
 		if (back == null)
-			back = resolver.convertToClassNode(c);// ClassHelper.make(c);
+			back = getResolver().convertToClassNode(c);// ClassHelper.make(c);
 		if (!((t instanceof BinaryTypeBinding) || (t instanceof SourceTypeBinding))) {
-			ClassNode front = JDTClassNodeBuilder.build(this.resolver, t);
+			ClassNode front = JDTClassNodeBuilder.build(getResolver(), t);
 			front.setRedirect(back);
 			return front;
 		}
@@ -437,7 +458,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 
 	private ConstructorNode constructorBindingToConstructorNode(MethodBinding methodBinding) {
 		TypeVariableBinding[] typeVariables = methodBinding.typeVariables();
-		GenericsType[] generics = new JDTClassNodeBuilder(resolver).configureTypeVariables(typeVariables);
+		GenericsType[] generics = new JDTClassNodeBuilder(getResolver()).configureTypeVariables(typeVariables);
 		ConstructorNode ctorNode = null;
 
 		int modifiers = methodBinding.modifiers;
@@ -446,7 +467,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		if (methodBinding.thrownExceptions != null) {
 			thrownExceptions = new ClassNode[methodBinding.thrownExceptions.length];
 			for (int i = 0; i < methodBinding.thrownExceptions.length; i++) {
-				thrownExceptions[i] = resolver.convertToClassNode(methodBinding.thrownExceptions[i]);
+				thrownExceptions[i] = getResolver().convertToClassNode(methodBinding.thrownExceptions[i]);
 			}
 		}
 		ctorNode = new ConstructorNode(modifiers, parameters, thrownExceptions, null);
@@ -458,7 +479,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 	private FieldNode fieldBindingToFieldNode(FieldBinding fieldBinding, TypeDeclaration groovyTypeDecl) {
 		String name = new String(fieldBinding.name);
 		int modifiers = fieldBinding.modifiers;
-		ClassNode fieldType = resolver.convertToClassNode(fieldBinding.type);
+		ClassNode fieldType = getResolver().convertToClassNode(fieldBinding.type);
 		Constant c = fieldBinding.constant();
 
 		Expression initializerExpression = null;
@@ -494,7 +515,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 				initializerExpression = new ConstantExpression(((ShortConstant) c).shortValue());
 			}
 		}
-		FieldNode fNode = new JDTFieldNode(fieldBinding, resolver, name, modifiers, fieldType, this, initializerExpression);
+		FieldNode fNode = new JDTFieldNode(fieldBinding, getResolver(), name, modifiers, fieldType, this, initializerExpression);
 		return fNode;
 	}
 
@@ -540,7 +561,7 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 			}
 			AnnotationBinding[] annotationBindings = jdtBinding.getAnnotations();
 			for (AnnotationBinding annotationBinding : annotationBindings) {
-				addAnnotation(new JDTAnnotationNode(annotationBinding, this.resolver));
+				addAnnotation(new JDTAnnotationNode(annotationBinding, getResolver()));
 			}
 			bits |= ANNOTATIONS_INITIALIZED;
 		}
@@ -678,26 +699,50 @@ public class JDTClassNode extends ClassNode implements JDTNode {
 		return jdtBinding;
 	}
 
+	/**
+	 * A shared node is initialized through whichever resolver is currently working against the cache, so it does not keep using
+	 * the compilation unit of the resolver that happened to create it.
+	 */
 	public JDTResolver getResolver() {
+		if (sharedCache != null) {
+			JDTResolver active = sharedCache.getActiveResolver();
+			if (active != null) {
+				return active;
+			}
+		}
 		return resolver;
 	}
 
+	void share(JDTClassNodeCache cache) {
+		this.sharedCache = cache;
+	}
+
 	public boolean isDeprecated() {
 		return jdtBinding.isDeprecated();
 	}
 
 	private boolean unfindable = false;
 
+	// The resolver whose transform loader was asked for the typeClass
+	private JDTResolver typeClassResolver = null;
+
 	/**
 	 * Some AST transforms are written such that they refer to typeClass on a ClassNode. This is not available under Eclipse.
 	 * However, we can support it in a rudimentary fashion by attempting a class load for the class using the transform loader (if
 	 * available).
 	 */
-	public Class getTypeClass() {
+	public synchronized Class getTypeClass() {
+		JDTResolver currentResolver = getResolver();
+		if (currentResolver != typeClassResolver) {
+			// a shared node may now be used with another transform loader
+			clazz = null;
+			unfindable = false;
+			typeClassResolver = currentResolver;
+		}
 		if (clazz != null || unfindable) {
 			return clazz;
 		}
-		ClassLoader transformLoader = resolver.compilationUnit.getTransformLoader();
+		ClassLoader transformLoader = currentResolver.compilationUnit.getTransformLoader();
 		if (transformLoader != null) {
 			// What about array types
 			try {
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Codehaus.org, SpringSource, and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.codehaus.jdt.groovy.internal.compiler.ast;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.internal.compiler.lookup.Binding;
+import org.eclipse.jdt.internal.compiler.lookup.LookupEnvironment;
+
+/**
+ * JDTClassNodes built for the bindings of one LookupEnvironment, shared by every JDTResolver that works against that environment.
+ * The environment owns the cache and drops it when it is reset, which is also when its bindings are discarded, so the cache lives
+ * as long as a build (or a search) and binary types like java.util.List are only wrapped and initialized once, not once per source
+ * file.
+ * <p>
+ * Nodes are also indexed by the readable name of their binding, so looking them up by name does not scan the whole cache.
+ * <p>
+ * A shared node is not tied to the resolver that created it: whatever it still has to initialize lazily is converted by the resolver
+ * that is currently active on the thread, see {@link #activate(JDTResolver)}.
+ */
+public class JDTClassNodeCache {
+
+	private static final Object lock = new Object();
+
+	/**
+	 * @return the cache of the environment, created on first use
+	 */
+	public static JDTClassNodeCache getCache(LookupEnvironment environment) {
+		synchronized (lock) {
+			JDTClassNodeCache cache = (JDTClassNodeCache) environment.groovyClassNodeCache;
+			if (cache == null) {
+				cache = new JDTClassNodeCache();
+				environment.groovyClassNodeCache = cache;
+			}
+			return cache;
+		}
+	}
+
+	private final Map<Binding, JDTClassNode> nodes = new HashMap<Binding, JDTClassNode>();
+
+	private final Map<String, JDTClassNode> nodesByName = new HashMap<String, JDTClassNode>();
+
+	// The resolver working against the environment on each thread
+	private final ThreadLocal<JDTResolver> activeResolver = new ThreadLocal<JDTResolver>();
+
+	private JDTClassNodeCache() {
+	}
+
+	/**
+	 * Makes the resolver the one that shared nodes use on this thread, until another one is activated or it is deactivated.
+	 */
+	public void activate(JDTResolver resolver) {
+		activeResolver.set(resolver);
+	}
+
+	public void deactivate(JDTResolver resolver) {
+		if (activeResolver.get() == resolver) {
+			activeResolver.remove();
+		}
+	}
+
+	/**
+	 * @return the resolver active on this thread, or null if none is
+	 */
+	public JDTResolver getActiveResolver() {
+		return activeResolver.get();
+	}
+
+	public synchronized JDTClassNode get(Binding binding) {
+		return nodes.get(binding);
+	}
+
+	/**
+	 * Records a node unless another resolver got there first, in which case that node is the one to use.
+	 *
+	 * @return the cached node for the binding
+	 */
+	public synchronized JDTClassNode putIfAbsent(Binding binding, JDTClassNode node) {
+		JDTClassNode existing = nodes.get(binding);
+		if (existing != null) {
+			return existing;
+		}
+		node.share(this);
+		nodes.put(binding, node);
+		nodesByName.put(new String(binding.readableName()), node);
+		return node;
+	}
+
+	/**
+	 * @param name readable name of the binding, eg- java.util.List&lt;E&gt;
+	 */
+	public synchronized JDTClassNode getByName(String name) {
+		return nodesByName.get(name);
+	}
+
+	public synchronized int size() {
+		return nodes.size();
+	}
+}
@@ -32,6 +32,7 @@ import org.codehaus.groovy.control.SourceUnit;
 import org.codehaus.jdt.groovy.internal.compiler.ast.GroovyParser.GrapeAwareGroovyClassLoader;
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.lookup.BinaryTypeBinding;
 import org.eclipse.jdt.internal.compiler.lookup.Binding;
 import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
 
@@ -42,9 +43,10 @@ import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
  * Resolver lifecycle:<br>
  * The JDTResolver is created at the same time as the (Groovy) CompilationUnit. The CompilationUnit knows about all the code that is
  * to be compiled together. The resolver maintains a cache from Binding to JDTClassNode and the cache contents have the same
- * lifetime as the JDTResolver. The resolver does type lookups through the currently active scope - the active scope is set when the
- * method 'commencingResolution()' is called. This is called by the superclass (ResolveVisitor) when it is about to start resolving
- * every reference in a type.
+ * lifetime as the JDTResolver, except for nodes of binary types: those are kept in the {@link JDTClassNodeCache} of the
+ * LookupEnvironment, so that all the resolvers working against that environment share them. The resolver does type lookups through
+ * the currently active scope - the active scope is set when the method 'commencingResolution()' is called. This is called by the
+ * superclass (ResolveVisitor) when it is about to start resolving every reference in a type.
  *
  * @author Andy Clement
  */
@@ -104,6 +106,12 @@ public class JDTResolver extends ResolveVisitor {
 	// Cache from bindings to JDTClassNodes to avoid unnecessary JDTClassNode creation
 	private Map<Binding, JDTClassNode> nodeCache = Collections.synchronizedMap(new WeakHashMap<Binding, JDTClassNode>());
 
+	// Same nodes as the nodeCache, by readable name of their binding
+	private Map<String, JDTClassNode> nodesByName = Collections.synchronizedMap(new HashMap<String, JDTClassNode>());
+
+	// Build wide cache of nodes for binary types, known once there is an active scope
+	private JDTClassNodeCache sharedCache = null;
+
 	public JDTResolver(CompilationUnit groovyCompilationUnit) {
 		super(groovyCompilationUnit);
 		if (recordInstances) {
@@ -115,23 +123,18 @@ public class JDTResolver extends ResolveVisitor {
 	}
 
 	public static JDTClassNode getCachedNode(JDTResolver instance, String name) {
-		for (Map.Entry<Binding, JDTClassNode> nodeFromCache : instance.nodeCache.entrySet()) {
-			String nodename = new String(nodeFromCache.getKey().readableName());
-			if (nodename.equals(name)) {
-				return nodeFromCache.getValue();
-			}
+		JDTClassNode node = instance.nodesByName.get(name);
+		if (node == null && instance.sharedCache != null) {
+			node = instance.sharedCache.getByName(name);
 		}
-		return null;
+		return node;
 	}
 
 	public static JDTClassNode getCachedNode(String name) {
 		for (JDTResolver resolver : instances) {
-			for (Map.Entry<Binding, JDTClassNode> nodeFromCache : resolver.nodeCache.entrySet()) {
-				String nodename = new String(nodeFromCache.getKey().readableName());
-				System.out.println(nodename);
-				if (nodename.equals(name)) {
-					return nodeFromCache.getValue();
-				}
+			JDTClassNode node = getCachedNode(resolver, name);
+			if (node != null) {
+				return node;
 			}
 		}
 		return null;
@@ -440,6 +443,9 @@ public class JDTResolver extends ResolveVisitor {
 			return inProgress.get(jdtBinding);
 		}
 		JDTClassNode existingNode = nodeCache.get(jdtBinding);
+		if (existingNode == null && jdtBinding instanceof BinaryTypeBinding && sharedCache != null) {
+			existingNode = sharedCache.get(jdtBinding);
+		}
 		if (existingNode != null) {
 			if (debug) {
 				log("Using cached JDTClassNode for binding " + new String(jdtBinding.readableName()));
@@ -478,7 +484,12 @@ public class JDTResolver extends ResolveVisitor {
 			inProgress.put(jdtBinding, jdtNode);
 			jdtNode.setupGenerics(); // for a binarytypebinding this fixes up those generics.
 			inProgress.remove(jdtBinding);
+			if (jdtBinding instanceof BinaryTypeBinding && sharedCache != null) {
+				// another resolver may have built one meanwhile, everybody uses the first one
+				return sharedCache.putIfAbsent(jdtBinding, jdtNode);
+			}
 			nodeCache.put(jdtBinding, jdtNode);
+			nodesByName.put(new String(jdtBinding.readableName()), jdtNode);
 		}
 		return classNode;
 	}
@@ -514,6 +525,12 @@ public class JDTResolver extends ResolveVisitor {
 			throw geb;
 		}
 		activeScope = (GroovyCompilationUnitScope) gtDeclaration.scope.compilationUnitScope();
+		if (sharedCache == null && activeScope.environment != null) {
+			sharedCache = JDTClassNodeCache.getCache(activeScope.environment);
+		}
+		if (sharedCache != null) {
+			sharedCache.activate(this);
+		}
 		if (debug) {
 			System.err.println("Resolver: commencing resolution for " + this.currentClass.getName());
 		}
@@ -571,6 +588,17 @@ public class JDTResolver extends ResolveVisitor {
 
 	public void cleanUp() {
 		// this.nodeCache.clear();
+		if (sharedCache != null) {
+			sharedCache.deactivate(this);
+		}
+	}
+
+	/**
+	 * @return the cache of binary type nodes this resolver shares with the others of its LookupEnvironment, null until it has
+	 *         commenced resolution
+	 */
+	public JDTClassNodeCache getSharedCache() {
+		return sharedCache;
 	}
 
 }
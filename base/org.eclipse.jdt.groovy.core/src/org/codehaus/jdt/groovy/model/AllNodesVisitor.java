@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.codehaus.jdt.groovy.model;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotatedNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassCodeVisitorSupport;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.GenericsType;
+import org.codehaus.groovy.ast.ImportNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.PropertyNode;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.ArrayExpression;
+import org.codehaus.groovy.ast.expr.AttributeExpression;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.BitwiseNegationExpression;
+import org.codehaus.groovy.ast.expr.BooleanExpression;
+import org.codehaus.groovy.ast.expr.CastExpression;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ClosureListExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
+import org.codehaus.groovy.ast.expr.DeclarationExpression;
+import org.codehaus.groovy.ast.expr.ElvisOperatorExpression;
+import org.codehaus.groovy.ast.expr.FieldExpression;
+import org.codehaus.groovy.ast.expr.GStringExpression;
+import org.codehaus.groovy.ast.expr.ListExpression;
+import org.codehaus.groovy.ast.expr.MapEntryExpression;
+import org.codehaus.groovy.ast.expr.MapExpression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.MethodPointerExpression;
+import org.codehaus.groovy.ast.expr.NotExpression;
+import org.codehaus.groovy.ast.expr.PostfixExpression;
+import org.codehaus.groovy.ast.expr.PrefixExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.RangeExpression;
+import org.codehaus.groovy.ast.expr.SpreadExpression;
+import org.codehaus.groovy.ast.expr.SpreadMapExpression;
+import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.ast.expr.TernaryExpression;
+import org.codehaus.groovy.ast.expr.TupleExpression;
+import org.codehaus.groovy.ast.expr.UnaryMinusExpression;
+import org.codehaus.groovy.ast.expr.UnaryPlusExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.CatchStatement;
+import org.codehaus.groovy.ast.stmt.ForStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.control.SourceUnit;
+
+/**
+ * Visits every {@link ASTNode} that carries a source location in a module, including the {@link ClassNode} instances that stand
+ * for type references. Each node is reported exactly once, even when the same instance is reachable from several places.
+ */
+abstract class AllNodesVisitor extends ClassCodeVisitorSupport {
+
+	private final Map<ASTNode, Boolean> seen = new IdentityHashMap<ASTNode, Boolean>();
+
+	/**
+	 * Called once for every node in the module that has a source location
+	 */
+	protected abstract void visitNode(ASTNode node);
+
+	/**
+	 * Called once for every reference to a type, before {@link #visitNode(ASTNode)} is called for it
+	 */
+	protected void visitTypeReference(ClassNode type) {
+		// subclasses may override
+	}
+
+	private void node(ASTNode node) {
+		if (node != null && !seen.containsKey(node)) {
+			seen.put(node, Boolean.TRUE);
+			visitNode(node);
+		}
+	}
+
+	protected void type(ClassNode type) {
+		if (type == null || seen.containsKey(type)) {
+			return;
+		}
+		if (!type.isPrimaryClassNode()) {
+			visitTypeReference(type);
+		}
+		node(type);
+		if (type.isArray()) {
+			type(type.getComponentType());
+		}
+		GenericsType[] generics = type.getGenericsTypes();
+		if (generics != null) {
+			for (GenericsType generic : generics) {
+				node(generic);
+				type(generic.getType());
+				type(generic.getLowerBound());
+				ClassNode[] upper = generic.getUpperBounds();
+				if (upper != null) {
+					for (ClassNode bound : upper) {
+						type(bound);
+					}
+				}
+			}
+		}
+	}
+
+	private void parameters(Parameter[] parameters) {
+		if (parameters != null) {
+			for (Parameter parameter : parameters) {
+				node(parameter);
+				type(parameter.getOriginType());
+				if (parameter.getInitialExpression() != null) {
+					parameter.getInitialExpression().visit(this);
+				}
+			}
+		}
+	}
+
+	public void visitModule(ModuleNode module) {
+		node(module);
+		if (module.getPackage() != null) {
+			node(module.getPackage());
+		}
+		for (ImportNode importNode : module.getImports()) {
+			node(importNode);
+			type(importNode.getType());
+		}
+		for (ImportNode importNode : module.getStaticImports().values()) {
+			node(importNode);
+			type(importNode.getType());
+		}
+		for (ImportNode importNode : module.getStaticStarImports().values()) {
+			node(importNode);
+			type(importNode.getType());
+		}
+		for (ClassNode classNode : module.getClasses()) {
+			visitClass(classNode);
+		}
+	}
+
+	@Override
+	public void visitClass(ClassNode node) {
+		node(node);
+		type(node.getUnresolvedSuperClass(false));
+		ClassNode[] interfaces = node.getInterfaces();
+		if (interfaces != null) {
+			for (ClassNode face : interfaces) {
+				type(face);
+			}
+		}
+		super.visitClass(node);
+	}
+
+	@Override
+	public void visitAnnotations(AnnotatedNode node) {
+		for (AnnotationNode annotation : node.getAnnotations()) {
+			node(annotation);
+			type(annotation.getClassNode());
+		}
+		super.visitAnnotations(node);
+	}
+
+	@Override
+	protected void visitConstructorOrMethod(MethodNode node, boolean isConstructor) {
+		node(node);
+		type(node.getReturnType());
+		parameters(node.getParameters());
+		ClassNode[] exceptions = node.getExceptions();
+		if (exceptions != null) {
+			for (ClassNode exception : exceptions) {
+				type(exception);
+			}
+		}
+		super.visitConstructorOrMethod(node, isConstructor);
+	}
+
+	@Override
+	public void visitField(FieldNode node) {
+		node(node);
+		type(node.getOriginType());
+		super.visitField(node);
+	}
+
+	@Override
+	public void visitProperty(PropertyNode node) {
+		node(node);
+		type(node.getOriginType());
+		super.visitProperty(node);
+	}
+
+	@Override
+	protected void visitStatement(Statement statement) {
+		node(statement);
+		super.visitStatement(statement);
+	}
+
+	@Override
+	public void visitForLoop(ForStatement forLoop) {
+		parameters(new Parameter[] { forLoop.getVariable() });
+		super.visitForLoop(forLoop);
+	}
+
+	@Override
+	public void visitCatchStatement(CatchStatement statement) {
+		parameters(new Parameter[] { statement.getVariable() });
+		super.visitCatchStatement(statement);
+	}
+
+	@Override
+	public void visitMethodCallExpression(MethodCallExpression call) {
+		node(call);
+		super.visitMethodCallExpression(call);
+	}
+
+	@Override
+	public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+		node(call);
+		type(call.getOwnerType());
+		super.visitStaticMethodCallExpression(call);
+	}
+
+	@Override
+	public void visitConstructorCallExpression(ConstructorCallExpression call) {
+		node(call);
+		type(call.getType());
+		super.visitConstructorCallExpression(call);
+	}
+
+	@Override
+	public void visitBinaryExpression(BinaryExpression expression) {
+		node(expression);
+		super.visitBinaryExpression(expression);
+	}
+
+	@Override
+	public void visitTernaryExpression(TernaryExpression expression) {
+		node(expression);
+		super.visitTernaryExpression(expression);
+	}
+
+	@Override
+	public void visitShortTernaryExpression(ElvisOperatorExpression expression) {
+		node(expression);
+		super.visitShortTernaryExpression(expression);
+	}
+
+	@Override
+	public void visitPostfixExpression(PostfixExpression expression) {
+		node(expression);
+		super.visitPostfixExpression(expression);
+	}
+
+	@Override
+	public void visitPrefixExpression(PrefixExpression expression) {
+		node(expression);
+		super.visitPrefixExpression(expression);
+	}
+
+	@Override
+	public void visitBooleanExpression(BooleanExpression expression) {
+		node(expression);
+		super.visitBooleanExpression(expression);
+	}
+
+	@Override
+	public void visitNotExpression(NotExpression expression) {
+		node(expression);
+		super.visitNotExpression(expression);
+	}
+
+	@Override
+	public void visitClosureExpression(ClosureExpression expression) {
+		node(expression);
+		parameters(expression.getParameters());
+		super.visitClosureExpression(expression);
+	}
+
+	@Override
+	public void visitTupleExpression(TupleExpression expression) {
+		node(expression);
+		super.visitTupleExpression(expression);
+	}
+
+	@Override
+	public void visitListExpression(ListExpression expression) {
+		node(expression);
+		super.visitListExpression(expression);
+	}
+
+	@Override
+	public void visitArrayExpression(ArrayExpression expression) {
+		node(expression);
+		type(expression.getElementType());
+		super.visitArrayExpression(expression);
+	}
+
+	@Override
+	public void visitMapExpression(MapExpression expression) {
+		node(expression);
+		super.visitMapExpression(expression);
+	}
+
+	@Override
+	public void visitMapEntryExpression(MapEntryExpression expression) {
+		node(expression);
+		super.visitMapEntryExpression(expression);
+	}
+
+	@Override
+	public void visitRangeExpression(RangeExpression expression) {
+		node(expression);
+		super.visitRangeExpression(expression);
+	}
+
+	@Override
+	public void visitSpreadExpression(SpreadExpression expression) {
+		node(expression);
+		super.visitSpreadExpression(expression);
+	}
+
+	@Override
+	public void visitSpreadMapExpression(SpreadMapExpression expression) {
+		node(expression);
+		super.visitSpreadMapExpression(expression);
+	}
+
+	@Override
+	public void visitMethodPointerExpression(MethodPointerExpression expression) {
+		node(expression);
+		super.visitMethodPointerExpression(expression);
+	}
+
+	@Override
+	public void visitUnaryMinusExpression(UnaryMinusExpression expression) {
+		node(expression);
+		super.visitUnaryMinusExpression(expression);
+	}
+
+	@Override
+	public void visitUnaryPlusExpression(UnaryPlusExpression expression) {
+		node(expression);
+		super.visitUnaryPlusExpression(expression);
+	}
+
+	@Override
+	public void visitBitwiseNegationExpression(BitwiseNegationExpression expression) {
+		node(expression);
+		super.visitBitwiseNegationExpression(expression);
+	}
+
+	@Override
+	public void visitCastExpression(CastExpression expression) {
+		node(expression);
+		type(expression.getType());
+		super.visitCastExpression(expression);
+	}
+
+	@Override
+	public void visitConstantExpression(ConstantExpression expression) {
+		node(expression);
+		super.visitConstantExpression(expression);
+	}
+
+	@Override
+	public void visitClassExpression(ClassExpression expression) {
+		node(expression);
+		type(expression.getType());
+		super.visitClassExpression(expression);
+	}
+
+	@Override
+	public void visitVariableExpression(VariableExpression expression) {
+		node(expression);
+		type(expression.getOriginType());
+		super.visitVariableExpression(expression);
+	}
+
+	@Override
+	public void visitDeclarationExpression(DeclarationExpression expression) {
+		node(expression);
+		super.visitDeclarationExpression(expression);
+	}
+
+	@Override
+	public void visitPropertyExpression(PropertyExpression expression) {
+		node(expression);
+		super.visitPropertyExpression(expression);
+	}
+
+	@Override
+	public void visitAttributeExpression(AttributeExpression expression) {
+		node(expression);
+		super.visitAttributeExpression(expression);
+	}
+
+	@Override
+	public void visitFieldExpression(FieldExpression expression) {
+		node(expression);
+		super.visitFieldExpression(expression);
+	}
+
+	@Override
+	public void visitGStringExpression(GStringExpression expression) {
+		node(expression);
+		super.visitGStringExpression(expression);
+	}
+
+	@Override
+	public void visitArgumentlistExpression(ArgumentListExpression ale) {
+		node(ale);
+		super.visitArgumentlistExpression(ale);
+	}
+
+	@Override
+	public void visitClosureListExpression(ClosureListExpression cle) {
+		node(cle);
+		super.visitClosureListExpression(cle);
+	}
+
+	@Override
+	protected SourceUnit getSourceUnit() {
+		return null;
+	}
+}
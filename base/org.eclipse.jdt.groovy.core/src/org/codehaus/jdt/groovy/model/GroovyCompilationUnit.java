@@ -114,7 +114,8 @@ public class GroovyCompilationUnit extends CompilationUnit {
 	 * @param force if true, then a module info is created even if not a working copy. This occurs by temporarily turning the
 	 *        compilation unit into a working copy and then discarding it.
 	 * @return the {@link ModuleNodeInfo} for this compilation unit. Will be null if force is set to false and this unit is not a
-	 *         working copy. Also will be null if a problem occurs
+	 *         working copy. Also will be null if a problem occurs. If the module node was dropped to stay within the budget of the
+	 *         {@link ModuleNodeMapper}, it is built again, see {@link #rebuildModuleInfo(PerWorkingCopyInfo)}.
 	 */
 	public ModuleNodeInfo getModuleInfo(boolean force) {
 		try {
@@ -122,7 +123,7 @@ public class GroovyCompilationUnit extends CompilationUnit {
 				makeConsistent(null);
 			}
 			boolean becameWorkingCopy = false;
-			ModuleNodeMapper.getInstance().lock();
+			ModuleNodeMapper.getInstance().lock(this);
 			// discard the working copy after finishing
 			// if there was no working copy to begin with
 			try {
@@ -131,7 +132,11 @@ public class GroovyCompilationUnit extends CompilationUnit {
 				}
 				PerWorkingCopyInfo info = getPerWorkingCopyInfo();
 				if (info != null) {
-					return ModuleNodeMapper.getInstance().get(info);
+					ModuleNodeInfo moduleInfo = ModuleNodeMapper.getInstance().get(info);
+					if (moduleInfo == null) {
+						moduleInfo = rebuildModuleInfo(info);
+					}
+					return moduleInfo;
 				}
 			} finally {
 				try {
@@ -139,7 +144,7 @@ public class GroovyCompilationUnit extends CompilationUnit {
 						discardWorkingCopy();
 					}
 				} finally {
-					ModuleNodeMapper.getInstance().unlock();
+					ModuleNodeMapper.getInstance().unlock(this);
 				}
 			}
 		} catch (JavaModelException e) {
@@ -149,6 +154,18 @@ public class GroovyCompilationUnit extends CompilationUnit {
 		return null;
 	}
 
+	/**
+	 * Builds the module node of a working copy again after the {@link ModuleNodeMapper} dropped it. Only the module node is
+	 * rebuilt: the structure goes into a throwaway element info, so the Java model of the working copy is left alone and no
+	 * delta is fired.
+	 */
+	private ModuleNodeInfo rebuildModuleInfo(PerWorkingCopyInfo info) throws JavaModelException {
+		ModuleNodeMapper.getInstance().moduleRebuilt(this);
+		buildStructure((OpenableElementInfo) createElementInfo(), new NullProgressMonitor(), new HashMap<IJavaElement, Object>(),
+				getResource());
+		return ModuleNodeMapper.getInstance().get(info);
+	}
+
 	/**
 	 * Gets the module node for this compilation unit. Bypasses the cached module node and creates a new one, which is then placed
 	 * in the cache
@@ -167,7 +184,7 @@ public class GroovyCompilationUnit extends CompilationUnit {
 	@Override
 	public void discardWorkingCopy() throws JavaModelException {
 		// GRECLIPSE-804 must synchronize
-		ModuleNodeMapper.getInstance().lock();
+		ModuleNodeMapper.getInstance().lock(this);
 		try {
 			PerWorkingCopyInfo info = getPerWorkingCopyInfo();
 			if (workingCopyInfoWillBeDiscarded(info)) {
@@ -175,7 +192,7 @@ public class GroovyCompilationUnit extends CompilationUnit {
 			}
 			super.discardWorkingCopy();
 		} finally {
-			ModuleNodeMapper.getInstance().unlock();
+			ModuleNodeMapper.getInstance().unlock(this);
 		}
 	}
 
@@ -252,6 +269,23 @@ public class GroovyCompilationUnit extends CompilationUnit {
 
 			boolean computeProblems = perWorkingCopyInfo != null && perWorkingCopyInfo.isActive() && project != null
 					&& JavaProject.hasJavaNature(project.getProject());
+
+			// the structure of a file that is not being edited doesn't depend on anything but its contents, it can be cached
+			GroovyStructureCache structureCache = perWorkingCopyInfo == null && !createAST && problems == null ? GroovyStructureCache
+					.getCache() : null;
+			// a working copy keeps the structure it was built with, so that an edit inside a method body can be reconciled without
+			// compiling the whole unit
+			boolean incremental = IncrementalReconciler.ENABLED && perWorkingCopyInfo != null && !createAST
+					&& !(this instanceof GroovyClassFileWorkingCopy);
+			StructureEventRecorder recorder;
+			if (structureCache != null) {
+				recorder = structureCache.createRecorder(requestor);
+			} else if (incremental) {
+				recorder = new StructureEventRecorder(requestor);
+			} else {
+				recorder = null;
+			}
+
 			IProblemFactory problemFactory = new DefaultProblemFactory();
 
 			// compiler options
@@ -275,7 +309,8 @@ public class GroovyCompilationUnit extends CompilationUnit {
 			ProblemReporter reporter = new ProblemReporter(new GroovyErrorHandlingPolicy(!computeProblems), compilerOptions,
 					new DefaultProblemFactory());
 
-			SourceElementParser parser = new MultiplexingSourceElementRequestorParser(reporter, requestor, /*
+			SourceElementParser parser = new MultiplexingSourceElementRequestorParser(reporter, recorder != null ? recorder
+					: requestor, /*
 																											 * not needed if
 																											 * computing groovy only
 																											 */
@@ -308,6 +343,27 @@ public class GroovyCompilationUnit extends CompilationUnit {
 
 			GroovyCompilationUnitDeclaration compilationUnitDeclaration = null;
 			CompilationUnit source = cloneCachingContents();
+			if (structureCache != null) {
+				char[] contents = source.getContents();
+				// the structure requestor reads constant initializers from the scanner
+				parser.scanner.setSource(contents);
+				if (structureCache.replay(getPath(), contents, requestor)) {
+					return unitInfo.isStructureKnown();
+				}
+			}
+			if (incremental) {
+				char[] contents = source.getContents();
+				parser.scanner.setSource(contents);
+				IncrementalReconciler reconciler = new IncrementalReconciler(this);
+				if (reconciler.reconcile(contents, requestor, compilerOptions.taskTags)) {
+					if (problems != null) {
+						problems.putAll(reconciler.getProblems());
+					} else if (computeProblems) {
+						reportProblems(perWorkingCopyInfo, reconciler.getProblems());
+					}
+					return unitInfo.isStructureKnown();
+				}
+			}
 			try {
 				// GROOVY
 				// note that this is a slightly different approach than taken by super.buildStructure
@@ -330,19 +386,7 @@ public class GroovyCompilationUnit extends CompilationUnit {
 						compilationUnitDeclaration = (GroovyCompilationUnitDeclaration) CompilationUnitProblemFinder.process(
 								source, parser, this.owner, problems, createAST, reconcileFlags, pm);
 						if (computeProblems) {
-							try {
-								perWorkingCopyInfo.beginReporting();
-								for (Iterator iteraror = problems.values().iterator(); iteraror.hasNext();) {
-									CategorizedProblem[] categorizedProblems = (CategorizedProblem[]) iteraror.next();
-									if (categorizedProblems == null)
-										continue;
-									for (int i = 0, length = categorizedProblems.length; i < length; i++) {
-										perWorkingCopyInfo.acceptProblem(categorizedProblems[i]);
-									}
-								}
-							} finally {
-								perWorkingCopyInfo.endReporting();
-							}
+							reportProblems(perWorkingCopyInfo, problems);
 						}
 					} else {
 						// collect problems
@@ -356,7 +400,19 @@ public class GroovyCompilationUnit extends CompilationUnit {
 
 				// GROOVY
 				// if this is a working copy, then we have more work to do
-				maybeCacheModuleNode(perWorkingCopyInfo, compilationUnitDeclaration);
+				if (incremental) {
+					byte[] structure = recorder.isStorable() && unitInfo.isStructureKnown() ? recorder.getEvents() : null;
+					// problems are only kept when task tags were checked
+					ModuleNodeMapper.getInstance().maybeCacheModuleNode(perWorkingCopyInfo, compilationUnitDeclaration, structure,
+							computeProblems ? problems : null);
+				} else {
+					maybeCacheModuleNode(perWorkingCopyInfo, compilationUnitDeclaration);
+				}
+
+				if (structureCache != null && compilationUnitDeclaration != null && compilationUnitDeclaration.getModuleNode() != null
+						&& !compilationUnitDeclaration.getSourceUnit().getErrorCollector().hasErrors() && unitInfo.isStructureKnown()) {
+					structureCache.store(getPath(), source.getContents(), recorder);
+				}
 
 				// create the DOM AST from the compiler AST
 				if (createAST) {
@@ -407,6 +463,23 @@ public class GroovyCompilationUnit extends CompilationUnit {
 		}
 	}
 
+	@SuppressWarnings("rawtypes")
+	private static void reportProblems(PerWorkingCopyInfo perWorkingCopyInfo, Map problems) {
+		try {
+			perWorkingCopyInfo.beginReporting();
+			for (Iterator iteraror = problems.values().iterator(); iteraror.hasNext();) {
+				CategorizedProblem[] categorizedProblems = (CategorizedProblem[]) iteraror.next();
+				if (categorizedProblems == null)
+					continue;
+				for (int i = 0, length = categorizedProblems.length; i < length; i++) {
+					perWorkingCopyInfo.acceptProblem(categorizedProblems[i]);
+				}
+			}
+		} finally {
+			perWorkingCopyInfo.endReporting();
+		}
+	}
+
 	/**
 	 * @param perWorkingCopyInfo
 	 * @param compilationUnitDeclaration
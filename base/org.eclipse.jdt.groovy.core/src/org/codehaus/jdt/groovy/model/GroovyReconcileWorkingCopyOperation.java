@@ -51,6 +51,7 @@ public class GroovyReconcileWorkingCopyOperation extends ReconcileWorkingCopyOpe
 	/*
 	 * Makes the given working copy consistent, computes the delta and computes an AST if needed. Returns the AST.
 	 */
+	@SuppressWarnings("unchecked")
 	public org.eclipse.jdt.core.dom.CompilationUnit makeConsistent(CompilationUnit workingCopy) throws JavaModelException {
 		if (!workingCopy.isConsistent()) {
 			// make working copy consistent
@@ -85,7 +86,7 @@ public class GroovyReconcileWorkingCopyOperation extends ReconcileWorkingCopyOpe
 					// should always be true
 					if (!(workingCopy instanceof GroovyClassFileWorkingCopy)) {
 						ModuleNodeMapper.getInstance().maybeCacheModuleNode(workingCopy.getPerWorkingCopyInfo(),
-								(GroovyCompilationUnitDeclaration) unit);
+								(GroovyCompilationUnitDeclaration) unit, null, this.problems);
 					}
 				}
 				// GROOVY end
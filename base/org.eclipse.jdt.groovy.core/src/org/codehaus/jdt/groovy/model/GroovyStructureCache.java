@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.codehaus.jdt.groovy.model;
+
+import groovy.lang.GroovySystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.groovy.core.Activator;
+import org.eclipse.jdt.internal.compiler.ISourceElementRequestor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Persistent cache of the Java model structure of groovy files, kept in the state location of the plugin. The structure is stored
+ * as the sequence of {@link ISourceElementRequestor} calls that building the structure made, as recorded by a
+ * {@link StructureEventRecorder}, so that opening an unchanged file replays those calls to the structure requestor instead of
+ * parsing the file.
+ * <p>
+ * Entries are keyed by the workspace path of the file, and are only used if the contents hash and the compiler version they were
+ * recorded with still match. When the groovy compiler bundle (or this bundle) changes version, the whole cache is dropped. Files
+ * with compile errors, or whose structure contains AST nodes that can't be stored (annotation values other than strings and class
+ * literals, annotation method defaults), are not cached.
+ * <p>
+ * Entries of deleted, moved or renamed files are removed when the workspace changes, and a clean build removes the entries of the
+ * projects it cleans.
+ * <p>
+ * Enabled with the <code>greclipse.structureCache</code> system property.
+ */
+public class GroovyStructureCache implements IResourceChangeListener {
+
+	public static boolean ENABLED = Boolean.getBoolean("greclipse.structureCache"); //$NON-NLS-1$
+
+	/** bump when the format of the entries or of the {@link StructureEventRecorder} events changes */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC = 0x47535443; // GSTC
+
+	private static final String ENTRY_EXTENSION = ".structure"; //$NON-NLS-1$
+
+	private static final String VERSION_FILE = "version"; //$NON-NLS-1$
+
+	private static GroovyStructureCache instance;
+
+	/**
+	 * @return the cache, or null if it is disabled or there is no place to keep it
+	 */
+	public static synchronized GroovyStructureCache getCache() {
+		if (!ENABLED) {
+			return null;
+		}
+		if (instance == null) {
+			Activator activator = Activator.getDefault();
+			if (activator == null) {
+				return null;
+			}
+			File directory = activator.getStateLocation().append("structure-cache").toFile(); //$NON-NLS-1$
+			instance = new GroovyStructureCache(directory, computeCompilerVersion());
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(instance,
+					IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLEAN);
+		}
+		return instance;
+	}
+
+	/**
+	 * Stops listening to the workspace, called when the plugin stops
+	 */
+	public static synchronized void shutdown() {
+		if (instance != null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+			instance = null;
+		}
+	}
+
+	/**
+	 * The groovy version alone is not enough: the same groovy version is patched between releases of the compiler bundle.
+	 */
+	private static String computeCompilerVersion() {
+		StringBuilder version = new StringBuilder();
+		version.append(FORMAT_VERSION).append(':').append(GroovySystem.getVersion());
+		Bundle groovyBundle = FrameworkUtil.getBundle(GroovySystem.class);
+		if (groovyBundle != null) {
+			version.append(':').append(groovyBundle.getVersion());
+		}
+		Bundle coreBundle = FrameworkUtil.getBundle(GroovyStructureCache.class);
+		if (coreBundle != null) {
+			version.append(':').append(coreBundle.getVersion());
+		}
+		return version.toString();
+	}
+
+	private final File directory;
+
+	private final String compilerVersion;
+
+	private int hits, misses, stores;
+
+	GroovyStructureCache(File directory, String compilerVersion) {
+		this.directory = directory;
+		this.compilerVersion = compilerVersion;
+		checkVersion();
+	}
+
+	/**
+	 * Drops every entry if the cache was written by another compiler
+	 */
+	private void checkVersion() {
+		File versionFile = new File(directory, VERSION_FILE);
+		try {
+			if (versionFile.exists() && compilerVersion.equals(new String(readFile(versionFile), "UTF-8"))) { //$NON-NLS-1$
+				return;
+			}
+			File[] entries = directory.listFiles();
+			if (entries != null) {
+				for (File entry : entries) {
+					if (entry.getName().endsWith(ENTRY_EXTENSION)) {
+						entry.delete();
+					}
+				}
+			}
+			directory.mkdirs();
+			writeFile(versionFile, compilerVersion.getBytes("UTF-8")); //$NON-NLS-1$
+		} catch (IOException e) {
+			log("Unable to initialize structure cache in " + directory + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Replays the cached structure of a file to the requestor.
+	 *
+	 * @return true if the cache had an up to date entry for the file, false if the file must be parsed
+	 */
+	public boolean replay(IPath path, char[] contents, ISourceElementRequestor requestor) {
+		File entry = getEntryFile(path);
+		byte[] data = null;
+		try {
+			if (entry.exists()) {
+				data = readFile(entry);
+			}
+		} catch (IOException e) {
+			// treated as a miss
+		}
+		int eventsStart = data == null ? -1 : checkHeader(data, path, contents);
+		if (eventsStart < 0) {
+			synchronized (this) {
+				misses += 1;
+			}
+			return false;
+		}
+		if (!StructureEventRecorder.replay(data, eventsStart, requestor)) {
+			entry.delete();
+			synchronized (this) {
+				misses += 1;
+			}
+			return false;
+		}
+		synchronized (this) {
+			hits += 1;
+		}
+		if (GroovyLogManager.manager.hasLoggers()) {
+			log("Structure of " + path + " replayed from the cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return true;
+	}
+
+	/**
+	 * @return a requestor that records what it forwards to the given requestor, to be
+	 *         {@link #store(IPath, char[], StructureEventRecorder) stored} afterwards
+	 */
+	public StructureEventRecorder createRecorder(ISourceElementRequestor requestor) {
+		return new StructureEventRecorder(requestor);
+	}
+
+	/**
+	 * Stores what the recorder has seen, if it saw a complete and storable structure
+	 */
+	public void store(IPath path, char[] contents, StructureEventRecorder recorder) {
+		if (!recorder.isStorable()) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeUTF(compilerVersion);
+			out.writeUTF(path.toPortableString());
+			byte[] hash = hash(contents);
+			out.writeShort(hash.length);
+			out.write(hash);
+			out.write(recorder.getEvents());
+			out.close();
+
+			directory.mkdirs();
+			File entry = getEntryFile(path);
+			// write aside and rename, so that a reader never sees half an entry
+			File temp = new File(directory, entry.getName() + '.' + Thread.currentThread().getId());
+			writeFile(temp, bytes.toByteArray());
+			if (!temp.renameTo(entry)) {
+				entry.delete();
+				if (!temp.renameTo(entry)) {
+					temp.delete();
+					return;
+				}
+			}
+			synchronized (this) {
+				stores += 1;
+			}
+		} catch (IOException e) {
+			log("Unable to store the structure of " + path + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Removes the entry of a file
+	 */
+	public void remove(IPath path) {
+		if (getEntryFile(path).delete() && GroovyLogManager.manager.hasLoggers()) {
+			log("Structure of " + path + " removed from the cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Removes the entries of every file under the given workspace path
+	 */
+	public void removeAll(IPath container) {
+		File[] entries = directory.listFiles();
+		if (entries == null) {
+			return;
+		}
+		int removed = 0;
+		for (File entry : entries) {
+			if (!entry.getName().endsWith(ENTRY_EXTENSION)) {
+				continue;
+			}
+			if (!container.isRoot()) {
+				IPath path = readPath(entry);
+				if (path != null && !container.isPrefixOf(path)) {
+					continue;
+				}
+			}
+			if (entry.delete()) {
+				removed += 1;
+			}
+		}
+		if (removed > 0 && GroovyLogManager.manager.hasLoggers()) {
+			log(removed + " structures under " + container + " removed from the cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * @return true if the cache has an entry for the file, whether it is up to date or not
+	 */
+	public boolean hasEntry(IPath path) {
+		return getEntryFile(path).exists();
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		if (event.getType() == IResourceChangeEvent.PRE_CLEAN) {
+			if (event.getSource() instanceof IProject) {
+				removeAll(((IProject) event.getSource()).getFullPath());
+			} else {
+				removeAll(Path.ROOT);
+			}
+		} else if (event.getDelta() != null) {
+			try {
+				event.getDelta().accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta delta) {
+						if (delta.getKind() != IResourceDelta.REMOVED) {
+							return true;
+						}
+						// moved and renamed resources are removed from their old path too
+						if (delta.getResource().getType() == IResource.FILE) {
+							remove(delta.getFullPath());
+						} else {
+							removeAll(delta.getFullPath());
+						}
+						return false;
+					}
+				});
+			} catch (CoreException e) {
+				log("Unable to prune the structure cache: " + e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized String getStatistics() {
+		return "hits=" + hits + " misses=" + misses + " stores=" + stores; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private File getEntryFile(IPath path) {
+		try {
+			return new File(directory, toHex(sha1(path.toPortableString().getBytes("UTF-8"))) + ENTRY_EXTENSION); //$NON-NLS-1$
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the offset of the events, or -1 if the entry is for another file, another version of the file or another compiler
+	 */
+	private int checkHeader(byte[] data, IPath path, char[] contents) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+			if (in.readInt() != MAGIC || !compilerVersion.equals(in.readUTF()) || !path.toPortableString().equals(in.readUTF())) {
+				return -1;
+			}
+			byte[] hash = new byte[in.readUnsignedShort()];
+			in.readFully(hash);
+			if (!Arrays.equals(hash, hash(contents))) {
+				return -1;
+			}
+			return data.length - in.available();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the workspace path of the file an entry is for, or null if the entry can't be read
+	 */
+	private static IPath readPath(File entry) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(readFile(entry)));
+			if (in.readInt() != MAGIC) {
+				return null;
+			}
+			in.readUTF();
+			return Path.fromPortableString(in.readUTF());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static byte[] hash(char[] contents) {
+		byte[] bytes = new byte[contents.length * 2];
+		for (int i = 0, j = 0; i < contents.length; i++) {
+			bytes[j++] = (byte) (contents[i] >> 8);
+			bytes[j++] = (byte) contents[i];
+		}
+		return sha1(bytes);
+	}
+
+	private static byte[] sha1(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(bytes); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] data = new byte[(int) file.length()];
+			int read = 0;
+			while (read < data.length) {
+				int n = in.read(data, read, data.length - read);
+				if (n < 0) {
+					throw new IOException("Unexpected end of " + file); //$NON-NLS-1$
+				}
+				read += n;
+			}
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeFile(File file, byte[] data) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void log(String message) {
+		if (GroovyLogManager.manager.hasLoggers()) {
+			GroovyLogManager.manager.log(TraceCategory.COMPILER, message);
+		}
+	}
+}
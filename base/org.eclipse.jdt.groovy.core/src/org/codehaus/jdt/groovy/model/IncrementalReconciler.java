@@ -0,0 +1,788 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.codehaus.jdt.groovy.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotatedNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassCodeExpressionTransformer;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.DynamicVariable;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.ImportNode;
+import org.codehaus.groovy.ast.InnerClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.PropertyNode;
+import org.codehaus.groovy.ast.VariableScope;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.classgen.VariableScopeVisitor;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.ErrorCollector;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
+import org.codehaus.jdt.groovy.model.ModuleNodeMapper.ModuleNodeInfo;
+import org.eclipse.jdt.core.IJavaModelMarker;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.WorkingCopyOwner;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.groovy.core.util.GroovyUtils;
+import org.eclipse.jdt.internal.compiler.ISourceElementRequestor;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblem;
+import org.eclipse.jdt.internal.compiler.problem.ProblemSeverities;
+import org.eclipse.jdt.internal.compiler.util.Util;
+import org.eclipse.jdt.internal.core.DefaultWorkingCopyOwner;
+import org.eclipse.jdt.internal.core.JavaProject;
+import org.eclipse.jdt.internal.core.JavaModelManager.PerWorkingCopyInfo;
+import org.eclipse.jdt.internal.core.NameLookup;
+
+/**
+ * Reconciles a working copy by reparsing only the body of the method that contains an edit. The edit is found by comparing the
+ * working copy contents with the contents the cached {@link ModuleNode} was built from. If the edit lies strictly inside the braces
+ * of a single method, that body is re-lexed and re-parsed on its own, scoped, resolved against the types already resolved in the
+ * module and spliced into the cached module while nobody reads it. Source locations of everything after the edit are shifted. The
+ * Java model is rebuilt from the structure recorded by the previous reconcile and the problems of the previous reconcile are
+ * reported again, both with their positions moved.
+ * <p>
+ * Anything that can't be handled this way makes {@link #reconcile(char[], ISourceElementRequestor, char[][])} return false, without
+ * changing anything, and the caller falls back to a full reconcile: edits outside a method body, syntax errors, names that the
+ * compiler would resolve to a type the module does not use yet, anonymous inner classes, static methods, static imports,
+ * annotations that may trigger AST transformations, bodies that the compiler changed after parsing them, problems or task tags in
+ * the body, an earlier compile that had errors and readers of the module node. Closure bodies are covered through their enclosing
+ * method.
+ * <p>
+ * Enabled with the <code>greclipse.reconcile.incremental</code> system property.
+ */
+public class IncrementalReconciler {
+
+	public static boolean ENABLED = Boolean.getBoolean("greclipse.reconcile.incremental"); //$NON-NLS-1$
+
+	private static final String SYNTHETIC_NAME = "_";
+
+	private static final String[] HEADER_TOKENS = { "class", SYNTHETIC_NAME, "{", "def", SYNTHETIC_NAME, "(", ")" };
+
+	private static final String[] FOOTER_TOKENS = { "}" };
+
+	// packages and types groovy imports by default
+	private static final String[] DEFAULT_IMPORTS = { "java.lang.", "java.util.", "java.io.", "java.net.", "groovy.lang.",
+			"groovy.util." };
+
+	private static final String[] DEFAULT_TYPES = { "java.math.BigDecimal", "java.math.BigInteger" };
+
+	// annotations that don't trigger AST transformations
+	private static final Set<String> PLAIN_ANNOTATIONS = new HashSet<String>(Arrays.asList("java.lang.Override",
+			"java.lang.Deprecated", "java.lang.SuppressWarnings"));
+
+	private final GroovyCompilationUnit unit;
+
+	// the edit: old contents [start,oldEnd) were replaced with new contents [start,newEnd)
+	private int start;
+	private int oldEnd;
+	private int newEnd;
+	private int delta;
+	private int oldEndLine, oldEndColumn;
+	private int lineDelta, columnDelta;
+
+	private Map<String, CategorizedProblem[]> problems;
+
+	IncrementalReconciler(GroovyCompilationUnit unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * @param newContents the contents of the working copy
+	 * @param requestor receives the structure of the working copy, if it was reconciled
+	 * @param taskTags the task tags being checked, or null if they are not
+	 * @return true if the working copy was reconciled, false if a full reconcile is required
+	 */
+	boolean reconcile(char[] newContents, ISourceElementRequestor requestor, char[][] taskTags) {
+		PerWorkingCopyInfo info = unit.getPerWorkingCopyInfo();
+		if (info == null) {
+			return false;
+		}
+		ModuleNodeMapper mapper = ModuleNodeMapper.getInstance();
+		mapper.lock(unit);
+		try {
+			ModuleNodeInfo cached = mapper.get(info);
+			if (cached == null || cached.contents == null || cached.hasErrors || cached.structure == null
+					|| cached.problems == null) {
+				return false;
+			}
+			char[] oldContents = cached.contents;
+			if (!computeEdit(oldContents, newContents)) {
+				return false;
+			}
+			ModuleNode module = cached.module;
+			if (!module.getStaticImports().isEmpty() || !module.getStaticStarImports().isEmpty()) {
+				return false;
+			}
+			MethodNode method = findEnclosingMethod(module, oldContents);
+			if (method == null) {
+				return false;
+			}
+			BlockStatement oldCode = (BlockStatement) method.getCode();
+			int bodyStart = oldCode.getStart();
+			int oldBodyEnd = oldCode.getEnd();
+			int bodyEnd = oldBodyEnd + delta;
+			if (containsTaskTag(newContents, bodyStart, bodyEnd, taskTags)) {
+				return false;
+			}
+
+			// everything outside the body is unchanged, only moved
+			int[] lineSeparators = GroovyUtils.getSourceLineSeparatorsIn(newContents);
+			Map<String, CategorizedProblem[]> newProblems = shiftProblems(cached.problems, bodyStart, oldBodyEnd, lineSeparators,
+					taskTags != null);
+			if (newProblems == null) {
+				return false;
+			}
+			byte[] structure = StructureEventRecorder.shiftEvents(cached.structure, start, oldEnd, delta, lineSeparators);
+			if (structure == null) {
+				return false;
+			}
+
+			SourceUnit sourceUnit = parseBody(newContents, bodyStart, bodyEnd);
+			if (sourceUnit == null) {
+				return false;
+			}
+			BlockStatement newCode = findSyntheticBody(sourceUnit.getAST(), bodyStart, bodyEnd);
+			if (newCode == null || !isAsParsed(oldCode, oldContents)) {
+				return false;
+			}
+			Map<String, ClassNode> knownTypes = collectResolvedTypes(module);
+			Set<String> typeNames = findTypeNames(module, method, newCode, knownTypes);
+
+			if (!mapper.tryBeginUpdate(unit)) {
+				// the module node is being read
+				return false;
+			}
+			try {
+				// splice in the new body, scope and resolve it, backing out if that fails
+				VariableScope oldScope = method.getVariableScope();
+				method.setCode(newCode);
+				boolean resolved;
+				try {
+					resolved = scopeAndResolve(method, sourceUnit, knownTypes, typeNames);
+				} catch (RuntimeException e) {
+					resolved = false;
+					GroovyLogManager.manager.logException(TraceCategory.COMPILER, e);
+				}
+				if (!resolved) {
+					method.setCode(oldCode);
+					method.setVariableScope(oldScope);
+					return false;
+				}
+				try {
+					shiftModule(module, newCode);
+				} catch (RuntimeException e) {
+					// the module node is only partly moved, it must be rebuilt
+					mapper.remove(info);
+					throw e;
+				}
+			} finally {
+				mapper.endUpdate(unit);
+			}
+			mapper.storeUpdated(info, cached, newContents, structure, newProblems);
+			StructureEventRecorder.replay(structure, requestor);
+			problems = newProblems;
+
+			if (GroovyLogManager.manager.hasLoggers()) {
+				GroovyLogManager.manager.log(TraceCategory.COMPILER, "Incremental reconcile of " + unit.getElementName()
+						+ ": reparsed body of " + method.getName() + " [" + bodyStart + "," + bodyEnd + ")");
+			}
+			return true;
+		} catch (JavaModelException e) {
+			GroovyLogManager.manager.logException(TraceCategory.COMPILER, e);
+			return false;
+		} catch (RuntimeException e) {
+			// the groovy parser and visitors are not always robust against odd code. Don't let that escape.
+			GroovyLogManager.manager.logException(TraceCategory.COMPILER, e);
+			return false;
+		} finally {
+			mapper.unlock(unit);
+		}
+	}
+
+	/**
+	 * @return the problems of the working copy by marker type, after a successful {@link #reconcile}
+	 */
+	Map<String, CategorizedProblem[]> getProblems() {
+		return problems;
+	}
+
+	/**
+	 * Finds the smallest region that differs between the old and the new contents
+	 *
+	 * @return false if there is no change
+	 */
+	private boolean computeEdit(char[] oldContents, char[] newContents) {
+		int max = Math.min(oldContents.length, newContents.length);
+		int prefix = 0;
+		while (prefix < max && oldContents[prefix] == newContents[prefix]) {
+			prefix++;
+		}
+		if (prefix == oldContents.length && prefix == newContents.length) {
+			return false;
+		}
+		int suffix = 0;
+		while (suffix < max - prefix
+				&& oldContents[oldContents.length - 1 - suffix] == newContents[newContents.length - 1 - suffix]) {
+			suffix++;
+		}
+		start = prefix;
+		oldEnd = oldContents.length - suffix;
+		newEnd = newContents.length - suffix;
+		delta = newEnd - oldEnd;
+
+		int[] oldPosition = lineAndColumn(oldContents, oldEnd);
+		int[] newPosition = lineAndColumn(newContents, newEnd);
+		oldEndLine = oldPosition[0];
+		oldEndColumn = oldPosition[1];
+		lineDelta = newPosition[0] - oldPosition[0];
+		columnDelta = newPosition[1] - oldPosition[1];
+		return true;
+	}
+
+	/**
+	 * @return the 1-based line and column of the offset, as the groovy parser reports them
+	 */
+	private static int[] lineAndColumn(char[] contents, int offset) {
+		int line = 1, column = 1;
+		for (int i = 0; i < offset && i < contents.length; i++) {
+			char c = contents[i];
+			if (c == '\n' || (c == '\r' && (i + 1 >= contents.length || contents[i + 1] != '\n'))) {
+				line++;
+				column = 1;
+			} else {
+				column++;
+			}
+		}
+		return new int[] { line, column };
+	}
+
+	/**
+	 * @return the method whose body strictly contains the edit, or null if there is no such method or it can't be handled
+	 */
+	private MethodNode findEnclosingMethod(ModuleNode module, char[] oldContents) {
+		for (ClassNode classNode : module.getClasses()) {
+			if (classNode.getEnd() <= oldEnd || classNode.getStart() > start) {
+				continue;
+			}
+			if (classNode instanceof InnerClassNode || classNode.isScript() || hasTransformAnnotations(classNode)) {
+				return null;
+			}
+			for (MethodNode method : classNode.getMethods()) {
+				Statement code = method.getCode();
+				if (method.isSynthetic() || !(code instanceof BlockStatement) || code.getStart() <= 0) {
+					continue;
+				}
+				if (code.getStart() < start && oldEnd < code.getEnd()) {
+					if (oldContents[code.getStart()] != '{' || oldContents[code.getEnd() - 1] != '}') {
+						return null;
+					}
+					// in a static method the compiler turns calls and property accesses into static ones
+					if (method.isStatic() || hasTransformAnnotations(method)) {
+						return null;
+					}
+					// anonymous inner classes in the body would need the Java model rebuilt
+					for (ClassNode other : module.getClasses()) {
+						if (other instanceof InnerClassNode && other.getStart() >= code.getStart()
+								&& other.getEnd() <= code.getEnd()) {
+							return null;
+						}
+					}
+					return method;
+				}
+			}
+			return null;
+		}
+		return null;
+	}
+
+	private static boolean hasTransformAnnotations(AnnotatedNode node) {
+		for (AnnotationNode annotation : node.getAnnotations()) {
+			if (!PLAIN_ANNOTATIONS.contains(annotation.getClassNode().getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Task tags are searched for ignoring case, which may find more than the compiler would
+	 */
+	private static boolean containsTaskTag(char[] contents, int from, int to, char[][] taskTags) {
+		if (taskTags == null) {
+			return false;
+		}
+		String text = new String(contents, from, to - from).toLowerCase();
+		for (char[] taskTag : taskTags) {
+			if (taskTag.length > 0 && text.indexOf(new String(taskTag).toLowerCase()) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the problems with their positions moved by the edit, or null if a problem lies in the body or can't be moved
+	 */
+	private Map<String, CategorizedProblem[]> shiftProblems(Map<String, CategorizedProblem[]> oldProblems, int bodyStart,
+			int oldBodyEnd, int[] lineSeparators, boolean withTasks) {
+		Map<String, CategorizedProblem[]> newProblems = new HashMap<String, CategorizedProblem[]>();
+		for (Map.Entry<String, CategorizedProblem[]> entry : oldProblems.entrySet()) {
+			CategorizedProblem[] categorizedProblems = entry.getValue();
+			if (categorizedProblems == null || (!withTasks && IJavaModelMarker.TASK_MARKER.equals(entry.getKey()))) {
+				continue;
+			}
+			CategorizedProblem[] moved = new CategorizedProblem[categorizedProblems.length];
+			for (int i = 0; i < categorizedProblems.length; i++) {
+				CategorizedProblem problem = categorizedProblems[i];
+				if (problem.getClass() != DefaultProblem.class
+						|| (problem.getSourceStart() < oldBodyEnd && problem.getSourceEnd() >= bodyStart)) {
+					return null;
+				}
+				int sourceStart = shift(problem.getSourceStart());
+				int sourceEnd = shift(problem.getSourceEnd());
+				int line = Util.getLineNumber(sourceStart, lineSeparators, 0, lineSeparators.length - 1);
+				moved[i] = new DefaultProblem(problem.getOriginatingFileName(), problem.getMessage(), problem.getID(),
+						problem.getArguments(), problem.isError() ? ProblemSeverities.Error : ProblemSeverities.Warning, sourceStart,
+						sourceEnd, line, Util.searchColumnNumber(lineSeparators, line, sourceStart));
+			}
+			newProblems.put(entry.getKey(), moved);
+		}
+		return newProblems;
+	}
+
+	private int shift(int position) {
+		return position >= oldEnd ? position + delta : position;
+	}
+
+	/**
+	 * Parses the body on its own. The body is placed in a synthetic class and method, at exactly the same offset, line and column
+	 * as in the real source, so the new nodes need no relocation. Everything else in the file is blanked out (keeping line ends).
+	 */
+	private SourceUnit parseBody(char[] contents, int bodyStart, int bodyEnd) {
+		if (bodyEnd > contents.length || contents[bodyEnd - 1] != '}') {
+			return null;
+		}
+		char[] synthetic = new char[contents.length];
+		for (int i = 0; i < contents.length; i++) {
+			char c = contents[i];
+			synthetic[i] = (c == '\n' || c == '\r') ? c : ' ';
+		}
+		System.arraycopy(contents, bodyStart, synthetic, bodyStart, bodyEnd - bodyStart);
+		if (!placeTokens(synthetic, HEADER_TOKENS, 0, bodyStart) || !placeTokens(synthetic, FOOTER_TOKENS, bodyEnd, synthetic.length)) {
+			return null;
+		}
+
+		CompilerConfiguration configuration = new CompilerConfiguration();
+		CompilationUnit compilationUnit = new CompilationUnit(configuration);
+		SourceUnit sourceUnit = new SourceUnit(unit.getElementName(), new String(synthetic), configuration, null,
+				new ErrorCollector(configuration));
+		compilationUnit.addSource(sourceUnit);
+		try {
+			compilationUnit.compile(Phases.CONVERSION);
+		} catch (CompilationFailedException e) {
+			return null;
+		}
+		if (sourceUnit.getErrorCollector().hasErrors() || sourceUnit.getAST() == null) {
+			return null;
+		}
+		return sourceUnit;
+	}
+
+	/**
+	 * Writes tokens into blank space between from and to, never across a line end, so line numbers stay intact
+	 */
+	private static boolean placeTokens(char[] synthetic, String[] tokens, int from, int to) {
+		int pos = from;
+		for (String token : tokens) {
+			int length = token.length();
+			boolean placed = false;
+			while (!placed && pos + length <= to) {
+				boolean fits = true;
+				for (int i = pos; i < pos + length; i++) {
+					if (synthetic[i] != ' ') {
+						fits = false;
+						pos = i + 1;
+						break;
+					}
+				}
+				if (fits) {
+					token.getChars(0, length, synthetic, pos);
+					// leave at least one blank before the next token
+					pos += length + 1;
+					placed = true;
+				}
+			}
+			if (!placed) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static BlockStatement findSyntheticBody(ModuleNode module, int bodyStart, int bodyEnd) {
+		List<ClassNode> classes = module.getClasses();
+		if (classes.size() != 1) {
+			// either something escaped from the body or it contains an anonymous inner class
+			return null;
+		}
+		List<MethodNode> methods = classes.get(0).getMethods(SYNTHETIC_NAME);
+		if (methods.size() != 1) {
+			return null;
+		}
+		Statement code = methods.get(0).getCode();
+		if (!(code instanceof BlockStatement) || code.getStart() != bodyStart || code.getEnd() != bodyEnd) {
+			return null;
+		}
+		return (BlockStatement) code;
+	}
+
+	/**
+	 * A new body only goes through parsing, scoping and the resolution of type names. That is all the compiler may have done to
+	 * the old one, otherwise (eg- a global AST transformation rewrote it) the new body would not be what the compiler makes of it.
+	 */
+	private boolean isAsParsed(BlockStatement oldCode, char[] oldContents) {
+		SourceUnit sourceUnit = parseBody(oldContents, oldCode.getStart(), oldCode.getEnd());
+		if (sourceUnit == null) {
+			return false;
+		}
+		BlockStatement parsed = findSyntheticBody(sourceUnit.getAST(), oldCode.getStart(), oldCode.getEnd());
+		return parsed != null && shape(parsed).equals(shape(oldCode));
+	}
+
+	/**
+	 * @return the kinds of the nodes of the statement, in visiting order. A type name is the same whether it was resolved or not.
+	 */
+	private static List<String> shape(Statement code) {
+		final List<String> shape = new ArrayList<String>();
+		code.visit(new AllNodesVisitor() {
+			@Override
+			protected void visitNode(ASTNode node) {
+				if (!(node instanceof ClassNode)) {
+					shape.add(node instanceof ClassExpression ? VariableExpression.class.getName() : node.getClass().getName());
+				}
+			}
+		});
+		return shape;
+	}
+
+	/**
+	 * Finds the names in the new body that the compiler could resolve to a type the module does not use yet, which can't be
+	 * resolved here. These are simple names of types visible from the module and the first part of qualified type names.
+	 */
+	private Set<String> findTypeNames(ModuleNode module, MethodNode method, BlockStatement newCode, Map<String, ClassNode> knownTypes)
+			throws JavaModelException {
+		final Set<String> names = new HashSet<String>();
+		final Set<String> qualifiedNames = new HashSet<String>();
+		newCode.visit(new CodeVisitorSupport() {
+			@Override
+			public void visitVariableExpression(VariableExpression expression) {
+				names.add(expression.getName());
+			}
+
+			@Override
+			public void visitPropertyExpression(PropertyExpression expression) {
+				String qualifiedName = qualifiedName(expression);
+				if (qualifiedName != null) {
+					qualifiedNames.add(qualifiedName);
+				}
+				super.visitPropertyExpression(expression);
+			}
+		});
+
+		List<String> prefixes = new ArrayList<String>();
+		prefixes.add("");
+		if (module.getPackageName() != null) {
+			prefixes.add(asPrefix(module.getPackageName()));
+		}
+		for (ImportNode starImport : module.getStarImports()) {
+			prefixes.add(asPrefix(starImport.getPackageName()));
+		}
+		prefixes.addAll(Arrays.asList(DEFAULT_IMPORTS));
+		for (ClassNode outer = method.getDeclaringClass(); outer != null; outer = outer.getOuterClass()) {
+			prefixes.add(outer.getName().replace('$', '.') + '.');
+		}
+
+		WorkingCopyOwner owner = unit.getOwner() != null ? unit.getOwner() : DefaultWorkingCopyOwner.PRIMARY;
+		NameLookup lookup = ((JavaProject) unit.getJavaProject()).newNameLookup(owner);
+		Set<String> typeNames = new HashSet<String>();
+		for (String name : names) {
+			if (!knownTypes.containsKey(name) && !"this".equals(name) && !"super".equals(name)
+					&& isType(name, prefixes, lookup)) {
+				typeNames.add(name);
+			}
+		}
+		for (String qualifiedName : qualifiedNames) {
+			String first = qualifiedName.substring(0, qualifiedName.indexOf('.'));
+			if (!typeNames.contains(first) && isType(qualifiedName, prefixes, lookup)) {
+				typeNames.add(first);
+			}
+		}
+		return typeNames;
+	}
+
+	/**
+	 * @return the dotted name for a property expression made of names only, like 'java.util.Collections', or null
+	 */
+	private static String qualifiedName(Expression expression) {
+		if (expression instanceof VariableExpression) {
+			return ((VariableExpression) expression).getName();
+		}
+		if (expression instanceof PropertyExpression) {
+			PropertyExpression property = (PropertyExpression) expression;
+			String object = qualifiedName(property.getObjectExpression());
+			if (object != null && property.getProperty() instanceof ConstantExpression
+					&& ((ConstantExpression) property.getProperty()).getValue() instanceof String) {
+				return object + '.' + ((ConstantExpression) property.getProperty()).getValue();
+			}
+		}
+		return null;
+	}
+
+	private static String asPrefix(String packageName) {
+		return packageName.endsWith(".") ? packageName : packageName + '.';
+	}
+
+	private static boolean isType(String name, List<String> prefixes, NameLookup lookup) {
+		for (String type : DEFAULT_TYPES) {
+			if (type.endsWith('.' + name)) {
+				return true;
+			}
+		}
+		for (String prefix : prefixes) {
+			if (findType(prefix + name, lookup) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Like {@link JavaProject#findType(String)}, with the lookup reused: the trailing parts of the name may be member types
+	 */
+	private static IType findType(String qualifiedName, NameLookup lookup) {
+		IType type = lookup.findType(qualifiedName, false, NameLookup.ACCEPT_ALL);
+		if (type == null) {
+			int lastDot = qualifiedName.lastIndexOf('.');
+			if (lastDot > 0) {
+				IType outer = findType(qualifiedName.substring(0, lastDot), lookup);
+				if (outer != null) {
+					IType member = outer.getType(qualifiedName.substring(lastDot + 1));
+					return member.exists() ? member : null;
+				}
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * Computes variable scopes for the new body and resolves its type references using the types the module has already resolved
+	 */
+	private static boolean scopeAndResolve(final MethodNode method, SourceUnit sourceUnit, final Map<String, ClassNode> knownTypes,
+			final Set<String> typeNames) {
+		final ClassNode declaringClass = method.getDeclaringClass();
+		new VariableScopeVisitor(sourceUnit) {
+			@Override
+			protected void visitConstructorOrMethod(MethodNode node, boolean isConstructor) {
+				if (node == method) {
+					super.visitConstructorOrMethod(node, isConstructor);
+				}
+			}
+
+			@Override
+			public void visitField(FieldNode node) {
+			}
+
+			@Override
+			public void visitProperty(PropertyNode node) {
+			}
+
+			@Override
+			protected void visitObjectInitializerStatements(ClassNode node) {
+			}
+		}.visitClass(declaringClass);
+		if (sourceUnit.getErrorCollector().hasErrors()) {
+			return false;
+		}
+
+		final boolean[] unresolved = new boolean[1];
+		AllNodesVisitor resolver = new AllNodesVisitor() {
+			@Override
+			protected void visitNode(ASTNode node) {
+			}
+
+			@Override
+			protected void visitTypeReference(ClassNode type) {
+				if (!type.isResolved() && !type.isPrimaryClassNode() && !type.isArray() && type.redirect() == type) {
+					ClassNode known = knownTypes.get(type.getUnresolvedName());
+					if (known != null) {
+						type.setRedirect(known);
+					} else {
+						unresolved[0] = true;
+					}
+				}
+			}
+		};
+		method.getCode().visit(resolver);
+		if (unresolved[0]) {
+			return false;
+		}
+
+		// references to types written as plain names, like 'Math.max(a, b)', are seen by the parser as variables
+		ClassCodeExpressionTransformer classExpressions = new ClassCodeExpressionTransformer() {
+			@Override
+			public Expression transform(Expression exp) {
+				if (exp instanceof VariableExpression) {
+					VariableExpression var = (VariableExpression) exp;
+					if (var.getAccessedVariable() instanceof DynamicVariable) {
+						ClassNode known = knownTypes.get(var.getName());
+						if (typeNames.contains(var.getName())) {
+							// a type, or part of a type name, that this module doesn't know about yet
+							unresolved[0] = true;
+						} else if (known != null) {
+							ClassNode reference = ClassHelper.makeWithoutCaching(var.getName());
+							reference.setRedirect(known);
+							reference.setSourcePosition(var);
+							ClassExpression classExpression = new ClassExpression(reference);
+							classExpression.setSourcePosition(var);
+							return classExpression;
+						}
+					}
+				} else if (exp instanceof ClosureExpression) {
+					((ClosureExpression) exp).getCode().visit(this);
+					return exp;
+				}
+				return super.transform(exp);
+			}
+
+			@Override
+			protected SourceUnit getSourceUnit() {
+				return null;
+			}
+		};
+		classExpressions.visitMethod(method);
+		return !unresolved[0];
+	}
+
+	/**
+	 * @return simple and qualified names of types as written in the module, mapped to what they were resolved to
+	 */
+	private static Map<String, ClassNode> collectResolvedTypes(ModuleNode module) {
+		final Map<String, ClassNode> knownTypes = new HashMap<String, ClassNode>();
+		for (ClassNode classNode : module.getClasses()) {
+			knownTypes.put(classNode.getNameWithoutPackage(), classNode);
+			knownTypes.put(classNode.getName(), classNode);
+			if (classNode instanceof InnerClassNode) {
+				// the module's own member types can be referred to by their simple name
+				String name = classNode.getName();
+				knownTypes.put(name.substring(name.lastIndexOf('$') + 1), classNode);
+			}
+		}
+		for (ImportNode importNode : module.getImports()) {
+			if (importNode.getAlias() != null && importNode.getType() != null) {
+				knownTypes.put(importNode.getAlias(), importNode.getType().redirect());
+			}
+		}
+		new AllNodesVisitor() {
+			@Override
+			protected void visitNode(ASTNode node) {
+			}
+
+			@Override
+			protected void visitTypeReference(ClassNode type) {
+				if (type.redirect() != type && !type.isGenericsPlaceHolder() && !knownTypes.containsKey(type.getUnresolvedName())) {
+					knownTypes.put(type.getUnresolvedName(), type.redirect());
+				}
+			}
+		}.visitModule(module);
+		return knownTypes;
+	}
+
+	/**
+	 * Moves every node of the module that starts or ends after the edit, except the nodes of the new body which are already in
+	 * place.
+	 */
+	private void shiftModule(ModuleNode module, BlockStatement newCode) {
+		final Set<ASTNode> newNodes = newNodes(newCode);
+		new AllNodesVisitor() {
+			@Override
+			protected void visitNode(ASTNode node) {
+				if (!newNodes.contains(node)) {
+					shift(node);
+				}
+			}
+		}.visitModule(module);
+	}
+
+	private static Set<ASTNode> newNodes(BlockStatement newCode) {
+		final Map<ASTNode, Boolean> nodes = new IdentityHashMap<ASTNode, Boolean>();
+		newCode.visit(new AllNodesVisitor() {
+			@Override
+			protected void visitNode(ASTNode node) {
+				nodes.put(node, Boolean.TRUE);
+			}
+		});
+		return nodes.keySet();
+	}
+
+	private void shift(ASTNode node) {
+		if (node.getEnd() >= oldEnd && node.getEnd() > 0) {
+			if (node.getLastLineNumber() == oldEndLine && node.getLastColumnNumber() >= oldEndColumn) {
+				node.setLastColumnNumber(node.getLastColumnNumber() + columnDelta);
+			}
+			if (node.getLastLineNumber() > 0) {
+				node.setLastLineNumber(node.getLastLineNumber() + lineDelta);
+			}
+			node.setEnd(node.getEnd() + delta);
+		}
+		if (node.getStart() >= oldEnd && node.getStart() > 0) {
+			if (node.getLineNumber() == oldEndLine && node.getColumnNumber() >= oldEndColumn) {
+				node.setColumnNumber(node.getColumnNumber() + columnDelta);
+			}
+			if (node.getLineNumber() > 0) {
+				node.setLineNumber(node.getLineNumber() + lineDelta);
+			}
+			node.setStart(node.getStart() + delta);
+		}
+		if (node instanceof AnnotatedNode) {
+			AnnotatedNode annotated = (AnnotatedNode) node;
+			if (annotated.getNameStart() >= oldEnd && annotated.getNameStart() > 0) {
+				annotated.setNameStart(annotated.getNameStart() + delta);
+			}
+			if (annotated.getNameEnd() >= oldEnd && annotated.getNameEnd() > 0) {
+				annotated.setNameEnd(annotated.getNameEnd() + delta);
+			}
+		}
+	}
+}
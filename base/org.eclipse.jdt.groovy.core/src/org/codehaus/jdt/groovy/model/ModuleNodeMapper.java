@@ -12,12 +12,22 @@
 package org.codehaus.jdt.groovy.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
 import org.codehaus.jdt.groovy.internal.compiler.ast.GroovyCompilationUnitDeclaration;
 import org.codehaus.jdt.groovy.internal.compiler.ast.JDTResolver;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -25,7 +35,10 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
 import org.eclipse.jdt.groovy.core.util.ReflectionUtils;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
 import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.eclipse.jdt.internal.core.JavaModelManager.PerWorkingCopyInfo;
 import org.eclipse.jdt.internal.core.util.Util;
@@ -36,37 +49,261 @@ import org.eclipse.jdt.internal.core.util.Util;
  *
  *          This class stores module nodes for groovy compilation units This class is not meant to be accessed externally.
  *
- *          One module node is stored per working copy of a unit
+ *          One module node is stored per working copy of a unit. Entries are kept in a concurrent map and reads do not lock, they
+ *          only stamp the entry with the time of the access. Changing an entry only holds the monitor of that entry. Operations
+ *          that must not interleave for a single working copy (becoming or discarding a working copy, caching a new module node)
+ *          lock the stripe for that unit, so different units do not contend. A module node that is updated in
+ *          place by an incremental reconcile is only updated while nobody reads it, see {@link #beginReading(ICompilationUnit)}.
+ *
+ *          Memory is bounded by two budgets, set through system properties. When more than
+ *          <code>greclipse.moduleNodeMapper.maxResolvers</code> entries retain a resolver, the resolvers of the least recently used
+ *          entries are dropped first. When more than <code>greclipse.moduleNodeMapper.maxModules</code> entries are stored, the
+ *          least recently used entries are dropped entirely. Only this eviction pass takes a lock shared by all units, and it only
+ *          runs when a budget is exceeded. It orders the entries by their access stamps, so the order is approximately least
+ *          recently used. {@link GroovyCompilationUnit#getModuleInfo(boolean)} rebuilds a dropped
+ *          module node when it is asked for again, which is counted in {@link #getModuleRebuilds()}.
  */
 public class ModuleNodeMapper {
 
 	public static class ModuleNodeInfo {
 		public ModuleNodeInfo(ModuleNode module, JDTResolver resolver) {
+			this(module, resolver, null, true);
+		}
+
+		public ModuleNodeInfo(ModuleNode module, JDTResolver resolver, char[] contents, boolean hasErrors) {
+			this(module, resolver, contents, hasErrors, null, null);
+		}
+
+		ModuleNodeInfo(ModuleNode module, JDTResolver resolver, char[] contents, boolean hasErrors, byte[] structure,
+				Map<String, CategorizedProblem[]> problems) {
+			this(module, resolver, contents, hasErrors, structure, problems, STAMPS.incrementAndGet());
+		}
+
+		ModuleNodeInfo(ModuleNode module, JDTResolver resolver, char[] contents, boolean hasErrors, byte[] structure,
+				Map<String, CategorizedProblem[]> problems, long stamp) {
 			this.module = module;
 			this.resolver = resolver;
+			this.contents = contents;
+			this.hasErrors = hasErrors;
+			this.structure = structure;
+			this.problems = problems;
+			this.stamp = stamp;
 		}
 
+		private static final AtomicLong STAMPS = new AtomicLong();
+
 		public final ModuleNode module;
 		public final JDTResolver resolver;
+
+		/**
+		 * the source the module was built from, or null if not known
+		 */
+		public final char[] contents;
+
+		/**
+		 * true if the compile that produced the module reported errors
+		 */
+		public final boolean hasErrors;
+
+		/**
+		 * the structure requestor events that built the Java model of the working copy from the contents, or null if not recorded
+		 */
+		final byte[] structure;
+
+		/**
+		 * the problems reported for the contents, by marker type, or null if not known
+		 */
+		final Map<String, CategorizedProblem[]> problems;
+
+		/**
+		 * changes whenever a module node is stored for a working copy, including when the same module node was updated in place.
+		 * Data derived from the module node should be keyed on this rather than on the identity of the module node.
+		 */
+		public final long stamp;
+	}
+
+	/**
+	 * Holds the entry of a working copy. Changes to the entry are made while holding the monitor of the slot. Dropping the resolver
+	 * of an entry does not count as using it.
+	 */
+	private static final class Slot {
+		volatile ModuleNodeInfo info;
+
+		// when the entry was last used, in ticks of the access clock
+		volatile long lastAccess;
+
+		// set once the slot is no longer in the map, so that it is not changed anymore
+		boolean removed;
+
+		Slot(ModuleNodeInfo info, long lastAccess) {
+			this.info = info;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * A slot and its access stamp at the start of an eviction pass, so that the order does not change while sorting
+	 */
+	private static final class EvictionCandidate implements Comparable<EvictionCandidate> {
+		final PerWorkingCopyInfo info;
+		final Slot slot;
+		final long lastAccess;
+
+		EvictionCandidate(PerWorkingCopyInfo info, Slot slot) {
+			this.info = info;
+			this.slot = slot;
+			this.lastAccess = slot.lastAccess;
+		}
+
+		public int compareTo(EvictionCandidate other) {
+			return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
+		}
 	}
 
 	private static final ModuleNodeMapper INSTANCE = new ModuleNodeMapper();
 
-	static ModuleNodeMapper getInstance() {
+	public static ModuleNodeMapper getInstance() {
 		return INSTANCE;
 	}
 
-	private final ReentrantLock lock = new ReentrantLock(true);
+	private static final int STRIPES = 16;
+
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+	private final ReentrantReadWriteLock[] moduleLocks = new ReentrantReadWriteLock[STRIPES];
+
+	private final ConcurrentHashMap<PerWorkingCopyInfo, Slot> infoToModuleMap = new ConcurrentHashMap<PerWorkingCopyInfo, Slot>();
 
-	private final Map<PerWorkingCopyInfo, ModuleNodeInfo> infoToModuleMap = new HashMap<PerWorkingCopyInfo, ModuleNodeInfo>();
+	// the number of entries that retain a resolver
+	private final AtomicInteger resolverHolders = new AtomicInteger();
+
+	private final AtomicLong accessClock = new AtomicLong();
+
+	// only held during an eviction pass
+	private final Object evictionLock = new Object();
+
+	private volatile int maxResolvers = Integer.getInteger("greclipse.moduleNodeMapper.maxResolvers", 20).intValue();
+
+	private volatile int maxModules = Integer.getInteger("greclipse.moduleNodeMapper.maxModules", 200).intValue();
+
+	private final AtomicLong resolverEvictions = new AtomicLong();
+
+	private final AtomicLong moduleEvictions = new AtomicLong();
+
+	private final AtomicLong moduleRebuilds = new AtomicLong();
+
+	/**
+	 * Notified when a cached module node is replaced by a newer one, or dropped from the cache. Listeners that keep data derived
+	 * from a module node should discard it then.
+	 */
+	public interface IModuleNodeListener {
+		void moduleNodeDiscarded(ICompilationUnit unit, ModuleNode module);
+	}
+
+	private final List<IModuleNodeListener> listeners = new CopyOnWriteArrayList<IModuleNodeListener>();
+
+	public static void addModuleNodeListener(IModuleNodeListener listener) {
+		INSTANCE.listeners.add(listener);
+	}
+
+	public static void removeModuleNodeListener(IModuleNodeListener listener) {
+		INSTANCE.listeners.remove(listener);
+	}
+
+	private void fireModuleNodeDiscarded(PerWorkingCopyInfo info, ModuleNodeInfo moduleNodeInfo) {
+		for (IModuleNodeListener listener : listeners) {
+			try {
+				listener.moduleNodeDiscarded(info.getWorkingCopy(), moduleNodeInfo.module);
+			} catch (Exception e) {
+				Util.log(e);
+			}
+		}
+	}
+
+	private ModuleNodeMapper() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock(true);
+			moduleLocks[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	private static int stripeIndex(Object unit) {
+		int hash = unit == null ? 0 : unit.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % STRIPES;
+	}
+
+	private ReentrantLock stripeFor(Object unit) {
+		return stripes[stripeIndex(unit)];
+	}
 
 	void store(PerWorkingCopyInfo info, ModuleNode module, JDTResolver resolver) {
-		lock.lock();
-		try {
-			sweepAndPurgeModuleNodes();
-			infoToModuleMap.put(info, new ModuleNodeInfo(module, shouldStoreResovler() ? resolver : null));
-		} finally {
-			lock.unlock();
+		store(info, module, resolver, null, true);
+	}
+
+	void store(PerWorkingCopyInfo info, ModuleNode module, JDTResolver resolver, char[] contents, boolean hasErrors) {
+		store(info, module, resolver, contents, hasErrors, null, null);
+	}
+
+	void store(PerWorkingCopyInfo info, ModuleNode module, JDTResolver resolver, char[] contents, boolean hasErrors,
+			byte[] structure, Map<String, CategorizedProblem[]> problems) {
+		sweepAndPurgeModuleNodes();
+		ModuleNodeInfo moduleNodeInfo = new ModuleNodeInfo(module, shouldStoreResovler() ? resolver : null, contents, hasErrors,
+				structure, problems);
+		ModuleNodeInfo previous = put(info, moduleNodeInfo);
+		if (previous != null && previous.module != module) {
+			fireModuleNodeDiscarded(info, previous);
+		}
+		enforceBudget();
+	}
+
+	/**
+	 * Stores the new state of a module node that was updated in place. Listeners are told the module node was discarded, since
+	 * anything they derived from it is out of date.
+	 */
+	void storeUpdated(PerWorkingCopyInfo info, ModuleNodeInfo previous, char[] contents, byte[] structure,
+			Map<String, CategorizedProblem[]> problems) {
+		ModuleNodeInfo moduleNodeInfo = new ModuleNodeInfo(previous.module, previous.resolver, contents, false, structure,
+				problems);
+		put(info, moduleNodeInfo);
+		fireModuleNodeDiscarded(info, previous);
+	}
+
+	/**
+	 * @return the entry that was replaced, or null
+	 */
+	private ModuleNodeInfo put(PerWorkingCopyInfo info, ModuleNodeInfo moduleNodeInfo) {
+		while (true) {
+			Slot slot = infoToModuleMap.get(info);
+			if (slot == null) {
+				slot = new Slot(moduleNodeInfo, accessClock.incrementAndGet());
+				synchronized (slot) {
+					if (infoToModuleMap.putIfAbsent(info, slot) == null) {
+						if (moduleNodeInfo.resolver != null) {
+							resolverHolders.incrementAndGet();
+						}
+						return null;
+					}
+				}
+			} else {
+				synchronized (slot) {
+					if (!slot.removed) {
+						ModuleNodeInfo previous = slot.info;
+						slot.info = moduleNodeInfo;
+						slot.lastAccess = accessClock.incrementAndGet();
+						countResolverChange(previous, moduleNodeInfo);
+						return previous;
+					}
+				}
+			}
+			// raced with another change of the entry, try again
+		}
+	}
+
+	private void countResolverChange(ModuleNodeInfo previous, ModuleNodeInfo current) {
+		int change = (current != null && current.resolver != null ? 1 : 0) - (previous != null && previous.resolver != null ? 1 : 0);
+		if (change != 0) {
+			resolverHolders.addAndGet(change);
 		}
 	}
 
@@ -86,43 +323,122 @@ public class ModuleNodeMapper {
 	}
 
 	ModuleNode getModule(PerWorkingCopyInfo info) {
-		lock.lock();
-		try {
-			ModuleNodeInfo moduleNodeInfo = get(info);
-			return moduleNodeInfo != null ? moduleNodeInfo.module : null;
-		} finally {
-			lock.unlock();
-		}
+		ModuleNodeInfo moduleNodeInfo = get(info);
+		return moduleNodeInfo != null ? moduleNodeInfo.module : null;
 	}
 
 	ModuleNodeInfo get(PerWorkingCopyInfo info) {
-		lock.lock();
-		try {
-			sweepAndPurgeModuleNodes();
-			return infoToModuleMap.get(info);
-		} finally {
-			lock.unlock();
+		sweepAndPurgeModuleNodes();
+		Slot slot = infoToModuleMap.get(info);
+		if (slot == null) {
+			return null;
 		}
+		slot.lastAccess = accessClock.incrementAndGet();
+		return slot.info;
 	}
 
 	JDTResolver getResolver(PerWorkingCopyInfo info) {
-		lock.lock();
-		try {
-			ModuleNodeInfo moduleNodeInfo = get(info);
-			return moduleNodeInfo != null ? moduleNodeInfo.resolver : null;
-		} finally {
-			lock.unlock();
-		}
+		ModuleNodeInfo moduleNodeInfo = get(info);
+		return moduleNodeInfo != null ? moduleNodeInfo.resolver : null;
 	}
 
 	ModuleNode remove(PerWorkingCopyInfo info) {
-		lock.lock();
-		try {
-			sweepAndPurgeModuleNodes();
-			ModuleNodeInfo removed = infoToModuleMap.remove(info);
-			return removed != null ? removed.module : null;
-		} finally {
-			lock.unlock();
+		sweepAndPurgeModuleNodes();
+		ModuleNodeInfo removed = removeEntry(info);
+		if (removed != null) {
+			fireModuleNodeDiscarded(info, removed);
+		}
+		return removed != null ? removed.module : null;
+	}
+
+	private ModuleNodeInfo removeEntry(PerWorkingCopyInfo info) {
+		Slot slot = infoToModuleMap.remove(info);
+		return slot != null ? markRemoved(slot) : null;
+	}
+
+	/**
+	 * @return the entry of a slot that was just removed from the map
+	 */
+	private ModuleNodeInfo markRemoved(Slot slot) {
+		synchronized (slot) {
+			slot.removed = true;
+			countResolverChange(slot.info, null);
+			return slot.info;
+		}
+	}
+
+	/**
+	 * Drop resolvers, then whole entries, from the least recently used working copies until the budgets are met
+	 */
+	private void enforceBudget() {
+		if (infoToModuleMap.size() <= maxModules && resolverHolders.get() <= maxResolvers) {
+			return;
+		}
+		Map<PerWorkingCopyInfo, ModuleNodeInfo> evicted = null;
+		synchronized (evictionLock) {
+			List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>(infoToModuleMap.size());
+			for (Map.Entry<PerWorkingCopyInfo, Slot> entry : infoToModuleMap.entrySet()) {
+				candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+			}
+			Collections.sort(candidates);
+			for (int i = 0; i < candidates.size() && resolverHolders.get() > maxResolvers; i++) {
+				Slot slot = candidates.get(i).slot;
+				synchronized (slot) {
+					ModuleNodeInfo old = slot.info;
+					if (!slot.removed && old.resolver != null) {
+						slot.info = new ModuleNodeInfo(old.module, null, old.contents, old.hasErrors, old.structure, old.problems,
+								old.stamp);
+						countResolverChange(old, slot.info);
+						resolverEvictions.incrementAndGet();
+					}
+				}
+			}
+			for (int i = 0; i < candidates.size() && infoToModuleMap.size() > maxModules; i++) {
+				EvictionCandidate eldest = candidates.get(i);
+				if (infoToModuleMap.remove(eldest.info, eldest.slot)) {
+					if (evicted == null) {
+						evicted = new LinkedHashMap<PerWorkingCopyInfo, ModuleNodeInfo>();
+					}
+					evicted.put(eldest.info, markRemoved(eldest.slot));
+					moduleEvictions.incrementAndGet();
+				}
+			}
+		}
+		if (evicted != null) {
+			for (Map.Entry<PerWorkingCopyInfo, ModuleNodeInfo> entry : evicted.entrySet()) {
+				fireModuleNodeDiscarded(entry.getKey(), entry.getValue());
+			}
+		}
+		if (GroovyLogManager.manager.hasLoggers() && (resolverEvictions.get() > 0 || moduleEvictions.get() > 0)) {
+			GroovyLogManager.manager.log(TraceCategory.COMPILER, "ModuleNodeMapper: " + getStatistics());
+		}
+	}
+
+	/**
+	 * Changes the budgets, dropping resolvers and entries right away if they are exceeded
+	 */
+	public void setBudgets(int maxResolvers, int maxModules) {
+		this.maxResolvers = maxResolvers;
+		this.maxModules = maxModules;
+		enforceBudget();
+	}
+
+	public int getMaxResolvers() {
+		return maxResolvers;
+	}
+
+	public int getMaxModules() {
+		return maxModules;
+	}
+
+	/**
+	 * Called before a module node that was dropped to stay within the budget is built again
+	 */
+	void moduleRebuilt(ICompilationUnit unit) {
+		moduleRebuilds.incrementAndGet();
+		if (GroovyLogManager.manager.hasLoggers()) {
+			GroovyLogManager.manager.log(TraceCategory.COMPILER, "ModuleNodeMapper: rebuilding dropped module node of "
+					+ unit.getElementName() + " (" + getStatistics() + ")");
 		}
 	}
 
@@ -134,32 +450,57 @@ public class ModuleNodeMapper {
 	 */
 	protected void maybeCacheModuleNode(final JavaModelManager.PerWorkingCopyInfo perWorkingCopyInfo,
 			final GroovyCompilationUnitDeclaration compilationUnitDeclaration) {
+		maybeCacheModuleNode(perWorkingCopyInfo, compilationUnitDeclaration, null, null);
+	}
 
-		if (lock.tryLock()) {
+	/**
+	 * Cache the module node if this is a working copy, along with what an incremental reconcile needs to start from it
+	 *
+	 * @param structure the structure requestor events of the compile, or null to keep the recorded structure if the contents are
+	 *        unchanged
+	 * @param problems the problems of the compile by marker type, or null if not known
+	 */
+	void maybeCacheModuleNode(final JavaModelManager.PerWorkingCopyInfo perWorkingCopyInfo,
+			final GroovyCompilationUnitDeclaration compilationUnitDeclaration, final byte[] structure,
+			final Map<String, CategorizedProblem[]> problems) {
+		if (perWorkingCopyInfo == null || compilationUnitDeclaration == null) {
+			return;
+		}
+		ReentrantLock stripe = stripeFor(perWorkingCopyInfo.getWorkingCopy());
+		if (stripe.tryLock()) {
 			try {
-				if (perWorkingCopyInfo != null && compilationUnitDeclaration != null) {
-					ModuleNode module = compilationUnitDeclaration.getModuleNode();
-
-					// Store it for later
-					if (module != null) {
-						JDTResolver resolver;
-						if (shouldStoreResovler()) {
-							resolver = (JDTResolver) compilationUnitDeclaration.getCompilationUnit().getResolveVisitor();
-						} else {
-							resolver = null;
+				ModuleNode module = compilationUnitDeclaration.getModuleNode();
+
+				// Store it for later
+				if (module != null) {
+					JDTResolver resolver;
+					if (shouldStoreResovler()) {
+						resolver = (JDTResolver) compilationUnitDeclaration.getCompilationUnit().getResolveVisitor();
+					} else {
+						resolver = null;
+					}
+					CompilationResult result = compilationUnitDeclaration.compilationResult;
+					char[] contents = result.compilationUnit != null ? result.compilationUnit.getContents() : null;
+					byte[] knownStructure = structure;
+					if (knownStructure == null) {
+						// the Java model was not rebuilt, so it still has the recorded structure if the contents are the same
+						ModuleNodeInfo previous = get(perWorkingCopyInfo);
+						if (previous != null && contents != null && Arrays.equals(previous.contents, contents)) {
+							knownStructure = previous.structure;
 						}
-						store(perWorkingCopyInfo, module, resolver);
 					}
+					store(perWorkingCopyInfo, module, resolver, contents, result.hasErrors(), knownStructure,
+							problems == null ? null : new HashMap<String, CategorizedProblem[]>(problems));
 				}
 			} finally {
-				lock.unlock();
+				stripe.unlock();
 			}
 		} else {
 			// lock grabbed by someone else. rerun this operation later
 			new Job("Cache module node") {
 				@Override
 				protected IStatus run(IProgressMonitor monitor) {
-					maybeCacheModuleNode(perWorkingCopyInfo, compilationUnitDeclaration);
+					maybeCacheModuleNode(perWorkingCopyInfo, compilationUnitDeclaration, structure, problems);
 					return Status.OK_STATUS;
 				}
 			}.schedule();
@@ -167,50 +508,104 @@ public class ModuleNodeMapper {
 	}
 
 	public static boolean isEmpty() {
-		return INSTANCE.infoToModuleMap.isEmpty();
+		return size() == 0;
 	}
 
 	public static int size() {
 		return INSTANCE.infoToModuleMap.size();
 	}
 
+	/**
+	 * @return the number of stored entries that still retain their resolver
+	 */
+	public static int resolverCount() {
+		return INSTANCE.resolverHolders.get();
+	}
+
+	public static long getResolverEvictions() {
+		return INSTANCE.resolverEvictions.get();
+	}
+
+	public static long getModuleEvictions() {
+		return INSTANCE.moduleEvictions.get();
+	}
+
+	/**
+	 * @return how often a module node that was dropped to stay within the budget had to be built again
+	 */
+	public static long getModuleRebuilds() {
+		return INSTANCE.moduleRebuilds.get();
+	}
+
+	public static String getStatistics() {
+		return "modules=" + size() + " resolvers=" + resolverCount() + " resolverEvictions=" + getResolverEvictions()
+				+ " moduleEvictions=" + getModuleEvictions() + " moduleRebuilds=" + getModuleRebuilds();
+	}
+
 	// GRECLIPSE-804 check to see that the stored nodes are correct
 	// provide info to stdout if not and purge any stale elements
 	void sweepAndPurgeModuleNodes() {
-		lock.lock();
-		try {
-			if (System.getProperty("groovy.eclipse.model.purge") == null) {
-				return;
-			}
+		if (System.getProperty("groovy.eclipse.model.purge") == null) {
+			return;
+		}
 
-			List<PerWorkingCopyInfo> toPurge = new ArrayList<PerWorkingCopyInfo>();
-			for (PerWorkingCopyInfo info : infoToModuleMap.keySet()) {
-				int useCount = ((Integer) ReflectionUtils.getPrivateField(PerWorkingCopyInfo.class, "useCount", info)).intValue();
-				if (useCount <= 0) {
-					String message = "Bad module node map entry: " + info.getWorkingCopy().getElementName();
-					System.out.println(message);
-					Util.log(new RuntimeException(message), message);
-					toPurge.add(info);
-				} else if (useCount > 1) {
-					System.out.println(info.getWorkingCopy().getElementName() + " : useCount : " + useCount);
-				}
+		List<PerWorkingCopyInfo> infos = new ArrayList<PerWorkingCopyInfo>(infoToModuleMap.keySet());
+		List<PerWorkingCopyInfo> toPurge = new ArrayList<PerWorkingCopyInfo>();
+		for (PerWorkingCopyInfo info : infos) {
+			int useCount = ((Integer) ReflectionUtils.getPrivateField(PerWorkingCopyInfo.class, "useCount", info)).intValue();
+			if (useCount <= 0) {
+				String message = "Bad module node map entry: " + info.getWorkingCopy().getElementName();
+				System.out.println(message);
+				Util.log(new RuntimeException(message), message);
+				toPurge.add(info);
+			} else if (useCount > 1) {
+				System.out.println(info.getWorkingCopy().getElementName() + " : useCount : " + useCount);
 			}
+		}
 
-			if (toPurge.size() > 0) {
-				for (PerWorkingCopyInfo info : toPurge) {
-					infoToModuleMap.remove(info);
+		if (toPurge.size() > 0) {
+			for (PerWorkingCopyInfo info : toPurge) {
+				ModuleNodeInfo removed = removeEntry(info);
+				if (removed != null) {
+					fireModuleNodeDiscarded(info, removed);
 				}
 			}
-		} finally {
-			lock.unlock();
 		}
 	}
 
-	public void lock() {
-		lock.lock();
+	/**
+	 * Serializes working copy lifecycle operations on a single unit with caching its module node
+	 */
+	public void lock(Object unit) {
+		stripeFor(unit).lock();
+	}
+
+	public void unlock(Object unit) {
+		stripeFor(unit).unlock();
+	}
+
+	/**
+	 * Keeps the cached module node of the unit from being updated in place until {@link #endReading(ICompilationUnit)}. Must be
+	 * held while walking the module node together with the Java model of the unit.
+	 */
+	public static void beginReading(ICompilationUnit unit) {
+		INSTANCE.moduleLocks[stripeIndex(unit)].readLock().lock();
+	}
+
+	public static void endReading(ICompilationUnit unit) {
+		INSTANCE.moduleLocks[stripeIndex(unit)].readLock().unlock();
+	}
+
+	/**
+	 * Never waits for readers, so a reader that triggers a reconcile can't deadlock with it
+	 *
+	 * @return true if the module node of the unit may be updated in place, until {@link #endUpdate(Object)}
+	 */
+	boolean tryBeginUpdate(Object unit) {
+		return moduleLocks[stripeIndex(unit)].writeLock().tryLock();
 	}
 
-	public void unlock() {
-		lock.unlock();
+	void endUpdate(Object unit) {
+		moduleLocks[stripeIndex(unit)].writeLock().unlock();
 	}
-}
\ No newline at end of file
+}
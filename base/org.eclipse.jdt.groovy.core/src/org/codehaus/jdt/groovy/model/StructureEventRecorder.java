@@ -0,0 +1,920 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SpringSource and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.codehaus.jdt.groovy.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.internal.compiler.ISourceElementRequestor;
+import org.eclipse.jdt.internal.compiler.SourceElementRequestorAdapter;
+import org.eclipse.jdt.internal.compiler.ast.ASTNode;
+import org.eclipse.jdt.internal.compiler.ast.Annotation;
+import org.eclipse.jdt.internal.compiler.ast.Argument;
+import org.eclipse.jdt.internal.compiler.ast.ArrayInitializer;
+import org.eclipse.jdt.internal.compiler.ast.ClassLiteralAccess;
+import org.eclipse.jdt.internal.compiler.ast.Expression;
+import org.eclipse.jdt.internal.compiler.ast.ImportReference;
+import org.eclipse.jdt.internal.compiler.ast.MarkerAnnotation;
+import org.eclipse.jdt.internal.compiler.ast.MethodDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.SingleMemberAnnotation;
+import org.eclipse.jdt.internal.compiler.ast.SingleTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.StringLiteral;
+import org.eclipse.jdt.internal.compiler.ast.TypeReference;
+
+/**
+ * Forwards every call to the structure requestor and records the ones that make up the Java model structure of a groovy file.
+ * References are not recorded, the structure requestor ignores them. Problems make the recording unusable.
+ * <p>
+ * A working copy keeps the events of its last reconcile, so that an {@link IncrementalReconciler incremental reconcile} can
+ * rebuild the Java model by {@link #replay(byte[], ISourceElementRequestor) replaying} them with their positions
+ * {@link #shiftEvents(byte[], int, int, int, int[]) moved} past the edit, instead of compiling the whole unit.
+ */
+public class StructureEventRecorder implements ISourceElementRequestor {
+
+	// events
+	private static final byte ENTER_COMPILATION_UNIT = 1;
+	private static final byte EXIT_COMPILATION_UNIT = 2;
+	private static final byte PACKAGE = 3;
+	private static final byte IMPORT = 4;
+	private static final byte ENTER_TYPE = 5;
+	private static final byte EXIT_TYPE = 6;
+	private static final byte ENTER_METHOD = 7;
+	private static final byte ENTER_CONSTRUCTOR = 8;
+	private static final byte EXIT_METHOD = 9;
+	private static final byte EXIT_CONSTRUCTOR = 10;
+	private static final byte ENTER_FIELD = 11;
+	private static final byte EXIT_FIELD = 12;
+	private static final byte ENTER_INITIALIZER = 13;
+	private static final byte EXIT_INITIALIZER = 14;
+	private static final byte LINE_SEPARATORS = 15;
+
+	// annotation member values
+	private static final byte NO_VALUE = 0;
+	private static final byte STRING_VALUE = 1;
+	private static final byte CLASS_VALUE = 2;
+	private static final byte ARRAY_VALUE = 3;
+
+	private final ISourceElementRequestor requestor;
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	private final DataOutputStream out = new DataOutputStream(bytes);
+
+	private boolean storable = true;
+
+	private boolean complete = false;
+
+	StructureEventRecorder(ISourceElementRequestor requestor) {
+		this.requestor = requestor;
+	}
+
+	boolean isStorable() {
+		return storable && complete;
+	}
+
+	/**
+	 * Called when the recorded structure is known not to be the whole story, eg- the file has errors
+	 */
+	public void discard() {
+		storable = false;
+	}
+
+	byte[] getEvents() {
+		return bytes.toByteArray();
+	}
+
+	private void write(byte event, int... values) {
+		if (storable) {
+			try {
+				out.writeByte(event);
+				for (int value : values) {
+					out.writeInt(value);
+				}
+			} catch (IOException e) {
+				storable = false;
+			}
+		}
+	}
+
+	public void enterCompilationUnit() {
+		write(ENTER_COMPILATION_UNIT);
+		requestor.enterCompilationUnit();
+	}
+
+	public void exitCompilationUnit(int declarationEnd) {
+		write(EXIT_COMPILATION_UNIT, declarationEnd);
+		complete = true;
+		requestor.exitCompilationUnit(declarationEnd);
+	}
+
+	public void acceptPackage(ImportReference importReference) {
+		if (storable) {
+			try {
+				out.writeByte(PACKAGE);
+				writeNames(importReference.tokens);
+				writeLongs(importReference.sourcePositions);
+				out.writeBoolean((importReference.bits & ASTNode.OnDemand) != 0);
+				out.writeInt(importReference.modifiers);
+				out.writeInt(importReference.declarationEnd);
+				out.writeInt(importReference.declarationSourceStart);
+				out.writeInt(importReference.declarationSourceEnd);
+				writeAnnotations(importReference.annotations);
+			} catch (IOException e) {
+				storable = false;
+			}
+		}
+		requestor.acceptPackage(importReference);
+	}
+
+	public void acceptImport(int declarationStart, int declarationEnd, int nameStart, int nameEnd, char[][] tokens,
+			boolean onDemand, int modifiers) {
+		if (storable) {
+			try {
+				out.writeByte(IMPORT);
+				out.writeInt(declarationStart);
+				out.writeInt(declarationEnd);
+				out.writeInt(nameStart);
+				out.writeInt(nameEnd);
+				writeNames(tokens);
+				out.writeBoolean(onDemand);
+				out.writeInt(modifiers);
+			} catch (IOException e) {
+				storable = false;
+			}
+		}
+		requestor.acceptImport(declarationStart, declarationEnd, nameStart, nameEnd, tokens, onDemand, modifiers);
+	}
+
+	public void enterType(TypeInfo typeInfo) {
+		if (storable) {
+			try {
+				out.writeByte(ENTER_TYPE);
+				out.writeInt(typeInfo.declarationStart);
+				out.writeInt(typeInfo.modifiers);
+				writeName(typeInfo.name);
+				out.writeInt(typeInfo.nameSourceStart);
+				out.writeInt(typeInfo.nameSourceEnd);
+				writeName(typeInfo.superclass);
+				writeNames(typeInfo.superinterfaces);
+				writeTypeParameters(typeInfo.typeParameters);
+				writeNames(typeInfo.categories);
+				out.writeBoolean(typeInfo.secondary);
+				out.writeBoolean(typeInfo.anonymousMember);
+				writeAnnotations(typeInfo.annotations);
+				out.writeInt(typeInfo.extraFlags);
+			} catch (IOException e) {
+				storable = false;
+			}
+		}
+		requestor.enterType(typeInfo);
+	}
+
+	public void exitType(int declarationEnd) {
+		write(EXIT_TYPE, declarationEnd);
+		requestor.exitType(declarationEnd);
+	}
+
+	public void enterMethod(MethodInfo methodInfo) {
+		writeMethodInfo(ENTER_METHOD, methodInfo);
+		requestor.enterMethod(methodInfo);
+	}
+
+	public void enterConstructor(MethodInfo methodInfo) {
+		writeMethodInfo(ENTER_CONSTRUCTOR, methodInfo);
+		requestor.enterConstructor(methodInfo);
+	}
+
+	public void exitMethod(int declarationEnd, Expression defaultValue) {
+		if (defaultValue != null) {
+			// annotation member defaults are arbitrary expressions
+			storable = false;
+		}
+		write(EXIT_METHOD, declarationEnd);
+		requestor.exitMethod(declarationEnd, defaultValue);
+	}
+
+	public void exitConstructor(int declarationEnd) {
+		write(EXIT_CONSTRUCTOR, declarationEnd);
+		requestor.exitConstructor(declarationEnd);
+	}
+
+	public void enterField(FieldInfo fieldInfo) {
+		if (storable) {
+			try {
+				out.writeByte(ENTER_FIELD);
+				out.writeInt(fieldInfo.declarationStart);
+				out.writeInt(fieldInfo.modifiers);
+				writeName(fieldInfo.type);
+				writeName(fieldInfo.name);
+				out.writeInt(fieldInfo.nameSourceStart);
+				out.writeInt(fieldInfo.nameSourceEnd);
+				writeNames(fieldInfo.categories);
+				writeAnnotations(fieldInfo.annotations);
+			} catch (IOException e) {
+				storable = false;
+			}
+		}
+		requestor.enterField(fieldInfo);
+	}
+
+	public void exitField(int initializationStart, int declarationEnd, int declarationSourceEnd) {
+		write(EXIT_FIELD, initializationStart, declarationEnd, declarationSourceEnd);
+		requestor.exitField(initializationStart, declarationEnd, declarationSourceEnd);
+	}
+
+	public void enterInitializer(int declarationStart, int modifiers) {
+		write(ENTER_INITIALIZER, declarationStart, modifiers);
+		requestor.enterInitializer(declarationStart, modifiers);
+	}
+
+	public void exitInitializer(int declarationEnd) {
+		write(EXIT_INITIALIZER, declarationEnd);
+		requestor.exitInitializer(declarationEnd);
+	}
+
+	public void acceptLineSeparatorPositions(int[] positions) {
+		if (storable) {
+			try {
+				out.writeByte(LINE_SEPARATORS);
+				writeInts(positions);
+			} catch (IOException e) {
+				storable = false;
+			}
+		}
+		requestor.acceptLineSeparatorPositions(positions);
+	}
+
+	public void acceptProblem(CategorizedProblem problem) {
+		storable = false;
+		requestor.acceptProblem(problem);
+	}
+
+	public void acceptAnnotationTypeReference(char[][] annotation, int sourceStart, int sourceEnd) {
+		requestor.acceptAnnotationTypeReference(annotation, sourceStart, sourceEnd);
+	}
+
+	public void acceptAnnotationTypeReference(char[] annotation, int sourcePosition) {
+		requestor.acceptAnnotationTypeReference(annotation, sourcePosition);
+	}
+
+	public void acceptConstructorReference(char[] typeName, int argCount, int sourcePosition) {
+		requestor.acceptConstructorReference(typeName, argCount, sourcePosition);
+	}
+
+	public void acceptFieldReference(char[] fieldName, int sourcePosition) {
+		requestor.acceptFieldReference(fieldName, sourcePosition);
+	}
+
+	public void acceptMethodReference(char[] methodName, int argCount, int sourcePosition) {
+		requestor.acceptMethodReference(methodName, argCount, sourcePosition);
+	}
+
+	public void acceptTypeReference(char[][] typeName, int sourceStart, int sourceEnd) {
+		requestor.acceptTypeReference(typeName, sourceStart, sourceEnd);
+	}
+
+	public void acceptTypeReference(char[] typeName, int sourcePosition) {
+		requestor.acceptTypeReference(typeName, sourcePosition);
+	}
+
+	public void acceptUnknownReference(char[][] name, int sourceStart, int sourceEnd) {
+		requestor.acceptUnknownReference(name, sourceStart, sourceEnd);
+	}
+
+	public void acceptUnknownReference(char[] name, int sourcePosition) {
+		requestor.acceptUnknownReference(name, sourcePosition);
+	}
+
+	private void writeMethodInfo(byte event, MethodInfo methodInfo) {
+		if (!storable) {
+			return;
+		}
+		try {
+			out.writeByte(event);
+			out.writeBoolean(methodInfo.isConstructor);
+			out.writeBoolean(methodInfo.isAnnotation);
+			out.writeInt(methodInfo.declarationStart);
+			out.writeInt(methodInfo.modifiers);
+			writeName(methodInfo.returnType);
+			writeName(methodInfo.name);
+			out.writeInt(methodInfo.nameSourceStart);
+			out.writeInt(methodInfo.nameSourceEnd);
+			writeNames(methodInfo.parameterTypes);
+			writeNames(methodInfo.parameterNames);
+			writeNames(methodInfo.exceptionTypes);
+			writeTypeParameters(methodInfo.typeParameters);
+			writeNames(methodInfo.categories);
+			writeAnnotations(methodInfo.annotations);
+			writeName(methodInfo.declaringPackageName);
+			out.writeInt(methodInfo.declaringTypeModifiers);
+			out.writeInt(methodInfo.extraFlags);
+			if (methodInfo.parameterInfos == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(methodInfo.parameterInfos.length);
+				for (ParameterInfo parameterInfo : methodInfo.parameterInfos) {
+					out.writeInt(parameterInfo.modifiers);
+					out.writeInt(parameterInfo.declarationStart);
+					out.writeInt(parameterInfo.declarationEnd);
+					out.writeInt(parameterInfo.nameSourceStart);
+					out.writeInt(parameterInfo.nameSourceEnd);
+					writeName(parameterInfo.name);
+				}
+			}
+			Argument[] arguments = methodInfo.node == null ? null : methodInfo.node.arguments;
+			if (arguments == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(arguments.length);
+				for (Argument argument : arguments) {
+					writeName(argument.name);
+					out.writeInt(argument.sourceStart);
+					out.writeInt(argument.sourceEnd);
+					out.writeInt(argument.modifiers);
+					out.writeInt(argument.declarationSourceStart);
+					out.writeInt(argument.declarationSourceEnd);
+					writeAnnotations(argument.annotations);
+				}
+			}
+		} catch (IOException e) {
+			storable = false;
+		}
+	}
+
+	private void writeTypeParameters(TypeParameterInfo[] typeParameters) throws IOException {
+		if (typeParameters == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(typeParameters.length);
+		for (TypeParameterInfo typeParameter : typeParameters) {
+			out.writeInt(typeParameter.declarationStart);
+			out.writeInt(typeParameter.declarationEnd);
+			writeName(typeParameter.name);
+			out.writeInt(typeParameter.nameSourceStart);
+			out.writeInt(typeParameter.nameSourceEnd);
+			writeNames(typeParameter.bounds);
+		}
+	}
+
+	/**
+	 * Only the annotations groovy creates for the model can be stored: markers, and single members with a string, a class
+	 * literal or an array of those.
+	 */
+	private void writeAnnotations(Annotation[] annotations) throws IOException {
+		if (annotations == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(annotations.length);
+		for (Annotation annotation : annotations) {
+			Expression value;
+			if (annotation instanceof MarkerAnnotation) {
+				value = null;
+			} else if (annotation instanceof SingleMemberAnnotation) {
+				value = ((SingleMemberAnnotation) annotation).memberValue;
+			} else {
+				throw new IOException("Unsupported annotation " + annotation); //$NON-NLS-1$
+			}
+			writeTypeReference(annotation.type);
+			out.writeInt(annotation.sourceStart);
+			out.writeInt(annotation.sourceEnd);
+			out.writeInt(annotation.declarationSourceEnd);
+			if (value == null) {
+				out.writeByte(NO_VALUE);
+			} else {
+				writeMemberValue(value);
+			}
+		}
+	}
+
+	private void writeMemberValue(Expression value) throws IOException {
+		if (value instanceof StringLiteral && value.getClass() == StringLiteral.class) {
+			out.writeByte(STRING_VALUE);
+			writeName(((StringLiteral) value).source());
+			out.writeInt(value.sourceStart);
+			out.writeInt(value.sourceEnd);
+		} else if (value instanceof ClassLiteralAccess) {
+			out.writeByte(CLASS_VALUE);
+			writeTypeReference(((ClassLiteralAccess) value).type);
+			out.writeInt(value.sourceStart);
+			out.writeInt(value.sourceEnd);
+		} else if (value instanceof ArrayInitializer && ((ArrayInitializer) value).expressions != null) {
+			Expression[] expressions = ((ArrayInitializer) value).expressions;
+			out.writeByte(ARRAY_VALUE);
+			out.writeInt(value.sourceStart);
+			out.writeInt(value.sourceEnd);
+			out.writeInt(expressions.length);
+			for (Expression expression : expressions) {
+				writeMemberValue(expression);
+			}
+		} else {
+			throw new IOException("Unsupported member value " + value); //$NON-NLS-1$
+		}
+	}
+
+	private void writeTypeReference(TypeReference type) throws IOException {
+		// arrays, generics and the like would come back as a plain reference
+		if (type.getClass() != SingleTypeReference.class && type.getClass() != QualifiedTypeReference.class) {
+			throw new IOException("Unsupported type reference " + type); //$NON-NLS-1$
+		}
+		writeNames(type.getTypeName());
+		out.writeInt(type.sourceStart);
+		out.writeInt(type.sourceEnd);
+	}
+
+	private void writeName(char[] name) throws IOException {
+		if (name == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(name.length);
+		for (char c : name) {
+			out.writeChar(c);
+		}
+	}
+
+	private void writeNames(char[][] names) throws IOException {
+		if (names == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(names.length);
+		for (char[] name : names) {
+			writeName(name);
+		}
+	}
+
+	private void writeInts(int[] ints) throws IOException {
+		if (ints == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(ints.length);
+		for (int i : ints) {
+			out.writeInt(i);
+		}
+	}
+
+	private void writeLongs(long[] longs) throws IOException {
+		if (longs == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(longs.length);
+		for (long l : longs) {
+			out.writeLong(l);
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	// Replaying
+
+	/**
+	 * Sends the recorded events to the requestor. Nothing is sent if the events can't be read.
+	 *
+	 * @return true if the events were replayed
+	 */
+	static boolean replay(byte[] events, ISourceElementRequestor requestor) {
+		return replay(events, 0, requestor);
+	}
+
+	/**
+	 * Like {@link #replay(byte[], ISourceElementRequestor)}, for events that start at the given offset of the data
+	 */
+	static boolean replay(byte[] data, int offset, ISourceElementRequestor requestor) {
+		try {
+			// check all the events can be read before sending anything to the requestor
+			replayEvents(new EventInput(data, offset), null);
+			replayEvents(new EventInput(data, offset), requestor);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Moves the positions in recorded events to match an edit of the recorded source, which replaced the text
+	 * between start (inclusive) and oldEnd (exclusive) with text delta characters longer. The line separators of the edited source
+	 * replace the recorded ones.
+	 *
+	 * @return the moved events, or null if there are positions within the replaced text
+	 */
+	static byte[] shiftEvents(byte[] events, int start, int oldEnd, int delta, int[] lineSeparators) {
+		StructureEventRecorder recorder = new StructureEventRecorder(new SourceElementRequestorAdapter());
+		try {
+			replayEvents(new EventInput(events, 0, start, oldEnd, delta, lineSeparators), recorder);
+		} catch (IOException e) {
+			return null;
+		}
+		return recorder.isStorable() ? recorder.getEvents() : null;
+	}
+
+	/**
+	 * Reads the events and, if there is a requestor, sends them to it
+	 */
+	private static void replayEvents(EventInput in, ISourceElementRequestor requestor) throws IOException {
+		boolean exited = false;
+		while (in.available() > 0) {
+			byte event = in.readByte();
+			switch (event) {
+				case ENTER_COMPILATION_UNIT:
+					if (requestor != null) {
+						requestor.enterCompilationUnit();
+					}
+					break;
+				case EXIT_COMPILATION_UNIT: {
+					int declarationEnd = in.readPosition();
+					if (requestor != null) {
+						requestor.exitCompilationUnit(declarationEnd);
+					}
+					exited = true;
+					break;
+				}
+				case PACKAGE: {
+					ImportReference reference = readImportReference(in);
+					if (requestor != null) {
+						requestor.acceptPackage(reference);
+					}
+					break;
+				}
+				case IMPORT: {
+					int declarationStart = in.readPosition(), declarationEnd = in.readPosition();
+					int nameStart = in.readPosition(), nameEnd = in.readPosition();
+					char[][] tokens = readNames(in);
+					boolean onDemand = in.readBoolean();
+					int modifiers = in.readInt();
+					if (requestor != null) {
+						requestor.acceptImport(declarationStart, declarationEnd, nameStart, nameEnd, tokens, onDemand, modifiers);
+					}
+					break;
+				}
+				case ENTER_TYPE: {
+					ISourceElementRequestor.TypeInfo typeInfo = readTypeInfo(in);
+					if (requestor != null) {
+						requestor.enterType(typeInfo);
+					}
+					break;
+				}
+				case ENTER_METHOD:
+				case ENTER_CONSTRUCTOR: {
+					ISourceElementRequestor.MethodInfo methodInfo = readMethodInfo(in);
+					if (requestor != null) {
+						if (event == ENTER_METHOD) {
+							requestor.enterMethod(methodInfo);
+						} else {
+							requestor.enterConstructor(methodInfo);
+						}
+					}
+					break;
+				}
+				case ENTER_FIELD: {
+					ISourceElementRequestor.FieldInfo fieldInfo = readFieldInfo(in);
+					if (requestor != null) {
+						requestor.enterField(fieldInfo);
+					}
+					break;
+				}
+				case EXIT_FIELD: {
+					int initializationStart = in.readPosition(), declarationEnd = in.readPosition(), declarationSourceEnd = in.readPosition();
+					if (requestor != null) {
+						requestor.exitField(initializationStart, declarationEnd, declarationSourceEnd);
+					}
+					break;
+				}
+				case ENTER_INITIALIZER: {
+					int declarationStart = in.readPosition(), modifiers = in.readInt();
+					if (requestor != null) {
+						requestor.enterInitializer(declarationStart, modifiers);
+					}
+					break;
+				}
+				case EXIT_TYPE:
+				case EXIT_METHOD:
+				case EXIT_CONSTRUCTOR:
+				case EXIT_INITIALIZER: {
+					int declarationEnd = in.readPosition();
+					if (requestor != null) {
+						if (event == EXIT_TYPE) {
+							requestor.exitType(declarationEnd);
+						} else if (event == EXIT_METHOD) {
+							requestor.exitMethod(declarationEnd, null);
+						} else if (event == EXIT_CONSTRUCTOR) {
+							requestor.exitConstructor(declarationEnd);
+						} else {
+							requestor.exitInitializer(declarationEnd);
+						}
+					}
+					break;
+				}
+				case LINE_SEPARATORS: {
+					int[] positions = readInts(in);
+					if (in.lineSeparators != null) {
+						positions = in.lineSeparators;
+					}
+					if (requestor != null) {
+						requestor.acceptLineSeparatorPositions(positions);
+					}
+					break;
+				}
+				default:
+					throw new IOException("Unknown structure event " + event); //$NON-NLS-1$
+			}
+		}
+		if (!exited) {
+			throw new IOException("Truncated structure"); //$NON-NLS-1$
+		}
+	}
+
+	private static ImportReference readImportReference(EventInput in) throws IOException {
+		char[][] tokens = readNames(in);
+		long[] positions = readPositionPairs(in);
+		boolean onDemand = in.readBoolean();
+		ImportReference reference = new ImportReference(tokens, positions, onDemand, in.readInt());
+		reference.declarationEnd = in.readPosition();
+		reference.declarationSourceStart = in.readPosition();
+		reference.declarationSourceEnd = in.readPosition();
+		reference.annotations = readAnnotations(in);
+		return reference;
+	}
+
+	private static ISourceElementRequestor.TypeInfo readTypeInfo(EventInput in) throws IOException {
+		ISourceElementRequestor.TypeInfo typeInfo = new ISourceElementRequestor.TypeInfo();
+		typeInfo.declarationStart = in.readPosition();
+		typeInfo.modifiers = in.readInt();
+		typeInfo.name = readName(in);
+		typeInfo.nameSourceStart = in.readPosition();
+		typeInfo.nameSourceEnd = in.readPosition();
+		typeInfo.superclass = readName(in);
+		typeInfo.superinterfaces = readNames(in);
+		typeInfo.typeParameters = readTypeParameters(in);
+		typeInfo.categories = readNames(in);
+		typeInfo.secondary = in.readBoolean();
+		typeInfo.anonymousMember = in.readBoolean();
+		typeInfo.annotations = readAnnotations(in);
+		typeInfo.extraFlags = in.readInt();
+		return typeInfo;
+	}
+
+	private static ISourceElementRequestor.MethodInfo readMethodInfo(EventInput in) throws IOException {
+		ISourceElementRequestor.MethodInfo methodInfo = new ISourceElementRequestor.MethodInfo();
+		methodInfo.isConstructor = in.readBoolean();
+		methodInfo.isAnnotation = in.readBoolean();
+		methodInfo.declarationStart = in.readPosition();
+		methodInfo.modifiers = in.readInt();
+		methodInfo.returnType = readName(in);
+		methodInfo.name = readName(in);
+		methodInfo.nameSourceStart = in.readPosition();
+		methodInfo.nameSourceEnd = in.readPosition();
+		methodInfo.parameterTypes = readNames(in);
+		methodInfo.parameterNames = readNames(in);
+		methodInfo.exceptionTypes = readNames(in);
+		methodInfo.typeParameters = readTypeParameters(in);
+		methodInfo.categories = readNames(in);
+		methodInfo.annotations = readAnnotations(in);
+		methodInfo.declaringPackageName = readName(in);
+		methodInfo.declaringTypeModifiers = in.readInt();
+		methodInfo.extraFlags = in.readInt();
+		int parameterCount = in.readInt();
+		if (parameterCount >= 0) {
+			methodInfo.parameterInfos = new ISourceElementRequestor.ParameterInfo[parameterCount];
+			for (int i = 0; i < parameterCount; i++) {
+				ISourceElementRequestor.ParameterInfo parameterInfo = new ISourceElementRequestor.ParameterInfo();
+				parameterInfo.modifiers = in.readInt();
+				parameterInfo.declarationStart = in.readPosition();
+				parameterInfo.declarationEnd = in.readPosition();
+				parameterInfo.nameSourceStart = in.readPosition();
+				parameterInfo.nameSourceEnd = in.readPosition();
+				parameterInfo.name = readName(in);
+				methodInfo.parameterInfos[i] = parameterInfo;
+			}
+		}
+		// the structure requestor only looks at the arguments of the declaration, for their positions and annotations
+		int argumentCount = in.readInt();
+		if (argumentCount >= 0) {
+			MethodDeclaration node = new MethodDeclaration(null);
+			node.arguments = new Argument[argumentCount];
+			for (int i = 0; i < argumentCount; i++) {
+				char[] name = readName(in);
+				int sourceStart = in.readPosition(), sourceEnd = in.readPosition();
+				Argument argument = new Argument(name, ((long) sourceStart << 32) | (sourceEnd & 0xFFFFFFFFL), null, in.readInt());
+				argument.declarationSourceStart = in.readPosition();
+				argument.declarationSourceEnd = in.readPosition();
+				argument.annotations = readAnnotations(in);
+				node.arguments[i] = argument;
+			}
+			methodInfo.node = node;
+		}
+		return methodInfo;
+	}
+
+	private static ISourceElementRequestor.FieldInfo readFieldInfo(EventInput in) throws IOException {
+		ISourceElementRequestor.FieldInfo fieldInfo = new ISourceElementRequestor.FieldInfo();
+		fieldInfo.declarationStart = in.readPosition();
+		fieldInfo.modifiers = in.readInt();
+		fieldInfo.type = readName(in);
+		fieldInfo.name = readName(in);
+		fieldInfo.nameSourceStart = in.readPosition();
+		fieldInfo.nameSourceEnd = in.readPosition();
+		fieldInfo.categories = readNames(in);
+		fieldInfo.annotations = readAnnotations(in);
+		return fieldInfo;
+	}
+
+	private static ISourceElementRequestor.TypeParameterInfo[] readTypeParameters(EventInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+		ISourceElementRequestor.TypeParameterInfo[] typeParameters = new ISourceElementRequestor.TypeParameterInfo[count];
+		for (int i = 0; i < count; i++) {
+			ISourceElementRequestor.TypeParameterInfo typeParameter = new ISourceElementRequestor.TypeParameterInfo();
+			typeParameter.declarationStart = in.readPosition();
+			typeParameter.declarationEnd = in.readPosition();
+			typeParameter.name = readName(in);
+			typeParameter.nameSourceStart = in.readPosition();
+			typeParameter.nameSourceEnd = in.readPosition();
+			typeParameter.bounds = readNames(in);
+			typeParameters[i] = typeParameter;
+		}
+		return typeParameters;
+	}
+
+	private static Annotation[] readAnnotations(EventInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+		Annotation[] annotations = new Annotation[count];
+		for (int i = 0; i < count; i++) {
+			TypeReference type = readTypeReference(in);
+			int sourceStart = in.readPosition(), sourceEnd = in.readPosition(), declarationSourceEnd = in.readPosition();
+			Expression value = readMemberValue(in);
+			Annotation annotation;
+			if (value == null) {
+				annotation = new MarkerAnnotation(type, sourceStart);
+			} else {
+				SingleMemberAnnotation singleMember = new SingleMemberAnnotation(type, sourceStart);
+				singleMember.memberValue = value;
+				annotation = singleMember;
+			}
+			annotation.sourceEnd = sourceEnd;
+			annotation.declarationSourceEnd = declarationSourceEnd;
+			annotations[i] = annotation;
+		}
+		return annotations;
+	}
+
+	private static Expression readMemberValue(EventInput in) throws IOException {
+		byte kind = in.readByte();
+		switch (kind) {
+			case NO_VALUE:
+				return null;
+			case STRING_VALUE: {
+				char[] value = readName(in);
+				int sourceStart = in.readPosition(), sourceEnd = in.readPosition();
+				return new StringLiteral(value, sourceStart, sourceEnd, -1);
+			}
+			case CLASS_VALUE: {
+				TypeReference type = readTypeReference(in);
+				int sourceStart = in.readPosition(), sourceEnd = in.readPosition();
+				ClassLiteralAccess access = new ClassLiteralAccess(sourceEnd, type);
+				access.sourceStart = sourceStart;
+				return access;
+			}
+			case ARRAY_VALUE: {
+				ArrayInitializer array = new ArrayInitializer();
+				array.sourceStart = in.readPosition();
+				array.sourceEnd = in.readPosition();
+				array.expressions = new Expression[in.readInt()];
+				for (int i = 0; i < array.expressions.length; i++) {
+					array.expressions[i] = readMemberValue(in);
+					if (array.expressions[i] == null) {
+						throw new IOException("Missing array element"); //$NON-NLS-1$
+					}
+				}
+				return array;
+			}
+			default:
+				throw new IOException("Unknown member value " + kind); //$NON-NLS-1$
+		}
+	}
+
+	private static TypeReference readTypeReference(EventInput in) throws IOException {
+		char[][] tokens = readNames(in);
+		int sourceStart = in.readPosition(), sourceEnd = in.readPosition();
+		if (tokens == null || tokens.length == 0) {
+			throw new IOException("Missing type name"); //$NON-NLS-1$
+		}
+		long position = ((long) sourceStart << 32) | (sourceEnd & 0xFFFFFFFFL);
+		TypeReference type;
+		if (tokens.length == 1) {
+			type = new SingleTypeReference(tokens[0], position);
+		} else {
+			long[] positions = new long[tokens.length];
+			Arrays.fill(positions, position);
+			type = new QualifiedTypeReference(tokens, positions);
+		}
+		type.sourceStart = sourceStart;
+		type.sourceEnd = sourceEnd;
+		return type;
+	}
+
+	private static char[] readName(EventInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		char[] name = new char[length];
+		for (int i = 0; i < length; i++) {
+			name[i] = in.readChar();
+		}
+		return name;
+	}
+
+	private static char[][] readNames(EventInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+		char[][] names = new char[count][];
+		for (int i = 0; i < count; i++) {
+			names[i] = readName(in);
+		}
+		return names;
+	}
+
+	private static int[] readInts(EventInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+		int[] ints = new int[count];
+		for (int i = 0; i < count; i++) {
+			ints[i] = in.readInt();
+		}
+		return ints;
+	}
+
+	private static long[] readPositionPairs(EventInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			return null;
+		}
+		long[] pairs = new long[count];
+		for (int i = 0; i < count; i++) {
+			long pair = in.readLong();
+			int start = in.shift((int) (pair >>> 32)), end = in.shift((int) pair);
+			pairs[i] = ((long) start << 32) | (end & 0xFFFFFFFFL);
+		}
+		return pairs;
+	}
+
+	/**
+	 * Reads the events of an entry, moving source positions if the source was edited since they were recorded
+	 */
+	private static final class EventInput extends DataInputStream {
+
+		private final int start, oldEnd, delta;
+
+		final int[] lineSeparators;
+
+		EventInput(byte[] data, int offset) {
+			this(data, offset, Integer.MAX_VALUE, Integer.MAX_VALUE, 0, null);
+		}
+
+		EventInput(byte[] data, int offset, int start, int oldEnd, int delta, int[] lineSeparators) {
+			super(new ByteArrayInputStream(data, offset, data.length - offset));
+			this.start = start;
+			this.oldEnd = oldEnd;
+			this.delta = delta;
+			this.lineSeparators = lineSeparators;
+		}
+
+		int readPosition() throws IOException {
+			return shift(readInt());
+		}
+
+		int shift(int position) throws IOException {
+			if (position >= oldEnd) {
+				return position + delta;
+			}
+			if (position >= start) {
+				throw new IOException("Position within the edited text"); //$NON-NLS-1$
+			}
+			return position;
+		}
+	}
+}
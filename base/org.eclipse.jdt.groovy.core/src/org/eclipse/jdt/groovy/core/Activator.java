@@ -15,6 +15,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import org.codehaus.jdt.groovy.model.GroovyStructureCache;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.runtime.Plugin;
@@ -59,6 +60,7 @@ public class Activator extends Plugin {
 	}
 
 	public void stop(BundleContext context) throws Exception {
+		GroovyStructureCache.shutdown();
 		plugin = null;
 		super.stop(context);
 	}
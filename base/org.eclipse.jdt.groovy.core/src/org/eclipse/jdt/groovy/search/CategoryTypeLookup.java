@@ -59,14 +59,15 @@ public class CategoryTypeLookup implements ITypeLookup {
 			}
 			String getterName = AccessorSupport.GETTER.createAccessorName(text);
 			String setterName = AccessorSupport.SETTER.createAccessorName(text);
+			DGMIndex index = DGMIndex.getInstance();
 			for (ClassNode category : categories) {
-				List<MethodNode> methods = category.getMethods(text);
+				List<MethodNode> methods = getMethods(index, category, text);
 
 				possibleMethods.addAll(methods);
 
 				// also check to see if the getter variant of any name is available
 				if (getterName != null) {
-					methods = category.getMethods(getterName);
+					methods = getMethods(index, category, getterName);
 					for (MethodNode method : methods) {
 						if (method.isStatic() && AccessorSupport.findAccessorKind(method, true) == AccessorSupport.GETTER) {
 							possibleMethods.add(method);
@@ -74,7 +75,7 @@ public class CategoryTypeLookup implements ITypeLookup {
 					}
 				}
 				if (setterName != null) {
-					methods = category.getMethods(setterName);
+					methods = getMethods(index, category, setterName);
 					for (MethodNode method : methods) {
 						if (method.isStatic() && AccessorSupport.findAccessorKind(method, true) == AccessorSupport.SETTER) {
 							possibleMethods.add(method);
@@ -82,10 +83,16 @@ public class CategoryTypeLookup implements ITypeLookup {
 					}
 				}
 			}
+			if (possibleMethods.isEmpty() || currentType == null) {
+				return null;
+			}
+			// compute the receiver's super types once rather than for every candidate
+			Set<String> allSupers = new HashSet<String>();
+			allSupers.add("java.lang.Object");
+			findAllSupers(VariableScope.maybeConvertFromPrimitive(currentType), allSupers);
 			for (MethodNode methodNode : possibleMethods) {
 				Parameter[] params = methodNode.getParameters();
-				if (params != null && params.length > 0
-						&& isAssignableFrom(VariableScope.maybeConvertFromPrimitive(currentType), params[0].getType())) {
+				if (params != null && params.length > 0 && allSupers.contains(params[0].getType().getName())) {
 					ClassNode declaringClass = methodNode.getDeclaringClass();
 					ClassNode returnType = SimpleTypeLookup.typeFromDeclaration(methodNode, currentType);
 					TypeConfidence confidence = getConfidence(declaringClass);
@@ -99,6 +106,11 @@ public class CategoryTypeLookup implements ITypeLookup {
 		return null;
 	}
 
+	private List<MethodNode> getMethods(DGMIndex index, ClassNode category, String name) {
+		List<MethodNode> methods = index.getMethods(category, name);
+		return methods != null ? methods : category.getMethods(name);
+	}
+
 	/**
 	 * DGM and DGSM classes are loosely inferred so that other lookups can provide better solutions
 	 *
@@ -150,28 +162,6 @@ public class CategoryTypeLookup implements ITypeLookup {
 		}
 	}
 
-	/**
-	 * can from be assigned to to?
-	 *
-	 * @param from
-	 * @param to
-	 * @return
-	 */
-	private boolean isAssignableFrom(ClassNode from, ClassNode to) {
-		if (from == null || to == null) {
-			return false;
-		}
-		Set<String> allSupers = new HashSet<String>();
-		allSupers.add("java.lang.Object");
-		findAllSupers(from, allSupers);
-		for (String supr : allSupers) {
-			if (to.getName().equals(supr)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
 	public TypeLookupResult lookupType(FieldNode node, VariableScope scope) {
 		return null;
 	}
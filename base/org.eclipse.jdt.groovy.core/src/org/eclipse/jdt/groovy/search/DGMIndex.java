@@ -0,0 +1,162 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.jdt.groovy.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+
+/**
+ * An immutable index of the methods of the default categories ({@link VariableScope#ALL_DEFAULT_CATEGORIES}), built once for the
+ * Groovy runtime this plugin is running with. Answers "which methods of category C are named N" and "which methods of category C
+ * take a first parameter of type T" with hash lookups instead of scanning the category classes.
+ *
+ * Categories other than the default ones (ie- those from <code>use</code> blocks or DSLDs) are not indexed, callers must fall back
+ * to the {@link ClassNode} for those.
+ */
+public class DGMIndex {
+
+	private static DGMIndex INSTANCE;
+
+	public static synchronized DGMIndex getInstance() {
+		if (INSTANCE == null) {
+			INSTANCE = new DGMIndex(VariableScope.ALL_DEFAULT_CATEGORIES);
+		}
+		return INSTANCE;
+	}
+
+	private static class CategoryIndex {
+		/**
+		 * Same contents and order as {@link ClassNode#getMethods(String)}
+		 */
+		final Map<String, List<MethodNode>> byName = new HashMap<String, List<MethodNode>>();
+
+		/**
+		 * public static methods keyed by the name of their first parameter's type
+		 */
+		final Map<String, List<MethodNode>> byFirstParameter = new HashMap<String, List<MethodNode>>();
+
+		/**
+		 * public static methods that can be accessed as a property of any receiver, ie- getters taking only the receiver
+		 */
+		final List<MethodNode> propertyGetters = new ArrayList<MethodNode>();
+
+		/**
+		 * position of each method in {@link ClassNode#getAllDeclaredMethods()}, so merged results keep the category's order
+		 */
+		final Map<MethodNode, Integer> ordinals = new IdentityHashMap<MethodNode, Integer>();
+	}
+
+	private final Map<ClassNode, CategoryIndex> categories = new HashMap<ClassNode, CategoryIndex>();
+
+	DGMIndex(Collection<ClassNode> defaultCategories) {
+		for (ClassNode category : defaultCategories) {
+			categories.put(category, createIndex(category));
+		}
+	}
+
+	private static CategoryIndex createIndex(ClassNode category) {
+		CategoryIndex index = new CategoryIndex();
+		List<MethodNode> allMethods = category.getAllDeclaredMethods();
+		for (int i = 0; i < allMethods.size(); i++) {
+			MethodNode method = allMethods.get(i);
+			index.ordinals.put(method, i);
+			String name = method.getName();
+			if (!index.byName.containsKey(name)) {
+				index.byName.put(name, Collections.unmodifiableList(category.getMethods(name)));
+			}
+			if (method.isStatic() && method.isPublic()) {
+				Parameter[] params = method.getParameters();
+				if (params != null && params.length > 0) {
+					String firstParameter = params[0].getType().getName();
+					List<MethodNode> methods = index.byFirstParameter.get(firstParameter);
+					if (methods == null) {
+						methods = new ArrayList<MethodNode>();
+						index.byFirstParameter.put(firstParameter, methods);
+					}
+					methods.add(method);
+					if (params.length == 1 && AccessorSupport.findAccessorKind(method, true) == AccessorSupport.GETTER) {
+						index.propertyGetters.add(method);
+					}
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return true iff the category is one of the default categories and can be answered from this index
+	 */
+	public boolean isIndexed(ClassNode category) {
+		return categories.containsKey(category);
+	}
+
+	/**
+	 * @return the same methods as <code>category.getMethods(name)</code>, or null if the category is not indexed. The list must
+	 *         not be modified.
+	 */
+	public List<MethodNode> getMethods(ClassNode category, String name) {
+		CategoryIndex index = categories.get(category);
+		if (index == null) {
+			return null;
+		}
+		List<MethodNode> methods = index.byName.get(name);
+		return methods != null ? methods : Collections.<MethodNode> emptyList();
+	}
+
+	/**
+	 * Finds the public static methods of the category that take one of the given types as their first parameter, plus the getters
+	 * that may be referenced as properties (these are not filtered by receiver type). The methods are in the order in which the
+	 * category declares them.
+	 *
+	 * @param category an indexed category
+	 * @param firstParameterTypes fully qualified names of acceptable first parameter types
+	 * @return the candidate methods or null if the category is not indexed
+	 */
+	public List<MethodNode> getCandidateMethods(ClassNode category, Set<String> firstParameterTypes) {
+		final CategoryIndex index = categories.get(category);
+		if (index == null) {
+			return null;
+		}
+		Set<MethodNode> candidates = new LinkedHashSet<MethodNode>();
+		for (String type : firstParameterTypes) {
+			List<MethodNode> methods = index.byFirstParameter.get(type);
+			if (methods != null) {
+				candidates.addAll(methods);
+			}
+		}
+		candidates.addAll(index.propertyGetters);
+		List<MethodNode> sorted = new ArrayList<MethodNode>(candidates);
+		Collections.sort(sorted, new Comparator<MethodNode>() {
+			public int compare(MethodNode left, MethodNode right) {
+				return index.ordinals.get(left).intValue() - index.ordinals.get(right).intValue();
+			}
+		});
+		return sorted;
+	}
+}
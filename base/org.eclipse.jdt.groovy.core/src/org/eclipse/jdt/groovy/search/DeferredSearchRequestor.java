@@ -0,0 +1,70 @@
+/*
+ * Copyright 2003-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.jdt.groovy.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.search.SearchMatch;
+import org.eclipse.jdt.core.search.SearchRequestor;
+
+/**
+ * A {@link SearchRequestor} that buffers matches found on a worker thread so that they can later be sent to the real requestor,
+ * on the thread and in the order expected by the search engine.
+ *
+ * Each delegated search running in parallel gets its own instance, so the type requestors never share mutable state.
+ */
+public class DeferredSearchRequestor extends SearchRequestor {
+
+	private final SearchRequestor delegate;
+
+	private final List<SearchMatch> matches = new ArrayList<SearchMatch>();
+
+	public DeferredSearchRequestor(SearchRequestor delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void acceptSearchMatch(SearchMatch match) throws CoreException {
+		matches.add(match);
+	}
+
+	public SearchRequestor getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Sends all buffered matches to the delegate, in the order they were found
+	 */
+	public void replay() throws CoreException {
+		for (SearchMatch match : matches) {
+			delegate.acceptSearchMatch(match);
+		}
+		matches.clear();
+	}
+
+	/**
+	 * @return the requestor that will eventually receive the matches sent to the given requestor
+	 */
+	public static SearchRequestor unwrap(SearchRequestor requestor) {
+		while (requestor instanceof DeferredSearchRequestor) {
+			requestor = ((DeferredSearchRequestor) requestor).getDelegate();
+		}
+		return requestor;
+	}
+}
@@ -207,7 +207,7 @@ public class FieldReferenceSearchRequestor implements ITypeRequestor {
 	 * @return
 	 */
 	private boolean shouldAlwaysBeAccurate() {
-		return requestor.getClass().getPackage().getName().indexOf("refactoring") != -1;
+		return DeferredSearchRequestor.unwrap(requestor).getClass().getPackage().getName().indexOf("refactoring") != -1;
 	}
 
 	/**
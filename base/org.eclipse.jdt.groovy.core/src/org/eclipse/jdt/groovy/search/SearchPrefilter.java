@@ -0,0 +1,172 @@
+/*
+ * Copyright 2003-2009 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.jdt.groovy.search;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.groovy.core.util.ReflectionUtils;
+import org.eclipse.jdt.internal.core.search.matching.FieldPattern;
+import org.eclipse.jdt.internal.core.search.matching.MethodPattern;
+import org.eclipse.jdt.internal.core.search.matching.OrPattern;
+import org.eclipse.jdt.internal.core.search.matching.PossibleMatch;
+import org.eclipse.jdt.internal.core.search.matching.VariablePattern;
+
+/**
+ * Cheap check performed before type inferencing a possible match. {@link MethodReferenceSearchRequestor} and
+ * {@link FieldReferenceSearchRequestor} only accept nodes whose name is the searched name, so a file whose text never contains
+ * that name (or one of its property style variants) as an identifier can not contain any match.
+ * <p>
+ * The scan looks at raw identifiers and ignores string and comment boundaries, so that quoted method names (
+ * <code>foo."bar"()</code>) and names inside GStrings are never missed. Identifiers are also split at <code>'$'</code>, which
+ * may start a GString expression right after another identifier. Extra hits in comments only cost a full inferencing pass.
+ */
+public class SearchPrefilter {
+
+	/**
+	 * @return a filter for the pattern, or null if the pattern can match files that do not contain a given name (eg- type
+	 *         searches)
+	 */
+	public static SearchPrefilter create(SearchPattern pattern) {
+		Set<String> names = new HashSet<String>();
+		return collectNames(pattern, names) && !names.isEmpty() ? new SearchPrefilter(names) : null;
+	}
+
+	private static boolean collectNames(SearchPattern pattern, Set<String> names) {
+		char[] name;
+		if (pattern instanceof MethodPattern) {
+			name = (char[]) ReflectionUtils.getPrivateField(MethodPattern.class, "selector", pattern); //$NON-NLS-1$
+		} else if (pattern instanceof FieldPattern) {
+			name = (char[]) ReflectionUtils.getPrivateField(VariablePattern.class, "name", pattern); //$NON-NLS-1$
+		} else if (pattern instanceof OrPattern) {
+			SearchPattern[] patterns = (SearchPattern[]) ReflectionUtils.getPrivateField(OrPattern.class, "patterns", pattern); //$NON-NLS-1$
+			if (patterns == null) {
+				return false;
+			}
+			for (SearchPattern orPattern : patterns) {
+				if (orPattern != null && !collectNames(orPattern, names)) {
+					return false;
+				}
+			}
+			return true;
+		} else {
+			return false;
+		}
+		if (name == null || name.length == 0) {
+			return false;
+		}
+		String text = String.valueOf(name);
+		if (text.indexOf('*') >= 0 || text.indexOf('?') >= 0) {
+			// pattern match, can't know the name
+			return false;
+		}
+		names.add(text);
+		addPropertyVariants(text, names);
+		return true;
+	}
+
+	/**
+	 * <code>getFoo</code>, <code>setFoo</code> and <code>isFoo</code> may be referenced as <code>foo</code> and vice versa
+	 */
+	private static void addPropertyVariants(String name, Set<String> names) {
+		String suffix = null;
+		if (AccessorSupport.create(name, false) == AccessorSupport.ISSER) {
+			suffix = name.substring(2);
+		} else if (AccessorSupport.create(name, false).isAccessor()) {
+			suffix = name.substring(3);
+		}
+		if (suffix != null) {
+			names.add(suffix);
+			names.add(Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1));
+		} else {
+			for (AccessorSupport kind : new AccessorSupport[] { AccessorSupport.GETTER, AccessorSupport.SETTER, AccessorSupport.ISSER }) {
+				String accessorName = kind.createAccessorName(name);
+				if (accessorName != null) {
+					names.add(accessorName);
+				}
+			}
+		}
+	}
+
+	private final Set<String> names;
+
+	private final int minLength;
+
+	private final int maxLength;
+
+	private SearchPrefilter(Set<String> names) {
+		this.names = names;
+		int min = Integer.MAX_VALUE, max = 0;
+		for (String name : names) {
+			min = Math.min(min, name.length());
+			max = Math.max(max, name.length());
+		}
+		this.minLength = min;
+		this.maxLength = max;
+	}
+
+	public Set<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * @return false only if the contents of the possible match can not contain a reference to any of the searched names. Possible
+	 *         matches without contents are never skipped.
+	 */
+	public boolean mayMatch(PossibleMatch possibleMatch) {
+		char[] contents = possibleMatch.getContents();
+		return contents == null || contents.length == 0 || containsIdentifier(contents);
+	}
+
+	boolean containsIdentifier(char[] contents) {
+		int length = contents.length;
+		int i = 0;
+		while (i < length) {
+			if (!Character.isJavaIdentifierStart(contents[i])) {
+				i++;
+				continue;
+			}
+			int start = i++;
+			while (i < length && Character.isJavaIdentifierPart(contents[i])) {
+				i++;
+			}
+			if (isName(contents, start, i)) {
+				return true;
+			}
+			// '$' starts a GString expression, as in "$foo" or "${x}$foo", so the parts around it are identifiers too
+			int segmentStart = start;
+			for (int j = start; j < i; j++) {
+				if (contents[j] == '$') {
+					if (isName(contents, segmentStart, j)) {
+						return true;
+					}
+					segmentStart = j + 1;
+				}
+			}
+			if (segmentStart > start && isName(contents, segmentStart, i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isName(char[] contents, int start, int end) {
+		int length = end - start;
+		return length >= minLength && length <= maxLength && names.contains(new String(contents, start, length));
+	}
+}
@@ -17,9 +17,11 @@ import static org.eclipse.jdt.groovy.search.VariableScope.NO_GENERICS;
 import groovyjarjarasm.asm.Opcodes;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.codehaus.groovy.ast.ASTNode;
@@ -65,8 +67,82 @@ public class SimpleTypeLookup implements ITypeLookupExtension {
 
 	private GroovyCompilationUnit unit;
 
+	/**
+	 * Key for memoized declaration lookups. Uses {@link ClassNode#equals(Object)}, so parameterizations of the same type share
+	 * their entries. That is fine since declarations are looked up by name only.
+	 */
+	private static final class DeclarationKey {
+		private final ClassNode declaringType;
+		private final String name;
+		private final List<ClassNode> argumentTypes;
+		private final int hash;
+
+		DeclarationKey(ClassNode declaringType, String name, List<ClassNode> argumentTypes) {
+			this.declaringType = declaringType;
+			this.name = name;
+			this.argumentTypes = argumentTypes == null ? null : new ArrayList<ClassNode>(argumentTypes);
+			this.hash = 31 * (31 * declaringType.hashCode() + name.hashCode())
+					+ (this.argumentTypes == null ? -1 : this.argumentTypes.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof DeclarationKey)) {
+				return false;
+			}
+			DeclarationKey other = (DeclarationKey) obj;
+			return hash == other.hash && name.equals(other.name) && declaringType.equals(other.declaringType)
+					&& (argumentTypes == null ? other.argumentTypes == null : argumentTypes.equals(other.argumentTypes));
+		}
+	}
+
+	// stands for a lookup that found nothing
+	private static final ASTNode NO_DECLARATION = new ASTNode();
+
+	/**
+	 * Lookups are memoized for the life of this lookup, which is a single inferencing visit
+	 */
+	private final Map<DeclarationKey, ASTNode> declarationCache = new HashMap<DeclarationKey, ASTNode>();
+	private final Map<ClassNode, LinkedHashSet<ClassNode>> hierarchyCache = new HashMap<ClassNode, LinkedHashSet<ClassNode>>();
+	private int declarationHits;
+	private int declarationMisses;
+	private int hierarchyHits;
+	private int hierarchyMisses;
+
 	public void initialize(GroovyCompilationUnit unit, VariableScope topLevelScope) {
 		this.unit = unit;
+		declarationCache.clear();
+		hierarchyCache.clear();
+		declarationHits = declarationMisses = hierarchyHits = hierarchyMisses = 0;
+	}
+
+	/**
+	 * @return hit counts of the declaration and type hierarchy caches since {@link #initialize(GroovyCompilationUnit, VariableScope)}
+	 */
+	public String getCacheStatistics() {
+		return "declarations: " + declarationHits + "/" + (declarationHits + declarationMisses) + " hits, hierarchies: "
+				+ hierarchyHits + "/" + (hierarchyHits + hierarchyMisses) + " hits";
+	}
+
+	public int getDeclarationHits() {
+		return declarationHits;
+	}
+
+	public int getDeclarationMisses() {
+		return declarationMisses;
+	}
+
+	public int getHierarchyHits() {
+		return hierarchyHits;
+	}
+
+	public int getHierarchyMisses() {
+		return hierarchyMisses;
 	}
 
 	public TypeLookupResult lookupType(Expression node, VariableScope scope, ClassNode objectExpressionType) {
@@ -560,6 +636,19 @@ public class SimpleTypeLookup implements ITypeLookupExtension {
 	 * @return
 	 */
 	private ASTNode findDeclaration(String name, ClassNode declaringType, List<ClassNode> methodCallArgumentTypes) {
+		DeclarationKey key = new DeclarationKey(declaringType, name, methodCallArgumentTypes);
+		ASTNode declaration = declarationCache.get(key);
+		if (declaration != null) {
+			declarationHits++;
+			return declaration == NO_DECLARATION ? null : declaration;
+		}
+		declarationMisses++;
+		declaration = doFindDeclaration(name, declaringType, methodCallArgumentTypes);
+		declarationCache.put(key, declaration == null ? NO_DECLARATION : declaration);
+		return declaration;
+	}
+
+	private ASTNode doFindDeclaration(String name, ClassNode declaringType, List<ClassNode> methodCallArgumentTypes) {
 		if (declaringType.isArray()) {
 			// only length exists on array type
 			if (name.equals("length")) {
@@ -580,8 +669,7 @@ public class SimpleTypeLookup implements ITypeLookupExtension {
 			}
 		}
 
-		LinkedHashSet<ClassNode> allClasses = new LinkedHashSet<ClassNode>();
-		VariableScope.createTypeHierarchy(declaringType, allClasses, true);
+		Set<ClassNode> allClasses = getTypeHierarchy(declaringType);
 
 		maybe = findPropertyInClass(name, allClasses);
 		if (maybe != null) {
@@ -727,6 +815,19 @@ public class SimpleTypeLookup implements ITypeLookupExtension {
 
 	}
 
+	private Set<ClassNode> getTypeHierarchy(ClassNode type) {
+		LinkedHashSet<ClassNode> allClasses = hierarchyCache.get(type);
+		if (allClasses != null) {
+			hierarchyHits++;
+		} else {
+			hierarchyMisses++;
+			allClasses = new LinkedHashSet<ClassNode>();
+			VariableScope.createTypeHierarchy(type, allClasses, true);
+			hierarchyCache.put(type, allClasses);
+		}
+		return allClasses;
+	}
+
 	private ASTNode createLengthField(ClassNode declaringType) {
 		FieldNode lengthField = new FieldNode("length", Opcodes.ACC_PUBLIC, VariableScope.INTEGER_CLASS_NODE, declaringType, null);
 		lengthField.setType(VariableScope.INTEGER_CLASS_NODE);
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.jdt.groovy.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
+import org.codehaus.jdt.groovy.model.GroovyClassFileWorkingCopy;
+import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.ModuleNodeMapper;
+import org.codehaus.jdt.groovy.model.ModuleNodeMapper.IModuleNodeListener;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.groovy.search.ITypeRequestor.VisitStatus;
+import org.eclipse.jdt.groovy.search.TypeLookupResult.TypeConfidence;
+import org.eclipse.jdt.internal.core.DefaultWorkingCopyOwner;
+
+/**
+ * Caches the results of inferring a whole compilation unit, so that semantic highlighting, code select, mark occurrences and the
+ * like do not each re-infer the file after every reconcile.
+ *
+ * Results are recorded as the sequence of {@link ITypeRequestor#acceptASTNode(ASTNode, TypeLookupResult, IJavaElement)} calls made
+ * by a full visit, keyed by the working copy and the {@link ModuleNodeMapper.ModuleNodeInfo#stamp stamp} of the module node that
+ * was visited. The stamp also changes when a module node is updated in place by an incremental reconcile. A request for a unit
+ * whose module node has not changed replays the recorded calls to the new requestor. Entries are dropped when the
+ * {@link ModuleNodeMapper} replaces or discards the module node.
+ *
+ * Each replay hands out new {@link TypeLookupResult}s, so concurrent requestors never see each other's results. Replayed results
+ * have no {@link TypeLookupResult#scope}, since a variable scope keeps changing after a node is accepted. Requestors that inspect
+ * the scope must use a {@link TypeInferencingVisitorWithRequestor} instead.
+ */
+public class TypeInferenceCache {
+
+	/**
+	 * The immutable parts of an accepted {@link TypeLookupResult}
+	 */
+	private static final class Record {
+		final ASTNode node;
+		final ClassNode type;
+		final ClassNode declaringType;
+		final ASTNode declaration;
+		final TypeConfidence confidence;
+		final String extraDoc;
+		final BinaryExpression enclosingAssignment;
+		final IJavaElement enclosingElement;
+
+		Record(ASTNode node, TypeLookupResult result, IJavaElement enclosingElement) {
+			this.node = node;
+			this.type = result.type;
+			this.declaringType = result.declaringType;
+			this.declaration = result.declaration;
+			this.confidence = result.confidence;
+			this.extraDoc = result.extraDoc;
+			this.enclosingAssignment = result.enclosingAssignment;
+			this.enclosingElement = enclosingElement;
+		}
+
+		TypeLookupResult createResult() {
+			TypeLookupResult result = new TypeLookupResult(type, declaringType, declaration, confidence, null, extraDoc);
+			result.enclosingAssignment = enclosingAssignment;
+			return result;
+		}
+	}
+
+	private static final class Entry {
+		final ModuleNode module;
+		final long stamp;
+		final List<Record> records;
+
+		Entry(ModuleNode module, long stamp, List<Record> records) {
+			this.module = module;
+			this.stamp = stamp;
+			this.records = records;
+		}
+	}
+
+	/**
+	 * Records every node of a full visit
+	 */
+	private static final class RecordingRequestor implements ITypeRequestor {
+		final List<Record> records = new ArrayList<Record>();
+
+		public VisitStatus acceptASTNode(ASTNode node, TypeLookupResult result, IJavaElement enclosingElement) {
+			records.add(new Record(node, result, enclosingElement));
+			return VisitStatus.CONTINUE;
+		}
+	}
+
+	private static final TypeInferenceCache INSTANCE = new TypeInferenceCache(Integer.getInteger(
+			"greclipse.inferenceCache.maxUnits", 10).intValue());
+
+	static {
+		ModuleNodeMapper.addModuleNodeListener(new IModuleNodeListener() {
+			public void moduleNodeDiscarded(ICompilationUnit unit, ModuleNode module) {
+				INSTANCE.invalidate(unit, module);
+			}
+		});
+	}
+
+	public static TypeInferenceCache getInstance() {
+		return INSTANCE;
+	}
+
+	private final int maxUnits;
+
+	// access ordered, so that the least recently used unit is dropped first
+	private final LinkedHashMap<ICompilationUnit, Entry> entries;
+
+	private long hits;
+	private long misses;
+
+	private TypeInferenceCache(final int maxUnits) {
+		this.maxUnits = maxUnits;
+		this.entries = new LinkedHashMap<ICompilationUnit, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ICompilationUnit, Entry> eldest) {
+				return size() > TypeInferenceCache.this.maxUnits;
+			}
+		};
+	}
+
+	/**
+	 * Sends the inferred type of every node in the unit to the requestor, in the same order and with the same results as
+	 * {@link TypeInferencingVisitorWithRequestor#visitCompilationUnit(ITypeRequestor)} would. Infers the unit only if no results are
+	 * cached for its current module node.
+	 */
+	public void visitCompilationUnit(GroovyCompilationUnit unit, ITypeRequestor requestor) {
+		if (!isCacheable(unit)) {
+			new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(requestor);
+			return;
+		}
+		replay(getRecords(unit), requestor);
+	}
+
+	private static boolean isCacheable(GroovyCompilationUnit unit) {
+		// only working copies keep their module node between requests. Non-primary owners are used for refactoring
+		// previews, which always build a fresh module node
+		return INSTANCE.maxUnits > 0 && unit.isWorkingCopy() && !(unit instanceof GroovyClassFileWorkingCopy)
+				&& (unit.getOwner() == null || unit.getOwner() == DefaultWorkingCopyOwner.PRIMARY);
+	}
+
+	/**
+	 * Like {@link #visitCompilationUnit(GroovyCompilationUnit, ITypeRequestor)} when results for the unit are cached. Otherwise only
+	 * infers the parts of the unit needed for the region, as
+	 * {@link TypeInferencingVisitorWithRequestor#visitCompilationUnit(ITypeRequestor, int, int)} does, and caches nothing.
+	 */
+	public void visitRegion(GroovyCompilationUnit unit, ITypeRequestor requestor, int start, int end) {
+		List<Record> records = isCacheable(unit) ? getCachedRecords(unit) : null;
+		if (records != null) {
+			replay(records, requestor);
+		} else {
+			new TypeInferencingVisitorFactory().createVisitor(unit).visitCompilationUnit(requestor, start, end);
+		}
+	}
+
+	private List<Record> getCachedRecords(GroovyCompilationUnit unit) {
+		ModuleNodeMapper.ModuleNodeInfo info = unit.getModuleInfo(true);
+		synchronized (this) {
+			Entry entry = entries.get(unit);
+			if (info != null && entry != null && entry.stamp == info.stamp) {
+				hits += 1;
+				return entry.records;
+			}
+			misses += 1;
+		}
+		return null;
+	}
+
+	private List<Record> getRecords(GroovyCompilationUnit unit) {
+		List<Record> cached = getCachedRecords(unit);
+		if (cached != null) {
+			return cached;
+		}
+
+		ModuleNodeMapper.ModuleNodeInfo info = unit.getModuleInfo(true);
+		TypeInferencingVisitorWithRequestor visitor = new TypeInferencingVisitorFactory().createVisitor(unit);
+		ModuleNode module = visitor.getModuleNode();
+		if (module == null) {
+			return Collections.emptyList();
+		}
+		RecordingRequestor recorder = new RecordingRequestor();
+		visitor.visitCompilationUnit(recorder);
+		List<Record> records = Collections.unmodifiableList(recorder.records);
+
+		// do not store results for a module node that was replaced or updated while we were inferring
+		boolean current = info != null && info.module == module && info.stamp == currentStamp(unit);
+		synchronized (this) {
+			if (current) {
+				entries.put(unit, new Entry(module, info.stamp, records));
+			}
+		}
+		if (GroovyLogManager.manager.hasLoggers()) {
+			GroovyLogManager.manager.log(TraceCategory.DEFAULT, "TypeInferenceCache: inferred " + unit.getElementName() + " ("
+					+ getStatistics() + ")");
+		}
+		return records;
+	}
+
+	private static long currentStamp(GroovyCompilationUnit unit) {
+		ModuleNodeMapper.ModuleNodeInfo info = unit.getModuleInfo(false);
+		return info != null ? info.stamp : -1;
+	}
+
+	/**
+	 * Replays recorded results, honoring the {@link VisitStatus} returned by the requestor the same way the inferencing visitor does
+	 */
+	private static void replay(List<Record> records, ITypeRequestor requestor) {
+		ASTNode cancelledBranch = null;
+		IJavaElement cancelledMember = null;
+		for (Record record : records) {
+			if (cancelledMember != null) {
+				if (isWithin(record.enclosingElement, cancelledMember)) {
+					continue;
+				}
+				cancelledMember = null;
+			}
+			if (cancelledBranch != null) {
+				if (isWithin(record.node, cancelledBranch)) {
+					continue;
+				}
+				cancelledBranch = null;
+			}
+			VisitStatus status = requestor.acceptASTNode(record.node, record.createResult(), record.enclosingElement);
+			switch (status) {
+				case CONTINUE:
+					break;
+				case CANCEL_BRANCH:
+					cancelledBranch = record.node;
+					break;
+				case CANCEL_MEMBER:
+					cancelledMember = record.enclosingElement;
+					break;
+				case STOP_VISIT:
+					return;
+			}
+		}
+	}
+
+	private static boolean isWithin(IJavaElement element, IJavaElement ancestor) {
+		while (element != null) {
+			if (element.equals(ancestor)) {
+				return true;
+			}
+			element = element.getParent();
+		}
+		return false;
+	}
+
+	private static boolean isWithin(ASTNode node, ASTNode branch) {
+		return node != branch && branch.getEnd() > 0 && node.getStart() >= branch.getStart() && node.getEnd() <= branch.getEnd();
+	}
+
+	synchronized void invalidate(ICompilationUnit unit, ModuleNode module) {
+		Entry entry = entries.get(unit);
+		if (entry != null && (module == null || entry.module == module)) {
+			entries.remove(unit);
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized String getStatistics() {
+		return "units=" + entries.size() + " hits=" + hits + " misses=" + misses;
+	}
+}
@@ -86,10 +86,13 @@ import org.codehaus.groovy.ast.stmt.Statement;
 import org.codehaus.groovy.classgen.BytecodeExpression;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.eclipse.GroovyLogManager;
+import org.codehaus.groovy.eclipse.TraceCategory;
 import org.codehaus.groovy.syntax.Types;
 import org.codehaus.groovy.transform.stc.StaticTypeCheckingVisitor;
 import org.codehaus.jdt.groovy.internal.compiler.ast.JDTResolver;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.ModuleNodeMapper;
 import org.codehaus.jdt.groovy.model.ModuleNodeMapper.ModuleNodeInfo;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jdt.core.IField;
@@ -308,6 +311,13 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 	private Map<Variable, Map<String, ClassNode>> localMapProperties = new HashMap<Variable, Map<String, ClassNode>>();
 	private Variable currentMapVariable;
 
+	/**
+	 * When visiting a region, types and members that do not overlap [regionStart, regionEnd] are skipped. -1 means visit
+	 * everything.
+	 */
+	private int regionStart = -1;
+	private int regionEnd = -1;
+
 	/**
 	 * Use factory to instantiate
 	 */
@@ -325,6 +335,47 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 		dependentDeclarationStack = new Stack<Tuple>();
 	}
 
+	/**
+	 * Visits only the parts of the compilation unit that are needed to infer the nodes in the given source range. Types, methods
+	 * and fields that do not overlap the range are skipped entirely. The members that enclose the range are visited in full, so
+	 * the {@link VariableScope}s seen by the requestor are the same as with a full visit. Imports and class level initializers are
+	 * always visited.
+	 *
+	 * @param requestor receives the nodes that are visited
+	 * @param start start offset of the region (inclusive)
+	 * @param end end offset of the region (inclusive)
+	 */
+	public void visitCompilationUnit(ITypeRequestor requestor, int start, int end) {
+		regionStart = Math.max(0, start);
+		regionEnd = Math.max(regionStart, end);
+		try {
+			visitCompilationUnit(requestor);
+		} finally {
+			regionStart = -1;
+			regionEnd = -1;
+		}
+	}
+
+	/**
+	 * @return true iff a region is being visited and the node (including its annotations) lies entirely outside of it. Nodes
+	 *         without source positions and script bodies are never considered outside.
+	 */
+	private boolean isOutsideRegion(AnnotatedNode node) {
+		if (regionEnd < 0 || node.getEnd() <= 0) {
+			return false;
+		}
+		if (node instanceof MethodNode && ((MethodNode) node).isScriptBody()) {
+			return false;
+		}
+		int start = node.getStart();
+		for (AnnotationNode annotation : (Iterable<AnnotationNode>) node.getAnnotations()) {
+			if (annotation.getEnd() > 0) {
+				start = Math.min(start, annotation.getStart());
+			}
+		}
+		return start > regionEnd || node.getEnd() < regionStart;
+	}
+
 	public void visitCompilationUnit(ITypeRequestor requestor) {
 		if (enclosingDeclarationNode == null) {
 			// no module node, can't do anything
@@ -343,6 +394,8 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 			lookup.initialize(unit, topLevelScope);
 		}
 
+		// the module node must not be updated in place while it is visited
+		ModuleNodeMapper.beginReading(unit);
 		try {
 			visitPackage(((ModuleNode) enclosingDeclarationNode).getPackage());
 			visitImports((ModuleNode) enclosingDeclarationNode);
@@ -365,10 +418,17 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 				System.err.println("Excpetion thrown from inferencing engine");
 				e.printStackTrace();
 			}
+		} finally {
+			ModuleNodeMapper.endReading(unit);
 		}
 		if (DEBUG) {
 			postVisitSanityCheck();
 		}
+		// SimpleTypeLookup is always the last lookup, and its statistics cover the whole run
+		if (GroovyLogManager.manager.hasLoggers() && lookups.length > 0 && lookups[lookups.length - 1] instanceof SimpleTypeLookup) {
+			GroovyLogManager.manager.log(TraceCategory.INFERENCING, "Inferencing " + unit.getElementName() + ": "
+					+ ((SimpleTypeLookup) lookups[lookups.length - 1]).getCacheStatistics());
+		}
 	}
 
 	// @Override
@@ -385,6 +445,10 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 			// probably some sort of AST transformation is making this node invisible
 			return;
 		}
+		if (isOutsideRegion(node)) {
+			enclosingElement = oldEnclosing;
+			return;
+		}
 		try {
 
 			scopes.push(new VariableScope(scopes.peek(), node, false));
@@ -513,6 +577,10 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 			// probably some sort of AST transformation is making this node invisible
 			return;
 		}
+		if (isOutsideRegion(fieldNode)) {
+			enclosingElement = oldEnclosing;
+			return;
+		}
 
 		enclosingDeclarationNode = fieldNode;
 		scopes.push(new VariableScope(scopes.peek(), fieldNode, fieldNode.isStatic()));
@@ -563,6 +631,10 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 			// probably some sort of AST transformation is making this node invisible
 			return;
 		}
+		if (isOutsideRegion(methodNode)) {
+			enclosingElement = oldEnclosing;
+			return;
+		}
 
 		enclosingDeclarationNode = methodNode;
 		this.requestor = requestor;
@@ -2370,8 +2442,10 @@ public class TypeInferencingVisitorWithRequestor extends ClassCodeVisitorSupport
 		}
 	}
 
-	private ModuleNode getModuleNode() {
-		if (enclosingDeclarationNode instanceof ModuleNode) {
+	ModuleNode getModuleNode() {
+		if (enclosingDeclarationNode == null) {
+			return null;
+		} else if (enclosingDeclarationNode instanceof ModuleNode) {
 			return (ModuleNode) enclosingDeclarationNode;
 		} else if (enclosingDeclarationNode instanceof ClassNode) {
 			return ((ClassNode) enclosingDeclarationNode).getModule();
@@ -0,0 +1,5 @@
+package first
+
+class Greeter {
+    String greet(String name) { "hello $name" }
+}
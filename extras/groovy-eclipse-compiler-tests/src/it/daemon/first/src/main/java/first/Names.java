@@ -0,0 +1,5 @@
+package first;
+
+public class Names {
+    public static final String DEFAULT = "world";
+}
@@ -0,0 +1,7 @@
+package second;
+
+public class Caller {
+    public String call() {
+        return new Main().toString();
+    }
+}
@@ -0,0 +1,10 @@
+package second
+
+import first.Greeter
+import first.Names
+
+class Main {
+    static void main(String[] args) {
+        println new Greeter().greet(Names.DEFAULT)
+    }
+}
@@ -0,0 +1,7 @@
+package p
+
+class Base {
+    String name() { 'base' }
+
+    String other() { 'other' }
+}
@@ -0,0 +1,5 @@
+package p
+
+class Other {
+    int answer() { 42 }
+}
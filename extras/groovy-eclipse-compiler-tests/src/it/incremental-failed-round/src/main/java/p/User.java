@@ -0,0 +1,7 @@
+package p;
+
+public class User {
+    public String greet() {
+        return "hello " + new Base().name();
+    }
+}
@@ -0,0 +1,5 @@
+package p
+
+class Base {
+    String name() { 'base' }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2011 SpringSource, a division of VMware, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.groovy.eclipse.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.groovy.eclipse.compiler.InternalCompiler.Result;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
+
+/**
+ * Keeps the compiler warm between the compilations of a JVM, eg- the modules of a maven reactor, which load the plugin (and so
+ * this class) once. The JIT'd compiler classes are kept by the plugin realm, on top of that the jars of the JDK and of the local
+ * repository stay open and their package lists are only computed once. Each is checked against its timestamp and size before it
+ * is reused, the jars of the reactor are never shared since they are rebuilt. At most greclipse.daemon.maxSharedJars jars (default
+ * 256) are kept, the least recently used ones are closed once no compilation runs.
+ * <p>
+ * The loaders of ast transforms are not shared, each compilation of the batch compiler still creates its own. The time each
+ * compilation takes is logged, to compare with a cold compiler.
+ * <p>
+ * This class uses JDT directly, so it can only be used when compiling in process.
+ */
+class CompilerDaemon {
+
+    private static class SharedJar {
+        final long lastModified;
+        final long length;
+        final ZipFile zipFile;
+        final Hashtable<String, String> packages;
+
+        SharedJar(File file) throws IOException {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.zipFile = new ZipFile(file);
+            this.packages = computePackages(zipFile);
+        }
+
+        boolean isValid(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+
+    /**
+     * A jar of the classpath of one compilation, backed by a zip file that is shared and left open.
+     */
+    private static class SharedClasspathJar extends ClasspathJar {
+        SharedClasspathJar(File file, SharedJar jar, AccessRuleSet accessRuleSet, String destinationPath) {
+            super(file, false/* closeZipFileAtEnd */, accessRuleSet, destinationPath);
+            this.zipFile = jar.zipFile;
+            this.packageCache = jar.packages;
+        }
+    }
+
+    private static final int MAX_SHARED_JARS = Integer.getInteger("greclipse.daemon.maxSharedJars", 256);
+
+    /** guarded by itself, as are the retiredJars */
+    private static final Map<String, SharedJar> sharedJars = new LinkedHashMap<String, SharedJar>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SharedJar> eldest) {
+            if (size() > MAX_SHARED_JARS) {
+                retiredJars.add(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /** replaced or evicted jars, that running compilations may still read */
+    private static final List<SharedJar> retiredJars = new ArrayList<SharedJar>();
+
+    private static int compilations;
+
+    private static int runningCompilations;
+
+    private static final String[] sharedLocations = sharedLocations();
+
+    private CompilerDaemon() {
+    }
+
+    static Result doCompile(String[] args, StringWriter out, final Logger logger, boolean verbose) {
+        int compilation = begin();
+        final int[] reused = new int[2];
+        long start = System.nanoTime();
+
+        InternalCompiler progress = new InternalCompiler(logger, verbose);
+        Main main = new Main(new PrintWriter(out), new PrintWriter(out), false/* systemExit */, null/* options */, progress) {
+            @Override
+            public FileSystem getLibraryAccess() {
+                shareJars(this.checkedClasspaths, reused, logger);
+                return super.getLibraryAccess();
+            }
+        };
+        boolean result;
+        try {
+            result = main.compile(args);
+        } finally {
+            end();
+        }
+
+        logger.info("Compilation " + compilation + " of the warm compiler took " + (System.nanoTime() - start) / 1000000
+                + " ms, reused " + reused[0] + " of " + reused[1] + " shared jars");
+        return new Result(result, main.globalErrorsCount, main.globalWarningsCount);
+    }
+
+    /**
+     * Must be followed by {@link #end()} once the compilation is over.
+     *
+     * @return the number of the compilation that begins in this JVM
+     */
+    static synchronized int begin() {
+        runningCompilations++;
+        return ++compilations;
+    }
+
+    /**
+     * Once the last running compilation ends, closes the jars that are no longer shared.
+     */
+    static synchronized void end() {
+        if (--runningCompilations > 0) {
+            return;
+        }
+        synchronized (sharedJars) {
+            for (SharedJar jar : retiredJars) {
+                try {
+                    jar.zipFile.close();
+                } catch (IOException e) {
+                    // ignore, nothing reads it any more
+                }
+            }
+            retiredJars.clear();
+        }
+    }
+
+    /**
+     * Replaces the jars of the JDK and of the local repository by ones that share an open zip file.
+     *
+     * @param counts receives the number of shared jars that were reused and the number of shared jars
+     */
+    static void shareJars(FileSystem.Classpath[] classpaths, int[] counts, Logger logger) {
+        if (classpaths == null) {
+            return;
+        }
+        for (int i = 0; i < classpaths.length; i++) {
+            if (classpaths[i] == null || classpaths[i].getClass() != ClasspathJar.class) {
+                continue;
+            }
+            ClasspathJar classpath = (ClasspathJar) classpaths[i];
+            String path = classpath.getPath();
+            if (!isShared(path)) {
+                continue;
+            }
+            File file = new File(path);
+            SharedJar jar;
+            synchronized (sharedJars) {
+                jar = sharedJars.get(path);
+                if (jar != null && jar.isValid(file)) {
+                    counts[0] += 1;
+                } else {
+                    // a replaced jar is not closed yet as another compilation may be reading it
+                    if (jar != null) {
+                        retiredJars.add(jar);
+                    }
+                    try {
+                        jar = new SharedJar(file);
+                    } catch (IOException e) {
+                        sharedJars.remove(path);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Not sharing " + path, e);
+                        }
+                        continue;
+                    }
+                    sharedJars.put(path, jar);
+                }
+            }
+            counts[1] += 1;
+            classpaths[i] = new SharedClasspathJar(file, jar, classpath.accessRuleSet, classpath.destinationPath);
+        }
+    }
+
+    private static boolean isShared(String path) {
+        for (String location : sharedLocations) {
+            if (location != null && path.startsWith(location)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the canonical paths of the JDK and of the local repository
+     */
+    private static String[] sharedLocations() {
+        String javaHome = System.getProperty("java.home");
+        String repository = System.getProperty("maven.repo.local");
+        if (repository == null) {
+            repository = System.getProperty("user.home") + File.separator + ".m2" + File.separator + "repository";
+        }
+        return new String[] { canonicalDirectory(javaHome != null ? new File(javaHome).getParent() : null),
+                canonicalDirectory(repository) };
+    }
+
+    private static String canonicalDirectory(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return new File(path).getCanonicalPath() + File.separator;
+        } catch (IOException e) {
+            return new File(path).getAbsolutePath() + File.separator;
+        }
+    }
+
+    /**
+     * Same as {@link ClasspathJar#isPackage(String)} computes on first use.
+     */
+    private static Hashtable<String, String> computePackages(ZipFile zipFile) {
+        Hashtable<String, String> packages = new Hashtable<String, String>(41);
+        packages.put("", "");
+        nextEntry: for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+            String fileName = e.nextElement().getName();
+            int last = fileName.lastIndexOf('/');
+            while (last > 0) {
+                String packageName = fileName.substring(0, last);
+                if (packages.containsKey(packageName)) {
+                    continue nextEntry;
+                }
+                packages.put(packageName, packageName);
+                last = packageName.lastIndexOf('/');
+            }
+        }
+        return packages;
+    }
+}
@@ -42,6 +42,7 @@ import org.codehaus.plexus.compiler.CompilerResult;
 import org.codehaus.plexus.compiler.CompilerMessage.Kind;
 import org.codehaus.plexus.compiler.CompilerOutputStyle;
 import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
+import org.codehaus.plexus.compiler.util.scan.SimpleSourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
 import org.codehaus.plexus.compiler.util.scan.mapping.SourceMapping;
@@ -72,6 +73,17 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
 
     private static final String JAVA_AGENT_CLASS_PARAM_NAME = "-javaAgentClass";
 
+    /**
+     * Only compile the sources that changed since the last build and the sources that depend on them, see
+     * {@link IncrementalCompiler}. Must compile in process.
+     */
+    private static final String INCREMENTAL_PARAM_NAME = "-incremental";
+
+    /**
+     * Keep the compiler warm across the compilations of the reactor, see {@link CompilerDaemon}. Must compile in process.
+     */
+    private static final String DAEMON_PARAM_NAME = "-daemon";
+
     private String javaAgentClass = "";
 
     boolean verbose;
@@ -106,6 +118,17 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
 
     private boolean internalCompile(CompilerConfiguration config, List<CompilerMessage> messages) throws CompilerException {
 
+        boolean daemon = isEnabled(config, DAEMON_PARAM_NAME);
+        if (daemon && config.isFork()) {
+            getLogger().warn("The warm compiler is not used when forking");
+        }
+        if (isEnabled(config, INCREMENTAL_PARAM_NAME)) {
+            if (!config.isFork()) {
+                return incrementalCompile(config, messages, daemon);
+            }
+            getLogger().warn("Incremental compilation is not supported when forking, compiling the stale sources instead");
+        }
+
         String[] args = createCommandLine(config);
         if (args.length == 0) {
             getLogger().info("Nothing to compile - all classes are up to date");
@@ -129,19 +152,88 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
             success = compileOutOfProcess(config, executable, groovyEclipseLocation, args, messages);
         } else {
             StringWriter out = new StringWriter();
-            Result result = InternalCompiler.doCompile(args, out, getLogger(), verbose);
+            Result result;
+            if (daemon) {
+                result = CompilerDaemon.doCompile(args, out, getLogger(), verbose);
+            } else {
+                long start = System.nanoTime();
+                result = InternalCompiler.doCompile(args, out, getLogger(), verbose);
+                if (verbose) {
+                    getLogger().info("Compilation took " + (System.nanoTime() - start) / 1000000 + " ms");
+                }
+            }
             success = result.success;
-            try {
-                messages.addAll(parseMessages(success ? 0 : 1, out.getBuffer().toString(), config.isShowWarnings()));
-            } catch (IOException e) {
-                messages = new ArrayList<CompilerMessage>(1);
+            addMessages(config, result, out, messages);
+        }
+        return success;
+    }
+
+    private boolean incrementalCompile(CompilerConfiguration config, List<CompilerMessage> messages, boolean daemon) throws CompilerException {
+        addGroovySourceLocations(config);
+        File[] sourceFiles = findAllSources(config);
+        String[] optionArgs = flattenArgumentsMap(createOptions(config));
+
+        // keep the state next to the output folder, eg- target/groovy-eclipse-compiler/classes.state
+        File destinationDir = new File(config.getOutputLocation());
+        File stateFile = new File(destinationDir.getAbsoluteFile().getParentFile(), "groovy-eclipse-compiler/"
+                + destinationDir.getName() + ".state");
+
+        StringWriter out = new StringWriter();
+        Result result;
+        try {
+            result = new IncrementalCompiler(getLogger(), verbose, daemon, destinationDir, stateFile).compile(optionArgs, sourceFiles, out);
+        } catch (IOException e) {
+            throw new CompilerException("Error during incremental compilation", e);
+        }
+        if (result == null) {
+            getLogger().info("Nothing to compile - all classes are up to date");
+            return true;
+        }
+        addMessages(config, result, out, messages);
+        return result.success;
+    }
+
+    private void addMessages(CompilerConfiguration config, Result result, StringWriter out, List<CompilerMessage> messages) {
+        try {
+            messages.addAll(parseMessages(result.success ? 0 : 1, out.getBuffer().toString(), config.isShowWarnings()));
+        } catch (IOException e) {
+            // ignore, the result is still reported
+        }
+
+        if (!result.success) {
+            messages.add(formatResult(result.success, result.globalErrorsCount, result.globalWarningsCount));
+        }
+    }
+
+    private boolean isEnabled(CompilerConfiguration config, String paramName) {
+        for (Entry<String, String> entry : config.getCustomCompilerArgumentsAsMap().entrySet()) {
+            String key = entry.getKey();
+            if (key != null && (paramName.equals(key) || paramName.equals("-" + key))) {
+                return !"false".equals(entry.getValue());
             }
+        }
+        return false;
+    }
 
-            if (!success) {
-                messages.add(formatResult(success, result.globalErrorsCount, result.globalWarningsCount));
+    /**
+     * @return every source of the output folder, whether stale or not
+     */
+    private File[] findAllSources(CompilerConfiguration config) throws CompilerException {
+        Set<String> includes = config.getIncludes();
+        if (includes == null || includes.isEmpty()) {
+            includes = Collections.singleton("**/*");
+        }
+        SourceInclusionScanner scanner = new SimpleSourceInclusionScanner(includes, config.getExcludes());
+        // unlike the stale source scanner, this one ignores the source mappings and returns resources too
+        Set<File> sources = new HashSet<File>();
+        for (File source : computeStaleSources(config, scanner)) {
+            String name = source.getName();
+            if (name.endsWith(".java") || name.endsWith(".groovy")) {
+                sources.add(source);
             }
         }
-        return success;
+        config.setSourceFiles(sources);
+        return sources.toArray(new File[0]);
     }
 
     private File[] recalculateStaleFiles(CompilerConfiguration config) throws CompilerException {
@@ -192,6 +284,34 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
     }
 
     public String[] createCommandLine(CompilerConfiguration config) throws CompilerException {
+        addGroovySourceLocations(config);
+
+        // recalculate stale files since they were not properly calculated in
+        // super
+        File[] sourceFiles = recalculateStaleFiles(config);
+
+        if (sourceFiles.length == 0) {
+            return new String[0];
+        }
+
+        getLogger().info("Using Groovy-Eclipse compiler to compile both Java and Groovy files");
+        getLogger().debug(
+                "Compiling " + sourceFiles.length + " " + "source file" + (sourceFiles.length == 1 ? "" : "s") + " to "
+                        + config.getOutputLocation());
+
+        Map<String,String> args = createOptions(config);
+
+        args.putAll(composeSourceFiles(sourceFiles));
+
+        String[] argsList = flattenArgumentsMap(args);
+        if (verbose) {
+            getLogger().info("All args: " + Arrays.toString(argsList));
+        }
+
+        return argsList;
+    }
+
+    private void addGroovySourceLocations(CompilerConfiguration config) {
         File destinationDir = new File(config.getOutputLocation());
 
         if (!destinationDir.exists()) {
@@ -216,19 +336,12 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
                 config.addSourceLocation(srcTestGroovy.getAbsolutePath());
             }
         }
-        // recalculate stale files since they were not properly calculated in
-        // super
-        File[] sourceFiles = recalculateStaleFiles(config);
-
-        if (sourceFiles.length == 0) {
-            return new String[0];
-        }
-
-        getLogger().info("Using Groovy-Eclipse compiler to compile both Java and Groovy files");
-        getLogger().debug(
-                "Compiling " + sourceFiles.length + " " + "source file" + (sourceFiles.length == 1 ? "" : "s") + " to "
-                        + destinationDir.getAbsolutePath());
+    }
 
+    /**
+     * @return the arguments of the batch compiler, without the source files
+     */
+    private Map<String,String> createOptions(CompilerConfiguration config) {
         // intentionally using DeduplicatingHashMap to preserve order and Map to deduplicate values
         // See https://jira.codehaus.org/browse/GRECLIPSE-1659
         Map<String,String> args = new DeduplicatingHashMap<String,String>(getLogger());
@@ -316,12 +429,15 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
                     // do not add the custom java agent arg because it is not
                     // expected by groovy-eclipse compiler
                     continue;
+                } else if (INCREMENTAL_PARAM_NAME.equals(key) || DAEMON_PARAM_NAME.equals(key)) {
+                    continue;
                 } else {
                     // don't add a "-" if the arg
                     // already has one
                     args.put(key, entry.getValue());
                 }
-            } else if (key != null && !key.equals("org.osgi.framework.system.packages")) {
+            } else if (key != null && !key.equals("org.osgi.framework.system.packages") && !INCREMENTAL_PARAM_NAME.equals("-" + key)
+                    && !DAEMON_PARAM_NAME.equals("-" + key)) {
                 // See https://jira.codehaus.org/browse/GRECLIPSE-1418 ignore
                 // the system packages option
                 /*
@@ -334,14 +450,7 @@ public class GroovyEclipseCompiler extends AbstractCompiler {
 
         }
 
-        args.putAll(composeSourceFiles(sourceFiles));
-
-        String[] argsList = flattenArgumentsMap(args);
-        if (verbose) {
-            getLogger().info("All args: " + Arrays.toString(argsList));
-        }
-
-        return argsList;
+        return args;
     }
 
     private Set<File> computeStaleSources(CompilerConfiguration compilerConfiguration, SourceInclusionScanner scanner)
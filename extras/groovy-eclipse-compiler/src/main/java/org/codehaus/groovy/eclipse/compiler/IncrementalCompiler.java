@@ -0,0 +1,547 @@
+/*
+ * Copyright 2011 SpringSource, a division of VMware, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.groovy.eclipse.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.groovy.eclipse.compiler.InternalCompiler.Result;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+
+/**
+ * Compiles only the sources of an output folder that changed since it was last built, followed by the sources that refer to a
+ * type whose structure changed, until no more structural changes are found. Like the incremental builder of the IDE, only
+ * changes to the signatures of a class (not to the bodies of its methods) make its dependents recompile.
+ * <p>
+ * What each source produced and which simple names it referred to, as reported by the compiler, is kept in a state file
+ * along with a hash of the source. The state also records a fingerprint of the compiler options and of the classpath, when
+ * that changes everything is compiled again. The class files of deleted sources and the class files that a recompiled source
+ * no longer produces are deleted.
+ * <p>
+ * This class uses JDT directly, so it can only be used when compiling in process.
+ */
+class IncrementalCompiler {
+
+    private static final int STATE_VERSION = 1;
+
+    private static class SourceState {
+        final String hash;
+        final boolean hadErrors;
+        /** names of the class files produced, eg- p/Foo$1 */
+        final List<String> classFiles = new ArrayList<String>();
+        /** simple names referred to by the source */
+        final Set<String> simpleNames = new HashSet<String>();
+
+        SourceState(String hash, boolean hadErrors) {
+            this.hash = hash;
+            this.hadErrors = hadErrors;
+        }
+    }
+
+    private final Logger logger;
+    private final boolean verbose;
+    private final boolean warm;
+    private final File outputDirectory;
+    private final File stateFile;
+
+    /** absolute path of a source -> what it produced and referred to the last time it was compiled */
+    private final Map<String, SourceState> sources = new LinkedHashMap<String, SourceState>();
+
+    /** hash of each source being compiled */
+    private final Map<String, String> hashes = new HashMap<String, String>();
+
+    /** class files produced by the current round, only kept to look for structural changes */
+    private Map<String, byte[]> producedBytes;
+
+    /**
+     * @param warm whether to compile with the shared jars of the {@link CompilerDaemon}
+     */
+    IncrementalCompiler(Logger logger, boolean verbose, boolean warm, File outputDirectory, File stateFile) {
+        this.logger = logger;
+        this.verbose = verbose;
+        this.warm = warm;
+        this.outputDirectory = outputDirectory;
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * @param optionArgs the command line of the batch compiler without any source files
+     * @param sourceFiles all of the sources of the output folder
+     * @return the outcome of the compilation, or null if everything was up to date
+     */
+    Result compile(String[] optionArgs, File[] sourceFiles, StringWriter out) throws IOException {
+        optionArgs = addOutputDirectoryToClasspath(optionArgs);
+        String fingerprint = fingerprint(optionArgs);
+        boolean full;
+        try {
+            full = !readState(fingerprint);
+        } catch (IOException e) {
+            logger.warn("Unable to read the incremental compilation state " + stateFile + ", compiling everything", e);
+            sources.clear();
+            full = true;
+        }
+
+        Set<String> toCompile = new LinkedHashSet<String>();
+        for (File sourceFile : sourceFiles) {
+            String path = sourceFile.getAbsolutePath();
+            String hash = hash(sourceFile);
+            hashes.put(path, hash);
+            SourceState state = sources.get(path);
+            if (full || state == null || state.hadErrors || !state.hash.equals(hash)) {
+                toCompile.add(path);
+            }
+        }
+
+        // the types of deleted sources are gone, so their dependents must be compiled
+        Set<String> changedTypes = new HashSet<String>();
+        for (String path : new ArrayList<String>(sources.keySet())) {
+            if (!hashes.containsKey(path)) {
+                SourceState state = sources.remove(path);
+                deleteClassFiles(state, null);
+                changedTypes.addAll(state.classFiles);
+            }
+        }
+        if (full) {
+            for (SourceState state : sources.values()) {
+                deleteClassFiles(state, null);
+            }
+            sources.clear();
+            logger.info("Compiling all " + toCompile.size() + " source files, no incremental state matches the current options and classpath");
+        } else {
+            toCompile.addAll(findDependents(changedTypes, toCompile));
+            if (toCompile.isEmpty()) {
+                if (!changedTypes.isEmpty()) {
+                    writeState(fingerprint);
+                }
+                return null;
+            }
+        }
+
+        boolean success = true;
+        int errors = 0, warnings = 0;
+        Set<String> compiled = new HashSet<String>();
+        int round = 1;
+        while (!toCompile.isEmpty()) {
+            if (!full) {
+                logger.info("Incremental compilation round " + round + ": compiling " + toCompile.size() + " of "
+                        + sourceFiles.length + " source files");
+            }
+            if (verbose) {
+                logger.info("Compiling " + toCompile);
+            }
+            Map<String, byte[]> previousBytes = full ? null : new HashMap<String, byte[]>();
+            for (String path : toCompile) {
+                // states are put back as the compiler reports each source, if it does not the source is compiled next time
+                SourceState state = sources.remove(path);
+                if (state != null) {
+                    deleteClassFiles(state, previousBytes);
+                }
+            }
+            producedBytes = full ? null : new HashMap<String, byte[]>();
+            long start = System.nanoTime();
+            Result result = run(optionArgs, toCompile, out);
+            logger.info("Compiling " + toCompile.size() + " source files took " + (System.nanoTime() - start) / 1000000 + " ms"
+                    + (warm ? " with the warm compiler" : ""));
+            success &= result.success;
+            errors += result.globalErrorsCount;
+            warnings += result.globalWarningsCount;
+            compiled.addAll(toCompile);
+            if (full) {
+                break;
+            }
+
+            changedTypes.clear();
+            for (String path : toCompile) {
+                SourceState state = sources.get(path);
+                if (state != null) {
+                    for (String classFile : state.classFiles) {
+                        byte[] previous = previousBytes.remove(classFile);
+                        if (previous == null || hasStructuralChanges(classFile, previous, producedBytes.get(classFile))) {
+                            changedTypes.add(classFile);
+                        }
+                    }
+                }
+            }
+            // class files that are no longer produced
+            changedTypes.addAll(previousBytes.keySet());
+            if (verbose && !changedTypes.isEmpty()) {
+                logger.info("Structural changes in " + changedTypes);
+            }
+            toCompile = findDependents(changedTypes, compiled);
+            if (!result.success) {
+                // no further round after errors, but the dependents still have to see the changes next time
+                markStale(toCompile);
+                break;
+            }
+            round += 1;
+        }
+        producedBytes = null;
+
+        writeState(fingerprint);
+        return new Result(success, errors, warnings);
+    }
+
+    private Result run(String[] optionArgs, Collection<String> paths, StringWriter out) {
+        String[] args = new String[optionArgs.length + paths.size()];
+        System.arraycopy(optionArgs, 0, args, 0, optionArgs.length);
+        int i = optionArgs.length;
+        for (String path : paths) {
+            args[i++] = path;
+        }
+        if (warm) {
+            CompilerDaemon.begin();
+        }
+        final int[] sharedJars = new int[2];
+        InternalCompiler progress = new InternalCompiler(logger, verbose);
+        Main main = new Main(new PrintWriter(out), new PrintWriter(out), false/* systemExit */, null/* options */, progress) {
+            @Override
+            public FileSystem getLibraryAccess() {
+                if (warm) {
+                    CompilerDaemon.shareJars(this.checkedClasspaths, sharedJars, logger);
+                }
+                return super.getLibraryAccess();
+            }
+
+            @Override
+            public ICompilerRequestor getBatchRequestor() {
+                // asked for once the options are known and before anything is compiled
+                this.compilerOptions.produceReferenceInfo = true;
+                final ICompilerRequestor requestor = super.getBatchRequestor();
+                return new ICompilerRequestor() {
+                    public void acceptResult(CompilationResult result) {
+                        record(result);
+                        requestor.acceptResult(result);
+                    }
+                };
+            }
+        };
+        boolean result;
+        try {
+            result = main.compile(args);
+        } finally {
+            if (warm) {
+                CompilerDaemon.end();
+            }
+        }
+        return new Result(result, main.globalErrorsCount, main.globalWarningsCount);
+    }
+
+    private void record(CompilationResult result) {
+        String path = new File(String.valueOf(result.getFileName())).getAbsolutePath();
+        String hash = hashes.get(path);
+        if (hash == null) {
+            // eg- generated by an annotation processor, these are left alone
+            return;
+        }
+        SourceState state = new SourceState(hash, result.hasErrors());
+        for (ClassFile classFile : result.getClassFiles()) {
+            String name = String.valueOf(classFile.fileName());
+            state.classFiles.add(name);
+            if (producedBytes != null) {
+                producedBytes.put(name, classFile.getBytes());
+            }
+        }
+        if (result.simpleNameReferences != null) {
+            for (char[] name : result.simpleNameReferences) {
+                state.simpleNames.add(String.valueOf(name));
+            }
+        }
+        sources.put(path, state);
+    }
+
+    /**
+     * Makes the sources compile on the next build, as if they had errors, while keeping what they produced and referred to.
+     */
+    private void markStale(Set<String> paths) {
+        for (String path : paths) {
+            SourceState state = sources.get(path);
+            if (state != null && !state.hadErrors) {
+                SourceState stale = new SourceState(state.hash, true);
+                stale.classFiles.addAll(state.classFiles);
+                stale.simpleNames.addAll(state.simpleNames);
+                sources.put(path, stale);
+            }
+        }
+        if (verbose && !paths.isEmpty()) {
+            logger.info("Compilation failed, left for the next build: " + paths);
+        }
+    }
+
+    private boolean hasStructuralChanges(String classFile, byte[] previous, byte[] current) {
+        if (current == null) {
+            return true;
+        }
+        try {
+            return new ClassFileReader(previous, classFile.toCharArray()).hasStructuralChanges(current);
+        } catch (ClassFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @param changedTypes class file names, eg- p/Foo$Bar
+     * @return the sources that refer to one of the types by its simple name, or to its enclosing types
+     */
+    private Set<String> findDependents(Set<String> changedTypes, Set<String> excluded) {
+        Set<String> dependents = new LinkedHashSet<String>();
+        if (changedTypes.isEmpty()) {
+            return dependents;
+        }
+        Set<String> simpleNames = new HashSet<String>();
+        for (String type : changedTypes) {
+            String name = type.substring(type.lastIndexOf('/') + 1);
+            simpleNames.addAll(Arrays.asList(name.split("\\$")));
+        }
+        for (Map.Entry<String, SourceState> entry : sources.entrySet()) {
+            if (!excluded.contains(entry.getKey())) {
+                for (String name : entry.getValue().simpleNames) {
+                    if (simpleNames.contains(name)) {
+                        dependents.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * @param previousBytes if not null, receives the contents of the deleted class files
+     */
+    private void deleteClassFiles(SourceState state, Map<String, byte[]> previousBytes) throws IOException {
+        for (String classFile : state.classFiles) {
+            File file = new File(outputDirectory, classFile + ".class");
+            if (file.isFile()) {
+                if (previousBytes != null) {
+                    previousBytes.put(classFile, readBytes(file));
+                }
+                if (!file.delete()) {
+                    logger.warn("Unable to delete " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Types of the sources that are not compiled again come from the output folder.
+     */
+    private String[] addOutputDirectoryToClasspath(String[] optionArgs) {
+        String output = outputDirectory.getAbsolutePath();
+        for (int i = 0; i < optionArgs.length - 1; i++) {
+            if ("-cp".equals(optionArgs[i])) {
+                for (String entry : optionArgs[i + 1].split(File.pathSeparator)) {
+                    if (new File(entry).getAbsolutePath().equals(output)) {
+                        return optionArgs;
+                    }
+                }
+                String[] args = optionArgs.clone();
+                args[i + 1] = output + File.pathSeparator + optionArgs[i + 1];
+                return args;
+            }
+        }
+        String[] args = new String[optionArgs.length + 2];
+        args[0] = "-cp";
+        args[1] = output;
+        System.arraycopy(optionArgs, 0, args, 2, optionArgs.length);
+        return args;
+    }
+
+    /**
+     * @return a hash of the options, of the classpath entries other than the output folder and of the batch compiler
+     */
+    private String fingerprint(String[] optionArgs) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, String.valueOf(STATE_VERSION));
+        String output = outputDirectory.getAbsolutePath();
+        for (int i = 0; i < optionArgs.length; i++) {
+            update(digest, optionArgs[i]);
+            if ("-cp".equals(optionArgs[i]) && i + 1 < optionArgs.length) {
+                for (String entry : optionArgs[i + 1].split(File.pathSeparator)) {
+                    File file = new File(entry);
+                    if (!file.getAbsolutePath().equals(output)) {
+                        fingerprint(digest, file);
+                    }
+                }
+            }
+        }
+        CodeSource compiler = Main.class.getProtectionDomain().getCodeSource();
+        URL location = compiler != null ? compiler.getLocation() : null;
+        if (location != null && "file".equals(location.getProtocol())) {
+            fingerprint(digest, new File(location.getPath()));
+        }
+        return toHex(digest.digest());
+    }
+
+    private void fingerprint(MessageDigest digest, File file) {
+        if (file.isDirectory()) {
+            // eg- the output folder of another module of the reactor
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    fingerprint(digest, child);
+                }
+            }
+        } else if (file.exists()) {
+            update(digest, file.getPath() + ':' + file.lastModified() + ':' + file.length());
+        }
+    }
+
+    /**
+     * @return true if the state was written for the same fingerprint, the sources are read regardless so that the class files of
+     *         the previous build can be deleted
+     */
+    private boolean readState(String fingerprint) throws IOException {
+        if (!stateFile.isFile()) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+        try {
+            if (in.readInt() != STATE_VERSION) {
+                return false;
+            }
+            boolean matches = fingerprint.equals(in.readUTF());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                SourceState state = new SourceState(in.readUTF(), in.readBoolean());
+                for (int j = in.readInt(); j > 0; j--) {
+                    state.classFiles.add(in.readUTF());
+                }
+                for (int j = in.readInt(); j > 0; j--) {
+                    state.simpleNames.add(in.readUTF());
+                }
+                sources.put(path, state);
+            }
+            return matches;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeState(String fingerprint) throws IOException {
+        File directory = stateFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        File temp = new File(directory, stateFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(STATE_VERSION);
+            out.writeUTF(fingerprint);
+            out.writeInt(sources.size());
+            for (Map.Entry<String, SourceState> entry : sources.entrySet()) {
+                SourceState state = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(state.hash);
+                out.writeBoolean(state.hadErrors);
+                out.writeInt(state.classFiles.size());
+                for (String classFile : state.classFiles) {
+                    out.writeUTF(classFile);
+                }
+                out.writeInt(state.simpleNames.size());
+                for (String name : state.simpleNames) {
+                    out.writeUTF(name);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (stateFile.exists() && !stateFile.delete() || !temp.renameTo(stateFile)) {
+            throw new IOException("Unable to write " + stateFile);
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(readBytes(file));
+        return toHex(digest.digest());
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -16,6 +16,7 @@ import junit.framework.TestSuite;
 
 import org.eclipse.jdt.core.groovy.tests.builder.BasicGroovyBuildTests;
 import org.eclipse.jdt.core.groovy.tests.builder.FullProjectTests;
+import org.eclipse.jdt.core.groovy.tests.compiler.GroovyClassLoaderPoolTests;
 import org.eclipse.jdt.core.groovy.tests.compiler.ScriptFolderTests;
 import org.eclipse.jdt.core.groovy.tests.locations.ASTConverterTests;
 import org.eclipse.jdt.core.groovy.tests.locations.ASTNodeSourceLocationsTests;
@@ -26,6 +27,8 @@ import org.eclipse.jdt.core.groovy.tests.model.GroovyClassFileTests;
 import org.eclipse.jdt.core.groovy.tests.model.GroovyCompilationUnitTests;
 import org.eclipse.jdt.core.groovy.tests.model.GroovyContentTypeTests;
 import org.eclipse.jdt.core.groovy.tests.model.GroovyPartialModelTests;
+import org.eclipse.jdt.core.groovy.tests.model.IncrementalReconcileTests;
+import org.eclipse.jdt.core.groovy.tests.model.ModuleNodeMapperTests;
 import org.eclipse.jdt.core.groovy.tests.model.MoveRenameCopyTests;
 import org.eclipse.jdt.core.groovy.tests.search.AllSearchTests;
 import org.eclipse.jdt.groovy.core.tests.basic.GroovySimpleTest;
@@ -53,6 +56,8 @@ public class GroovyJDTTests {
         suite.addTest(GroovyContentTypeTests.suite());
         suite.addTest(MoveRenameCopyTests.suite());
         suite.addTest(GroovyPartialModelTests.suite());
+        suite.addTest(IncrementalReconcileTests.suite());
+        suite.addTest(ModuleNodeMapperTests.suite());
 
         // Builder tests
         suite.addTest(BasicGroovyBuildTests.suite());
@@ -68,6 +73,7 @@ public class GroovyJDTTests {
         suite.addTest(GroovySimpleTest.suite());
         suite.addTest(GroovySimpleTests_Compliance_1_8.suite());
         suite.addTest(ScriptFolderTests.suite());
+        suite.addTestSuite(GroovyClassLoaderPoolTests.class);
 
         // Search tests
         suite.addTest(AllSearchTests.suite());
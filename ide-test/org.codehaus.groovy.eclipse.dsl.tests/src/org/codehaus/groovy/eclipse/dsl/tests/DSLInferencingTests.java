@@ -16,6 +16,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import org.codehaus.groovy.eclipse.dsl.RefreshDSLDJob;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.GroovyDSLDContext;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
 
@@ -96,6 +97,24 @@ public class DSLInferencingTests extends AbstractDSLInferencingTest {
         assertDeclaringType(contents, start, end, "Other", true);
     }
     
+    // both lookups are made in the same scope against the same type, so each inferencing run reuses the contributions of the first
+    public void testMemoizedContributions1() throws Exception {
+        createDsls("contribute(currentType('Foo')) { property name:'first', type:Integer\n property name:'second', type:String }");
+        String contents = 
+            "class Foo { }\n" +
+            "def f = new Foo()\n" +
+            "f.first\n" +
+            "f.second";
+        int hits = GroovyDSLDContext.getTotalMemoHits();
+        int start = contents.lastIndexOf("first");
+        assertType(contents, start, start + "first".length(), "java.lang.Integer", true);
+        assertTrue("Expected the memoized contributions to be reused", GroovyDSLDContext.getTotalMemoHits() > hits);
+        hits = GroovyDSLDContext.getTotalMemoHits();
+        start = contents.lastIndexOf("second");
+        assertType(contents, start, start + "second".length(), "java.lang.String", true);
+        assertTrue("Expected the memoized contributions to be reused", GroovyDSLDContext.getTotalMemoHits() > hits);
+    }
+    
     public void testDelegatesTo1() throws Exception {
         createDsls("currentType('Foo').accept { delegatesTo 'Other' }");
         String contents = 
@@ -10,18 +10,31 @@
  *******************************************************************************/
 package org.codehaus.groovy.eclipse.dsl.tests;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import org.codehaus.groovy.eclipse.dsl.DSLDStore;
 import org.codehaus.groovy.eclipse.dsl.DSLPreferences;
+import org.codehaus.groovy.eclipse.dsl.GroovyDSLCoreActivator;
+import org.codehaus.groovy.eclipse.dsl.RefreshDSLDJob;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.IPointcut;
 import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.CurrentTypePointcut;
 import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.FindFieldPointcut;
+import org.codehaus.groovy.eclipse.dsl.script.DSLDScriptExecutor;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IStorage;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.groovy.core.util.ReflectionUtils;
 
 /**
  * 
@@ -331,4 +344,54 @@ public class DSLStoreTests extends AbstractDSLInferencingTest {
                         new Integer[] { }));
 
     }
+
+    // the projects of a refresh may be refreshed in parallel, each must end up with its own pointcuts
+    public void testRefreshSeveralProjects() throws Exception {
+        IProject other = createOtherProject();
+        createDsls("currentType().accept { }");
+        createDsls(0, other, "fields().accept { }", "currentType().accept { }");
+        env.fullBuild();
+
+        new RefreshDSLDJob(Arrays.asList(project, other)).run(new NullProgressMonitor());
+
+        assertEquals(Arrays.asList(createSemiUniqueName(CurrentTypePointcut.class, 0)), getPointcuts(project));
+        assertEquals(Arrays.asList(createSemiUniqueName(CurrentTypePointcut.class, 1),
+                createSemiUniqueName(FindFieldPointcut.class, 0)), getPointcuts(other));
+    }
+
+    public void testJarScriptSharedBetweenProjects() throws Exception {
+        IProject other = createOtherProject();
+        addJarToProject("simple_dsld.jar");
+        env.addExternalJar(other.getFullPath(), findExternalFilePath("simple_dsld.jar"));
+        env.fullBuild();
+
+        new RefreshDSLDJob(project).run(new NullProgressMonitor());
+        int hits = DSLDScriptExecutor.getSharedScriptHits();
+        new RefreshDSLDJob(other).run(new NullProgressMonitor());
+
+        assertEquals("Expected the script of the jar to be compiled once", hits + 1, DSLDScriptExecutor.getSharedScriptHits());
+        assertEquals(getPointcuts(project), getPointcuts(other));
+        assertEquals(1, getPointcuts(other).size());
+    }
+
+    private IProject createOtherProject() throws Exception {
+        IPath otherPath = env.addProject("Other", "1.5");
+        env.removePackageFragmentRoot(otherPath, "");
+        env.addPackageFragmentRoot(otherPath, "src", null, null, "bin");
+        env.fullBuild("Other");
+        return env.getProject("Other");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getPointcuts(IProject theProject) {
+        DSLDStore store = GroovyDSLCoreActivator.getDefault().getContextStoreManager().getDSLDStore(theProject.getName());
+        List<String> names = new ArrayList<String>();
+        for (Set<IPointcut> pcs : ((Map<IStorage, Set<IPointcut>>) ReflectionUtils.getPrivateField(DSLDStore.class, "keyContextMap", store)).values()) {
+            for (IPointcut pc : pcs) {
+                names.add(createSemiUniqueName(pc));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
 }
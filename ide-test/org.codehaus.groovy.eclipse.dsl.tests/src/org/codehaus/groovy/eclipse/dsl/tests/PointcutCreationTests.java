@@ -10,9 +10,15 @@
  *******************************************************************************/
 package org.codehaus.groovy.eclipse.dsl.tests;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.codehaus.groovy.eclipse.dsl.PointcutDispatchIndex;
+import org.codehaus.groovy.eclipse.dsl.PointcutDispatchIndex.DispatchKey;
 import org.codehaus.groovy.eclipse.dsl.pointcuts.IPointcut;
 import org.codehaus.groovy.eclipse.dsl.pointcuts.PointcutVerificationException;
 import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.AbstractModifierPointcut.FinalPointcut;
@@ -406,6 +412,46 @@ public class PointcutCreationTests extends AbstractGroovySearchTest {
         		"mine()");
         assertEquals("org.codehaus.groovy.eclipse.dsl.pointcuts.impl.UserExtensiblePointcut", pc.getClass().getName());
     }
+    public void testDispatchKeys1() throws Exception {
+        assertDispatchKeys("currentType(\"java.lang.String\")", "TYPE:java.lang.String");
+        assertDispatchKeys("currentType(subType(\"java.util.List\"))", "TYPE:java.util.List");
+        assertDispatchKeys("currentIdentifier(\"foo\")", "IDENTIFIER:foo");
+        assertDispatchKeys("enclosingCall(name(\"foo\"))", "ENCLOSING_CALL:foo");
+        assertDispatchKeys("enclosingCallName(\"foo\")", "ENCLOSING_CALL:foo");
+    }
+
+    public void testDispatchKeys2() throws Exception {
+        assertDispatchKeys("currentType(\"java.lang.String\") & fields()", "TYPE:java.lang.String");
+        assertDispatchKeys("bind(x : currentType(\"java.lang.String\")) | enclosingCall(\"foo\")",
+                "TYPE:java.lang.String", "ENCLOSING_CALL:foo");
+    }
+
+    public void testDispatchKeysFallback() throws Exception {
+        assertDispatchKeys("currentType()");
+        assertDispatchKeys("currentType(fields())");
+        assertDispatchKeys("currentType(\"java.lang.String\") | fields()");
+        assertDispatchKeys("~currentType(\"java.lang.String\")");
+        assertDispatchKeys("enclosingCall(declaringType(subType(\"java.lang.String\")))");
+    }
+
+    /**
+     * @param expectedKeys the expected keys or none if the pointcut should go to the fallback bucket
+     */
+    protected void assertDispatchKeys(String pointcut, String... expectedKeys) {
+        IPointcut pc = new PointcutScriptExecutor().createPointcut(pointcut);
+        Set<DispatchKey> keys = PointcutDispatchIndex.analyze(pc);
+        if (expectedKeys.length == 0) {
+            assertNull("Expected no dispatch keys for " + pointcut + ", but found " + keys, keys);
+        } else {
+            assertNotNull("Expected dispatch keys for " + pointcut, keys);
+            Set<String> actual = new HashSet<String>();
+            for (DispatchKey key : keys) {
+                actual.add(key.toString());
+            }
+            assertEquals(new HashSet<String>(Arrays.asList(expectedKeys)), actual);
+        }
+    }
+
     /**
      * @param pc
      * @throws PointcutVerificationException
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.groovy.eclipse.refactoring.test.formatter;
+
+import groovyjarjarantlr.Token;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.eclipse.refactoring.formatter.DefaultGroovyFormatter;
+import org.codehaus.groovy.eclipse.refactoring.formatter.FormatterPreferencesOnStore;
+import org.codehaus.groovy.eclipse.refactoring.formatter.KlenkDocumentScanner;
+import org.codehaus.groovy.eclipse.refactoring.test.TestPrefInitializer;
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.text.Document;
+
+/**
+ * Tests the nodes that the formatter finds for tokens, when a document has
+ * several classes and references to the same class. ClassNodes are equal by
+ * name, so a declaration and its references must still be told apart.
+ */
+public class FindCorrespondingNodeTests extends TestCase {
+
+    private static final String CONTENTS =
+        "class Foo {\n" +
+        "\tFoo next\n" +
+        "}\n" +
+        "class Bar extends Foo {\n" +
+        "}\n" +
+        "class Baz extends Foo {\n" +
+        "}\n";
+
+    private DefaultGroovyFormatter formatter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        IPreferenceStore pref = TestPrefInitializer.initializePreferences(new HashMap<String, String>(), null);
+        formatter = new DefaultGroovyFormatter(new Document(CONTENTS), new FormatterPreferencesOnStore(pref), 0);
+        formatter.format();
+    }
+
+    public void testReferencesFoundAtTheirPosition() throws Exception {
+        KlenkDocumentScanner tokens = formatter.getTokens();
+        int references = 0;
+        for (int i = 1; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if ("Foo".equals(token.getText()) && "extends".equals(tokens.get(i - 1).getText())) {
+                ASTNode node = formatter.findCorrespondingNode(token);
+                assertTrue("Expected a class reference, but found " + node, node instanceof ClassNode);
+                assertEquals("Foo", ((ClassNode) node).getName());
+                assertEquals(token.getLine(), node.getLineNumber());
+                assertEquals(token.getColumn(), node.getColumnNumber());
+                references++;
+            }
+        }
+        assertEquals(2, references);
+    }
+
+    public void testDeclarationsFoundAtTheirPosition() throws Exception {
+        assertEquals(3, formatter.getProgressRootNode().getClasses().size());
+        for (ClassNode declaration : formatter.getProgressRootNode().getClasses()) {
+            int index = formatter.getPosOfToken(declaration.getLineNumber(), declaration.getColumnNumber());
+            assertTrue("No token at " + declaration.getName(), index >= 0);
+            assertSame(declaration, formatter.findCorrespondingNode(formatter.getTokens().get(index)));
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import junit.framework.TestCase;
 
 import org.codehaus.greclipse.GroovyTokenTypeBridge;
+import org.codehaus.groovy.antlr.GroovySourceToken;
 import org.codehaus.groovy.eclipse.refactoring.formatter.GroovyDocumentScanner;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
@@ -119,6 +120,77 @@ public class GroovyDocumentScannerTests extends TestCase {
         scanner.dispose();
     }
 
+    public void testIncrementalEdits() throws Exception {
+        String text =
+            "class Foo {\n" +
+            "    def a = foo(1, { x ->\n" +
+            "        println \"x is ${x +\n" +
+            "            1} and $x\"\n" +
+            "    },\n" +
+            "    2)\n" +
+            "    /* comment\n" +
+            "     */\n" +
+            "    def b = '''multi\n" +
+            "line'''\n" +
+            "    def c = /regex/ + a / 2<***>\n" +
+            "    def d = [1,\n" +
+            "        2]\n" +
+            "}\n";
+        makeEditor(text);
+
+        IDocument doc = getDocument();
+        GroovyDocumentScanner scanner = new GroovyDocumentScanner(doc);
+        scanner.getLastToken();
+
+        send("\n");
+        scanner.getLineTokensUpto(caret);
+        assertSameTokens(scanner);
+
+        // the rest of the file becomes a string, then a string again
+        send("def e = \"\"\"");
+        scanner.getLineTokensUpto(caret);
+        assertSameTokens(scanner);
+        send("\"\"\"");
+        assertSameTokens(scanner);
+
+        // before the tokens that were scanned
+        doc.replace(text.indexOf("{\n") + 2, 0, "\n\n    int i\n");
+        scanner.getTokenFrom(0);
+        assertSameTokens(scanner);
+
+        // across lines, in parentheses
+        int start = doc.get().indexOf("    },");
+        doc.replace(start, doc.get().indexOf("2)") - start, "    }, ");
+        assertSameTokens(scanner);
+
+        // in a comment
+        doc.replace(doc.get().indexOf("comment"), "comment".length(), "*/ def f = 1 /*");
+        assertSameTokens(scanner);
+        scanner.dispose();
+    }
+
+    private void assertSameTokens(GroovyDocumentScanner scanner) {
+        GroovyDocumentScanner expected = new GroovyDocumentScanner(new Document(getDocument().get()));
+        List<Token> expectedTokens = expected.getTokens(0, getDocument().getLength());
+        List<Token> actualTokens = scanner.getTokens(0, getDocument().getLength());
+        expectedTokens.add(expected.getLastToken());
+        actualTokens.add(scanner.getLastToken());
+
+        assertEquals(expectedTokens.size(), actualTokens.size());
+        for (int i = 0; i < expectedTokens.size(); i++) {
+            GroovySourceToken e = (GroovySourceToken) expectedTokens.get(i);
+            GroovySourceToken a = (GroovySourceToken) actualTokens.get(i);
+            String message = "Token " + i + " expected " + e + " but was " + a;
+            assertEquals(message, e.getType(), a.getType());
+            assertEquals(message, e.getText(), a.getText());
+            assertEquals(message, e.getLine(), a.getLine());
+            assertEquals(message, e.getColumn(), a.getColumn());
+            assertEquals(message, e.getLineLast(), a.getLineLast());
+            assertEquals(message, e.getColumnLast(), a.getColumnLast());
+        }
+        expected.dispose();
+    }
+
     private IDocument getDocument() {
         return editDoc;
     }
@@ -32,6 +32,7 @@ import org.codehaus.groovy.eclipse.codeassist.preferences.DGMProposalFilter;
 import org.codehaus.groovy.eclipse.codeassist.proposals.GroovyCategoryMethodProposal;
 import org.codehaus.groovy.eclipse.codeassist.proposals.GroovyFieldProposal;
 import org.codehaus.groovy.eclipse.codeassist.proposals.IGroovyProposal;
+import org.eclipse.jdt.groovy.search.DGMIndex;
 import org.eclipse.jdt.groovy.search.VariableScope;
 
 /**
@@ -57,8 +58,13 @@ public class CategoryProposalCreator extends AbstractProposalCreator {
         List<IGroovyProposal> groovyProposals = new LinkedList<IGroovyProposal>();
         Set<String> existingFieldProposals = new HashSet<String>();
         Map<String, List<MethodNode>> existingMethodProposals = new HashMap<String, List<MethodNode>>();
+        DGMIndex index = DGMIndex.getInstance();
         for (ClassNode category : categories) {
-            List<MethodNode> allMethods = category.getAllDeclaredMethods();
+            // for default categories, only look at methods that could apply to the receiver
+            List<MethodNode> allMethods = index.getCandidateMethods(category, set);
+            if (allMethods == null) {
+                allMethods = category.getAllDeclaredMethods();
+            }
             boolean isDGMCategory = isDGMCategory(category);
             for (MethodNode method : allMethods) {
                 // Check for DGMs filtered from preferences
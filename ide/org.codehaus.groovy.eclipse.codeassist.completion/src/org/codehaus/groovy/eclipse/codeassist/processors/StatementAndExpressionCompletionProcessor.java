@@ -345,7 +345,7 @@ public class StatementAndExpressionCompletionProcessor extends
 
         // if completion node is null, then it is likely because of a syntax error
         if (completionNode != null) {
-            visitor.visitCompilationUnit(requestor);
+            visitor.visitCompilationUnit(requestor, context.completionLocation, context.completionEnd);
         }
         ClassNode completionType;
         boolean isStatic;
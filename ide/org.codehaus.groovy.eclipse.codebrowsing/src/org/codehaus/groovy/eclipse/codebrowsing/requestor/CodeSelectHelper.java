@@ -27,8 +27,7 @@ import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
 import org.codehaus.jdt.groovy.model.ICodeSelectHelper;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.groovy.search.TypeInferencingVisitorFactory;
-import org.eclipse.jdt.groovy.search.TypeInferencingVisitorWithRequestor;
+import org.eclipse.jdt.groovy.search.TypeInferenceCache;
 
 /**
  * @author Andrew Eisenberg
@@ -61,8 +60,7 @@ public class CodeSelectHelper implements ICodeSelectHelper {
                     }
                     
                     CodeSelectRequestor requestor = createRequestor(unit, nodeToLookFor);
-                    TypeInferencingVisitorWithRequestor visitor = new TypeInferencingVisitorFactory().createVisitor(unit);
-                    visitor.visitCompilationUnit(requestor);
+                    TypeInferenceCache.getInstance().visitRegion(unit, requestor, start, start + length);
                     return requestor.getRequestedElement() != null ? new IJavaElement[] { requestor.getRequestedElement() } : new IJavaElement[0];
                 }
             } finally {
@@ -103,8 +101,7 @@ public class CodeSelectHelper implements ICodeSelectHelper {
                     }
                     
                     CodeSelectRequestor requestor = createRequestor(unit, nodeToLookFor);
-                    TypeInferencingVisitorWithRequestor visitor = new TypeInferencingVisitorFactory().createVisitor(unit);
-                    visitor.visitCompilationUnit(requestor);
+                    TypeInferenceCache.getInstance().visitRegion(unit, requestor, start, start + length);
                     return requestor.getRequestedNode();
                 }
             } finally {
@@ -39,6 +39,7 @@ public class DSLDStore {
 
     private final Map<IPointcut, List<IContributionGroup>> pointcutContributionMap;  // maps pointcuts to their contributors
     private final Map<IStorage, Set<IPointcut>> keyContextMap;  // maps unique keys (such as script names) to all the pointcuts that they produce
+    private PointcutDispatchIndex dispatchIndex;  // built lazily, cleared whenever the pointcuts change
     public DSLDStore() {
         // use linked hash map because order matters
         pointcutContributionMap = new LinkedHashMap<IPointcut, List<IContributionGroup>>();
@@ -52,6 +53,7 @@ public class DSLDStore {
             pointcutContributionMap.put(pointcut, contributions);
         }
         contributions.add(contribution);
+        dispatchIndex = null;
         
         IStorage identifier = pointcut.getContainerIdentifier();
         Set<IPointcut> pointcuts = keyContextMap.get(identifier);
@@ -68,6 +70,7 @@ public class DSLDStore {
             GroovyLogManager.manager.log(TraceCategory.DSL, "Purging pointcut for DSL file " + identifier);
         }
         Set<IPointcut> pointcuts = keyContextMap.remove(identifier);
+        dispatchIndex = null;
         if (pointcuts != null) {
             for (IPointcut pointcut : pointcuts) {
                 pointcutContributionMap.remove(pointcut);
@@ -78,6 +81,7 @@ public class DSLDStore {
     public void purgeAll() {
         keyContextMap.clear();
         pointcutContributionMap.clear();
+        dispatchIndex = null;
     }
 
     /**
@@ -106,6 +110,7 @@ public class DSLDStore {
         } else {
             existing.addAll(contributions);
         }
+        dispatchIndex = null;
     }
     public void addAllContexts(List<IPointcut> pointcuts, IContributionGroup contribution) {
         for (IPointcut pointcut : pointcuts) {
@@ -121,21 +126,57 @@ public class DSLDStore {
      * @return The set of contributions applicable for the pattern
      */
     public List<IContributionElement> findContributions(GroovyDSLDContext pattern, Set<String> disabledScripts) {
+        PointcutDispatchIndex index = getDispatchIndex();
+        Object key = index.isMemoizable() ? pattern.createContributionKey(this, disabledScripts, index.readsIdentifier()) : null;
+        if (key != null) {
+            List<IContributionElement> memoized = pattern.getMemoizedContributions(key);
+            if (memoized != null) {
+                if (GroovyLogManager.manager.hasLoggers()) {
+                    GroovyLogManager.manager.log(TraceCategory.DSL, "Reusing " + memoized.size() + " contributions for "
+                            + pattern.getCurrentType().getName() + " (hits=" + pattern.getMemoHits() + ", misses="
+                            + pattern.getMemoMisses() + ")");
+                }
+                return new ArrayList<IContributionElement>(memoized);
+            }
+        }
+
+        pattern.resetContextSensitive();
         List<IContributionElement> elts = new ArrayList<IContributionElement>();
-        for (Entry<IPointcut, List<IContributionGroup>> entry : pointcutContributionMap.entrySet()) {
-            IPointcut pointcut = entry.getKey();
+        List<IPointcut> candidates = index.getCandidates(pattern);
+        for (IPointcut pointcut : candidates) {
             if (! disabledScripts.contains(DSLDStore.toUniqueString(pointcut.getContainerIdentifier()))) {
                 pattern.resetBinding();
                 Collection<?> results = pointcut.matches(pattern, pattern.getCurrentType());
                 if (results != null) {
-                    for (IContributionGroup group : entry.getValue()) {
+                    for (IContributionGroup group : pointcutContributionMap.get(pointcut)) {
                         elts.addAll(group.getContributions(pattern, pattern.getCurrentBinding()));
                     }
                 }
             }
         }
+        if (key != null && !pattern.isContextSensitive()) {
+            pattern.memoizeContributions(key, new ArrayList<IContributionElement>(elts));
+        }
         return elts;
     }
+
+    /**
+     * @return the index used to find the pointcuts that may match a lookup.
+     * Only pointcuts in the index's fallback bucket and in the buckets for the
+     * current type, identifier and enclosing calls are evaluated.
+     */
+    public PointcutDispatchIndex getDispatchIndex() {
+        PointcutDispatchIndex index = dispatchIndex;
+        if (index == null) {
+            index = new PointcutDispatchIndex(pointcutContributionMap.keySet());
+            dispatchIndex = index;
+            if (GroovyLogManager.manager.hasLoggers()) {
+                GroovyLogManager.manager.log(TraceCategory.DSL, "Indexed " + index.size() + " pointcuts, "
+                        + index.fallbackSize() + " could not be analyzed");
+            }
+        }
+        return index;
+    }
     
     public IStorage[] getAllContextKeys() {
         return keyContextMap.keySet().toArray(new IStorage[0]);
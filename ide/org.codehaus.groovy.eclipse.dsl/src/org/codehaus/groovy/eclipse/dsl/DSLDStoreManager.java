@@ -13,11 +13,11 @@ package org.codehaus.groovy.eclipse.dsl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.codehaus.jdt.groovy.model.GroovyNature;
 import org.eclipse.core.resources.IProject;
@@ -32,12 +32,13 @@ import org.eclipse.jdt.core.IJavaProject;
  */
 public class DSLDStoreManager {
     
-    private final Map<String, DSLDStore> projectDSLDMap;
+    // projects may be refreshed concurrently, see RefreshDSLDJob
+    private final ConcurrentMap<String, DSLDStore> projectDSLDMap;
     
     private final Set<String> inProgress = new HashSet<String>();
     
     public DSLDStoreManager() {
-        projectDSLDMap = new HashMap<String, DSLDStore>();
+        projectDSLDMap = new ConcurrentHashMap<String, DSLDStore>();
     }
     
     public DSLDStore getDSLDStore(IJavaProject project) {
@@ -50,8 +51,11 @@ public class DSLDStoreManager {
     public DSLDStore getDSLDStore(String projectName) {
         DSLDStore contextStore = projectDSLDMap.get(projectName);
         if (contextStore == null) {
-            contextStore = new DSLDStore();
-            projectDSLDMap.put(projectName, contextStore);
+            DSLDStore newStore = new DSLDStore();
+            contextStore = projectDSLDMap.putIfAbsent(projectName, newStore);
+            if (contextStore == null) {
+                contextStore = newStore;
+            }
         }
         return contextStore;
     }
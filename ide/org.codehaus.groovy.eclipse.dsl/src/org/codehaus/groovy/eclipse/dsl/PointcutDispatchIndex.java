@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Codehaus.org, SpringSource, and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.codehaus.groovy.eclipse.dsl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.GroovyDSLDContext;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.IPointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.AndPointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.BindPointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.CurrentIdentifierPointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.CurrentTypePointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.EnclosingCallNamePointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.EnclosingCallPointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.NamePointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.OrPointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.SubTypePointcut;
+import org.codehaus.groovy.eclipse.dsl.pointcuts.impl.UserExtensiblePointcut;
+import org.eclipse.jdt.groovy.search.VariableScope;
+import org.eclipse.jdt.groovy.search.VariableScope.CallAndType;
+
+/**
+ * Narrows down the pointcuts of a {@link DSLDStore} that can possibly match a
+ * given {@link GroovyDSLDContext}, so that a lookup does not have to evaluate
+ * every registered pointcut.
+ *
+ * Each pointcut is analyzed once, when the index is built.  A pointcut that
+ * can only match when the current type (or one of its supertypes) has a
+ * particular name, when the current identifier has a particular name, or when
+ * there is an enclosing call of a particular name is filed under those keys.
+ * All other pointcuts go to a fallback bucket and are always evaluated.
+ *
+ * The index is only a pre-filter: candidates must still be matched with
+ * {@link IPointcut#matches(GroovyDSLDContext, Object)}.  Candidates are
+ * returned in the order that the pointcuts were added to the index.
+ */
+public class PointcutDispatchIndex {
+
+    /**
+     * The kinds of requirement that a pointcut can place on a context
+     */
+    public static enum KeyKind {
+        /** the current type or one of its supertypes must have this name */
+        TYPE,
+        /** the current node must be a variable or constant with this text */
+        IDENTIFIER,
+        /** there must be an enclosing method call with this name */
+        ENCLOSING_CALL
+    }
+
+    /**
+     * A single requirement.  A pointcut can only match if at least one of its
+     * keys holds for the context.
+     */
+    public static final class DispatchKey {
+        public final KeyKind kind;
+        public final String name;
+
+        public DispatchKey(KeyKind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DispatchKey)) {
+                return false;
+            }
+            DispatchKey other = (DispatchKey) obj;
+            return kind == other.kind && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return kind.hashCode() * 31 + name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + name;
+        }
+    }
+
+    private final List<IPointcut> pointcuts = new ArrayList<IPointcut>();
+    private final Map<String, List<Integer>> typeBuckets = new HashMap<String, List<Integer>>();
+    private final Map<String, List<Integer>> identifierBuckets = new HashMap<String, List<Integer>>();
+    private final Map<String, List<Integer>> callBuckets = new HashMap<String, List<Integer>>();
+    private final BitSet fallback = new BitSet();
+    private boolean readsIdentifier;
+    private boolean memoizable = true;
+
+    /**
+     * @param orderedPointcuts the pointcuts to index, in the order in which they must be evaluated
+     */
+    public PointcutDispatchIndex(Collection<IPointcut> orderedPointcuts) {
+        for (IPointcut pointcut : orderedPointcuts) {
+            int ordinal = pointcuts.size();
+            pointcuts.add(pointcut);
+            scan(pointcut);
+            Set<DispatchKey> keys = analyze(pointcut);
+            if (keys == null) {
+                fallback.set(ordinal);
+                continue;
+            }
+            for (DispatchKey key : keys) {
+                Map<String, List<Integer>> buckets = bucketsFor(key.kind);
+                List<Integer> bucket = buckets.get(key.name);
+                if (bucket == null) {
+                    bucket = new ArrayList<Integer>(2);
+                    buckets.put(key.name, bucket);
+                }
+                bucket.add(ordinal);
+            }
+        }
+    }
+
+    private Map<String, List<Integer>> bucketsFor(KeyKind kind) {
+        switch (kind) {
+            case TYPE:
+                return typeBuckets;
+            case IDENTIFIER:
+                return identifierBuckets;
+            default:
+                return callBuckets;
+        }
+    }
+
+    /**
+     * Looks for pointcuts whose result depends on more than the current type,
+     * scope, static-ness and primary-ness of a lookup
+     */
+    private void scan(IPointcut pointcut) {
+        if (pointcut instanceof CurrentIdentifierPointcut) {
+            readsIdentifier = true;
+        } else if (pointcut instanceof UserExtensiblePointcut) {
+            memoizable = false;
+        }
+        for (Object arg : pointcut.getArgumentValues()) {
+            if (arg instanceof IPointcut) {
+                scan((IPointcut) arg);
+            }
+        }
+    }
+
+    /**
+     * @return true iff some pointcut looks at the identifier of the current node
+     */
+    public boolean readsIdentifier() {
+        return readsIdentifier;
+    }
+
+    /**
+     * @return false iff some pointcut runs arbitrary code, so its results
+     * cannot be reused between lookups
+     */
+    public boolean isMemoizable() {
+        return memoizable;
+    }
+
+    public int size() {
+        return pointcuts.size();
+    }
+
+    /**
+     * @return the number of pointcuts that could not be analyzed and are always candidates
+     */
+    public int fallbackSize() {
+        return fallback.cardinality();
+    }
+
+    /**
+     * Finds the pointcuts that can possibly match the context
+     * @param pattern the context of the current lookup
+     * @return the candidate pointcuts, in index order
+     */
+    public List<IPointcut> getCandidates(GroovyDSLDContext pattern) {
+        ClassNode currentType = pattern.getCurrentType();
+        VariableScope scope = pattern.getCurrentScope();
+        if (currentType == null || scope == null) {
+            return Collections.unmodifiableList(pointcuts);
+        }
+
+        BitSet candidates = (BitSet) fallback.clone();
+        if (!typeBuckets.isEmpty()) {
+            for (String name : getAllSuperNames(currentType)) {
+                addAll(candidates, typeBuckets.get(name));
+            }
+        }
+        if (!identifierBuckets.isEmpty()) {
+            ASTNode node = scope.getCurrentNode();
+            if (node instanceof VariableExpression || node instanceof ConstantExpression) {
+                addAll(candidates, identifierBuckets.get(node.getText()));
+            }
+        }
+        if (!callBuckets.isEmpty()) {
+            List<CallAndType> enclosing = scope.getAllEnclosingMethodCallExpressions();
+            if (enclosing != null) {
+                for (CallAndType callAndType : enclosing) {
+                    String name = callAndType.call.getMethodAsString();
+                    if (name != null) {
+                        addAll(candidates, callBuckets.get(name));
+                    }
+                }
+            }
+        }
+
+        List<IPointcut> result = new ArrayList<IPointcut>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            result.add(pointcuts.get(i));
+        }
+        return result;
+    }
+
+    private static void addAll(BitSet candidates, List<Integer> bucket) {
+        if (bucket != null) {
+            for (Integer ordinal : bucket) {
+                candidates.set(ordinal);
+            }
+        }
+    }
+
+    /**
+     * Same hierarchy as {@link SubTypePointcut} walks
+     */
+    private static Set<String> getAllSuperNames(ClassNode type) {
+        Set<String> names = new HashSet<String>();
+        internalGetAllSuperNames(type, names);
+        return names;
+    }
+
+    private static void internalGetAllSuperNames(ClassNode type, Set<String> names) {
+        if (type == null || !names.add(type.getName())) {
+            return;
+        }
+        internalGetAllSuperNames(type.getSuperClass(), names);
+        for (ClassNode inter : type.getAllInterfaces()) {
+            if (!inter.getName().equals(type.getName())) {
+                internalGetAllSuperNames(inter, names);
+            }
+        }
+    }
+
+    /**
+     * Statically determines what a context must look like for the pointcut to match
+     * @param pointcut a top level pointcut, ie- one that is matched against the current type
+     * @return the keys of which at least one must hold for the pointcut to match,
+     * or null if nothing is known about the pointcut
+     */
+    public static Set<DispatchKey> analyze(IPointcut pointcut) {
+        return analyze(pointcut, true);
+    }
+
+    /**
+     * @param matchesCurrentType true iff the pointcut is matched against the current type
+     */
+    private static Set<DispatchKey> analyze(IPointcut pointcut, boolean matchesCurrentType) {
+        Object arg = pointcut.getFirstArgument();
+        if (pointcut instanceof CurrentTypePointcut) {
+            String name = asTypeName(arg);
+            if (name != null) {
+                return keys(KeyKind.TYPE, name);
+            } else if (arg instanceof IPointcut) {
+                return analyze((IPointcut) arg, true);
+            }
+        } else if (pointcut instanceof SubTypePointcut) {
+            String name = asTypeName(arg);
+            if (name != null && matchesCurrentType) {
+                return keys(KeyKind.TYPE, name);
+            }
+        } else if (pointcut instanceof CurrentIdentifierPointcut) {
+            if (arg instanceof String) {
+                return keys(KeyKind.IDENTIFIER, (String) arg);
+            }
+        } else if (pointcut instanceof EnclosingCallPointcut || pointcut instanceof EnclosingCallNamePointcut) {
+            if (arg instanceof String) {
+                return keys(KeyKind.ENCLOSING_CALL, (String) arg);
+            } else if (arg instanceof NamePointcut && ((NamePointcut) arg).getFirstArgument() instanceof String) {
+                return keys(KeyKind.ENCLOSING_CALL, (String) ((NamePointcut) arg).getFirstArgument());
+            }
+        } else if (pointcut instanceof BindPointcut) {
+            if (arg instanceof IPointcut) {
+                return analyze((IPointcut) arg, matchesCurrentType);
+            }
+        } else if (pointcut instanceof AndPointcut) {
+            // every argument must match, so the requirements of any one of them will do.
+            // choose the most selective
+            Set<DispatchKey> best = null;
+            for (Object value : pointcut.getArgumentValues()) {
+                if (value instanceof IPointcut) {
+                    Set<DispatchKey> keys = analyze((IPointcut) value, matchesCurrentType);
+                    if (keys != null && (best == null || keys.size() < best.size())) {
+                        best = keys;
+                    }
+                }
+            }
+            return best;
+        } else if (pointcut instanceof OrPointcut) {
+            // any argument may match, so all of them must be analyzable
+            Set<DispatchKey> all = new LinkedHashSet<DispatchKey>();
+            for (Object value : pointcut.getArgumentValues()) {
+                Set<DispatchKey> keys = value instanceof IPointcut ? analyze((IPointcut) value, matchesCurrentType) : null;
+                if (keys == null) {
+                    return null;
+                }
+                all.addAll(keys);
+            }
+            return all.isEmpty() ? null : all;
+        }
+        return null;
+    }
+
+    private static String asTypeName(Object arg) {
+        if (arg instanceof String) {
+            return (String) arg;
+        } else if (arg instanceof Class<?>) {
+            return ((Class<?>) arg).getName();
+        }
+        return null;
+    }
+
+    private static Set<DispatchKey> keys(KeyKind kind, String name) {
+        return Collections.singleton(new DispatchKey(kind, name));
+    }
+}
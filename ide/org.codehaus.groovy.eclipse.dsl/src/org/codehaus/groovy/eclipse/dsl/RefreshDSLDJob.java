@@ -12,9 +12,18 @@ package org.codehaus.groovy.eclipse.dsl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.codehaus.groovy.eclipse.GroovyLogManager;
 import org.codehaus.groovy.eclipse.TraceCategory;
@@ -254,9 +263,35 @@ public class RefreshDSLDJob extends Job {
         }
     }
 
+    /**
+     * Forwards cancellation from the job's monitor to a worker thread.  Progress
+     * monitors are not thread safe, so workers do not report progress.
+     */
+    private static class CancelForwardingMonitor extends NullProgressMonitor {
+        private final IProgressMonitor parent;
+
+        CancelForwardingMonitor(IProgressMonitor parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return super.isCanceled() || parent.isCanceled();
+        }
+    }
+
+    /**
+     * Maximum number of projects refreshed at once, and of scripts compiled at once
+     */
+    private static final int REFRESH_THREADS = Integer.getInteger("greclipse.dsld.refreshThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors())).intValue();
+
     private final List<IProject> projects;
     private DSLDStoreManager contextStoreManager = GroovyDSLCoreActivator.getDefault().getContextStoreManager();
 
+    /** compiles scripts while {@link #run(IProgressMonitor)} is running, null if scripts are compiled serially */
+    private ExecutorService scriptPool;
+
     /**
      * Deprecated.  Use {@link DSLDStoreManager#initialize(IProject, boolean)}
      * instead.  This new method allows for the initialization of a store synchronously
@@ -311,17 +346,34 @@ public class RefreshDSLDJob extends Job {
                 monitor = new NullProgressMonitor();
             }
             monitor.beginTask("Refresh DSLD scripts", projects.size() * 9);
-            for (IProject project : projects) {
-                IStatus res = Status.OK_STATUS;
-                try {
-                    res = refreshProject(project, new SubProgressMonitor(monitor, 9));
-                } finally {
-                    contextStoreManager.removeInProgress(project);
+            if (REFRESH_THREADS > 1) {
+                scriptPool = createPool(REFRESH_THREADS, "DSLD script compiler");
+            }
+            try {
+                if (REFRESH_THREADS > 1 && projects.size() > 1) {
+                    IStatus res = refreshInParallel(monitor, errorStatuses);
+                    if (res == Status.CANCEL_STATUS) {
+                        return res;
+                    }
+                } else {
+                    for (IProject project : projects) {
+                        IStatus res = Status.OK_STATUS;
+                        try {
+                            res = refreshProject(project, new SubProgressMonitor(monitor, 9));
+                        } finally {
+                            contextStoreManager.removeInProgress(project);
+                        }
+                        if (!res.isOK()) {
+                            errorStatuses.add(res);
+                        } else if (res == Status.CANCEL_STATUS) {
+                            return res;
+                        }
+                    }
                 }
-                if (!res.isOK()) {
-                    errorStatuses.add(res);
-                } else if (res == Status.CANCEL_STATUS) {
-                    return res;
+            } finally {
+                if (scriptPool != null) {
+                    scriptPool.shutdownNow();
+                    scriptPool = null;
                 }
             }
             monitor.done();
@@ -343,6 +395,100 @@ public class RefreshDSLDJob extends Job {
             }
         }
     }
+
+    /**
+     * Refreshes each project on a worker thread.  Projects have separate stores, so 
+     * they do not interfere with each other.  Statuses are reported in project order.
+     */
+    private IStatus refreshInParallel(IProgressMonitor monitor, List<IStatus> errorStatuses) {
+        ExecutorService projectPool = createPool(Math.min(REFRESH_THREADS, projects.size()), "DSLD refresh");
+        try {
+            final IProgressMonitor parent = monitor;
+            List<Future<IStatus>> results = new ArrayList<Future<IStatus>>(projects.size());
+            for (final IProject project : projects) {
+                results.add(projectPool.submit(new Callable<IStatus>() {
+                    public IStatus call() {
+                        try {
+                            return refreshProject(project, new CancelForwardingMonitor(parent));
+                        } finally {
+                            contextStoreManager.removeInProgress(project);
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                IStatus res;
+                try {
+                    res = results.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Status.CANCEL_STATUS;
+                } catch (ExecutionException e) {
+                    res = new Status(IStatus.ERROR, GroovyDSLCoreActivator.PLUGIN_ID, 
+                            "Error refreshing DSLDs for " + projects.get(i).getName(), e.getCause());
+                }
+                monitor.worked(9);
+                if (!res.isOK()) {
+                    errorStatuses.add(res);
+                }
+            }
+            return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+        } finally {
+            projectPool.shutdownNow();
+        }
+    }
+
+    private static ExecutorService createPool(int size, final String name) {
+        return Executors.newFixedThreadPool(size, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Compiles the DSLD scripts of a project at once. Executing them is left to the 
+     * caller, since they must register their pointcuts in a predictable order.
+     * @return an executor for each script, ready to run the compiled script
+     */
+    private Map<IStorage, DSLDScriptExecutor> compileScripts(IProject project, List<IStorage> files) {
+        Map<IStorage, DSLDScriptExecutor> executors = new HashMap<IStorage, DSLDScriptExecutor>();
+        List<Future<?>> compiled = new ArrayList<Future<?>>();
+        IJavaProject javaProject = JavaCore.create(project);
+        for (final IStorage file : files) {
+            if (isDSLD(file)) {
+                final DSLDScriptExecutor executor = new DSLDScriptExecutor(javaProject);
+                executors.put(file, executor);
+                if (scriptPool != null) {
+                    compiled.add(scriptPool.submit(new Runnable() {
+                        public void run() {
+                            executor.compileScript(file);
+                        }
+                    }));
+                }
+            }
+        }
+        for (Future<?> future : compiled) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // compilation may still be running, so start over with fresh executors
+                for (Map.Entry<IStorage, DSLDScriptExecutor> entry : executors.entrySet()) {
+                    entry.setValue(new DSLDScriptExecutor(javaProject));
+                }
+                break;
+            } catch (ExecutionException e) {
+                // the script is compiled again when it is executed
+                GroovyDSLCoreActivator.logException(e.getCause());
+            }
+        }
+        return executors;
+    }
     
     private IStatus refreshProject(IProject project, IProgressMonitor monitor) {
         String event = null;
@@ -383,16 +529,22 @@ public class RefreshDSLDJob extends Job {
         }
         monitor.worked(1);
         
+        // compile all scripts first, then run them one by one
+        List<IStorage> files = new ArrayList<IStorage>(findDSLDFiles);
+        Map<IStorage, DSLDScriptExecutor> executors = compileScripts(project, files);
+        if (monitor.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
+        
         // now add the rest
-        for (IStorage file : findDSLDFiles) {
+        for (IStorage file : files) {
             if (GroovyLogManager.manager.hasLoggers()) {
                 GroovyLogManager.manager.log(TraceCategory.DSL, "Processing " + file.getName() + " in project " + project.getName());
             }
             monitor.subTask("Processing " + file.getName() + " in project " + project.getName());
             
             if (isDSLD(file)) {
-                DSLDScriptExecutor executor = new DSLDScriptExecutor(JavaCore.create(project));
-                executor.executeScript(file);
+                executors.get(file).executeScript(file);
             } else if (isSuggestionFile(file)) {
                 new SuggestionsLoader((IFile)file).loadExistingSuggestions();
             }
@@ -80,6 +80,8 @@ public class DSLContributionGroup extends ContributionGroup {
     
     private boolean isPrimaryExpression;
 
+    private GroovyDSLDContext context;
+
     public DSLContributionGroup(@SuppressWarnings("rawtypes") Closure contributionClosure) {
         this.contributionClosure = contributionClosure;
         
@@ -105,6 +107,7 @@ public class DSLContributionGroup extends ContributionGroup {
                 this.wormhole = scope.getWormhole();
                 this.staticScope = pattern.isStatic();
                 this.isPrimaryExpression = pattern.isPrimaryNode();
+                this.context = pattern;
                 contributionClosure.call();
             } catch (Exception e) {
                 GroovyLogManager.manager.logException(TraceCategory.DSL, e);
@@ -118,6 +121,7 @@ public class DSLContributionGroup extends ContributionGroup {
                 this.bindings = null;
                 this.currentType = null;
                 this.wormhole = null;
+                this.context = null;
             }
         return result;
         }
@@ -127,10 +131,13 @@ public class DSLContributionGroup extends ContributionGroup {
     @Override
     public Object getProperty(String property) {
         if ("wormhole".equals(property)) {
+            markContextSensitive();
             return wormhole;
         } else if ("currentNode".equals(property)) {
+            markContextSensitive();
             return scope.getCurrentNode();
         } else if ("enclosingNode".equals(property)) {
+            markContextSensitive();
             return scope.getEnclosingNode();
         } else if ("currentType".equals(property)) {
             return currentType;
@@ -140,9 +147,19 @@ public class DSLContributionGroup extends ContributionGroup {
         return bindings.get(property);
     }
     
+    /**
+     * the contributions being created cannot be reused for another lookup
+     */
+    private void markContextSensitive() {
+        if (context != null) {
+            context.markContextSensitive();
+        }
+    }
+    
     void setDelegateType(Object arg) {
         ClassNode delegate = asClassNode(arg);
         if (delegate != null) {
+            markContextSensitive();
             // also need to set targetType, but only if primary expression
             scope.addVariable("delegate", delegate, VariableScope.CLOSURE_CLASS);
             scope.addVariable("getDelegate", delegate, VariableScope.CLOSURE_CLASS);
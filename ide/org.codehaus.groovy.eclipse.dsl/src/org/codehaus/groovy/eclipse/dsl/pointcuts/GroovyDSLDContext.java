@@ -10,18 +10,28 @@
  *******************************************************************************/
 package org.codehaus.groovy.eclipse.dsl.pointcuts;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.codehaus.groovy.ast.ASTNode;
 import org.codehaus.groovy.ast.ClassNode;
 import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.eclipse.dsl.contributions.IContributionElement;
 import org.codehaus.groovy.eclipse.dsl.lookup.ResolverCache;
 import org.codehaus.jdt.groovy.internal.compiler.ast.JDTResolver;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.groovy.search.VariableScope;
+import org.eclipse.jdt.groovy.search.VariableScope.CallAndType;
 
 
 /**
@@ -134,6 +144,28 @@ public class GroovyDSLDContext {
     private boolean isStatic;
 
     private boolean isPrimaryNode;
+
+    /**
+     * Contributions found during this inferencing run.  The key captures
+     * everything that the pointcuts and contribution groups may depend on.
+     * Entries are dropped when this context is, ie- at the end of the AST walk.
+     */
+    private final Map<ContributionKey, List<IContributionElement>> contributionMemo = new HashMap<ContributionKey, List<IContributionElement>>();
+
+    private static final int MAX_MEMO_SIZE = 2000;
+
+    private int memoHits;
+
+    private int memoMisses;
+
+    /** memo hits of all the inferencing runs so far */
+    private static final AtomicInteger totalMemoHits = new AtomicInteger();
+
+    /**
+     * set by a contribution group that looked at the current node, the 
+     * wormhole, or that changed the delegate type
+     */
+    private boolean contextSensitive;
     
     /**
      * called by the type lookup, not by the pointcuts
@@ -272,6 +304,131 @@ public class GroovyDSLDContext {
         this.isPrimaryNode = isPrimaryNode;
     }
     
+    private static final class ContributionKey {
+        private final Object store;
+        private final Set<String> disabledScripts;
+        private final VariableScope scope;
+        private final ClassNode targetType;
+        private final boolean isStatic;
+        private final boolean isPrimaryNode;
+        private final Object[] enclosingCalls;
+        private final String identifier;
+        private final int hash;
+
+        ContributionKey(Object store, Set<String> disabledScripts, VariableScope scope, ClassNode targetType, 
+                boolean isStatic, boolean isPrimaryNode, Object[] enclosingCalls, String identifier) {
+            this.store = store;
+            this.disabledScripts = disabledScripts;
+            this.scope = scope;
+            this.targetType = targetType;
+            this.isStatic = isStatic;
+            this.isPrimaryNode = isPrimaryNode;
+            this.enclosingCalls = enclosingCalls;
+            this.identifier = identifier;
+            int h = System.identityHashCode(scope);
+            h = h * 31 + System.identityHashCode(targetType);
+            h = h * 31 + (isStatic ? 1 : 0);
+            h = h * 31 + (isPrimaryNode ? 1 : 0);
+            h = h * 31 + (identifier == null ? 0 : identifier.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ContributionKey)) {
+                return false;
+            }
+            // identity for the AST and the scope, since class nodes with the same name may have different generics
+            ContributionKey other = (ContributionKey) obj;
+            return store == other.store && disabledScripts == other.disabledScripts && scope == other.scope
+                    && targetType == other.targetType && isStatic == other.isStatic && isPrimaryNode == other.isPrimaryNode
+                    && Arrays.equals(enclosingCalls, other.enclosingCalls)
+                    && (identifier == null ? other.identifier == null : identifier.equals(other.identifier));
+        }
+    }
+
+    /**
+     * Creates the key under which the contributions of the current lookup are memoized
+     * @param store the store that finds the contributions
+     * @param disabledScripts the scripts that are ignored
+     * @param includeIdentifier true if some pointcut looks at the name of the current identifier
+     * @return the key or null if there is no current scope
+     */
+    public Object createContributionKey(Object store, Set<String> disabledScripts, boolean includeIdentifier) {
+        if (currentScope == null) {
+            return null;
+        }
+        List<CallAndType> calls = currentScope.getAllEnclosingMethodCallExpressions();
+        Object[] enclosingCalls = new Object[calls == null ? 0 : calls.size()];
+        for (int i = 0; i < enclosingCalls.length; i++) {
+            // only the call is looked at by pointcuts, the CallAndType is created anew
+            enclosingCalls[i] = calls.get(i).call;
+        }
+        String identifier = null;
+        if (includeIdentifier) {
+            ASTNode node = currentScope.getCurrentNode();
+            if (node instanceof VariableExpression || node instanceof ConstantExpression) {
+                identifier = node.getText();
+            }
+        }
+        return new ContributionKey(store, disabledScripts, currentScope, targetType, isStatic, isPrimaryNode, enclosingCalls, identifier);
+    }
+
+    /**
+     * @param key a key from {@link #createContributionKey(Object, Set, boolean)}
+     * @return the contributions memoized for the key or null if there are none
+     */
+    public List<IContributionElement> getMemoizedContributions(Object key) {
+        List<IContributionElement> contributions = contributionMemo.get(key);
+        if (contributions != null) {
+            memoHits++;
+            totalMemoHits.incrementAndGet();
+        } else {
+            memoMisses++;
+        }
+        return contributions;
+    }
+
+    public void memoizeContributions(Object key, List<IContributionElement> contributions) {
+        if (contributionMemo.size() >= MAX_MEMO_SIZE) {
+            contributionMemo.clear();
+        }
+        contributionMemo.put((ContributionKey) key, contributions);
+    }
+
+    public int getMemoHits() {
+        return memoHits;
+    }
+
+    public int getMemoMisses() {
+        return memoMisses;
+    }
+
+    public static int getTotalMemoHits() {
+        return totalMemoHits.get();
+    }
+
+    /**
+     * Called by contribution groups whose contributions depend on more than
+     * what the memo key captures, or that have side effects on the scope
+     */
+    public void markContextSensitive() {
+        contextSensitive = true;
+    }
+
+    public void resetContextSensitive() {
+        contextSensitive = false;
+    }
+
+    public boolean isContextSensitive() {
+        return contextSensitive;
+    }
+
     public void setStatic(boolean s) {
         isStatic = s;
     }
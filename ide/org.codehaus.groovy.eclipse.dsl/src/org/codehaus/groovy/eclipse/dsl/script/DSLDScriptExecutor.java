@@ -24,8 +24,11 @@ import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.codehaus.groovy.eclipse.GroovyLogManager;
 import org.codehaus.groovy.eclipse.TraceCategory;
@@ -36,7 +39,10 @@ import org.eclipse.core.resources.IResourceStatus;
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.jdt.core.IJarEntryResource;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Version;
 
@@ -207,17 +213,131 @@ public class DSLDScriptExecutor {
         }
     }
     
+    private static final int MAX_SHARED_SCRIPTS = Integer.getInteger("greclipse.dsld.maxSharedScripts", 200).intValue();
+
+    /**
+     * Compiled scripts that come from jars.  The same jar (eg- from a Grails plugin)
+     * is often on the classpath of many projects, so the script is compiled once and
+     * executed for each project.  Keyed by jar path, entry name and entry timestamp,
+     * so a changed jar is compiled again.
+     */
+    private static final Map<String, Class<?>> sharedScripts = new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+            return size() > MAX_SHARED_SCRIPTS;
+        }
+    };
+
+    /** number of times a shared script was reused, guarded by sharedScripts */
+    private static int sharedScriptHits;
+
+    public static int getSharedScriptHits() {
+        synchronized (sharedScripts) {
+            return sharedScriptHits;
+        }
+    }
+
     private final GroovyClassLoader gcl;
     private final IJavaProject project;
     private PointcutFactory factory;
     private IStorage scriptFile;
     
+    /** the file compiled by {@link #compileScript(IStorage)}, but not yet executed */
+    private IStorage compiledFile;
+    
+    /** null if compiledFile could not be compiled */
+    private Class<?> compiledScript;
+    
     public DSLDScriptExecutor(IJavaProject project) {
         // FIXADE Should have one classloader per project
         gcl = new GroovyClassLoader(GroovyDSLCoreActivator.class.getClassLoader());
         this.project = project;
     }
 
+    /**
+     * Compiles the script without running it, so that several scripts can be
+     * compiled at once. Each executor may be used by one thread only.
+     * A subsequent {@link #executeScript(IStorage)} for the same file runs the
+     * compiled script.
+     */
+    public void compileScript(IStorage scriptFile) {
+        compiledFile = scriptFile;
+        compiledScript = null;
+        
+        String sharedKey = getSharedScriptKey(scriptFile);
+        if (sharedKey != null) {
+            synchronized (sharedScripts) {
+                compiledScript = sharedScripts.get(sharedKey);
+                if (compiledScript != null) {
+                    sharedScriptHits++;
+                }
+            }
+            if (compiledScript != null) {
+                if (GroovyLogManager.manager.hasLoggers()) {
+                    GroovyLogManager.manager.log(TraceCategory.DSL, "Reusing compiled script for " + sharedKey);
+                }
+                return;
+            }
+        }
+        
+        String scriptContents;
+        try {
+            scriptContents = getContents(scriptFile);
+        } catch (Exception e) {
+            GroovyDSLCoreActivator.logException(e);
+            return;
+        }
+        try {
+            compiledScript = gcl.parseClass(scriptContents, scriptFile.getName());
+        } catch (Exception e) {
+            if (GroovyLogManager.manager.hasLoggers()) {
+                StringWriter writer = new StringWriter();
+                e.printStackTrace(new PrintWriter(writer));
+                GroovyLogManager.manager.log(TraceCategory.DSL, "Attempted to compile " + scriptFile + "but failed because:\n" +
+                        writer.getBuffer());
+            }
+            return;
+        }
+        
+        if (sharedKey != null && Script.class.isAssignableFrom(compiledScript)) {
+            synchronized (sharedScripts) {
+                sharedScripts.put(sharedKey, compiledScript);
+            }
+        }
+    }
+
+    /**
+     * @return a key that identifies the contents of a script in a jar, or null 
+     * if the script does not come from a jar
+     */
+    private static String getSharedScriptKey(IStorage scriptFile) {
+        if (!(scriptFile instanceof IJarEntryResource)) {
+            return null;
+        }
+        IPackageFragmentRoot root = ((IJarEntryResource) scriptFile).getPackageFragmentRoot();
+        if (root == null || !root.isArchive()) {
+            return null;
+        }
+        String entryName = scriptFile.getFullPath().makeRelative().toString();
+        JavaModelManager manager = JavaModelManager.getJavaModelManager();
+        ZipFile zip = null;
+        try {
+            zip = manager.getZipFile(root.getPath());
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+                return null;
+            }
+            return root.getPath().toPortableString() + "!/" + entryName + "@" + entry.getTime();
+        } catch (CoreException e) {
+            // can't read the jar, so don't share
+            return null;
+        } finally {
+            manager.closeZipFile(zip);
+        }
+    }
+
     public Object executeScript(IStorage scriptFile) {
         this.scriptFile = scriptFile;
         String event = null;
@@ -230,21 +350,16 @@ public class DSLDScriptExecutor {
             factory = new PointcutFactory(scriptFile, project.getProject());
             Object result = null;
             try {
-                String scriptContents = getContents(scriptFile);
-                Class<Script> clazz = null;
-                try {
-                    clazz = gcl.parseClass(scriptContents, scriptFile.getName());
-                } catch (Exception e) {
-                    if (GroovyLogManager.manager.hasLoggers()) {
-                        StringWriter writer = new StringWriter();
-                        e.printStackTrace(new PrintWriter(writer));
-                        GroovyLogManager.manager.log(TraceCategory.DSL, "Attempted to compile " + scriptFile + "but failed because:\n" +
-                                writer.getBuffer());
-                    }
+                if (compiledFile == null || !compiledFile.equals(scriptFile)) {
+                    compileScript(scriptFile);
+                }
+                Class<?> clazz = compiledScript;
+                compiledFile = null;
+                compiledScript = null;
+                if (clazz == null) {
                     return result;
                 }
                 
-                
                 if (!Script.class.isAssignableFrom(clazz)) {
                     // might be some strange compile error
                     // or a class is accidentally defined
@@ -253,7 +368,7 @@ public class DSLDScriptExecutor {
                     }
                     return result;
                 }
-                Script dsldScript = clazz.newInstance();
+                Script dsldScript = (Script) clazz.newInstance();
                 dsldScript.setBinding(new DSLDScriptBinding(dsldScript));
                 result = dsldScript.run();
             } catch (UnsupportedDSLVersion e) {
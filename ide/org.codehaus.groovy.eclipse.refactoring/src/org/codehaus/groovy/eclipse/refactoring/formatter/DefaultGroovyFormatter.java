@@ -20,7 +20,12 @@ package org.codehaus.groovy.eclipse.refactoring.formatter;
 
 import groovyjarjarantlr.Token;
 
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,10 +41,9 @@ import org.codehaus.groovy.ast.stmt.ReturnStatement;
 import org.codehaus.groovy.ast.stmt.Statement;
 import org.codehaus.groovy.eclipse.core.GroovyCore;
 import org.codehaus.groovy.eclipse.refactoring.core.utils.ASTTools;
-import org.codehaus.groovy.eclipse.refactoring.core.utils.astScanner.ASTNodeInfo;
 import org.codehaus.groovy.eclipse.refactoring.core.utils.astScanner.ASTScanner;
+import org.codehaus.groovy.eclipse.refactoring.core.utils.astScanner.predicates.IASTNodePredicate;
 import org.codehaus.groovy.eclipse.refactoring.core.utils.astScanner.predicates.IncludesClosureOrListPredicate;
-import org.codehaus.groovy.eclipse.refactoring.core.utils.astScanner.predicates.SourceCodePredicate;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
@@ -58,6 +62,8 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
 
     private static final boolean DEGUG = false;
 
+    private static final Pattern MULTILINE = Pattern.compile(".*(\n|\r\n|\r).*", Pattern.DOTALL);
+
     protected IFormatterPreferences pref;
     private ModuleNode rootNode;
 
@@ -68,6 +74,22 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
     private KlenkDocumentScanner tokens;
     private int indentationLevel = 0;
 
+    /**
+     * The nodes of {@link #rootNode} by their start line and column, in the
+     * order the {@link ASTScanner} visits them. Built once per pass on first
+     * use, so that looking up the node of a token does not walk the whole tree.
+     * Nodes are recorded as they are visited: the map of the scanner is keyed
+     * by equality, so it would merge a ClassNode declaration with the
+     * references to that class.
+     */
+    private Map<Long, List<ASTNode>> nodesByPosition;
+
+    /** The index of each of {@link #tokens}, built once per pass on first use */
+    private Map<Token, Integer> tokenPositions;
+
+    /** The index of the first of {@link #tokens} at each line and column */
+    private Map<Long, Integer> firstTokenByPosition;
+
     /**
      * Default Formatter for the Groovy-Eclipse Plugin
      *
@@ -119,6 +141,17 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
             // caused by unparseable file
             throw new Exception("Could not format.  Problem parsing Compilation unit.  Fix all syntax errors and try again.");
         }
+        nodesByPosition = null;
+        tokenPositions = null;
+        firstTokenByPosition = null;
+    }
+
+    /**
+     * Starts a new pass over a document whose contents are unchanged since the
+     * last call to {@link #initCodebase()}, keeping its tokens, tree and indexes.
+     */
+    private void reuseCodebase() {
+        tokens = new KlenkDocumentScanner(formattedDocument, tokens);
     }
 
     @Override
@@ -129,12 +162,19 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
                 initCodebase();
                 GroovyBeautifier beautifier = new GroovyBeautifier(this, pref);
                 int lengthBefore = formattedDocument.getLength();
-                beautifier.getBeautifiEdits().apply(formattedDocument);
-                int lengthAfter = formattedDocument.getLength();
-                formatLength += lengthAfter - lengthBefore;
+                TextEdit edits = beautifier.getBeautifiEdits();
+                if (edits.hasChildren()) {
+                    edits.apply(formattedDocument);
+                    int lengthAfter = formattedDocument.getLength();
+                    formatLength += lengthAfter - lengthBefore;
+                    initCodebase();
+                } else {
+                    reuseCodebase();
+                }
+            } else {
+                initCodebase();
             }
 
-            initCodebase();
             GroovyIndentation indent = new GroovyIndentation(this, pref, indentationLevel);
             UndoEdit undo2 = indent.getIndentationEdits().apply(formattedDocument);
             formatLength += undo2.getLength();
@@ -153,7 +193,55 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
             return new MultiTextEdit();
         }
 
-        return new ReplaceEdit(0, document.getLength(), formattedDocument.get());
+        try {
+            return createEdits(document, formattedDocument);
+        } catch (BadLocationException e) {
+            GroovyCore.logException("Exception when calculating the edits of formatting", e);
+            return new ReplaceEdit(0, document.getLength(), formattedDocument.get());
+        }
+    }
+
+    /**
+     * Creates the edits that turn the original document into the formatted
+     * one. When the formatting kept the lines, which is the case of the
+     * indentation, each line that changed gets an edit of the characters that
+     * changed, so that markers, folding and undo of the other lines are kept.
+     */
+    private TextEdit createEdits(IDocument original, IDocument formatted) throws BadLocationException {
+        MultiTextEdit edits = new MultiTextEdit();
+        int lines = original.getNumberOfLines();
+        if (lines == formatted.getNumberOfLines()) {
+            for (int i = 0; i < lines; i++) {
+                int offset = original.getLineOffset(i);
+                String from = original.get(offset, original.getLineLength(i));
+                String to = formatted.get(formatted.getLineOffset(i), formatted.getLineLength(i));
+                addReplaceEdit(edits, offset, from, to);
+            }
+        } else {
+            addReplaceEdit(edits, 0, original.get(), formatted.get());
+        }
+        return edits;
+    }
+
+    /**
+     * Adds an edit that replaces the text between the common prefix and suffix
+     * of the given strings, if they differ.
+     */
+    private void addReplaceEdit(MultiTextEdit edits, int offset, String from, String to) {
+        int max = Math.min(from.length(), to.length());
+        int prefix = 0;
+        while (prefix < max && from.charAt(prefix) == to.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix && from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix)) {
+            suffix++;
+        }
+        int length = from.length() - prefix - suffix;
+        String text = to.substring(prefix, to.length() - suffix);
+        if (length > 0 || text.length() > 0) {
+            edits.addChild(new ReplaceEdit(offset + prefix, length, text));
+        }
     }
 
     /**
@@ -180,7 +268,7 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
                 node.visit(cltest);
                 if (!cltest.getContainer()) {
                     String text = ASTTools.getTextofNode(node, formattedDocument);
-                    Matcher m = Pattern.compile(".*(\n|\r\n|\r).*", Pattern.DOTALL).matcher(trimEnd(text));
+                    Matcher m = MULTILINE.matcher(trimEnd(text));
                     return m.matches();
                 }
             }
@@ -197,17 +285,19 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
     public String trimEnd(String s) {
         int len = s.length();
 
-        while (len > 0) {
-            String w = s.substring(len - 1, len);
-            if (w.matches("\\s")) {
-                len--;
-            } else {
-                break;
-            }
+        while (len > 0 && isWhitespace(s.charAt(len - 1))) {
+            len--;
         }
         return s.substring(0, len);
     }
 
+    /**
+     * Same as matching the regular expression \s
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
     /**
      * Tests if the ASTNode is a valid MultiNodeType an has multiple lines
      * Statements, ClassNodes, MethodNodes and Variable Expressions are ignored
@@ -249,24 +339,16 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
      *         length
      */
     public ASTNode findCorrespondingNode(Token t) {
-
-        ASTScanner scanner = new ASTScanner(rootNode,
-                                            new SourceCodePredicate(t.getLine(), t.getColumn()),
-                                            formattedDocument);
-        scanner.startASTscan();
-        Entry<ASTNode, ASTNodeInfo> found = null;
-        if (scanner.hasMatches()) {
-            for (Entry<ASTNode, ASTNodeInfo> e : scanner.getMatchedNodes().entrySet()) {
-                if (found == null || (found.getValue().getLength() < e.getValue().getLength()))
-                    found = e;
-            }
+        ASTNode found = null;
+        for (ASTNode node : getNodesAt(t.getLine(), t.getColumn())) {
+            if (found == null || (length(found) < length(node)))
+                found = node;
         }
+        return found;
+    }
 
-        if (found != null) {
-            return found.getKey();
-        } else {
-            return null;
-        }
+    private static int length(ASTNode node) {
+        return ASTTools.hasValidPosition(node) ? node.getEnd() - node.getStart() : 0;
     }
 
     /**
@@ -277,18 +359,48 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
      * @return
      */
     public ClosureExpression findCorrespondingClosure(Token t) {
-        ASTScanner scanner = new ASTScanner(rootNode, new SourceCodePredicate(t.getLine(), t.getColumn()), formattedDocument);
-        scanner.startASTscan();
         ClosureExpression found = null;
-        if (scanner.hasMatches()) {
-            for (Entry<ASTNode, ASTNodeInfo> e : scanner.getMatchedNodes().entrySet()) {
-                if (e.getKey() instanceof ClosureExpression) {
-                    found = (ClosureExpression) e.getKey();
-                }
+        for (ASTNode node : getNodesAt(t.getLine(), t.getColumn())) {
+            if (node instanceof ClosureExpression) {
+                found = (ClosureExpression) node;
             }
         }
         return found;
     }
+
+    /**
+     * @return the nodes that start at the given line and column, in the order
+     *         an {@link ASTScanner} finds them
+     */
+    private List<ASTNode> getNodesAt(int line, int column) {
+        if (nodesByPosition == null) {
+            final Map<Long, List<ASTNode>> index = new HashMap<Long, List<ASTNode>>();
+            ASTScanner scanner = new ASTScanner(rootNode, new IASTNodePredicate() {
+                public ASTNode evaluate(ASTNode input) {
+                    Long key = position(input.getLineNumber(), input.getColumnNumber());
+                    List<ASTNode> nodes = index.get(key);
+                    if (nodes == null) {
+                        nodes = new ArrayList<ASTNode>(2);
+                        index.put(key, nodes);
+                    }
+                    nodes.add(input);
+                    return input;
+                }
+            }, formattedDocument);
+            scanner.startASTscan();
+            nodesByPosition = index;
+        }
+        List<ASTNode> nodes = nodesByPosition.get(position(line, column));
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+        return nodes;
+    }
+
+    private static Long position(int line, int column) {
+        return Long.valueOf(((long) line << 32) | (column & 0xFFFFFFFFL));
+    }
+
     /**
      * Return a token after many () if there is no opening {
      *
@@ -438,28 +550,57 @@ public class DefaultGroovyFormatter extends GroovyFormatter {
     }
 
     public int getPosOfToken(Token token) throws BadLocationException {
-        return tokens.indexOf(token);
+        if (tokenPositions == null) {
+            indexTokens();
+        }
+        Integer pos = tokenPositions.get(token);
+        if (pos == null) {
+            return tokens.indexOf(token);
+        }
+        return pos.intValue();
     }
 
     public int getPosOfToken(int tokenType, int line, int column, String tokenText) {
-        for (int p = 0; p < tokens.size(); p++) {
+        int p = getPosOfToken(line, column);
+        if (p < 0) {
+            return -1;
+        }
+        // tokens are in document order, so the ones at the same position follow each other
+        for (; p < tokens.size(); p++) {
             Token a = tokens.get(p);
-            if (a.getType() == tokenType &&
-                a.getColumn() == column &&
-                a.getLine() == line &&
-                a.getText().equals(tokenText))
+            if (a.getColumn() != column || a.getLine() != line) {
+                break;
+            }
+            if (a.getType() == tokenType && a.getText().equals(tokenText))
                 return p;
         }
         return -1;
     }
 
     public int getPosOfToken(int lineNumber, int columnNumber) {
-        for (int p = 0; p < tokens.size(); p++) {
+        if (firstTokenByPosition == null) {
+            indexTokens();
+        }
+        Integer pos = firstTokenByPosition.get(position(lineNumber, columnNumber));
+        if (pos == null) {
+            return -1;
+        }
+        return pos.intValue();
+    }
+
+    private void indexTokens() {
+        int size = tokens.size();
+        tokenPositions = new IdentityHashMap<Token, Integer>(size);
+        firstTokenByPosition = new HashMap<Long, Integer>(size * 2);
+        for (int p = 0; p < size; p++) {
             Token a = tokens.get(p);
-            if (a.getColumn() == columnNumber && a.getLine() == lineNumber)
-                return p;
+            Integer pos = Integer.valueOf(p);
+            tokenPositions.put(a, pos);
+            Long key = position(a.getLine(), a.getColumn());
+            if (!firstTokenByPosition.containsKey(key)) {
+                firstTokenByPosition.put(key, pos);
+            }
         }
-        return -1;
     }
 
     /**
@@ -16,13 +16,22 @@
 package org.codehaus.groovy.eclipse.refactoring.formatter;
 
 import groovyjarjarantlr.Token;
+import groovyjarjarantlr.TokenStream;
 import groovyjarjarantlr.TokenStreamException;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.codehaus.greclipse.GroovyTokenTypeBridge;
 import org.codehaus.groovy.antlr.GroovySourceToken;
+import org.codehaus.groovy.antlr.parser.GroovyLexer;
+import org.codehaus.groovy.antlr.parser.GroovyRecognizer;
 import org.codehaus.groovy.eclipse.core.GroovyCore;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jdt.groovy.core.util.GroovyScanner;
@@ -37,9 +46,12 @@ import org.eclipse.jface.text.ITextSelection;
  * This class provides methods to retrieve tokens for a given IDocument
  * presumed to contain Groovy source code.
  * <p>
- * A sophisticated implementation could try to work incrementally and invalidate
- * only some tokens when the document is changed. This implementation is rather
- * naive and clears the whole cache on every document change.
+ * Tokens are scanned lazily, only up to the position that is asked for. When
+ * the document changes, the tokens before the change are kept and scanning
+ * resumes from the last newline token before the change, with the state the
+ * lexer had there. The tokens that were scanned after the change are reused
+ * once the lexer reaches a newline token past the change in the same state, so
+ * that the cost of an edit does not depend on the size of the document.
  *
  * @author kdvolder
  * @created 2010-05-26
@@ -48,6 +60,9 @@ public class GroovyDocumentScanner implements IDocumentListener {
 
     private static final boolean TOKEN_POSITION_ASSERTS = true;
 
+    /** The number of characters the lexer looks ahead past the end of a token */
+    private static final int LOOKAHEAD = 4;
+
     /**
      * This is the document that we are chopping into tokens. This may not be
      * null, except when the GroovyDocumentScanner has been disposed (in which
@@ -61,7 +76,44 @@ public class GroovyDocumentScanner implements IDocumentListener {
      */
     protected List<Token> tokens;
 
-    private GroovyScanner tokenScanner;
+    /** Scans the tokens that follow {@link #tokens}, null until it is needed */
+    private ResumableLexer lexer;
+
+    private TokenStream stream;
+
+    /** True once {@link #tokens} ends with the EOF token, or scanning failed */
+    private boolean scannedToEnd;
+
+    /** The state of the lexer after each newline token it returned */
+    private final Map<Token, LexerState> states = new WeakHashMap<Token, LexerState>();
+
+    /**
+     * The tokens of an earlier version of the document. Those that follow
+     * {@link #dirtyEnd} are the same, on other lines, as the ones of the
+     * current document.
+     */
+    private List<Token> staleTokens;
+
+    /** Index of the first of {@link #staleTokens} that may still be reused */
+    private int staleStart;
+
+    /** Index of the next of {@link #staleTokens} to match or to reuse */
+    private int staleIndex;
+
+    /** The number of lines the document has gained since {@link #staleTokens} */
+    private int staleLineDelta;
+
+    /** The offset after which the document is unchanged since {@link #staleTokens} */
+    private int dirtyEnd;
+
+    /** True when the tokens are taken from {@link #staleTokens} rather than scanned */
+    private boolean resynced;
+
+    /** The indexes of the first reused token in {@link #tokens} and {@link #staleTokens} */
+    private int resyncIndex, resyncStaleIndex;
+
+    /** The change that is being made to the document */
+    private int changeOffset, changeLength, changeLines;
 
     /** At most this number of scanner errors will be reported */
     private static int logLimit = 4;
@@ -69,71 +121,338 @@ public class GroovyDocumentScanner implements IDocumentListener {
     /** Used as index for tokens that could not be found */
     private static final int NOT_FOUND = -1;
 
+    /**
+     * The state of a {@link GroovyLexer} between two tokens, which is all that
+     * the tokens that follow depend on, together with the remaining text.
+     */
+    private static class LexerState {
+        private final int parenLevel;
+        private final int suppressNewline;
+        private final int stringCtorState;
+        private final int lastSigTokenType;
+        private final Object[] parenLevelStack;
+
+        LexerState(int parenLevel, int suppressNewline, int stringCtorState, int lastSigTokenType, Object[] parenLevelStack) {
+            this.parenLevel = parenLevel;
+            this.suppressNewline = suppressNewline;
+            this.stringCtorState = stringCtorState;
+            this.lastSigTokenType = lastSigTokenType;
+            this.parenLevelStack = parenLevelStack;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LexerState)) {
+                return false;
+            }
+            LexerState that = (LexerState) obj;
+            return parenLevel == that.parenLevel && suppressNewline == that.suppressNewline
+                    && stringCtorState == that.stringCtorState && lastSigTokenType == that.lastSigTokenType
+                    && Arrays.equals(parenLevelStack, that.parenLevelStack);
+        }
+
+        @Override
+        public int hashCode() {
+            return parenLevel + 31 * (stringCtorState + 31 * lastSigTokenType);
+        }
+    }
+
+    /**
+     * A lexer that can save its state after a token, and resume from it later.
+     */
+    private static class ResumableLexer extends GroovyLexer {
+
+        ResumableLexer(Reader in) {
+            super(in);
+        }
+
+        LexerState saveState() {
+            return new LexerState(parenLevel, suppressNewline, stringCtorState, lastSigTokenType, parenLevelStack.toArray());
+        }
+
+        @SuppressWarnings("unchecked")
+        void restoreState(LexerState state) {
+            parenLevel = state.parenLevel;
+            suppressNewline = state.suppressNewline;
+            stringCtorState = state.stringCtorState;
+            lastSigTokenType = state.lastSigTokenType;
+            parenLevelStack.clear();
+            parenLevelStack.addAll(Arrays.asList(state.parenLevelStack));
+        }
+    }
+
+    /**
+     * Reads a document from an offset, without copying the rest of it.
+     */
+    private static class DocumentReader extends Reader {
+        private final IDocument document;
+        private int offset;
+
+        DocumentReader(IDocument document, int offset) {
+            this.document = document;
+            this.offset = offset;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int length = Math.min(len, document.getLength() - offset);
+            if (length <= 0) {
+                return -1;
+            }
+            try {
+                document.get(offset, length).getChars(0, length, cbuf, off);
+            } catch (BadLocationException e) {
+                throw new IOException(e.getMessage());
+            }
+            offset += length;
+            return length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     public GroovyDocumentScanner(IDocument document) {
         this.document = document;
         this.document.addDocumentListener(this);
         reset();
     }
 
+    public void documentAboutToBeChanged(DocumentEvent event) {
+        if (tokens == null) {
+            return;
+        }
+        try {
+            changeOffset = event.getOffset();
+            changeLength = event.getLength();
+            changeLines = document.getLineOfOffset(changeOffset + changeLength) - document.getLineOfOffset(changeOffset);
+            int kept = findRestartPoint(changeOffset) + 1;
+
+            if (staleTokens == null || scannedToEnd) {
+                // start over from the complete, or only, tokens we have
+                staleTokens = tokens;
+                staleStart = kept;
+                staleLineDelta = 0;
+                dirtyEnd = changeOffset;
+            } else if (resynced && kept > resyncIndex) {
+                // the reused tokens that are kept need not be matched again
+                staleStart = resyncStaleIndex + kept - resyncIndex;
+            }
+            // a new list, in case a caller still holds a sublist of the old one
+            tokens = new ArrayList<Token>(tokens.subList(0, kept));
+            staleIndex = staleStart;
+            resynced = false;
+            scannedToEnd = false;
+            lexer = null;
+            stream = null;
+        } catch (BadLocationException e) {
+            GroovyCore.logException("Recoverable internal error", e);
+            reset();
+        }
+    }
+
     public void documentChanged(DocumentEvent event) {
-        reset();
+        if (tokens == null) {
+            return;
+        }
+        try {
+            int changeEnd = changeOffset + (event.getText() == null ? 0 : event.getText().length());
+            if (dirtyEnd >= changeOffset + changeLength) {
+                dirtyEnd += changeEnd - changeOffset - changeLength;
+            } else if (dirtyEnd > changeOffset) {
+                dirtyEnd = changeEnd;
+            }
+            dirtyEnd = Math.max(dirtyEnd, changeEnd);
+            staleLineDelta += document.getLineOfOffset(changeEnd) - document.getLineOfOffset(changeOffset) - changeLines;
+        } catch (BadLocationException e) {
+            GroovyCore.logException("Recoverable internal error", e);
+            reset();
+        }
     }
 
-    public void documentAboutToBeChanged(DocumentEvent event) {}
+    /**
+     * @return the index of the last token that is not affected by a change at
+     *         the given offset and after which the lexer can resume, or -1
+     */
+    private int findRestartPoint(int offset) throws BadLocationException {
+        // the last token that starts before the offset
+        int low = 0, high = tokens.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getStart(tokens.get(mid)) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int i = high; i >= 0; i--) {
+            Token token = tokens.get(i);
+            if (token.getType() == GroovyTokenTypeBridge.NLS && states.containsKey(token) && getEnd(token) + LOOKAHEAD <= offset) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
     /**
      * This method must be called internally before operating on the list of
      * scanned tokens, to ensure that we have scanned the file at least upto the
-     * position that we are interested in.
-     * <p>
-     * Current implementation is very naive and just scans the whole file at
-     * once. A smarter implementation could stop scanning when the position of
-     * interest is reached, and keep enough state to be able to scan onward
-     * later if a request for tokens requires it.
+     * position that we are interested in, that is until a token that starts at
+     * or after the given offset, or the end of the file.
      */
     protected void ensureScanned(int end) {
         if (tokens == null) {
-            // We haven't started scanning yet. Initialise the scanner and token list.
-            tokenScanner = new GroovyScanner(document.get());
-            tokens = getTokensIncludingEOF();
+            tokens = new ArrayList<Token>();
         }
-    }
-
-    private List<Token> getTokensIncludingEOF() {
-        List<Token> result = new ArrayList<Token>();
-        Token token;
         try {
-            do {
-                token = nextToken();
-                result.add(token);
-            } while (token.getType() != GroovyTokenTypeBridge.EOF);
+            while (!scannedToEnd && (tokens.isEmpty() || getStart(tokens.get(tokens.size() - 1)) < end)) {
+                Token token = resynced ? nextStaleToken() : nextScannedToken();
+                if (token == null) {
+                    scannedToEnd = true;
+                } else {
+                    tokens.add(token);
+                    if (token.getType() == GroovyTokenTypeBridge.EOF) {
+                        scannedToEnd = true;
+                    } else if (!resynced && token.getType() == GroovyTokenTypeBridge.NLS) {
+                        resync(token);
+                    }
+                }
+            }
         } catch (Exception e) {
             if (logLimit-- > 0) {
                 Util.log(e);
             }
+            scannedToEnd = true;
         }
-        return result;
     }
 
-    private Token nextToken() throws TokenStreamException, BadLocationException {
+    private Token nextScannedToken() throws TokenStreamException, BadLocationException {
+        if (stream == null) {
+            // resume after the last token, which is a newline token whose state is known
+            if (tokens.isEmpty()) {
+                startLexer(0, null);
+            } else {
+                Token last = tokens.get(tokens.size() - 1);
+                startLexer(getEnd(last), states.get(last));
+            }
+        }
         Token token;
         try {
-            token = tokenScanner.nextToken();
+            token = stream.nextToken();
         } catch (TokenStreamException e) {
-            // Try to recover
-            tokenScanner.recover(document);
+            // Try to recover one character past the error.
+            int offset = GroovyScanner.getOffset(document, lexer.getInputState().getLine(), lexer.getInputState().getColumn()) + 1;
+            startLexer(offset, null);
             // If it fails again we give up.
-            token = tokenScanner.nextToken();
+            token = stream.nextToken();
+        }
+        if (token.getType() == GroovyTokenTypeBridge.NLS) {
+            states.put(token, lexer.saveState());
         }
         return token;
     }
 
+    private void startLexer(int offset, LexerState state) throws BadLocationException {
+        int line = document.getLineOfOffset(offset);
+        int column = offset - document.getLineOffset(line);
+        lexer = new ResumableLexer(new BufferedReader(new DocumentReader(document, offset)));
+        stream = lexer.plumb();
+        // Initializes the parser to avoid NPE in Groovy code, like GroovyScanner
+        GroovyRecognizer.make(lexer);
+        lexer.setLine(line + 1); // antlr lines start at 1
+        lexer.setColumn(column + 1);
+        if (state != null) {
+            lexer.restoreState(state);
+        }
+    }
+
+    /**
+     * Switches to reusing the stale tokens if the given newline token, which
+     * was just scanned, is past the changes and one of them is the same token
+     * scanned in the same state.
+     */
+    private void resync(Token token) throws BadLocationException {
+        if (staleTokens == null || getStart(token) < dirtyEnd || token.getLine() - 1 <= document.getLineOfOffset(dirtyEnd)) {
+            return;
+        }
+        int line = token.getLine() - staleLineDelta;
+        int column = token.getColumn();
+        while (staleIndex < staleTokens.size()) {
+            Token stale = staleTokens.get(staleIndex);
+            if (stale.getLine() > line || (stale.getLine() == line && stale.getColumn() >= column)) {
+                break;
+            }
+            staleIndex++;
+        }
+        if (staleIndex < staleTokens.size()) {
+            Token stale = staleTokens.get(staleIndex);
+            if (stale.getType() == token.getType() && stale.getLine() == line && stale.getColumn() == column
+                    && ((GroovySourceToken) stale).getLineLast() + staleLineDelta == ((GroovySourceToken) token).getLineLast()
+                    && ((GroovySourceToken) stale).getColumnLast() == ((GroovySourceToken) token).getColumnLast()
+                    && states.get(token).equals(states.get(stale))) {
+                staleIndex++;
+                resynced = true;
+                resyncIndex = tokens.size();
+                resyncStaleIndex = staleIndex;
+                lexer = null;
+                stream = null;
+            }
+        }
+    }
+
     /**
-     * Called upon initialisation and upon any change to the document to
-     * invalidate the list of cached tokens.
+     * @return the next of the stale tokens, moved to its line in the current
+     *         document, or null if there are none left
      */
-    private void reset() {
+    private Token nextStaleToken() throws BadLocationException {
+        if (staleIndex >= staleTokens.size()) {
+            // the stale tokens were not scanned to the end, scan the rest
+            for (int i = tokens.size() - 1; i >= resyncIndex - 1; i--) {
+                Token token = tokens.get(i);
+                if (token.getType() == GroovyTokenTypeBridge.NLS && states.containsKey(token)) {
+                    tokens.subList(i + 1, tokens.size()).clear();
+                    resynced = false;
+                    return nextScannedToken();
+                }
+            }
+            return null;
+        }
+        Token stale = staleTokens.get(staleIndex++);
+        if (staleLineDelta == 0) {
+            return stale;
+        }
+        GroovySourceToken token = new GroovySourceToken(stale.getType());
+        token.setText(stale.getText());
+        token.setLine(stale.getLine() + staleLineDelta);
+        token.setColumn(stale.getColumn());
+        token.setLineLast(((GroovySourceToken) stale).getLineLast() + staleLineDelta);
+        token.setColumnLast(((GroovySourceToken) stale).getColumnLast());
+        LexerState state = states.get(stale);
+        if (state != null) {
+            states.put(token, state);
+        }
+        return token;
+    }
+
+    /**
+     * Called upon initialisation, and by subclasses that do not scan
+     * incrementally, to invalidate the list of cached tokens.
+     */
+    protected void reset() {
         tokens = null;
+        lexer = null;
+        stream = null;
+        scannedToEnd = false;
+        staleTokens = null;
+        resynced = false;
+    }
+
+    private int getStart(Token token) throws BadLocationException {
+        if (token.getType() == GroovyTokenTypeBridge.EOF) {
+            return document.getLength();
+        }
+        return GroovyScanner.getOffset(document, token.getLine(), token.getColumn());
     }
 
     /**
@@ -261,7 +580,8 @@ public class GroovyDocumentScanner implements IDocumentListener {
                 endTokenIndex = endTokenIndex - 1;
             }
             Assert.isTrue(startTokenIndex <= endTokenIndex);
-            return tokens.subList(startTokenIndex, endTokenIndex + 1);
+            // a copy, as scanning further adds to the tokens
+            return new ArrayList<Token>(tokens.subList(startTokenIndex, endTokenIndex + 1));
         } catch (BadLocationException e) {
             throw new Error(e);
         }
@@ -29,6 +29,7 @@ import org.codehaus.groovy.antlr.parser.GroovyLexer;
 import org.codehaus.groovy.eclipse.core.GroovyCore;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 
 /**
@@ -65,6 +66,29 @@ public class KlenkDocumentScanner extends GroovyDocumentScanner {
         super(doc);
     }
 
+    /**
+     * Creates a scanner of a document that has the same contents as the
+     * document of the given scanner, which shares its tokens rather than
+     * scanning the document again. The given scanner may have been disposed.
+     */
+    public KlenkDocumentScanner(IDocument doc, KlenkDocumentScanner scanned) {
+        super(doc);
+        if (scanned.tokens != null) {
+            this.tokens = scanned.tokens;
+            this.tokenLines = scanned.tokenLines;
+        }
+    }
+
+    @Override
+    public void documentAboutToBeChanged(DocumentEvent event) {
+    }
+
+    @Override
+    public void documentChanged(DocumentEvent event) {
+        // the lines vector can't be updated incrementally
+        reset();
+    }
+
     @Override
     protected void ensureScanned(int end) {
         if (tokens != null)
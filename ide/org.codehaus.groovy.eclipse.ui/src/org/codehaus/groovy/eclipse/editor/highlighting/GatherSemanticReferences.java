@@ -23,8 +23,7 @@ import org.codehaus.groovy.eclipse.GroovyPlugin;
 import org.codehaus.groovy.eclipse.core.GroovyCore;
 import org.codehaus.groovy.eclipse.core.preferences.PreferenceConstants;
 import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
-import org.eclipse.jdt.groovy.search.TypeInferencingVisitorFactory;
-import org.eclipse.jdt.groovy.search.TypeInferencingVisitorWithRequestor;
+import org.eclipse.jdt.groovy.search.TypeInferenceCache;
 import org.eclipse.jface.preference.IPreferenceStore;
 
 public class GatherSemanticReferences {
@@ -48,8 +47,7 @@ public class GatherSemanticReferences {
 
             try {
                 SemanticHighlightingReferenceRequestor typeRequestor = new SemanticHighlightingReferenceRequestor(unit.getContents());
-                TypeInferencingVisitorWithRequestor visitor = new TypeInferencingVisitorFactory().createVisitor(unit);
-                visitor.visitCompilationUnit(typeRequestor);
+                TypeInferenceCache.getInstance().visitCompilationUnit(unit, typeRequestor);
                 return typeRequestor.typedPosition;
             } catch (Exception e) {
                 GroovyCore.logException("Exception with semantic highlighting", e);
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.groovy.eclipse.refactoring.batch;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.application.WorkbenchAdvisor;
+import org.eclipse.ui.internal.Workbench;
+
+/**
+ * Organizes the imports of and formats the groovy files of a project from the
+ * command line, eg- to check the formatting of a project during a CI build.
+ * The exit code is one of {@link ResourceFormatter#EXIT_OK},
+ * {@link ResourceFormatter#EXIT_CHANGES} and {@link ResourceFormatter#EXIT_ERRORS}.
+ */
+public class FormatterApplication implements IApplication {
+
+    class FormatterJob extends Job {
+
+        public FormatterJob() {
+            super("Formatter Job");
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            try {
+                exitCode = doFormat();
+            } finally {
+                display.asyncExec(new Runnable() {
+                    public void run() {
+                        Workbench.getInstance().close();
+                    }
+                });
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+    public class FormatterWorkbenchAdvisor extends WorkbenchAdvisor {
+
+        @Override
+        public String getInitialWindowPerspectiveId() {
+            return null;
+        }
+
+        @Override
+        public void postStartup() {
+            FormatterJob formatterJob = new FormatterJob();
+            formatterJob.schedule();
+        }
+    }
+
+    private String projectName;
+    private char[][] inclusionFilters;
+    private char[][] exclusionFilters;
+    private String projectFolderPath;
+    private String resultFile;
+    private boolean checkOnly;
+    private boolean organizeImports = true;
+    private boolean format = true;
+    private int threads;
+    private volatile int exitCode = ResourceFormatter.EXIT_ERRORS;
+    Display display;
+
+    public Object start(IApplicationContext context) throws Exception {
+        Integer invalid = processCommandLine((String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS));
+        if (invalid != null) {
+            return invalid;
+        }
+        try {
+            display = createDisplay();
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw e;
+        }
+        WorkbenchAdvisor advisor = new FormatterWorkbenchAdvisor();
+        PlatformUI.createAndRunWorkbench(display, advisor);
+        return Integer.valueOf(exitCode);
+    }
+
+    public void stop() {
+    }
+
+    private int doFormat() {
+        // now ensure that the classpath containers and variables are initialized
+        try {
+            JavaCore.initializeAfterLoad(new NullProgressMonitor());
+        } catch (CoreException e) {
+            e.printStackTrace();
+        }
+
+        // create the project if required
+        try {
+            createProject();
+        } catch (CoreException e) {
+            System.err.println("Failed to create project " + projectName + " at location " + projectFolderPath);
+            e.printStackTrace();
+            return ResourceFormatter.EXIT_ERRORS;
+        }
+
+        // ensure project is open
+        IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+        try {
+            project.open(null);
+        } catch (CoreException e) {
+            System.err.println("Failed to open project " + projectName);
+            e.printStackTrace();
+            return ResourceFormatter.EXIT_ERRORS;
+        }
+
+        System.out.println((checkOnly ? "Checking the formatting of project " : "Formatting project ") + projectName);
+        PrintStream out = System.out;
+        try {
+            if (resultFile != null) {
+                out = createOutStream(resultFile);
+            }
+            ResourceFormatter formatter = new ResourceFormatter(out, projectName, inclusionFilters, exclusionFilters);
+            formatter.setCheckOnly(checkOnly);
+            formatter.setOrganizeImports(organizeImports);
+            formatter.setFormat(format);
+            if (threads > 0) {
+                formatter.setThreads(threads);
+            }
+            return formatter.doFormat(null);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResourceFormatter.EXIT_ERRORS;
+        } finally {
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+
+    public PrintStream createOutStream(String fileName) throws FileNotFoundException {
+        return new PrintStream(new File(fileName));
+    }
+
+    private void createProject() throws CoreException {
+        if (projectFolderPath == null) {
+            // nothing to do
+            return;
+        }
+
+        IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+        if (project.exists()) {
+            if (project.getLocation().toOSString().equals(projectFolderPath)) {
+                // project already exists do nothing
+                return;
+            } else {
+                // delete existing project from workspace, but not the filesystem
+                project.delete(IResource.NEVER_DELETE_PROJECT_CONTENT | IResource.FORCE, null);
+            }
+        }
+
+        IPath dotProjectPath = new Path(projectFolderPath).append(".project");
+        IProjectDescription description = ResourcesPlugin.getWorkspace().loadProjectDescription(dotProjectPath);
+        description.setName(projectName);
+        project.create(description, null);
+    }
+
+    /**
+     * @return the exit code if the application must not run, or null
+     */
+    private Integer processCommandLine(String[] args) {
+        boolean doHelp = false;
+        String excludes = null;
+        String includes = null;
+        if (args.length < 1) {
+            printUsage(true);
+            return Integer.valueOf(ResourceFormatter.EXIT_ERRORS);
+        }
+        projectName = args[args.length - 1];
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) {
+                doHelp = true;
+                break;
+            } else if (arg.equals("--check")) {
+                checkOnly = true;
+            } else if (arg.equals("--no_imports")) {
+                organizeImports = false;
+            } else if (arg.equals("--no_format")) {
+                format = false;
+            } else if (arg.equals("--threads")) {
+                if (i == args.length-1) {
+                    System.err.println("Missing --threads argument");
+                    return invalidCommandLine();
+                }
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid --threads argument: " + args[i]);
+                    return invalidCommandLine();
+                }
+            } else if (arg.equals("--excludes")) {
+                if (i == args.length-1) {
+                    System.err.println("Missing --excludes argument");
+                    return invalidCommandLine();
+                }
+                excludes = args[++i];
+            } else if (arg.equals("--includes")) {
+                if (i == args.length-1) {
+                    System.err.println("Missing --includes argument");
+                    return invalidCommandLine();
+                }
+                includes = args[++i];
+            } else if (arg.equals("--project_path")) {
+                if (i == args.length-1) {
+                    System.err.println("Missing --project_path argument");
+                    return invalidCommandLine();
+                }
+                projectFolderPath = args[++i];
+            } else if (arg.equals("--result_file")) {
+                if (i == args.length-1) {
+                    System.err.println("Missing --result_file argument");
+                    return invalidCommandLine();
+                }
+                resultFile = args[++i];
+            }
+        }
+
+        inclusionFilters = convertToCharChar(includes);
+        exclusionFilters = convertToCharChar(excludes);
+
+        if (doHelp) {
+            printUsage(false);
+            return Integer.valueOf(ResourceFormatter.EXIT_OK);
+        }
+        return null;
+    }
+
+    private Integer invalidCommandLine() {
+        printUsage(true);
+        return Integer.valueOf(ResourceFormatter.EXIT_ERRORS);
+    }
+
+    private char[][] convertToCharChar(String str) {
+        if (str == null) {
+            return null;
+        }
+        String[] splits = str.split("\\|");
+        char[][] chars = new char[splits.length][];
+        for (int i = 0; i < splits.length; i++) {
+            chars[i] = ("/" + projectName + "/" + splits[i]).toCharArray();
+        }
+        return chars;
+    }
+
+    private void printUsage(boolean isInvalid) {
+        if (isInvalid) {
+            System.out.println("Invalid command line.");
+        }
+
+        System.out.println("Usage:");
+        System.out.println("eclipse -application org.codehaus.groovy.eclipse.ui.format [--help] [-h] [--check] [--no_imports] [--no_format] [--threads <COUNT>] [--excludes <PATH>] [--includes <PATH>] [--project_path <PATH>] [--result_file <FILE>] <PROJECT_NAME>");
+        System.out.println("where:");
+        System.out.println("\t--help OR -h  Print this message and exit.");
+        System.out.println("\t--check  Don't change any file.  Only report the files that are not formatted.");
+        System.out.println("\t--no_imports  Don't organize imports.");
+        System.out.println("\t--no_format  Don't format.");
+        System.out.println("\t--threads  Number of files processed at the same time.  Defaults to the number of processors.");
+        System.out.println("\t--excludes  Project-relative exclusion filters.");
+        System.out.println("\t--includes  Project-relative inclusion filters.");
+        System.out.println("\t--project_path  File system path to the project to format (only required if project is not already in workspace).");
+        System.out.println("\t--result_file  File to send the time taken by each file to.  If not specified, then results sent to sysout.");
+        System.out.println("\t<PROJECT_NAME>  Name of a project to format.  If not already in workspace, then must also use '--project_path'.");
+        System.out.println();
+        System.out.println("Ant style filters are allowed.  Eg, src/org/codehaus/groovy/**/*.groovy means all files with groovy extensions in the org.codehaus.groovy package or below will be ex/included   Filters can be concentenated using '|'.");
+        System.out.println();
+        System.out.println("Exit codes:");
+        System.out.println("\t" + ResourceFormatter.EXIT_OK + "  All files are formatted.");
+        System.out.println("\t" + ResourceFormatter.EXIT_CHANGES + "  With --check, some files are not formatted.");
+        System.out.println("\t" + ResourceFormatter.EXIT_ERRORS + "  Some files could not be processed, or the command line is invalid.");
+    }
+
+    /**
+     * Creates the display used by the application.
+     *
+     * @return the display used by the application
+     */
+    protected Display createDisplay() {
+        return PlatformUI.createDisplay();
+    }
+}
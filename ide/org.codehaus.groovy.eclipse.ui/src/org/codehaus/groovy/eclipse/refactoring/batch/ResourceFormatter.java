@@ -0,0 +1,298 @@
+/*
+ * Copyright 2009-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.groovy.eclipse.refactoring.batch;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.groovy.eclipse.refactoring.actions.OrganizeGroovyImports;
+import org.codehaus.groovy.eclipse.refactoring.formatter.DefaultGroovyFormatter;
+import org.codehaus.groovy.eclipse.refactoring.formatter.FormatterPreferences;
+import org.codehaus.jdt.groovy.model.GroovyCompilationUnit;
+import org.codehaus.jdt.groovy.model.GroovyNature;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.search.TypeNameMatch;
+import org.eclipse.jdt.groovy.core.util.ContentTypeUtils;
+import org.eclipse.jdt.internal.core.util.Util;
+import org.eclipse.jdt.internal.corext.codemanipulation.OrganizeImportsOperation.IChooseImportQuery;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.TextSelection;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Organizes the imports of and formats all groovy files contained in the
+ * resources passed in, the way the save actions do, on a pool of worker
+ * threads. In check only mode, the files are left untouched and only reported.
+ * Groovy files that are not on the build path, like build.gradle, are skipped.
+ */
+public class ResourceFormatter {
+
+    /** Everything was already formatted, or has been formatted */
+    public static final int EXIT_OK = 0;
+
+    /** Check only mode found files that are not formatted */
+    public static final int EXIT_CHANGES = 1;
+
+    /** Some files could not be processed */
+    public static final int EXIT_ERRORS = 2;
+
+    /**
+     * The outcome of one file
+     */
+    static class FileResult {
+        final IFile file;
+        boolean changed;
+        boolean ambiguousImports;
+        String error;
+        long millis;
+
+        FileResult(IFile file) {
+            this.file = file;
+        }
+    }
+
+    class FileCollector implements IResourceVisitor {
+        private final List<IFile> files;
+
+        FileCollector(List<IFile> files) {
+            this.files = files;
+        }
+
+        public boolean visit(IResource resource) throws CoreException {
+            if (resource.isDerived()) {
+                return false;
+            }
+            if (resource.getType() == IResource.FILE && ContentTypeUtils.isGroovyLikeFileName(resource.getName())) {
+                if (!Util.isExcluded(resource, includes, excludes) && isOnBuildPath((IFile) resource)) {
+                    files.add((IFile) resource);
+                }
+            }
+            return true;
+        }
+
+        private boolean isOnBuildPath(IFile file) {
+            IJavaElement element = JavaCore.create(file);
+            return element instanceof GroovyCompilationUnit && ((GroovyCompilationUnit) element).isOnBuildPath();
+        }
+    }
+
+    private final PrintStream out;
+    private final List<IResource> resources;
+
+    protected final char[][] includes;
+    protected final char[][] excludes;
+    protected boolean checkOnly;
+    protected boolean organizeImports = true;
+    protected boolean format = true;
+    protected int threads = Runtime.getRuntime().availableProcessors();
+
+    public ResourceFormatter(PrintStream out, String projectName, char[][] includes, char[][] excludes) {
+        this(out, createProject(projectName), includes, excludes);
+    }
+
+    public ResourceFormatter(PrintStream out, List<IResource> resources, char[][] includes, char[][] excludes) {
+        this.out = out;
+        this.resources = resources;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    private static List<IResource> createProject(String projectName) {
+        IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+        if (!GroovyNature.hasGroovyNature(project)) {
+            throw new IllegalArgumentException("Invalid project: " + projectName);
+        }
+        return Collections.<IResource>singletonList(project);
+    }
+
+    /**
+     * @param checkOnly if true, report the files that would change, but do
+     *        not change them
+     */
+    public void setCheckOnly(boolean checkOnly) {
+        this.checkOnly = checkOnly;
+    }
+
+    public void setOrganizeImports(boolean organizeImports) {
+        this.organizeImports = organizeImports;
+    }
+
+    public void setFormat(boolean format) {
+        this.format = format;
+    }
+
+    /**
+     * @param threads the number of files processed at the same time, the
+     *        number of processors by default
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Processes the groovy files of the selected resources and prints the
+     * time each one took.
+     *
+     * @param monitor progress monitor, can be null
+     * @return one of {@link #EXIT_OK}, {@link #EXIT_CHANGES} and
+     *         {@link #EXIT_ERRORS}
+     * @throws CoreException
+     */
+    public int doFormat(IProgressMonitor monitor) throws CoreException {
+        if (monitor == null) {
+            monitor = new NullProgressMonitor();
+        }
+        long start = System.currentTimeMillis();
+        List<IFile> files = new ArrayList<IFile>();
+        for (IResource resource : resources) {
+            resource.accept(new FileCollector(files));
+        }
+
+        monitor.beginTask(checkOnly ? "Checking groovy formatting" : "Formatting groovy files", files.size());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>(files.size());
+        List<FileResult> results = new ArrayList<FileResult>(files.size());
+        try {
+            for (final IFile file : files) {
+                futures.add(pool.submit(new Callable<FileResult>() {
+                    public FileResult call() throws Exception {
+                        return processFile(file);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                if (monitor.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                FileResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    result = new FileResult(files.get(i));
+                    result.error = String.valueOf(e.getCause());
+                } catch (InterruptedException e) {
+                    throw new OperationCanceledException();
+                }
+                monitor.subTask(result.file.getName());
+                monitor.worked(1);
+                results.add(result);
+            }
+        } finally {
+            pool.shutdownNow();
+            monitor.done();
+        }
+        return report(results, System.currentTimeMillis() - start);
+    }
+
+    private FileResult processFile(IFile file) throws CoreException {
+        FileResult result = new FileResult(file);
+        long start = System.currentTimeMillis();
+        IJavaElement element = JavaCore.create(file);
+        if (!(element instanceof GroovyCompilationUnit) || !((GroovyCompilationUnit) element).isOnBuildPath()) {
+            result.error = "not on the build path";
+            return result;
+        }
+        GroovyCompilationUnit unit = (GroovyCompilationUnit) element;
+        unit.becomeWorkingCopy(null);
+        try {
+            String contents = unit.getSource();
+            IDocument document = new Document(contents);
+            if (organizeImports) {
+                TextEdit edit = calculateImports(unit, result);
+                if (edit == null) {
+                    result.error = "could not organize imports, probably due to compilation errors";
+                    return result;
+                }
+                edit.apply(document);
+            }
+            if (format) {
+                DefaultGroovyFormatter formatter = new DefaultGroovyFormatter(new TextSelection(0, document.getLength()), document,
+                        new FormatterPreferences(unit), false);
+                formatter.format().apply(document);
+            }
+            result.changed = !document.get().equals(contents);
+            if (result.changed && !checkOnly) {
+                unit.getBuffer().setContents(document.get());
+                unit.commitWorkingCopy(true, null);
+            }
+        } catch (Exception e) {
+            result.error = e.toString();
+        } finally {
+            unit.discardWorkingCopy();
+            result.millis = System.currentTimeMillis() - start;
+        }
+        return result;
+    }
+
+    private TextEdit calculateImports(GroovyCompilationUnit unit, final FileResult result) {
+        // same as the clean up, ambiguous imports are left alone
+        IChooseImportQuery query = new IChooseImportQuery() {
+            public TypeNameMatch[] chooseImports(TypeNameMatch[][] openChoices, ISourceRange[] ranges) {
+                result.ambiguousImports = true;
+                return new TypeNameMatch[0];
+            }
+        };
+        return new OrganizeGroovyImports(unit, query).calculateMissingImports();
+    }
+
+    private int report(List<FileResult> results, long millis) {
+        int changed = 0, failed = 0;
+        for (FileResult result : results) {
+            String status;
+            if (result.error != null) {
+                failed++;
+                status = "FAILED";
+            } else if (result.changed) {
+                changed++;
+                status = checkOnly ? "UNFORMATTED" : "FORMATTED";
+            } else {
+                status = "OK";
+            }
+            out.println(status + "\t" + result.millis + " ms\t" + result.file.getFullPath()
+                    + (result.error != null ? "\t" + result.error : "")
+                    + (result.ambiguousImports ? "\tambiguous imports were not added" : ""));
+        }
+        out.println("Processed " + results.size() + " files in " + millis + " ms with " + threads + " threads: " + changed
+                + (checkOnly ? " not formatted, " : " formatted, ") + failed + " failed");
+        out.flush();
+
+        if (failed > 0) {
+            return EXIT_ERRORS;
+        } else if (checkOnly && changed > 0) {
+            return EXIT_CHANGES;
+        }
+        return EXIT_OK;
+    }
+}
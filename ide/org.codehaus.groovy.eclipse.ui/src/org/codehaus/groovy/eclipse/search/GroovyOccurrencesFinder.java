@@ -41,8 +41,7 @@ import org.eclipse.jdt.core.ITypeRoot;
 import org.eclipse.jdt.core.SourceRange;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.groovy.search.TypeInferencingVisitorFactory;
-import org.eclipse.jdt.groovy.search.TypeInferencingVisitorWithRequestor;
+import org.eclipse.jdt.groovy.search.TypeInferenceCache;
 import org.eclipse.jdt.internal.ui.search.IOccurrencesFinder;
 
 /**
@@ -175,8 +174,7 @@ public class GroovyOccurrencesFinder implements IOccurrencesFinder {
                 && !(nodeToLookFor instanceof BinaryExpression)
                 && !(nodeToLookFor instanceof MethodCallExpression)) {
             FindAllReferencesRequestor requestor = new FindAllReferencesRequestor(nodeToLookFor);
-            TypeInferencingVisitorWithRequestor visitor = new TypeInferencingVisitorFactory().createVisitor(gunit);
-            visitor.visitCompilationUnit(requestor);
+            TypeInferenceCache.getInstance().visitCompilationUnit(gunit, requestor);
             Map<org.codehaus.groovy.ast.ASTNode, Integer> occurences = requestor.getReferences();
             return occurences;
         } else {
@@ -66,6 +66,9 @@ public class LookupEnvironment implements ProblemReasons, TypeConstants {
 	private SimpleLookupTable uniqueGetClassMethodBinding; // https://bugs.eclipse.org/bugs/show_bug.cgi?id=300734
 
 	public CompilationUnitDeclaration unitBeingCompleted = null; // only set while completing units
+	// GROOVY start: groovy ClassNodes built for the bindings of this environment, shared by the units it compiles
+	public Object groovyClassNodeCache;
+	// GROOVY end
 	public Object missingClassFileLocation = null; // only set when resolving certain references, to help locating problems
 	private CompilationUnitDeclaration[] units = new CompilationUnitDeclaration[4];
 	private MethodVerifier verifier;
@@ -1441,6 +1444,9 @@ public void releaseClassFiles(org.eclipse.jdt.internal.compiler.ClassFile[] clas
 }
 
 public void reset() {
+	// GROOVY start
+	this.groovyClassNodeCache = null;
+	// GROOVY end
 	this.defaultPackage = new PackageBinding(this); // assume the default package always exists
 	this.defaultImports = null;
 	this.knownPackages = new HashtableOfPackage();
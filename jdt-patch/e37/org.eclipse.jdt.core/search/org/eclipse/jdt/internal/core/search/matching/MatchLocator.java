@@ -1020,6 +1020,11 @@ protected void locateMatches(JavaProject javaProject, PossibleMatch[] possibleMa
 	boolean mustResolve = mustResolvePattern;
 	this.patternLocator.mayBeGeneric = this.options.sourceLevel >= ClassFileConstants.JDK1_5;
 	boolean bindingsWereCreated = mustResolve;
+	// GROOVY start
+	if (isInterestingProject) {
+		LanguageSupportFactory.prepareDelegatedSearch(possibleMatches, start, length, this.pattern, this.requestor, this.progressMonitor);
+	}
+	// GROOVY end
 	try {
 		for (int i = start, maxUnits = start + length; i < maxUnits; i++) {
 			PossibleMatch possibleMatch = possibleMatches[i];
@@ -198,4 +198,12 @@ public synchronized void shutdown() {
 	this.readingThreads = null; // mark the read manager as shutting down so that the reading threads stop
 	notifyAll();
 }
+// GROOVY start
+/**
+ * @return the units this manager reads ahead, in the order they will be asked for, or null if it does not read ahead
+ */
+public ICompilationUnit[] getUnits() {
+	return this.units;
+}
+// GROOVY end
 }
\ No newline at end of file
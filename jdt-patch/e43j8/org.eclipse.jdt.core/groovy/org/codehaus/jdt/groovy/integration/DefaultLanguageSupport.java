@@ -113,6 +113,11 @@ class DefaultLanguageSupport implements LanguageSupport {
 		return false;
 	}
 
+	public void prepareDelegatedSearch(PossibleMatch[] possibleMatches, int start, int length, SearchPattern pattern,
+			SearchRequestor requestor, IProgressMonitor monitor) {
+		// nothing to prepare
+	}
+
 	public EventHandler getEventHandler() {
 		return DefaultEventHandler.instance;
 	}
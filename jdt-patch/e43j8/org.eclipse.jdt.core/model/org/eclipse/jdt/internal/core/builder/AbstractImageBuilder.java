@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.core.builder;
 // GROOVY PATCHED
+import org.codehaus.jdt.groovy.integration.BuildBatchPlanner;
 import org.codehaus.jdt.groovy.integration.LanguageSupportFactory;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.resources.*;
@@ -62,6 +63,11 @@ protected SimpleSet filesWithAnnotations = null;
 
 //2000 is best compromise between space used and speed
 public static int MAX_AT_ONCE = Integer.getInteger(JavaModelManager.MAX_COMPILED_UNITS_AT_ONCE, 2000).intValue();
+// GROOVY start
+// when greater than 0, builds of groovy projects with more units than this are compiled in dependency ordered batches of
+// about this size, instead of all at once
+public static int GROOVY_BATCH_SIZE = Integer.getInteger("greclipse.build.groovyBatchSize", 0).intValue(); //$NON-NLS-1$
+// GROOVY end
 public final static String[] JAVA_PROBLEM_MARKER_ATTRIBUTE_NAMES = {
 	IMarker.MESSAGE,
 	IMarker.SEVERITY,
@@ -313,11 +319,17 @@ protected void compile(SourceFile[] units) {
 
 	// GROOVY start
 	// currently can't easily fault in files from the other group.  Easier to
-	// do this than fix that right now.
+	// do this than fix that right now.  When chunked groovy builds are enabled the
+	// groups are instead chosen so that nothing has to be faulted in from a later group.
+	boolean compileInGroovyBatches = false;
 	if (this.compiler!=null && this.compiler.options!=null && this.compiler.options.buildGroovyFiles==2) {
 		// System.out.println("although more than "+MAX_AT_ONCE+" still compiling "+unitsLength+" files at once");
-		this.compiledAllAtOnce = true;
+		compileInGroovyBatches = GROOVY_BATCH_SIZE > 0 && unitsLength > GROOVY_BATCH_SIZE;
+		this.compiledAllAtOnce = !compileInGroovyBatches;
 	}
+	if (compileInGroovyBatches) {
+		compileInGroovyBatches(units);
+	} else
 	// GROOVY end
 	if (this.compiledAllAtOnce) {
 		// do them all now
@@ -365,6 +377,45 @@ protected void compile(SourceFile[] units) {
 	}
 }
 
+// GROOVY start
+/* Compile the units in batches that only refer to themselves and to earlier batches. The types of
+* earlier batches are then read from their class files, and the groovy compilation unit (holding
+* the module nodes of every groovy file it has seen) is thrown away after each batch.
+*/
+protected void compileInGroovyBatches(SourceFile[] units) {
+	int[][] batches = new BuildBatchPlanner(units).plan(GROOVY_BATCH_SIZE);
+	for (int b = 0; b < batches.length; b++) {
+		int[] batch = batches[b];
+		SourceFile[] toCompile = new SourceFile[batch.length];
+		int count = 0;
+		for (int i = 0; i < batch.length; i++) {
+			// Although it needed compiling when this method was called, it may have
+			// already been compiled when it was referenced by another unit.
+			SourceFile unit = units[batch[i]];
+			if (b == 0 || this.workQueue.isWaiting(unit)) {
+				if (JavaBuilder.DEBUG)
+					System.out.println("About to compile #" + batch[i] + " in batch " + b + " : " + unit.typeLocator()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				toCompile[count++] = unit;
+			}
+		}
+		if (count < toCompile.length)
+			System.arraycopy(toCompile, 0, toCompile = new SourceFile[count], 0, count);
+		// java units of later batches may still be faulted in, groovy ones must not be
+		ArrayList additionalUnits = new ArrayList();
+		for (int a = b + 1; a < batches.length; a++) {
+			for (int i = 0; i < batches[a].length; i++) {
+				SourceFile unit = units[batches[a][i]];
+				if (!this.workQueue.isCompiled(unit) && !LanguageSupportFactory.isInterestingSourceFile(unit.resource.getName()))
+					additionalUnits.add(unit);
+			}
+		}
+		compile(toCompile, (SourceFile[]) additionalUnits.toArray(new SourceFile[additionalUnits.size()]), b == 0);
+		if (this.compiler.parser != null)
+			this.compiler.parser.reset();
+	}
+}
+// GROOVY end
+
 protected void compile(SourceFile[] units, SourceFile[] additionalUnits, boolean compilingFirstGroup) {
 	if (units.length == 0) return;
 	this.notifier.aboutToCompile(units[0]); // just to change the message
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Codehaus.org, SpringSource, and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.codehaus.jdt.groovy.integration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+
+/**
+ * Splits the units of a build into batches that can be compiled one after the other, such that a unit only refers to types of
+ * its own batch or of earlier batches. Those earlier types are then found as class files, so no source file (in particular no
+ * groovy file) has to be faulted in from a later batch.
+ * <p>
+ * Dependencies are estimated from the source text: a unit depends on another one if it mentions, as an identifier, the main type
+ * name of that unit or the name following a 'class', 'interface', 'enum' or 'trait' keyword in it. This over-approximates the
+ * real dependencies (comments, strings, same simple names in other packages), which only makes batches bigger. Units that depend
+ * on each other, for instance mixed java/groovy cycles, always end up in the same batch, even if that batch exceeds the requested
+ * size.
+ */
+public class BuildBatchPlanner {
+
+	private static final Set DECLARING_KEYWORDS = new HashSet();
+	static {
+		DECLARING_KEYWORDS.add("class"); //$NON-NLS-1$
+		DECLARING_KEYWORDS.add("interface"); //$NON-NLS-1$
+		DECLARING_KEYWORDS.add("enum"); //$NON-NLS-1$
+		DECLARING_KEYWORDS.add("trait"); //$NON-NLS-1$
+	}
+
+	private final ICompilationUnit[] units;
+
+	/** for each unit, the indices of the units it depends on */
+	private final int[][] dependencies;
+
+	public BuildBatchPlanner(ICompilationUnit[] units) {
+		this.units = units;
+		this.dependencies = new int[units.length][];
+	}
+
+	/**
+	 * @return the batches, as indices into the units, in the order they must be compiled
+	 */
+	public int[][] plan(int batchSize) {
+		computeDependencies();
+		List components = computeComponents();
+
+		List batches = new ArrayList();
+		List batch = new ArrayList();
+		for (int c = 0, n = components.size(); c < n; c++) {
+			int[] component = (int[]) components.get(c);
+			if (!batch.isEmpty() && batch.size() + component.length > batchSize) {
+				batches.add(toArray(batch));
+				batch.clear();
+			}
+			for (int i = 0; i < component.length; i++) {
+				batch.add(new Integer(component[i]));
+			}
+		}
+		if (!batch.isEmpty()) {
+			batches.add(toArray(batch));
+		}
+		return (int[][]) batches.toArray(new int[batches.size()][]);
+	}
+
+	private void computeDependencies() {
+		// first pass, who declares what
+		Map declaringUnits = new HashMap();
+		for (int i = 0; i < this.units.length; i++) {
+			Set declared = new HashSet();
+			char[] mainTypeName = this.units[i].getMainTypeName();
+			if (mainTypeName != null) {
+				declared.add(new String(mainTypeName));
+			}
+			scan(this.units[i].getContents(), declared, null);
+			Integer index = new Integer(i);
+			for (Iterator iter = declared.iterator(); iter.hasNext();) {
+				Object name = iter.next();
+				List declaring = (List) declaringUnits.get(name);
+				if (declaring == null) {
+					declaringUnits.put(name, declaring = new ArrayList(1));
+				}
+				declaring.add(index);
+			}
+		}
+		// second pass, who mentions what, contents are read again rather than kept around
+		for (int i = 0; i < this.units.length; i++) {
+			Set referenced = new HashSet();
+			scan(this.units[i].getContents(), null, referenced);
+			Set depends = new HashSet();
+			for (Iterator iter = referenced.iterator(); iter.hasNext();) {
+				List declaring = (List) declaringUnits.get(iter.next());
+				if (declaring != null) {
+					depends.addAll(declaring);
+				}
+			}
+			depends.remove(new Integer(i));
+			this.dependencies[i] = toArray(depends);
+		}
+	}
+
+	/**
+	 * Collects the identifiers of the contents. Declared names are the identifiers following a declaring keyword.
+	 */
+	private static void scan(char[] contents, Set declared, Set identifiers) {
+		if (contents == null) {
+			return;
+		}
+		boolean afterKeyword = false;
+		int i = 0, length = contents.length;
+		while (i < length) {
+			if (!Character.isJavaIdentifierStart(contents[i])) {
+				if (!Character.isWhitespace(contents[i])) {
+					afterKeyword = false;
+				}
+				i++;
+				continue;
+			}
+			int start = i++;
+			while (i < length && Character.isJavaIdentifierPart(contents[i])) {
+				i++;
+			}
+			String identifier = new String(contents, start, i - start);
+			if (identifiers != null) {
+				identifiers.add(identifier);
+			}
+			if (declared != null && afterKeyword) {
+				declared.add(identifier);
+			}
+			afterKeyword = DECLARING_KEYWORDS.contains(identifier);
+		}
+	}
+
+	/**
+	 * Tarjan's algorithm, iterative so that long dependency chains can't overflow the stack. Components are produced in reverse
+	 * topological order, so every component comes after the ones it depends on.
+	 */
+	private List computeComponents() {
+		int n = this.units.length;
+		int[] index = new int[n];
+		int[] lowLink = new int[n];
+		boolean[] onStack = new boolean[n];
+		Arrays.fill(index, -1);
+		int[] stack = new int[n];
+		int stackSize = 0;
+		int[] callStack = new int[n];
+		int[] nextEdge = new int[n];
+		int nextIndex = 0;
+		List components = new ArrayList();
+
+		for (int root = 0; root < n; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			int depth = 0;
+			callStack[depth] = root;
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			nextEdge[root] = 0;
+			while (depth >= 0) {
+				int v = callStack[depth];
+				int[] edges = this.dependencies[v];
+				if (nextEdge[v] < edges.length) {
+					int w = edges[nextEdge[v]++];
+					if (index[w] == -1) {
+						index[w] = lowLink[w] = nextIndex++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						nextEdge[w] = 0;
+						callStack[++depth] = w;
+					} else if (onStack[w]) {
+						lowLink[v] = Math.min(lowLink[v], index[w]);
+					}
+					continue;
+				}
+				if (lowLink[v] == index[v]) {
+					int size = 0;
+					while (stack[stackSize - 1 - size] != v) {
+						size++;
+					}
+					size++;
+					int[] component = new int[size];
+					for (int i = 0; i < size; i++) {
+						int w = stack[--stackSize];
+						onStack[w] = false;
+						component[size - 1 - i] = w;
+					}
+					Arrays.sort(component);
+					components.add(component);
+				}
+				depth--;
+				if (depth >= 0) {
+					int parent = callStack[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+				}
+			}
+		}
+		return components;
+	}
+
+	private static int[] toArray(Collection integers) {
+		int[] result = new int[integers.size()];
+		int i = 0;
+		for (Iterator iter = integers.iterator(); iter.hasNext();) {
+			result[i++] = ((Integer) iter.next()).intValue();
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
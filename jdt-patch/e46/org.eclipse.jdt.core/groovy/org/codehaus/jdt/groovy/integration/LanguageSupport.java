@@ -116,6 +116,22 @@ public interface LanguageSupport {
 	 */
 	boolean maybePerformDelegatedSearch(PossibleMatch possibleMatch, SearchPattern pattern, SearchRequestor requestor);
 
+	/**
+	 * Called before maybePerformDelegatedSearch is called for each possible match
+	 * of a batch, so that the searches can be started ahead of time (eg- in parallel).
+	 * Results must still be sent to the requestor only from within 
+	 * maybePerformDelegatedSearch.
+	 * @param possibleMatches the possible matches, only those in the range are part of the batch
+	 * @param start index of the first possible match of the batch
+	 * @param length number of possible matches in the batch
+	 * @param pattern
+	 * @param requestor the requestor that will receive the results
+	 * @param monitor the monitor of the search, may be null
+	 * @throws org.eclipse.core.runtime.OperationCanceledException if the search is canceled while preparing
+	 */
+	void prepareDelegatedSearch(PossibleMatch[] possibleMatches, int start, int length, SearchPattern pattern, SearchRequestor requestor,
+			IProgressMonitor monitor);
+
 	EventHandler getEventHandler();
 
 	void filterNonSourceMembers(BinaryType binaryType);